@@ -1,5 +1,7 @@
 plugins {
     java
+    `java-test-fixtures`
+    id("me.champeau.jmh") version "0.6.5"
 }
 
 group = "com.github.pierre_ernst"
@@ -13,6 +15,31 @@ dependencies {
     implementation("org.kohsuke:github-api:1.131")
     implementation("com.squareup.okhttp3:okhttp:3.14.9")
     implementation("com.github.package-url:packageurl-java:1.3.1")
-    
+
     testImplementation("org.junit.jupiter:junit-jupiter:5.7.2")
+
+    "jmhImplementation"(testFixtures(project))
+}
+
+// benchmarks run against a local stand-in server, short enough to run on every build
+jmh {
+    jmhVersion.set("1.32")
+    fork.set(1)
+    warmupIterations.set(2)
+    warmup.set("1s")
+    iterations.set(3)
+    timeOnIteration.set("1s")
+    resultFormat.set("JSON")
+}
+
+tasks.named("check") {
+    dependsOn("jmh")
+}
+
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Drives the file system with concurrent workloads against a local stand-in GitHub API."
+    classpath = sourceSets["testFixtures"].runtimeClasspath
+    mainClass.set("com.github.pierre_ernst.githubfs.test.LoadTest")
+    args = (findProperty("loadTestArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
 }
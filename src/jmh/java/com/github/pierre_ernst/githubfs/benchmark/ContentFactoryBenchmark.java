@@ -0,0 +1,68 @@
+package com.github.pierre_ernst.githubfs.benchmark;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.pierre_ernst.githubfs.model.Content;
+import com.github.pierre_ernst.githubfs.model.ContentFactory;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Lookups and listings served from a warm cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentFactoryBenchmark extends FileSystemBenchmark {
+
+	private GitHubPath file;
+	private GitHubPath directory;
+	private GitHubPath absent;
+
+	@Setup(Level.Trial)
+	public void warmCache() throws IOException {
+		file = new GitHubPath(fs, "/src/module3/pkg11/File7.java");
+		directory = new GitHubPath(fs, "/src/module3/pkg11");
+		absent = new GitHubPath(fs, "/src/module3/pkg11/Absent.java");
+		ContentFactory.wrapDirectory(fs.getContentCache(), new GitHubPath(fs, "/"));
+	}
+
+	@Benchmark
+	public Content lookupFile() throws IOException {
+		return ContentFactory.getContent(fs.getContentCache(), file);
+	}
+
+	@Benchmark
+	public Content lookupDirectory() throws IOException {
+		return ContentFactory.getContent(fs.getContentCache(), directory);
+	}
+
+	@Benchmark
+	public boolean lookupAbsent() {
+		try {
+			ContentFactory.getContent(fs.getContentCache(), absent);
+			return true;
+		} catch (IOException expected) {
+			return false;
+		}
+	}
+
+	@Benchmark
+	public void listDirectory(Blackhole blackhole) throws IOException {
+		try (DirectoryStream<Path> stream = fs.provider().newDirectoryStream(directory, null)) {
+			for (Path p : stream) {
+				blackhole.consume(p);
+			}
+		}
+	}
+}
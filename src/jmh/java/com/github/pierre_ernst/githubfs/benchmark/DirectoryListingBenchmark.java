@@ -0,0 +1,51 @@
+package com.github.pierre_ernst.githubfs.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import com.github.pierre_ernst.githubfs.model.ContentCache;
+import com.github.pierre_ernst.githubfs.model.ContentFactory;
+import com.github.pierre_ernst.githubfs.model.DirectoryContent;
+import com.github.pierre_ernst.githubfs.model.TreeStore;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Listings on a cold cache, every tree being fetched from the local server
+ * with the given latency.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DirectoryListingBenchmark extends FileSystemBenchmark {
+
+	@Param({ "0", "5" })
+	public long latencyMillis;
+
+	private GitHubPath directory;
+
+	@Setup(Level.Trial)
+	public void configureLatency() {
+		server.setLatency(latencyMillis);
+		directory = new GitHubPath(fs, "/src/module3");
+	}
+
+	@Benchmark
+	public DirectoryContent listCold() throws IOException {
+		ContentCache cache = new ContentCache(fs.getRepository(), fs.getRevision(), new TreeStore());
+		return ContentFactory.wrapDirectory(cache, directory);
+	}
+
+	@Benchmark
+	public DirectoryContent listSharedTrees() throws IOException {
+		ContentCache cache = new ContentCache(fs.getRepository(), fs.getRevision(), fs.getContentCache().getTreeStore());
+		return ContentFactory.wrapDirectory(cache, directory);
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.pierre_ernst.githubfs.benchmark;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.github.pierre_ernst.githubfs.test.FakeGitHubServer;
+import com.github.pierre_ernst.githubfs.test.FakeRepository;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+/**
+ * Opens a {@link GitHubFileSystem} on a synthetic repository served by a local
+ * {@link FakeGitHubServer}, so that benchmarks never reach GitHub.
+ */
+@State(Scope.Benchmark)
+public abstract class FileSystemBenchmark {
+
+	protected FakeGitHubServer server;
+	protected FakeRepository repository;
+	protected GitHubFileSystem fs;
+
+	@Setup(Level.Trial)
+	public void openFileSystem() throws IOException {
+		repository = FakeRepository.synthetic("bench/repo", 64, 16);
+		server = new FakeGitHubServer().add(repository);
+		fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+				// served by the server on every run, not by a blob cache left by a previous one
+				Collections.singletonMap("blobCache", "none"));
+	}
+
+	@TearDown(Level.Trial)
+	public void closeFileSystem() throws IOException {
+		fs.close();
+		server.close();
+	}
+}
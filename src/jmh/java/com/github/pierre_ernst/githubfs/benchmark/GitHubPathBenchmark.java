@@ -0,0 +1,70 @@
+package com.github.pierre_ernst.githubfs.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GitHubPathBenchmark extends FileSystemBenchmark {
+
+	private byte[] normalized;
+	private byte[] denormalized;
+	private GitHubPath absolute;
+	private GitHubPath relative;
+	private GitHubPath dotted;
+	private GitHubPath sibling;
+
+	@Setup(Level.Trial)
+	public void createPaths() {
+		normalized = "/src/module3/pkg11/File7.java".getBytes(StandardCharsets.UTF_8);
+		denormalized = "/src//module3\\pkg11//File7.java/".getBytes(StandardCharsets.UTF_8);
+		absolute = new GitHubPath(fs, normalized);
+		relative = new GitHubPath(fs, "pkg11/File7.java");
+		dotted = new GitHubPath(fs, "/src/module3/./pkg11/../pkg12/File7.java");
+		sibling = new GitHubPath(fs, "/src/module3/pkg11/File8.java");
+	}
+
+	@Benchmark
+	public GitHubPath parse() {
+		return new GitHubPath(fs, normalized);
+	}
+
+	@Benchmark
+	public GitHubPath parseDenormalized() {
+		return new GitHubPath(fs, denormalized);
+	}
+
+	@Benchmark
+	public GitHubPath normalize() {
+		return dotted.normalize();
+	}
+
+	@Benchmark
+	public GitHubPath resolve() {
+		return absolute.getParent().resolve(relative);
+	}
+
+	@Benchmark
+	public GitHubPath relativize() {
+		return absolute.relativize(sibling);
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return absolute.compareTo(sibling);
+	}
+
+	@Benchmark
+	public String getSubPath() {
+		return absolute.getSubPath();
+	}
+}
@@ -0,0 +1,43 @@
+package com.github.pierre_ernst.githubfs.benchmark;
+
+import java.nio.file.PathMatcher;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PathMatcherBenchmark extends FileSystemBenchmark {
+
+	@Param({ "glob:**/*.java", "glob:**/{pom.xml,build.gradle*,package.json}", "glob:src/module[0-3]/**" })
+	public String pattern;
+
+	private PathMatcher matcher;
+	private GitHubPath matching;
+	private GitHubPath other;
+
+	@Setup(Level.Trial)
+	public void createMatcher() {
+		matcher = fs.getPathMatcher(pattern);
+		matching = new GitHubPath(fs, "src/module3/pkg11/File7.java");
+		other = new GitHubPath(fs, "src/module5/pkg13/pom.xml");
+	}
+
+	@Benchmark
+	public PathMatcher compile() {
+		return fs.getPathMatcher(pattern);
+	}
+
+	@Benchmark
+	public boolean matches() {
+		return matcher.matches(matching) | matcher.matches(other);
+	}
+}
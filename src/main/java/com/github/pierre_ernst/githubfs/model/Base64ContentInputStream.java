@@ -0,0 +1,326 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes the base64 <code>content</code> of a contents API response as it is
+ * read, so that neither the JSON document nor the encoded string are ever held
+ * in memory. The string is unescaped and decoded a buffer at a time.
+ */
+class Base64ContentInputStream extends InputStream {
+
+	private static final int[] DECODE = new int[128];
+
+	static {
+		Arrays.fill(DECODE, -1);
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+		for (int i = 0; i < alphabet.length(); i++) {
+			DECODE[alphabet.charAt(i)] = i;
+		}
+	}
+
+	private final InputStream json;
+	private final byte[] encoded = new byte[8192];
+	private final byte[] decoded = new byte[encoded.length / 4 * 3 + 3];
+	private int pos;
+	private int limit;
+	// bits of the base64 characters not decoded yet, and their count
+	private int bits;
+	private int count;
+	private boolean padded;
+	// characters left of the escape being read, -1 outside escapes
+	private int escape = -1;
+	private int code;
+	private boolean eof;
+
+	private Base64ContentInputStream(InputStream json) {
+		this.json = json;
+	}
+
+	static InputStream decode(InputStream response) throws IOException {
+		InputStream json = new BufferedInputStream(response);
+		try {
+			seek(json, "content");
+			return new Base64ContentInputStream(json);
+		} catch (IOException | RuntimeException ex) {
+			json.close();
+			throw ex;
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		if ((pos == limit) && !fill()) {
+			return -1;
+		}
+		return decoded[pos++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		if ((pos == limit) && !fill()) {
+			return -1;
+		}
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(decoded, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return limit - pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		json.close();
+	}
+
+	/**
+	 * Reads the next chunk of the string, blocking only until some bytes arrive.
+	 *
+	 * @return <code>false</code> at the end of the string
+	 */
+	private boolean fill() throws IOException {
+		pos = 0;
+		limit = 0;
+		while ((limit == 0) && !eof) {
+			int n = json.read(encoded, 0, encoded.length);
+			if (n < 0) {
+				throw new EOFException("Unterminated string in the contents response");
+			}
+			scan(n);
+		}
+		if (eof && (limit == 0)) {
+			finish();
+		}
+		return limit > 0;
+	}
+
+	private void scan(int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			int c = encoded[i];
+			if (escape > 0) {
+				code = (code << 4) | Character.digit(c, 16);
+				if (--escape == 0) {
+					escape = -1;
+					// escapes outside of ASCII are not needed for base64 and are dropped
+					if ((code >= 0) && (code < 0x80)) {
+						append(code);
+					}
+				}
+			} else if (escape == 0) {
+				escape = -1;
+				switch (c) {
+				case 'u':
+					escape = 4;
+					code = 0;
+					break;
+				case 'n':
+				case 'r':
+				case 't':
+				case 'b':
+				case 'f':
+					// not base64
+					break;
+				default:
+					append(c);
+				}
+			} else if (c == '"') {
+				eof = true;
+				return;
+			} else if (c == '\\') {
+				escape = 0;
+			} else {
+				append(c);
+			}
+		}
+	}
+
+	private void append(int c) throws IOException {
+		if (c == '=') {
+			padded = true;
+			return;
+		}
+		int value = ((c >= 0) && (c < DECODE.length)) ? DECODE[c] : -1;
+		if (value < 0) {
+			// line breaks of the MIME encoding
+			return;
+		}
+		if (padded) {
+			throw new IOException("Base64 content continues after its padding");
+		}
+		bits = (bits << 6) | value;
+		if (++count == 4) {
+			decoded[limit++] = (byte) (bits >> 16);
+			decoded[limit++] = (byte) (bits >> 8);
+			decoded[limit++] = (byte) bits;
+			bits = 0;
+			count = 0;
+		}
+	}
+
+	/**
+	 * Decodes the last, incomplete, group of characters, which is as valid
+	 * without its padding as with.
+	 */
+	private void finish() throws IOException {
+		switch (count) {
+		case 0:
+			break;
+		case 2:
+			decoded[limit++] = (byte) (bits >> 4);
+			break;
+		case 3:
+			decoded[limit++] = (byte) (bits >> 10);
+			decoded[limit++] = (byte) (bits >> 2);
+			break;
+		default:
+			throw new IOException("Truncated base64 content");
+		}
+		count = 0;
+	}
+
+	/**
+	 * Positions the stream right after the opening quote of the value of a top
+	 * level string member.
+	 */
+	static void seek(InputStream in, String member) throws IOException {
+		int depth = 0;
+		boolean expectName = false;
+		int c;
+		while ((c = in.read()) >= 0) {
+			switch (c) {
+			case '{':
+				depth++;
+				expectName = (depth == 1);
+				break;
+			case '[':
+				depth++;
+				expectName = false;
+				break;
+			case '}':
+			case ']':
+				depth--;
+				break;
+			case ',':
+				expectName = (depth == 1);
+				break;
+			case '"':
+				if (!expectName) {
+					skipString(in);
+					break;
+				}
+				expectName = false;
+				String name = readString(in);
+				if (nextToken(in) != ':') {
+					throw new IOException("Malformed contents response");
+				}
+				if (name.equals(member)) {
+					if (nextToken(in) != '"') {
+						throw new IOException("Member " + member + " of the contents response is not a string");
+					}
+					return;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		throw new IOException("No " + member + " in the contents response");
+	}
+
+	private static int nextToken(InputStream in) throws IOException {
+		int c;
+		do {
+			c = in.read();
+		} while ((c == ' ') || (c == '\t') || (c == '\n') || (c == '\r'));
+		return c;
+	}
+
+	private static String readString(InputStream in) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		JsonStringInputStream s = new JsonStringInputStream(in);
+		int c;
+		while ((c = s.read()) >= 0) {
+			sb.append((char) c);
+		}
+		return sb.toString();
+	}
+
+	private static void skipString(InputStream in) throws IOException {
+		int c;
+		while ((c = in.read()) != '"') {
+			if (c < 0) {
+				throw new EOFException();
+			} else if (c == '\\') {
+				in.read();
+			}
+		}
+	}
+
+	/**
+	 * The characters of a JSON string, unescaped, up to its closing quote, for
+	 * the short names of the members. Escapes outside of ASCII are dropped.
+	 */
+	private static class JsonStringInputStream extends InputStream {
+		private final InputStream in;
+		private boolean eof;
+
+		JsonStringInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			while (!eof) {
+				int c = in.read();
+				if (c < 0) {
+					throw new EOFException("Unterminated string in the contents response");
+				}
+				if (c == '"') {
+					eof = true;
+					break;
+				}
+				if (c != '\\') {
+					return c;
+				}
+				c = in.read();
+				switch (c) {
+				case 'n':
+					return '\n';
+				case 'r':
+					return '\r';
+				case 't':
+					return '\t';
+				case 'b':
+					return '\b';
+				case 'f':
+					return '\f';
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						code = (code << 4) | Character.digit(in.read(), 16);
+					}
+					if ((code >= 0) && (code < 0x80)) {
+						return code;
+					}
+					break;
+				case -1:
+					throw new EOFException("Unterminated string in the contents response");
+				default:
+					return c;
+				}
+			}
+			return -1;
+		}
+	}
+}
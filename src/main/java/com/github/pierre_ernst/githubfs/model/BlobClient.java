@@ -0,0 +1,364 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.kohsuke.github.HttpException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.gnodet.githubfs.AdaptiveConcurrencyLimiter;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Streams blob contents straight from the HTTP response, where the GitHub API
+ * client buffers whole responses in memory. Small files are served by the
+ * contents endpoint, decoded on the fly, or as raw compressed media when
+ * enabled. Blobs are served by the git blobs endpoint up to
+ * {@link #BLOB_LIMIT}, and by the raw endpoint beyond.
+ */
+public class BlobClient {
+
+	public static final String GITHUB_ENDPOINT = "https://api.github.com";
+
+	/** Largest file the contents endpoint returns inline. */
+	public static final long CONTENTS_LIMIT = 1024L * 1024L;
+
+	/** Largest blob the git blobs endpoint serves. */
+	public static final long BLOB_LIMIT = 100L * 1024L * 1024L;
+
+	private static final String RAW_MEDIA_TYPE = "application/vnd.github.v3.raw";
+
+	private static final String JSON_MEDIA_TYPE = "application/vnd.github.v3+json";
+
+	private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+	private static final MediaType UPLOAD_PACK = MediaType.get("application/x-git-upload-pack-request");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final OkHttpClient client;
+	private final String endpoint;
+	private final String authorization;
+	private final boolean raw;
+
+	public BlobClient(OkHttpClient client, String endpoint, String authorization) {
+		this(client, endpoint, authorization, false);
+	}
+
+	/**
+	 * @param raw whether small files are requested as raw media, which OkHttp
+	 *            transfers gzip compressed, rather than as base64 JSON
+	 */
+	public BlobClient(OkHttpClient client, String endpoint, String authorization, boolean raw) {
+		this.client = Objects.requireNonNull(client);
+		this.endpoint = stripTrailingSlash((endpoint == null) ? GITHUB_ENDPOINT : endpoint);
+		this.authorization = authorization;
+		this.raw = raw;
+	}
+
+	public OkHttpClient getClient() {
+		return client;
+	}
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public boolean isRaw() {
+		return raw;
+	}
+
+	/**
+	 * Opens the blob through the endpoint suited to its size.
+	 */
+	public InputStream open(String repository, String commit, String path, String sha, long size)
+			throws IOException {
+		if ((size <= CONTENTS_LIMIT) && !raw) {
+			return openContents(repository, commit, path);
+		}
+		if (size <= BLOB_LIMIT) {
+			return openBlob(repository, sha);
+		}
+		return openRaw(repository, commit, path);
+	}
+
+	public InputStream openBlob(String repository, String sha) throws IOException {
+		return open(endpoint + "/repos/" + repository + "/git/blobs/" + sha, RAW_MEDIA_TYPE);
+	}
+
+	public InputStream openContents(String repository, String commit, String path) throws IOException {
+		return Base64ContentInputStream.decode(open(
+				endpoint + "/repos/" + repository + "/contents/" + encodePath(path) + "?ref=" + commit,
+				JSON_MEDIA_TYPE));
+	}
+
+	public InputStream openRaw(String repository, String commit, String path) throws IOException {
+		return open(getRawEndpoint() + "/" + repository + "/" + commit + "/" + encodePath(path), null);
+	}
+
+	/**
+	 * Opens part of a file from the raw endpoint, with an HTTP range request. A
+	 * server ignoring the range sends the whole file, which is then skipped up
+	 * to the offset.
+	 */
+	public InputStream openRange(String repository, String commit, String path, long offset, long length)
+			throws IOException {
+		String url = getRawEndpoint() + "/" + repository + "/" + commit + "/" + encodePath(path);
+		Request.Builder builder = new Request.Builder().url(url).get().header("Range",
+				"bytes=" + offset + "-" + (offset + length - 1));
+		Response response = client.newCall(request(builder, null)).execute();
+		boolean partial = response.code() == 206;
+		InputStream in = body(response, url);
+		if (!partial) {
+			try {
+				skip(in, offset);
+			} catch (IOException ex) {
+				in.close();
+				throw ex;
+			}
+		}
+		return in;
+	}
+
+	/**
+	 * Posts a GraphQL query.
+	 *
+	 * @return the response body
+	 */
+	public InputStream graphql(String json) throws IOException {
+		String url = getGraphQLEndpoint();
+		return open(new Request.Builder().url(url).post(RequestBody.create(JSON, json)), url, null);
+	}
+
+	String getGraphQLEndpoint() {
+		if (endpoint.endsWith("/api/v3")) {
+			return endpoint.substring(0, endpoint.length() - "/v3".length()) + "/graphql";
+		}
+		return endpoint + "/graphql";
+	}
+
+	String getRawEndpoint() {
+		if (GITHUB_ENDPOINT.equals(endpoint)) {
+			return "https://raw.githubusercontent.com";
+		}
+		// GitHub Enterprise serves raw files from its web host
+		String host = endpoint.endsWith("/api/v3") ? endpoint.substring(0, endpoint.length() - "/api/v3".length())
+				: endpoint;
+		return host + "/raw";
+	}
+
+	String getGitEndpoint() {
+		if (GITHUB_ENDPOINT.equals(endpoint)) {
+			return "https://github.com";
+		}
+		return endpoint.endsWith("/api/v3") ? endpoint.substring(0, endpoint.length() - "/api/v3".length())
+				: endpoint;
+	}
+
+	/**
+	 * Starts a fetch over the git smart HTTP protocol.
+	 *
+	 * @return the refs and capabilities advertised by the server, as pkt-lines
+	 */
+	public InputStream openUploadPackRefs(String repository) throws IOException {
+		String url = getGitEndpoint() + "/" + repository + ".git/info/refs?service=git-upload-pack";
+		return body(client.newCall(gitRequest(new Request.Builder().url(url).get(), null)).execute(), url);
+	}
+
+	/**
+	 * Sends the wants of a fetch over the git smart HTTP protocol.
+	 *
+	 * @return the response of the server, ending with the pack
+	 */
+	public InputStream uploadPack(String repository, byte[] request) throws IOException {
+		String url = getGitEndpoint() + "/" + repository + ".git/git-upload-pack";
+		Request.Builder builder = new Request.Builder().url(url).post(RequestBody.create(UPLOAD_PACK, request));
+		return body(client.newCall(gitRequest(builder, "application/x-git-upload-pack-result")).execute(), url);
+	}
+
+	private Request gitRequest(Request.Builder builder, String accept) {
+		if ((authorization != null) && authorization.startsWith("token ")) {
+			// git over HTTP only takes a token as the password of basic authentication
+			String credentials = "x-access-token:" + authorization.substring("token ".length());
+			builder.header("Authorization",
+					"Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+		} else if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+		if (accept != null) {
+			builder.header("Accept", accept);
+		}
+		return builder.build();
+	}
+
+	private InputStream open(String url, String accept) throws IOException {
+		return open(new Request.Builder().url(url).get(), url, accept);
+	}
+
+	private InputStream open(Request.Builder builder, String url, String accept) throws IOException {
+		Response response = client.newCall(request(builder, accept)).execute();
+		return body(response, url);
+	}
+
+	/**
+	 * Reads the blob through the endpoint suited to its size, without blocking
+	 * the caller: the request is queued by OkHttp and the body read on one of
+	 * its threads once the response arrives.
+	 */
+	public CompletableFuture<byte[]> readAsync(String repository, String commit, String path, String sha,
+			long size) {
+		String url;
+		String accept;
+		boolean contents = false;
+		try {
+			if ((size <= CONTENTS_LIMIT) && !raw) {
+				url = endpoint + "/repos/" + repository + "/contents/" + encodePath(path) + "?ref=" + commit;
+				accept = JSON_MEDIA_TYPE;
+				contents = true;
+			} else if (size <= BLOB_LIMIT) {
+				url = endpoint + "/repos/" + repository + "/git/blobs/" + sha;
+				accept = RAW_MEDIA_TYPE;
+			} else {
+				url = getRawEndpoint() + "/" + repository + "/" + commit + "/" + encodePath(path);
+				accept = null;
+			}
+		} catch (IOException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+		boolean decode = contents;
+		return enqueue(url, accept, in -> {
+			try (InputStream data = decode ? Base64ContentInputStream.decode(in) : in) {
+				return data.readAllBytes();
+			}
+		});
+	}
+
+	/**
+	 * Lists a tree, or the root tree of a commit, without blocking the caller.
+	 */
+	public CompletableFuture<Tree> getTreeAsync(String repository, String sha) {
+		return enqueue(endpoint + "/repos/" + repository + "/git/trees/" + sha, JSON_MEDIA_TYPE, in -> {
+			JsonNode tree = MAPPER.readTree(in);
+			List<TreeEntry> entries = new ArrayList<>();
+			for (JsonNode entry : tree.path("tree")) {
+				entries.add(new TreeEntry(entry.path("path").asText(), entry.path("type").asText(),
+						entry.path("sha").asText(), entry.path("size").asLong()));
+			}
+			return new Tree(tree.path("sha").asText(), entries);
+		});
+	}
+
+	private interface BodyReader<T> {
+		T read(InputStream in) throws IOException;
+	}
+
+	private <T> CompletableFuture<T> enqueue(String url, String accept, BodyReader<T> reader) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Call call = client.newCall(request(AdaptiveConcurrencyLimiter.enqueued(new Request.Builder().url(url).get()),
+				accept));
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				future.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, Response response) {
+				try (InputStream in = body(response, url)) {
+					future.complete(reader.read(in));
+				} catch (IOException | RuntimeException ex) {
+					future.completeExceptionally(ex);
+				}
+			}
+		});
+		future.whenComplete((result, ex) -> {
+			if (future.isCancelled()) {
+				call.cancel();
+			}
+		});
+		return future;
+	}
+
+	private Request request(Request.Builder builder, String accept) {
+		if (accept != null) {
+			builder.header("Accept", accept);
+		}
+		if (authorization != null) {
+			builder.header("Authorization", authorization);
+		}
+		return builder.build();
+	}
+
+	private static InputStream body(Response response, String url) throws IOException {
+		ResponseBody body = response.body();
+		if (!response.isSuccessful() || (body == null)) {
+			response.close();
+			if (response.code() == 404) {
+				throw new NoSuchFileException(url);
+			}
+			throw new HttpException("Server returned HTTP response code: " + response.code() + " for URL: " + url,
+					response.code(), response.message(), url);
+		}
+		return new FilterInputStream(body.byteStream()) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					response.close();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Skips exactly <code>n</code> bytes.
+	 */
+	static void skip(InputStream in, long n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() < 0) {
+					throw new EOFException();
+				}
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static String encodePath(String path) throws UnsupportedEncodingException {
+		StringBuilder sb = new StringBuilder();
+		for (String segment : path.split("/")) {
+			if (sb.length() > 0) {
+				sb.append('/');
+			}
+			sb.append(URLEncoder.encode(segment, "UTF-8").replace("+", "%20"));
+		}
+		return sb.toString();
+	}
+
+	private static String stripTrailingSlash(String s) {
+		return s.endsWith("/") ? s.substring(0, s.length() - 1) : s;
+	}
+}
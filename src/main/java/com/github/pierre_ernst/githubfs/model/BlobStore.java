@@ -0,0 +1,399 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of blob contents keyed by SHA, bounded by a byte budget with least
+ * recently used eviction. Blobs are immutable, so one store is shared by every
+ * file system using the same directory. Blobs are written while they are read
+ * by the caller, and only become visible once complete and once their git blob
+ * SHA was checked against the key they are stored under.
+ */
+public class BlobStore {
+
+	private static final Map<Path, BlobStore> STORES = new ConcurrentHashMap<>();
+
+	private static final String LINES = ".lines";
+
+	private final Path directory;
+	private final long maxBytes;
+	private final LinkedHashMap<String, Long> blobs = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+	private volatile TrigramIndex index;
+
+	/**
+	 * @return the store of the directory, shared with the file systems which
+	 *         opened it before
+	 * @throws IllegalArgumentException if the store is already open with
+	 *                                  another budget
+	 */
+	public static BlobStore open(Path directory, long maxBytes) throws IOException {
+		BlobStore store;
+		try {
+			store = STORES.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> {
+				try {
+					return new BlobStore(dir, maxBytes);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+		if (store.maxBytes != maxBytes) {
+			throw new IllegalArgumentException("The blob cache " + store.directory + " is already open with a size of "
+					+ store.maxBytes + " bytes, not " + maxBytes);
+		}
+		return store;
+	}
+
+	public BlobStore(Path directory, long maxBytes) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxBytes = maxBytes;
+		// oldest first, so that the access order survives restarts
+		try (Stream<Path> files = Files.walk(directory, 2)) {
+			files.filter(Files::isRegularFile)
+					.filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+					.filter(f -> !f.getFileName().toString().endsWith(LINES))
+					.sorted(Comparator.comparing(BlobStore::lastModified))
+					.forEach(f -> {
+						String sha = f.getParent().getFileName().toString() + f.getFileName().toString();
+						long size = f.toFile().length();
+						blobs.put(sha, size);
+						bytes += size;
+					});
+		}
+		evict();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * @return the index of the blobs entering the store, or <code>null</code>
+	 *         if indexing is not enabled
+	 */
+	public TrigramIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Starts indexing the blobs entering the store. Blobs already stored are
+	 * indexed as they are searched.
+	 */
+	public synchronized TrigramIndex enableIndex() {
+		if (index == null) {
+			index = new TrigramIndex();
+		}
+		return index;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getCount() {
+		return blobs.size();
+	}
+
+	public synchronized boolean contains(String sha) {
+		return blobs.containsKey(sha);
+	}
+
+	/**
+	 * @return the file holding the blob, or <code>null</code> if it is not
+	 *         cached
+	 */
+	public Path get(String sha) {
+		synchronized (this) {
+			if (blobs.get(sha) == null) {
+				return null;
+			}
+		}
+		Path file = file(sha);
+		return Files.isRegularFile(file) ? file : null;
+	}
+
+	/**
+	 * @return the cached blob, or <code>null</code> if it is not cached
+	 */
+	public InputStream open(String sha) throws IOException {
+		Path file = get(sha);
+		if (file == null) {
+			return null;
+		}
+		try {
+			return Files.newInputStream(file);
+		} catch (NoSuchFileException ex) {
+			// evicted in between
+			return null;
+		}
+	}
+
+	/**
+	 * @return a read only channel over the cached blob, or <code>null</code> if
+	 *         it is not cached
+	 */
+	public FileChannel newByteChannel(String sha) throws IOException {
+		Path file = get(sha);
+		if (file == null) {
+			return null;
+		}
+		try {
+			return FileChannel.open(file, StandardOpenOption.READ);
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Copies the stream into the store, which is closed once fully read.
+	 *
+	 * @return the file holding the blob, or <code>null</code> if it does not
+	 *         fit in the store
+	 * @throws IOException if the bytes do not match the SHA
+	 */
+	public Path put(String sha, long size, InputStream in) throws IOException {
+		try (InputStream tee = tee(sha, size, in)) {
+			tee.transferTo(OutputStream.nullOutputStream());
+		}
+		return get(sha);
+	}
+
+	/**
+	 * @return a stream returning the bytes of <code>in</code> while writing them
+	 *         to the store, or <code>in</code> itself if the blob does not fit.
+	 *         Reaching the end of a stream whose bytes do not match the SHA
+	 *         fails, and leaves the store as it was.
+	 */
+	public InputStream tee(String sha, long size, InputStream in) throws IOException {
+		if ((size > maxBytes) || contains(sha)) {
+			return in;
+		}
+		Path file = file(sha);
+		Files.createDirectories(file.getParent());
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		return new TeeInputStream(in, sha, size, tmp, Files.newOutputStream(tmp));
+	}
+
+	/**
+	 * @return the line index of the cached blob, read from the file kept next
+	 *         to the blob or built on first use, or <code>null</code> if the
+	 *         blob is not cached
+	 */
+	public LineIndex getLineIndex(String sha) throws IOException {
+		Path file = get(sha);
+		if (file == null) {
+			return null;
+		}
+		Path lines = lines(sha);
+		try {
+			return LineIndex.read(lines);
+		} catch (NoSuchFileException ex) {
+			// not built yet
+		}
+		LineIndex index;
+		try (InputStream in = Files.newInputStream(file)) {
+			index = LineIndex.build(in);
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+		Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (OutputStream out = Files.newOutputStream(tmp)) {
+				index.write(out);
+			}
+			Files.move(tmp, lines, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return index;
+	}
+
+	public boolean evict(String sha) throws IOException {
+		synchronized (this) {
+			Long size = blobs.remove(sha);
+			if (size == null) {
+				return false;
+			}
+			bytes -= size;
+		}
+		delete(sha);
+		return true;
+	}
+
+	private void delete(String sha) throws IOException {
+		Files.deleteIfExists(file(sha));
+		Files.deleteIfExists(lines(sha));
+	}
+
+	void commit(String sha, Path tmp, long size) throws IOException {
+		Files.move(tmp, file(sha), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		synchronized (this) {
+			Long previous = blobs.put(sha, size);
+			bytes += size - ((previous == null) ? 0 : previous);
+		}
+		TrigramIndex i = index;
+		if (i != null) {
+			try (InputStream in = Files.newInputStream(file(sha))) {
+				i.add(sha, in);
+			} catch (IOException ex) {
+				// NO-OP, indexed when searched
+			}
+		}
+		evict();
+	}
+
+	private void evict() throws IOException {
+		while (true) {
+			String eldest;
+			synchronized (this) {
+				if (bytes <= maxBytes) {
+					return;
+				}
+				Iterator<Map.Entry<String, Long>> it = blobs.entrySet().iterator();
+				Map.Entry<String, Long> e = it.next();
+				eldest = e.getKey();
+				bytes -= e.getValue();
+				it.remove();
+			}
+			delete(eldest);
+		}
+	}
+
+	private Path file(String sha) {
+		return directory.resolve(sha.substring(0, 2)).resolve(sha.substring(2));
+	}
+
+	private Path lines(String sha) {
+		Path file = file(sha);
+		return file.resolveSibling(file.getFileName() + LINES);
+	}
+
+	private static long lastModified(Path file) {
+		return file.toFile().lastModified();
+	}
+
+	private class TeeInputStream extends FilterInputStream {
+		private final String sha;
+		private final long size;
+		private final Path tmp;
+		private final MessageDigest digest = PackFile.newDigest();
+		private OutputStream out;
+		private long written;
+
+		TeeInputStream(InputStream in, String sha, long size, Path tmp, OutputStream out) {
+			super(in);
+			this.sha = sha;
+			this.size = size;
+			this.tmp = tmp;
+			this.out = out;
+			digest.update(("blob " + size + "\0").getBytes(StandardCharsets.US_ASCII));
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				write(new byte[] { (byte) b }, 0, 1);
+			} else {
+				complete();
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				write(b, off, n);
+			} else if (n < 0) {
+				complete();
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// skipped bytes still have to reach the store
+			byte[] buffer = new byte[(int) Math.min(n, 8192)];
+			int read = read(buffer, 0, buffer.length);
+			return Math.max(0, read);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				abort();
+			}
+		}
+
+		private void write(byte[] b, int off, int len) throws IOException {
+			if (out == null) {
+				return;
+			}
+			digest.update(b, off, len);
+			try {
+				out.write(b, off, len);
+				written += len;
+			} catch (IOException ex) {
+				// a full disk must not fail the read
+				abort();
+			}
+		}
+
+		private void complete() throws IOException {
+			if (out == null) {
+				return;
+			}
+			OutputStream o = out;
+			out = null;
+			o.close();
+			String read = PackFile.toHex(digest.digest(), 0);
+			if ((written == size) && read.equals(sha)) {
+				commit(sha, tmp, size);
+			} else {
+				Files.deleteIfExists(tmp);
+				throw new IOException("Blob of " + written + " bytes does not match its SHA " + sha + ", read " + read);
+			}
+		}
+
+		private void abort() throws IOException {
+			if (out != null) {
+				out.close();
+				out = null;
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+}
@@ -0,0 +1,87 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Computes the git blob SHA of a file as its bytes are read, the SHA-1 of
+ * <code>blob &lt;size&gt;\0</code> followed by the bytes, and checks it against
+ * the SHA of its entry once the whole file was read. On a mismatch the blob is
+ * evicted from the store, as the cached copy may be the corrupted one. Reads
+ * which skip bytes are not verified.
+ */
+final class BlobVerifier {
+
+	private final String path;
+	private final TreeEntry entry;
+	private final BlobStore blobs;
+	private MessageDigest digest;
+
+	BlobVerifier(String path, TreeEntry entry, BlobStore blobs) {
+		this.path = path;
+		this.entry = entry;
+		this.blobs = blobs;
+		this.digest = PackFile.newDigest();
+		digest.update(("blob " + entry.getSize() + "\0").getBytes(StandardCharsets.US_ASCII));
+	}
+
+	boolean isActive() {
+		return digest != null;
+	}
+
+	void update(byte b) {
+		if (digest != null) {
+			digest.update(b);
+		}
+	}
+
+	void update(byte[] b, int off, int len) {
+		if (digest != null) {
+			digest.update(b, off, len);
+		}
+	}
+
+	/**
+	 * Hashes the bytes between the position and the limit of the buffer,
+	 * leaving the buffer as it is.
+	 */
+	void update(ByteBuffer buffer) {
+		if (digest != null) {
+			digest.update(buffer.duplicate());
+		}
+	}
+
+	void cancel() {
+		digest = null;
+	}
+
+	/**
+	 * Checks the bytes hashed so far, once the end of the file was reached.
+	 */
+	void verify() throws IOException {
+		MessageDigest d = digest;
+		if (d == null) {
+			return;
+		}
+		digest = null;
+		check(PackFile.toHex(d.digest(), 0));
+	}
+
+	static void verify(String path, TreeEntry entry, BlobStore blobs, byte[] data) throws IOException {
+		BlobVerifier verifier = new BlobVerifier(path, entry, blobs);
+		verifier.update(data, 0, data.length);
+		verifier.verify();
+	}
+
+	private void check(String sha) throws IOException {
+		if (sha.equals(entry.getSha())) {
+			return;
+		}
+		if (blobs != null) {
+			blobs.evict(entry.getSha());
+		}
+		throw new IOException("Content of " + path + " does not match its SHA " + entry.getSha() + ", read " + sha);
+	}
+}
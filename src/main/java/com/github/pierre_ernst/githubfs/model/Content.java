@@ -12,6 +12,7 @@ import fr.gnodet.githubfs.GitHubPath;
 public abstract class Content implements Comparable<Content> {
 
 	protected GHRepository repo;
+	protected String repositoryName;
 	protected String revision;
 	protected GitHubPath path;
 	protected GitHubPackageUrl purl;
@@ -19,19 +20,38 @@ public abstract class Content implements Comparable<Content> {
 	protected Content(GHRepository repo, String revision, GitHubPath path) throws IOException {
 		Objects.requireNonNull(repo);
 		this.repo = repo;
+		this.repositoryName = repo.getFullName();
 
 		Objects.requireNonNull(path);
 		this.path = path;
 
-		purl = new GitHubPackageUrl(repo, revision, path.getSubPath());
+		// the factory already resolved the revision against the refs
+		purl = GitHubPackageUrl.resolved(repo, revision, path.getSubPath());
 
 		this.revision = purl.getRevision();
 	}
 
+	protected Content(ContentCache cache, GitHubPath path) throws IOException {
+		// null unless the cache reads through the REST API
+		this.repo = cache.getRepository();
+		this.repositoryName = cache.getBackend().getName();
+		this.path = Objects.requireNonNull(path);
+		this.purl = new GitHubPackageUrl(cache, path.getSubPath());
+		this.revision = cache.getRevision();
+	}
+
 	public GHRepository getRepository() {
 		return repo;
 	}
 
+	/**
+	 * @return the name of the repository, as <code>owner/name</code>, whatever
+	 *         the backend
+	 */
+	public String getRepositoryName() {
+		return repositoryName;
+	}
+
 	public String getRevision() {
 		return revision;
 	}
@@ -46,7 +66,7 @@ public abstract class Content implements Comparable<Content> {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(path, repo, revision);
+		return Objects.hash(path, repositoryName, revision);
 	}
 
 	@Override
@@ -58,20 +78,20 @@ public abstract class Content implements Comparable<Content> {
 		if (getClass() != obj.getClass())
 			return false;
 		Content other = (Content) obj;
-		return Objects.equals(path, other.path) && Objects.equals(repo, other.repo)
+		return Objects.equals(path, other.path) && Objects.equals(repositoryName, other.repositoryName)
 				&& Objects.equals(revision, other.revision);
 	}
 
 	@Override
 	public int compareTo(Content other) {
-		if (this.repo.equals(other.repo)) {
+		if (this.repositoryName.equals(other.repositoryName)) {
 			if (this.revision.equals(other.revision)) {
 				return this.path.toString().compareTo(other.path.toString());
 			} else {
 				return this.revision.compareTo(other.revision);
 			}
 		} else {
-			return this.repo.getFullName().compareTo(other.repo.getFullName());
+			return this.repositoryName.compareTo(other.repositoryName);
 		}
 	}
 
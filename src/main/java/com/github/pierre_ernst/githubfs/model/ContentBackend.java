@@ -0,0 +1,115 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of the git objects a {@link ContentCache} reads: refs, trees and
+ * blobs. The cache keeps the trees it gets in its {@link TreeStore} and the
+ * blobs in its {@link BlobStore}, so a backend only answers misses. File
+ * attributes are read from the tree entries, there is no other lookup.
+ * <p>
+ * {@link RestBackend} reads through the GitHub REST API and is used unless
+ * another backend is given to the file system with the <code>backend</code>
+ * entry of its environment.
+ */
+public interface ContentBackend {
+
+	/**
+	 * @return the name of the repository, as <code>owner/name</code>
+	 */
+	String getName();
+
+	/**
+	 * @param revision a ref, or <code>null</code> for the default branch
+	 * @return the full name of the ref
+	 * @throws IllegalArgumentException if there is no such ref
+	 */
+	String resolveRevision(String revision) throws IOException;
+
+	/**
+	 * @return the SHA of the commit a ref points to, following annotated tags
+	 */
+	String resolveCommit(String revision) throws IOException;
+
+	/**
+	 * @param sha the SHA of a tree, or of a commit to list its root tree
+	 */
+	Tree getTree(String sha) throws IOException;
+
+	default CompletableFuture<Tree> getTreeAsync(String sha) {
+		return ContentCache.sync(() -> getTree(sha));
+	}
+
+	/**
+	 * @param sha the SHA of a tree, or of a commit
+	 * @return the tree and every tree below it, the tree first, or
+	 *         <code>null</code> if they cannot be read at once
+	 */
+	default List<Tree> getTreeRecursive(String sha) throws IOException {
+		return null;
+	}
+
+	/**
+	 * @param commit the commit the file is read from
+	 * @param path   the path of the file in the commit, without leading slash
+	 * @param entry  the entry of the file in its directory
+	 */
+	InputStream open(String commit, String path, TreeEntry entry) throws IOException;
+
+	/**
+	 * Opens part of a file. The stream may go beyond <code>length</code>, the
+	 * caller reads what it needs.
+	 *
+	 * @param offset the offset of the first byte, below the size of the file
+	 * @param length the number of bytes needed, at least one
+	 */
+	default InputStream openRange(String commit, String path, TreeEntry entry, long offset, long length)
+			throws IOException {
+		InputStream in = open(commit, path, entry);
+		try {
+			BlobClient.skip(in, offset);
+		} catch (IOException ex) {
+			in.close();
+			throw ex;
+		}
+		return in;
+	}
+
+	default CompletableFuture<byte[]> readAsync(String commit, String path, TreeEntry entry) {
+		return ContentCache.sync(() -> {
+			try (InputStream in = open(commit, path, entry)) {
+				return in.readAllBytes();
+			}
+		});
+	}
+
+	/**
+	 * Reads many files at once.
+	 *
+	 * @param files the entries of the files, by path
+	 * @return the contents, by path
+	 */
+	default Map<String, byte[]> readAll(String commit, Map<String, TreeEntry> files) throws IOException {
+		Map<String, byte[]> result = new LinkedHashMap<>();
+		for (Map.Entry<String, TreeEntry> file : files.entrySet()) {
+			try (InputStream in = open(commit, file.getKey(), file.getValue())) {
+				result.put(file.getKey(), in.readAllBytes());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the status of the files changed between two commits, by path:
+	 *         <code>added</code>, <code>modified</code> or <code>removed</code>,
+	 *         or <code>null</code> if the changes are not known
+	 */
+	default Map<String, String> compare(String base, String head) throws IOException {
+		return null;
+	}
+}
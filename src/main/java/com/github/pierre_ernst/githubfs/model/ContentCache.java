@@ -0,0 +1,465 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import org.kohsuke.github.GHRepository;
+
+import fr.gnodet.githubfs.GitHubFileSystemMetrics;
+import fr.gnodet.githubfs.GitHubPath;
+import fr.gnodet.githubfs.jfr.CacheLookupEvent;
+import fr.gnodet.githubfs.jfr.CoalescedRequestEvent;
+
+/**
+ * Per file system cache of the contents fetched for one revision, pinned to the
+ * commit the revision pointed to when it was resolved. Directory listings form
+ * the tree index, files the attribute cache, and paths known not to exist the
+ * negative cache. Listings are views over trees shared through a
+ * {@link TreeStore}.
+ */
+public class ContentCache {
+
+	private final ContentBackend backend;
+	private final String revision;
+	private final TreeStore trees;
+	private final GitHubFileSystemMetrics metrics;
+	private final BlobStore blobs;
+	private volatile String commit;
+	private volatile Tree root;
+
+	private final Map<String, Content> contents = new ConcurrentHashMap<>();
+	private final Set<String> missing = ConcurrentHashMap.newKeySet();
+	private final Map<String, CompletableFuture<byte[]>> prefetching = new ConcurrentHashMap<>();
+	private volatile PrefetchPolicy prefetchPolicy;
+	private volatile TrigramIndex index;
+	private volatile NameIndex names;
+
+	public ContentCache(GHRepository repo, String revision) throws IOException {
+		this(repo, revision, TreeStore.getShared());
+	}
+
+	public ContentCache(GHRepository repo, String revision, TreeStore trees) throws IOException {
+		this(repo, revision, trees, new GitHubFileSystemMetrics());
+	}
+
+	public ContentCache(GHRepository repo, String revision, TreeStore trees, GitHubFileSystemMetrics metrics)
+			throws IOException {
+		this(repo, revision, trees, metrics, null, null);
+	}
+
+	/**
+	 * @param blobs  the store file contents are kept in, or <code>null</code>
+	 * @param client the client streaming large files, or <code>null</code> to
+	 *               read them through the GitHub API client
+	 */
+	public ContentCache(GHRepository repo, String revision, TreeStore trees, GitHubFileSystemMetrics metrics,
+			BlobStore blobs, BlobClient client) throws IOException {
+		this(new RestBackend(repo, client), revision, trees, metrics, blobs);
+	}
+
+	/**
+	 * @param blobs the store file contents are kept in, or <code>null</code>
+	 */
+	public ContentCache(ContentBackend backend, String revision, TreeStore trees, GitHubFileSystemMetrics metrics,
+			BlobStore blobs) throws IOException {
+		this.backend = Objects.requireNonNull(backend);
+		this.revision = Objects.requireNonNull(revision);
+		this.trees = Objects.requireNonNull(trees);
+		this.metrics = Objects.requireNonNull(metrics);
+		this.blobs = blobs;
+		this.commit = backend.resolveCommit(revision);
+	}
+
+	public ContentBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * @return the repository read through the REST API, or <code>null</code>
+	 *         with another backend
+	 */
+	public GHRepository getRepository() {
+		return (backend instanceof RestBackend) ? ((RestBackend) backend).getRepository() : null;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
+
+	public String getCommit() {
+		return commit;
+	}
+
+	public TreeStore getTreeStore() {
+		return trees;
+	}
+
+	public GitHubFileSystemMetrics getMetrics() {
+		return metrics;
+	}
+
+	public BlobStore getBlobStore() {
+		return blobs;
+	}
+
+	/**
+	 * @return the client of the REST backend, or <code>null</code> if there is
+	 *         none
+	 */
+	public BlobClient getBlobClient() {
+		return (backend instanceof RestBackend) ? ((RestBackend) backend).getBlobClient() : null;
+	}
+
+	public PrefetchPolicy getPrefetchPolicy() {
+		return prefetchPolicy;
+	}
+
+	/**
+	 * @param policy the files to fetch in the background when their directory
+	 *               is listed, or <code>null</code> to fetch none
+	 */
+	public void setPrefetchPolicy(PrefetchPolicy policy) {
+		this.prefetchPolicy = policy;
+	}
+
+	/**
+	 * @return the index of the file contents read through this cache, the one
+	 *         of the blob store if there is one
+	 */
+	public TrigramIndex getContentIndex() {
+		if (blobs != null) {
+			return blobs.enableIndex();
+		}
+		TrigramIndex i = index;
+		if (i == null) {
+			synchronized (this) {
+				i = index;
+				if (i == null) {
+					i = index = new TrigramIndex();
+				}
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return the index of the paths of the commit the cache is pinned to, built
+	 *         on first use and again once the revision moved
+	 */
+	public synchronized NameIndex getNameIndex() throws IOException {
+		NameIndex n = names;
+		lookup("names", commit, (n != null) && n.getCommit().equals(commit));
+		if ((n == null) || !n.getCommit().equals(commit)) {
+			n = names = NameIndex.build(this);
+		}
+		return n;
+	}
+
+	/**
+	 * Starts fetching the files of a listed directory selected by the prefetch
+	 * policy into the blob store.
+	 */
+	void prefetch(GitHubPath dir, Tree tree) {
+		PrefetchPolicy policy = prefetchPolicy;
+		if ((policy == null) || (blobs == null)) {
+			return;
+		}
+		for (TreeEntry entry : tree.getEntries()) {
+			if (!entry.isBlob() || !policy.matches(entry.getName(), entry.getSize()) || blobs.contains(entry.getSha())
+					|| prefetching.containsKey(entry.getSha())) {
+				continue;
+			}
+			GitHubPath file = dir.resolve(entry.getName());
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			if (prefetching.putIfAbsent(entry.getSha(), future) != null) {
+				continue;
+			}
+			metrics.timeAsync("prefetch", () -> backend.readAsync(commit, ContentFactory.toApiPath(file), entry))
+					.whenComplete((data, ex) -> {
+						if (ex == null) {
+							try {
+								BlobVerifier.verify(file.toString(), entry, null, data);
+								blobs.put(entry.getSha(), data.length, new ByteArrayInputStream(data));
+								future.complete(data);
+							} catch (IOException e) {
+								// read again on demand
+								future.completeExceptionally(e);
+							}
+						} else {
+							future.completeExceptionally(ex);
+						}
+						prefetching.remove(entry.getSha(), future);
+					});
+		}
+	}
+
+	/**
+	 * Waits for the prefetch of the blob if it is in flight, rather than sending
+	 * the same request again.
+	 *
+	 * @return the blob, or <code>null</code> if it was not being prefetched or
+	 *         the prefetch failed
+	 */
+	byte[] awaitPrefetch(String sha) throws IOException {
+		CompletableFuture<byte[]> future = prefetching.get(sha);
+		if (future == null) {
+			return null;
+		}
+		CoalescedRequestEvent event = new CoalescedRequestEvent();
+		event.begin();
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ex) {
+			return null;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.endpoint = "blob";
+				event.key = sha;
+				event.commit();
+			}
+		}
+	}
+
+	Tree getRootTree() throws IOException {
+		Tree r = root;
+		if (r == null) {
+			String c = commit;
+			r = getTree(c, true);
+			pinRoot(c, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Keeps the root tree of a commit, unless the cache was refreshed to
+	 * another commit while it was being fetched.
+	 */
+	private synchronized void pinRoot(String c, Tree r) {
+		if (c.equals(commit)) {
+			root = r;
+		}
+	}
+
+	Tree getTree(GitHubPath dir) throws IOException {
+		if (dir.getNameCount() == 0) {
+			return getRootTree();
+		}
+		Content c = get(dir);
+		if (c instanceof DirectoryContent) {
+			return ((DirectoryContent) c).getTree();
+		}
+		TreeEntry entry = getEntry(dir);
+		if (!entry.isTree()) {
+			throw new IOException(dir + " is a file.");
+		}
+		return getTree(entry);
+	}
+
+	/**
+	 * @return the tree of the directory if it can be found without any request,
+	 *         <code>null</code> otherwise
+	 */
+	Tree getCachedTree(GitHubPath dir) {
+		Tree tree = root;
+		if (tree == null) {
+			tree = trees.getCachedCommitTree(commit);
+		}
+		for (int i = 0; (tree != null) && (i < dir.getNameCount()); i++) {
+			TreeEntry entry = tree.getEntry(dir.getName(i).toString());
+			tree = ((entry != null) && entry.isTree()) ? trees.get(entry.getSha()) : null;
+		}
+		return tree;
+	}
+
+	Tree getTree(TreeEntry entry) throws IOException {
+		return getTree(entry.getSha(), false);
+	}
+
+	private Tree getTree(String sha, boolean commit) throws IOException {
+		Tree tree = commit ? trees.getCachedCommitTree(sha) : trees.get(sha);
+		lookup("tree", sha, tree != null);
+		if (tree != null) {
+			return tree;
+		}
+		return commit ? trees.getCommitTree(backend, sha) : trees.getTree(backend, sha);
+	}
+
+	/**
+	 * Fetches a tree, or the root tree of a commit, with every tree below it at
+	 * once.
+	 *
+	 * @return the tree, or <code>null</code> if the backend cannot list them at
+	 *         once
+	 */
+	Tree getTreeRecursive(String sha, boolean commit) throws IOException {
+		return trees.getTreeRecursive(backend, sha, commit);
+	}
+
+	TreeEntry getEntry(GitHubPath path) throws IOException {
+		if (isMissing(path)) {
+			throw new NoSuchFileException(path.toString());
+		}
+		int count = path.getNameCount();
+		Tree parent = (count == 1) ? getRootTree() : getTree(path.subpath(0, count - 1));
+		TreeEntry entry = parent.getEntry(path.getName(count - 1).toString());
+		if (entry == null) {
+			markMissing(path);
+			throw new NoSuchFileException(path.toString());
+		}
+		return entry;
+	}
+
+	CompletableFuture<Tree> getRootTreeAsync() {
+		Tree r = root;
+		if (r != null) {
+			return CompletableFuture.completedFuture(r);
+		}
+		String c = commit;
+		r = trees.getCachedCommitTree(c);
+		lookup("tree", c, r != null);
+		if (r != null) {
+			pinRoot(c, r);
+			return CompletableFuture.completedFuture(r);
+		}
+		return Futures.thenApply(backend.getTreeAsync(c), tree -> {
+			Tree interned = trees.internCommitTree(c, tree);
+			pinRoot(c, interned);
+			return interned;
+		});
+	}
+
+	CompletableFuture<Tree> getTreeAsync(GitHubPath dir) {
+		if (dir.getNameCount() == 0) {
+			return getRootTreeAsync();
+		}
+		Content c = get(dir);
+		if (c instanceof DirectoryContent) {
+			return CompletableFuture.completedFuture(((DirectoryContent) c).getTree());
+		}
+		return Futures.thenCompose(getEntryAsync(dir), entry -> entry.isTree() ? getTreeAsync(entry)
+				: CompletableFuture.failedFuture(new IOException(dir + " is a file.")));
+	}
+
+	CompletableFuture<Tree> getTreeAsync(TreeEntry entry) {
+		Tree tree = trees.get(entry.getSha());
+		lookup("tree", entry.getSha(), tree != null);
+		if (tree != null) {
+			return CompletableFuture.completedFuture(tree);
+		}
+		return Futures.thenApply(backend.getTreeAsync(entry.getSha()), trees::intern);
+	}
+
+	CompletableFuture<TreeEntry> getEntryAsync(GitHubPath path) {
+		if (isMissing(path)) {
+			return CompletableFuture.failedFuture(new NoSuchFileException(path.toString()));
+		}
+		int count = path.getNameCount();
+		CompletableFuture<Tree> parent = (count == 1) ? getRootTreeAsync()
+				: getTreeAsync(path.subpath(0, count - 1));
+		return Futures.thenCompose(parent, tree -> {
+			TreeEntry entry = tree.getEntry(path.getName(count - 1).toString());
+			if (entry == null) {
+				markMissing(path);
+				return CompletableFuture.failedFuture(new NoSuchFileException(path.toString()));
+			}
+			return CompletableFuture.completedFuture(entry);
+		});
+	}
+
+	static <T> CompletableFuture<T> sync(GitHubFileSystemMetrics.IOCallable<T> callable) {
+		try {
+			return CompletableFuture.completedFuture(callable.call());
+		} catch (IOException | RuntimeException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+	Content get(GitHubPath path) {
+		Content c = contents.get(path.getSubPath());
+		lookup("content", path.getSubPath(), c != null);
+		return c;
+	}
+
+	void put(GitHubPath path, Content content) {
+		contents.put(path.getSubPath(), content);
+	}
+
+	boolean isMissing(GitHubPath path) {
+		if (missing.contains(path.getSubPath())) {
+			lookup("negative", path.getSubPath(), true);
+			return true;
+		}
+		return false;
+	}
+
+	void lookup(String tier, String key, boolean hit) {
+		if (hit) {
+			metrics.recordCacheHit(tier);
+		} else {
+			metrics.recordCacheMiss(tier);
+		}
+		CacheLookupEvent.emit(backend.getName(), tier, key, hit);
+	}
+
+	void markMissing(GitHubPath path) {
+		missing.add(path.getSubPath());
+	}
+
+	/**
+	 * Moves the cache to the commit the revision currently points to, dropping
+	 * only the entries touched between the two commits.
+	 *
+	 * @return <code>true</code> if the revision had moved
+	 */
+	public synchronized boolean refresh() throws IOException {
+		String head = backend.resolveCommit(revision);
+		if (head.equals(commit)) {
+			return false;
+		}
+
+		Map<String, String> files = backend.compare(commit, head);
+		if (files == null) {
+			contents.clear();
+			missing.clear();
+		} else {
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				invalidate(file.getKey(), file.getValue());
+			}
+		}
+		root = null;
+		commit = head;
+		return true;
+	}
+
+	private void invalidate(String fileName, String status) {
+		String key = fileName + "/";
+		contents.remove(key);
+		if ("removed".equals(status)) {
+			missing.add(key);
+		} else {
+			missing.remove(key);
+		}
+
+		// every enclosing tree got a new SHA, unchanged siblings keep theirs
+		int index = fileName.lastIndexOf('/');
+		while (index > 0) {
+			String parent = fileName.substring(0, index + 1);
+			contents.remove(parent);
+			missing.remove(parent);
+			index = fileName.lastIndexOf('/', index - 1);
+		}
+		contents.remove("");
+	}
+}
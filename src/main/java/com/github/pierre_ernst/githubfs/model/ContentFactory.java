@@ -1,8 +1,19 @@
 package com.github.pierre_ernst.githubfs.model;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GHRepository;
@@ -23,7 +34,7 @@ public class ContentFactory {
 		GitHubPackageUrl cacheKey = new GitHubPackageUrl(repo, revision, path.getSubPath());
 
 		if (file == null) {
-			file = getFileContent(repo, cacheKey.getRevision(), cacheKey.canonicalizePath());
+			file = getFileContent(repo, cacheKey.getRevision(), path);
 		}
 
 		return new FileContent(repo, cacheKey.getRevision(), path, file);
@@ -34,7 +45,7 @@ public class ContentFactory {
 		GitHubPackageUrl cacheKey = new GitHubPackageUrl(repo, revision, path.getSubPath());
 
 		return new DirectoryContent(repo, cacheKey.getRevision(), path,
-				getDirectoryContent(repo, cacheKey.getRevision(), cacheKey.canonicalizePath()));
+				getDirectoryContent(repo, cacheKey.getRevision(), path));
 	}
 
 	public static Content getContent(GHRepository repo, GitHubPath path) throws IOException {
@@ -47,12 +58,12 @@ public class ContentFactory {
 
 		Content c = null;
 		try {
-			GHContent file = getFileContent(repo, cacheKey.getRevision(), cacheKey.canonicalizePath());
+			GHContent file = getFileContent(repo, cacheKey.getRevision(), path);
 			c = new FileContent(repo, cacheKey.getRevision(), path, file);
 		} catch (IOException ex) {
 			if (ex.getMessage().endsWith(" is a directory.")) {
 				c = new DirectoryContent(repo, cacheKey.getRevision(), path,
-						getDirectoryContent(repo, cacheKey.getRevision(), cacheKey.canonicalizePath()));
+						getDirectoryContent(repo, cacheKey.getRevision(), path));
 			} else {
 				throw ex;
 			}
@@ -62,10 +73,182 @@ public class ContentFactory {
 		return c;
 	}
 
+	public static FileContent wrapFile(ContentCache cache, GitHubPath path) throws IOException {
+		Content c = cache.get(path);
+		if (c instanceof FileContent) {
+			return (FileContent) c;
+		}
+		if (c != null) {
+			throw new IOException(path + " is a directory.");
+		}
+
+		TreeEntry entry = cache.getEntry(path);
+		if (entry.isTree()) {
+			throw new IOException(path + " is a directory.");
+		}
+		return newFile(cache, path, entry);
+	}
+
+	public static DirectoryContent wrapDirectory(ContentCache cache, GitHubPath path) throws IOException {
+		Content c = cache.get(path);
+		if (c instanceof DirectoryContent) {
+			return (DirectoryContent) c;
+		}
+		if (c != null) {
+			throw new IOException(path + " is a file.");
+		}
+
+		return newDirectory(cache, path, cache.getTree(path));
+	}
+
+	public static Content getContent(ContentCache cache, GitHubPath path) throws IOException {
+		Content c = cache.get(path);
+		if (c != null) {
+			return c;
+		}
+
+		if (path.getNameCount() == 0) {
+			return newDirectory(cache, path, cache.getRootTree());
+		}
+		TreeEntry entry = cache.getEntry(path);
+		if (entry.isTree()) {
+			return newDirectory(cache, path, cache.getTree(entry));
+		} else {
+			return newFile(cache, path, entry);
+		}
+	}
+
+	/**
+	 * @return the attributes of the file or directory, without listing
+	 *         directories, only their entry in the parent is needed
+	 */
+	public static BasicFileAttributes getAttributes(ContentCache cache, GitHubPath path) throws IOException {
+		Content c = cache.get(path);
+		if (c != null) {
+			return c.getAttributes();
+		}
+		if (path.getNameCount() == 0) {
+			return DirectoryContent.attributes(new GitHubPackageUrl(cache, path.getSubPath()));
+		}
+		TreeEntry entry = cache.getEntry(path);
+		if (entry.isTree()) {
+			return DirectoryContent.attributes(new GitHubPackageUrl(cache, path.getSubPath()));
+		}
+		return newFile(cache, path, entry).getAttributes();
+	}
+
+	/**
+	 * Reads many files at once, the ones missing from the blob store with a
+	 * single batch read of the backend.
+	 *
+	 * @return the contents of the given files, in the order of the collection;
+	 *         paths which do not exist or are directories are left out
+	 */
+	public static Map<GitHubPath, byte[]> readAll(ContentCache cache, Collection<GitHubPath> paths)
+			throws IOException {
+		Map<GitHubPath, byte[]> result = new LinkedHashMap<>();
+		Map<String, TreeEntry> missing = new LinkedHashMap<>();
+		Map<String, GitHubPath> byApiPath = new HashMap<>();
+		BlobStore blobs = cache.getBlobStore();
+		for (GitHubPath path : paths) {
+			TreeEntry entry;
+			try {
+				entry = (path.getNameCount() > 0) ? cache.getEntry(path) : null;
+			} catch (NoSuchFileException ex) {
+				continue;
+			}
+			if ((entry == null) || !entry.isBlob()) {
+				continue;
+			}
+			Path file = (blobs != null) ? blobs.get(entry.getSha()) : null;
+			cache.lookup("blob", entry.getSha(), file != null);
+			if (file != null) {
+				byte[] data = Files.readAllBytes(file);
+				BlobVerifier.verify(path.toString(), entry, blobs, data);
+				result.put(path, data);
+			} else {
+				// keeps the order of the collection until read
+				result.put(path, null);
+				missing.put(toApiPath(path), entry);
+				byApiPath.put(toApiPath(path), path);
+			}
+		}
+		if (!missing.isEmpty()) {
+			for (Map.Entry<String, byte[]> read : cache.getBackend().readAll(cache.getCommit(), missing).entrySet()) {
+				TreeEntry entry = missing.get(read.getKey());
+				BlobVerifier.verify(byApiPath.get(read.getKey()).toString(), entry, null, read.getValue());
+				if (blobs != null) {
+					blobs.put(entry.getSha(), read.getValue().length, new ByteArrayInputStream(read.getValue()));
+				}
+				result.put(byApiPath.get(read.getKey()), read.getValue());
+			}
+		}
+		result.values().removeIf(Objects::isNull);
+		return result;
+	}
+
+	public static CompletableFuture<FileContent> wrapFileAsync(ContentCache cache, GitHubPath path) {
+		Content c = cache.get(path);
+		if (c instanceof FileContent) {
+			return CompletableFuture.completedFuture((FileContent) c);
+		}
+		if (c != null) {
+			return CompletableFuture.failedFuture(new IOException(path + " is a directory."));
+		}
+		return Futures.thenCompose(cache.getEntryAsync(path), entry -> entry.isTree()
+				? CompletableFuture.failedFuture(new IOException(path + " is a directory."))
+				: ContentCache.sync(() -> newFile(cache, path, entry)));
+	}
+
+	public static CompletableFuture<byte[]> readAsync(ContentCache cache, GitHubPath path) {
+		return Futures.thenCompose(wrapFileAsync(cache, path), FileContent::readAsync);
+	}
+
+	public static CompletableFuture<Tree> getTreeAsync(ContentCache cache, GitHubPath dir) {
+		return cache.getTreeAsync(dir);
+	}
+
+	public static CompletableFuture<List<Path>> listAsync(ContentCache cache, GitHubPath dir) {
+		return Futures.thenApply(cache.getTreeAsync(dir), tree -> {
+			cache.prefetch(dir, tree);
+			List<Path> result = new ArrayList<>(tree.size());
+			for (TreeEntry entry : tree.getEntries()) {
+				result.add(dir.resolve(entry.getName()));
+			}
+			return result;
+		});
+	}
+
+	public static CompletableFuture<BasicFileAttributes> getAttributesAsync(ContentCache cache, GitHubPath path) {
+		Content c = cache.get(path);
+		if (c != null) {
+			return CompletableFuture.completedFuture(c.getAttributes());
+		}
+		if (path.getNameCount() == 0) {
+			return ContentCache.sync(() -> DirectoryContent.attributes(new GitHubPackageUrl(cache, path.getSubPath())));
+		}
+		// directories are not listed, only their entry in the parent is needed
+		return Futures.thenCompose(cache.getEntryAsync(path), entry -> entry.isTree()
+				? ContentCache.sync(() -> DirectoryContent.attributes(new GitHubPackageUrl(cache, path.getSubPath())))
+				: ContentCache.sync(() -> newFile(cache, path, entry).getAttributes()));
+	}
+
+	private static FileContent newFile(ContentCache cache, GitHubPath path, TreeEntry entry) throws IOException {
+		FileContent result = new FileContent(cache, path, entry);
+		cache.put(path, result);
+		return result;
+	}
+
+	private static DirectoryContent newDirectory(ContentCache cache, GitHubPath path, Tree tree) throws IOException {
+		DirectoryContent result = new DirectoryContent(cache, path, tree);
+		cache.put(path, result);
+		return result;
+	}
+
 	private static GHContent getFileContent(GHRepository repo, String revision, GitHubPath path) throws IOException {
 		GHContent result = null;
 		try {
-			result = repo.getFileContent(path.toString(), revision);
+			result = repo.getFileContent(toApiPath(path), revision);
 		} catch (HttpException ex) {
 			if (ex.getCause() instanceof MismatchedInputException) {
 				throw new IOException(path + " is a directory.");
@@ -80,7 +263,7 @@ public class ContentFactory {
 			throws IOException {
 		List<GHContent> result = null;
 		try {
-			result = repo.getDirectoryContent(path.getSubPath(), revision);
+			result = repo.getDirectoryContent(toApiPath(path), revision);
 		} catch (HttpException ex) {
 			if (ex.getCause() instanceof MismatchedInputException) {
 				throw new IOException(path + " is a file.");
@@ -90,4 +273,9 @@ public class ContentFactory {
 		}
 		return result;
 	}
+
+	static String toApiPath(GitHubPath path) {
+		String subPath = path.getSubPath();
+		return subPath.isEmpty() ? subPath : subPath.substring(0, subPath.length() - 1);
+	}
 }
@@ -0,0 +1,120 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import fr.gnodet.githubfs.jfr.ContentReadEvent;
+
+/**
+ * Counts the bytes read from a file and reports them as a
+ * {@link ContentReadEvent} when the stream is closed. The bytes are hashed as
+ * they are read, and checked against the SHA of the file at its end, unless
+ * they are read through the blob store, which checks them itself. A blob read
+ * from the store is transferred channel to channel, as when it is copied to
+ * another file system.
+ */
+class ContentInputStream extends FilterInputStream {
+
+	private final FileContent content;
+	private final ContentReadEvent event = new ContentReadEvent();
+	private final BlobVerifier verifier;
+	private final FileChannel channel;
+	private long bytes;
+	private boolean closed;
+
+	ContentInputStream(InputStream in, FileContent content) {
+		this(in, content, true);
+	}
+
+	ContentInputStream(InputStream in, FileContent content, boolean verify) {
+		this(in, null, content, verify);
+	}
+
+	ContentInputStream(FileChannel channel, FileContent content) {
+		this(Channels.newInputStream(channel), channel, content, true);
+	}
+
+	private ContentInputStream(InputStream in, FileChannel channel, FileContent content, boolean verify) {
+		super(in);
+		this.channel = channel;
+		this.content = content;
+		this.verifier = content.newVerifier();
+		if (!verify) {
+			verifier.cancel();
+		}
+		event.begin();
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b >= 0) {
+			bytes++;
+			verifier.update((byte) b);
+		} else {
+			verifier.verify();
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if (n > 0) {
+			bytes += n;
+			verifier.update(b, off, n);
+		} else if (n < 0) {
+			verifier.verify();
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		verifier.cancel();
+		long skipped = super.skip(n);
+		bytes += skipped;
+		return skipped;
+	}
+
+	@Override
+	public long transferTo(OutputStream out) throws IOException {
+		if (channel == null) {
+			return super.transferTo(out);
+		}
+		// the blob store checked the bytes as they entered it
+		verifier.cancel();
+		long n = FileContent.transfer(channel, Channels.newChannel(out));
+		bytes += n;
+		return n;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			super.close();
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.repository = content.getRepositoryName();
+				event.path = content.path.toString();
+				event.sha = content.getSha();
+				event.bytes = bytes;
+				event.commit();
+			}
+		}
+	}
+}
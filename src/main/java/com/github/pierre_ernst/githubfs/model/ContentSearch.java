@@ -0,0 +1,133 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Searches file contents line by line, reading only the files the trigram index
+ * does not rule out. Files never read before are read once and indexed, so
+ * searching a pinned revision again only reads the candidate files, from the
+ * blob store.
+ */
+public class ContentSearch {
+
+	public static final class Match {
+		private final Path path;
+		private final int line;
+		private final String text;
+
+		Match(Path path, int line, String text) {
+			this.path = path;
+			this.line = line;
+			this.text = text;
+		}
+
+		public Path getPath() {
+			return path;
+		}
+
+		/**
+		 * @return the line number, starting at 1
+		 */
+		public int getLine() {
+			return line;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * @return the same match in another file system, such as the one of an
+		 *         organization
+		 */
+		public Match withPath(Path path) {
+			return new Match(path, line, text);
+		}
+
+		@Override
+		public String toString() {
+			return path + ":" + line + ":" + text;
+		}
+	}
+
+	private final ContentCache cache;
+
+	public ContentSearch(ContentCache cache) {
+		this.cache = Objects.requireNonNull(cache);
+	}
+
+	/**
+	 * @return the lines matching the regular expression in the files below
+	 *         <code>root</code>, binary files left out
+	 */
+	public List<Match> search(GitHubPath root, String regex) throws IOException {
+		Pattern pattern = Pattern.compile(regex);
+		int[][] query = TrigramIndex.query(regex);
+		TrigramIndex index = cache.getContentIndex();
+		List<Match> matches = new ArrayList<>();
+		if (root.getNameCount() > 0) {
+			TreeEntry entry = cache.getEntry(root);
+			if (entry.isBlob()) {
+				search(root, entry, pattern, query, index, matches);
+				return matches;
+			}
+		}
+		search(root, cache.getTree(root), pattern, query, index, matches);
+		return matches;
+	}
+
+	private void search(GitHubPath dir, Tree tree, Pattern pattern, int[][] query, TrigramIndex index,
+			List<Match> matches) throws IOException {
+		for (TreeEntry entry : tree.getEntries()) {
+			GitHubPath child = dir.resolve(entry.getName());
+			if (entry.isTree()) {
+				search(child, cache.getTree(entry), pattern, query, index, matches);
+			} else if (entry.isBlob()) {
+				search(child, entry, pattern, query, index, matches);
+			}
+		}
+	}
+
+	private void search(GitHubPath file, TreeEntry entry, Pattern pattern, int[][] query, TrigramIndex index,
+			List<Match> matches) throws IOException {
+		boolean indexed = index.contains(entry.getSha());
+		cache.lookup("index", entry.getSha(), indexed);
+		if (indexed && !index.mayMatch(entry.getSha(), query)) {
+			return;
+		}
+		byte[] data;
+		try (InputStream in = ContentFactory.wrapFile(cache, file).getInputStream()) {
+			data = in.readAllBytes();
+		}
+		if (!indexed) {
+			// already done by the blob store if the file entered it
+			index.add(entry.getSha(), new ByteArrayInputStream(data));
+		}
+		if (index.isBinary(entry.getSha())) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+			String line;
+			int number = 0;
+			while ((line = reader.readLine()) != null) {
+				number++;
+				if (pattern.matcher(line).find()) {
+					matches.add(new Match(file, number, line));
+				}
+			}
+		}
+	}
+}
@@ -3,11 +3,10 @@ package com.github.pierre_ernst.githubfs.model;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -20,30 +19,45 @@ import fr.gnodet.githubfs.GitHubPath;
 public class DirectoryContent extends Content {
 
 	private Set<Path> value;
+	private Tree tree;
+	private ContentCache cache;
 
 	DirectoryContent(GHRepository repo, String revision, GitHubPath path, List<GHContent> content) throws IOException {
 		super(repo, revision, path);
 
 		Objects.requireNonNull(content);
-		value = new HashSet<>();
+		value = new LinkedHashSet<>();
 		for (GHContent child : content) {
-			if (child.isFile()) {
-				ContentFactory.wrapFile(repo, revision, (GitHubPath) path.getFileSystem().getPath(child.getPath()),
-						child);
-			} else {
-				ContentFactory.wrapDirectory(repo, revision,
-						(GitHubPath) path.getFileSystem().getPath(child.getPath()));
-			}
-			value.add(Paths.get(child.getPath()));
+			value.add(path.resolve(child.getName()));
+		}
+	}
+
+	DirectoryContent(ContentCache cache, GitHubPath path, Tree tree) throws IOException {
+		super(cache, path);
+
+		this.cache = cache;
+		this.tree = Objects.requireNonNull(tree);
+		// children are only looked up when accessed, listing a directory must
+		// not list every directory below it
+		value = new LinkedHashSet<>();
+		for (TreeEntry entry : tree.getEntries()) {
+			value.add(path.resolve(entry.getName()));
 		}
 	}
 
+	Tree getTree() {
+		return tree;
+	}
+
 	@Override
 	public String toString() {
 		return "DirectoryContent [purl=" + purl + ", item count=" + value.size() + "]";
 	}
 
 	public DirectoryStream<Path> list() {
+		if (cache != null) {
+			cache.prefetch(path, tree);
+		}
 		return new DirectoryStream<Path>() {
 
 			@Override
@@ -60,6 +74,10 @@ public class DirectoryContent extends Content {
 
 	@Override
 	public BasicFileAttributes getAttributes() {
+		return attributes(purl);
+	}
+
+	static BasicFileAttributes attributes(GitHubPackageUrl purl) {
 		return new BasicFileAttributes() {
 
 			@Override
@@ -79,7 +97,7 @@ public class DirectoryContent extends Content {
 
 			@Override
 			public Object fileKey() {
-				return DirectoryContent.this.purl;
+				return purl;
 			}
 
 			@Override
@@ -1,10 +1,29 @@
 package com.github.pierre_ernst.githubfs.model;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GHRepository;
@@ -14,6 +33,8 @@ import fr.gnodet.githubfs.GitHubPath;
 public class FileContent extends Content {
 
 	private GHContent value;
+	private TreeEntry entry;
+	private ContentCache cache;
 
 	FileContent(GHRepository repo, String revision, GitHubPath path, GHContent value) throws IOException {
 		super(repo, revision, path);
@@ -22,15 +43,286 @@ public class FileContent extends Content {
 		if (!value.isFile()) {
 			throw new IllegalArgumentException(value.getName() + " is not a file.");
 		}
+		this.entry = TreeEntry.of(value);
+	}
+
+	FileContent(ContentCache cache, GitHubPath path, TreeEntry entry) throws IOException {
+		super(cache, path);
+
+		this.cache = cache;
+		this.entry = Objects.requireNonNull(entry);
+		if (!entry.isBlob()) {
+			throw new IllegalArgumentException(entry.getName() + " is not a file.");
+		}
 	}
 
 	public InputStream getInputStream() throws IOException {
-		return value.read();
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if (blobs != null) {
+			FileChannel cached = blobs.newByteChannel(entry.getSha());
+			cache.lookup("blob", entry.getSha(), cached != null);
+			if (cached != null) {
+				return new ContentInputStream(cached, this);
+			}
+			byte[] prefetched = cache.awaitPrefetch(entry.getSha());
+			if (prefetched != null) {
+				return new ContentInputStream(new ByteArrayInputStream(prefetched), this);
+			}
+			InputStream fetched = fetch();
+			InputStream tee = blobs.tee(entry.getSha(), entry.getSize(), fetched);
+			// the store checks what it writes, even the bytes skipped by the caller
+			return new ContentInputStream(tee, this, tee == fetched);
+		}
+		return new ContentInputStream(fetch(), this);
+	}
+
+	/**
+	 * @return a channel over the file kept in the blob store, or
+	 *         <code>null</code> if there is no blob store or the file does not
+	 *         fit in it
+	 */
+	public SeekableByteChannel newByteChannel() throws IOException {
+		SeekableByteChannel channel = openCached();
+		return (channel != null) ? new VerifyingByteChannel(channel, newVerifier()) : null;
+	}
+
+	private SeekableByteChannel openCached() throws IOException {
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if (blobs == null) {
+			return null;
+		}
+		SeekableByteChannel channel = blobs.newByteChannel(entry.getSha());
+		cache.lookup("blob", entry.getSha(), channel != null);
+		if (channel == null) {
+			// verified before it reaches the store
+			blobs.put(entry.getSha(), entry.getSize(), new ContentInputStream(fetch(), this, false));
+			channel = blobs.newByteChannel(entry.getSha());
+		}
+		return channel;
+	}
+
+	BlobVerifier newVerifier() {
+		return new BlobVerifier(path.toString(), entry, (cache != null) ? cache.getBlobStore() : null);
+	}
+
+	/**
+	 * Reads part of the file: from the blob store if it is cached, touching only
+	 * the bytes asked for, or else with a range request, leaving the cache as it
+	 * is. Partial reads are not verified against the SHA of the file.
+	 *
+	 * @return the bytes from <code>offset</code>, fewer than
+	 *         <code>length</code> at the end of the file
+	 */
+	public byte[] read(long offset, int length) throws IOException {
+		if ((offset < 0) || (length < 0)) {
+			throw new IllegalArgumentException("Invalid range " + offset + "+" + length);
+		}
+		int n = (int) Math.max(0, Math.min(length, entry.getSize() - offset));
+		if (n == 0) {
+			return new byte[0];
+		}
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if (blobs != null) {
+			SeekableByteChannel channel = blobs.newByteChannel(entry.getSha());
+			cache.lookup("blob", entry.getSha(), channel != null);
+			if (channel != null) {
+				try (SeekableByteChannel c = channel) {
+					ByteBuffer buffer = ByteBuffer.allocate(n);
+					c.position(offset);
+					while (buffer.hasRemaining() && (c.read(buffer) >= 0)) {
+						// reads until the buffer is full
+					}
+					return buffer.array();
+				}
+			}
+		}
+		InputStream in;
+		if (cache != null) {
+			in = cache.getBackend().openRange(cache.getCommit(), ContentFactory.toApiPath(path), entry, offset, n);
+		} else {
+			in = fetch();
+			BlobClient.skip(in, offset);
+		}
+		try (InputStream i = in) {
+			return i.readNBytes(n);
+		}
+	}
+
+	/**
+	 * Reads a range of lines, ended by line feeds, and decoded as UTF-8. The
+	 * file is cached first if it fits in the blob store, then read from the
+	 * nearest line of the {@link LineIndex} kept next to the blob, so that
+	 * reading lines of a large file again only reads the bytes around them.
+	 *
+	 * @param first the index of the first line, from 0
+	 * @return at most <code>count</code> lines, without their line feeds and
+	 *         carriage returns
+	 */
+	public List<String> readLines(long first, int count) throws IOException {
+		if ((first < 0) || (count < 0)) {
+			throw new IllegalArgumentException("Invalid lines " + first + "+" + count);
+		}
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if ((blobs != null) && (entry.getSize() <= blobs.getMaxBytes())) {
+			if (blobs.get(entry.getSha()) == null) {
+				try (InputStream in = getInputStream()) {
+					in.transferTo(OutputStream.nullOutputStream());
+				}
+			}
+			LineIndex index = blobs.getLineIndex(entry.getSha());
+			SeekableByteChannel channel = (index != null) ? blobs.newByteChannel(entry.getSha()) : null;
+			if (channel != null) {
+				try (SeekableByteChannel c = channel) {
+					if (first >= index.getLineCount()) {
+						return new ArrayList<>();
+					}
+					c.position(index.getOffset(first));
+					return readLines(new BufferedInputStream(Channels.newInputStream(c)), first % LineIndex.INTERVAL,
+							count);
+				}
+			}
+		}
+		try (InputStream in = new BufferedInputStream(getInputStream())) {
+			return readLines(in, first, count);
+		}
+	}
+
+	private static List<String> readLines(InputStream in, long skip, int count) throws IOException {
+		for (long i = 0; i < skip; i++) {
+			if (readLine(in) == null) {
+				return new ArrayList<>();
+			}
+		}
+		List<String> lines = new ArrayList<>();
+		while (lines.size() < count) {
+			String line = readLine(in);
+			if (line == null) {
+				break;
+			}
+			lines.add(line);
+		}
+		return lines;
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b = in.read();
+		if (b < 0) {
+			return null;
+		}
+		while ((b >= 0) && (b != '\n')) {
+			line.write(b);
+			b = in.read();
+		}
+		byte[] bytes = line.toByteArray();
+		int length = ((bytes.length > 0) && (bytes[bytes.length - 1] == '\r')) ? bytes.length - 1 : bytes.length;
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Writes the file to <code>target</code>, replacing it if it exists. When
+	 * the target is on the default file system and the file fits in the blob
+	 * store, the bytes go from the cached blob to the target with
+	 * {@link FileChannel#transferTo} rather than through the heap.
+	 */
+	public void copyTo(Path target) throws IOException {
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if ((blobs != null) && (entry.getSize() <= blobs.getMaxBytes())
+				&& (target.getFileSystem() == FileSystems.getDefault())) {
+			// blobs only enter the store once their SHA matched, not hashed again
+			try (SeekableByteChannel channel = openCached()) {
+				if (channel instanceof FileChannel) {
+					transfer((FileChannel) channel, target);
+					return;
+				}
+			}
+		}
+		try (InputStream in = getInputStream()) {
+			Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void transfer(FileChannel in, Path target) throws IOException {
+		try (FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			transfer(in, out);
+		}
+	}
+
+	/**
+	 * Writes the rest of the channel, from its position, to <code>out</code>.
+	 *
+	 * @return the number of bytes written
+	 */
+	static long transfer(FileChannel in, WritableByteChannel out) throws IOException {
+		long start = in.position();
+		long size = in.size();
+		for (long position = start; position < size;) {
+			position += in.transferTo(position, size - position, out);
+		}
+		in.position(size);
+		return size - start;
+	}
+
+	/**
+	 * Reads the whole file without blocking the caller, unless its backend has
+	 * no way to send requests asynchronously.
+	 */
+	public CompletableFuture<byte[]> readAsync() {
+		BlobStore blobs = (cache != null) ? cache.getBlobStore() : null;
+		if (blobs != null) {
+			Path file = blobs.get(entry.getSha());
+			cache.lookup("blob", entry.getSha(), file != null);
+			if (file != null) {
+				return ContentCache.sync(() -> {
+					byte[] data = Files.readAllBytes(file);
+					BlobVerifier.verify(path.toString(), entry, blobs, data);
+					return data;
+				});
+			}
+		}
+		if (cache == null) {
+			return ContentCache.sync(() -> {
+				try (InputStream in = getInputStream()) {
+					return in.readAllBytes();
+				}
+			});
+		}
+		return Futures.thenApply(
+				cache.getBackend().readAsync(cache.getCommit(), ContentFactory.toApiPath(path), entry), data -> {
+					try {
+						BlobVerifier.verify(path.toString(), entry, blobs, data);
+					} catch (IOException ex) {
+						throw new CompletionException(ex);
+					}
+					if (blobs != null) {
+						try {
+							blobs.put(entry.getSha(), data.length, new ByteArrayInputStream(data));
+						} catch (IOException ex) {
+							// NO-OP, only cached on a best effort basis
+						}
+					}
+					return data;
+				});
+	}
+
+	private InputStream fetch() throws IOException {
+		if (cache != null) {
+			return cache.getBackend().open(cache.getCommit(), ContentFactory.toApiPath(path), entry);
+		}
+		if (entry.getSize() <= BlobClient.CONTENTS_LIMIT) {
+			return value.read();
+		}
+		return repo.readBlob(entry.getSha());
+	}
+
+	public String getSha() {
+		return entry.getSha();
 	}
 
 	@Override
 	public String toString() {
-		return "FileContent [purl=" + purl + ", size=" + (value.getSize() / 1024L) + " KB ]";
+		return "FileContent [purl=" + purl + ", size=" + (entry.getSize() / 1024L) + " KB ]";
 	}
 
 	@Override
@@ -49,7 +341,7 @@ public class FileContent extends Content {
 
 			@Override
 			public long size() {
-				return value.getSize();
+				return entry.getSize();
 			}
 
 			@Override
@@ -0,0 +1,73 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Chains of futures which pass cancellation back to the futures they were
+ * derived from. A {@link CompletableFuture} only cancels itself, so cancelling
+ * the end of a chain would otherwise leave the HTTP call at its start running.
+ */
+public final class Futures {
+
+	private Futures() {
+	}
+
+	/**
+	 * @return <code>derived</code>, cancelling <code>source</code> once it is
+	 *         cancelled
+	 */
+	public static <T> CompletableFuture<T> cancelling(CompletableFuture<T> derived, CompletableFuture<?> source) {
+		derived.whenComplete((result, ex) -> {
+			if (derived.isCancelled()) {
+				source.cancel(false);
+			}
+		});
+		return derived;
+	}
+
+	public static <T, U> CompletableFuture<U> thenApply(CompletableFuture<T> source,
+			Function<? super T, ? extends U> fn) {
+		return cancelling(source.thenApply(fn), source);
+	}
+
+	/**
+	 * Same as {@link CompletableFuture#thenCompose}, cancelling the source, or
+	 * the future returned by <code>fn</code> once there is one.
+	 */
+	public static <T, U> CompletableFuture<U> thenCompose(CompletableFuture<T> source,
+			Function<? super T, ? extends CompletionStage<U>> fn) {
+		CompletableFuture<U> result = new CompletableFuture<>();
+		source.whenComplete((value, ex) -> {
+			if (ex != null) {
+				result.completeExceptionally(wrap(ex));
+				return;
+			}
+			if (result.isDone()) {
+				return;
+			}
+			CompletableFuture<U> next;
+			try {
+				next = fn.apply(value).toCompletableFuture();
+			} catch (RuntimeException e) {
+				result.completeExceptionally(wrap(e));
+				return;
+			}
+			cancelling(result, next);
+			next.whenComplete((v, e) -> {
+				if (e != null) {
+					result.completeExceptionally(wrap(e));
+				} else {
+					result.complete(v);
+				}
+			});
+		});
+		return cancelling(result, source);
+	}
+
+	private static Throwable wrap(Throwable ex) {
+		return (ex instanceof CompletionException) ? ex : new CompletionException(ex);
+	}
+}
@@ -29,8 +29,29 @@ public class GitHubPackageUrl implements Comparable<GitHubPackageUrl>{
 	}
 	
 	public GitHubPackageUrl(GHRepository repo, String revision, String path) throws IOException  {
-		Objects.requireNonNull(repo);
-		
+		init(repo.getOwnerName(), repo.getName(), resolveRevision(repo, revision), path);
+	}
+	
+	private GitHubPackageUrl() {
+	}
+	
+	/**
+	 * @param revision a revision already checked against the refs
+	 */
+	static GitHubPackageUrl resolved(GHRepository repo, String revision, String path) throws IOException  {
+		GitHubPackageUrl purl = new GitHubPackageUrl();
+		purl.init(repo.getOwnerName(), repo.getName(), revision, path);
+		return purl;
+	}
+	
+	GitHubPackageUrl(ContentCache cache, String path) throws IOException  {
+		// the cache revision has already been checked against the refs
+		String name = cache.getBackend().getName();
+		int index = name.indexOf('/');
+		init(name.substring(0, index), name.substring(index + 1), cache.getRevision(), path);
+	}
+	
+	private void init(String owner, String name, String revision, String path) throws IOException  {
 		if ((path == null) || path.isEmpty())  {
 			path = "/";
 		}
@@ -44,23 +65,30 @@ public class GitHubPackageUrl implements Comparable<GitHubPackageUrl>{
 			p = p.substring(0,p.length());
 		}
 		
+		this.revision = revision;
+		
+		try {
+			purl = new PackageURL("github", owner, name, this.revision, null, p);
+		} catch (MalformedPackageURLException ex) {
+			throw new IOException(ex);
+		}
+		
+	}
+	
+	private static String resolveRevision(GHRepository repo, String revision) throws IOException {
+		Objects.requireNonNull(repo);
+		
 		List<String> refs = Arrays.asList(repo.getRefs()).stream().map(GHRef::getRef).collect(Collectors.toList());
 
-		this.revision = refs.get(0); // default value
+		String result = refs.get(0); // default value
 		if ((revision != null) && (!revision.isEmpty())) {
 			if (refs.contains(revision)) {
-			this.revision = revision;
+			result = revision;
 			} else {
 				throw new IllegalArgumentException("Ref '"+revision + "' not found in "+repo.getFullName());
 			}
 		}
-		
-		try {
-			purl = new PackageURL("github", repo.getOwnerName(), repo.getName(), this.revision, null, p);
-		} catch (MalformedPackageURLException ex) {
-			throw new IOException(ex);
-		}
-		
+		return result;
 	}
 	
 	public String getRevision() {
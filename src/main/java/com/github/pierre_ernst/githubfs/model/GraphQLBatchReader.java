@@ -0,0 +1,263 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.HttpException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Reads many files with a handful of GraphQL queries instead of a request per
+ * file. The directories leading to the files are fetched first as trees, by
+ * revision expression, then the blobs by SHA. Each query holds at most a chunk
+ * of objects to stay under the query cost limits. Binary or truncated blobs,
+ * and any text that does not hash back to its blob SHA, are read through the
+ * REST API instead.
+ */
+public class GraphQLBatchReader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 100;
+
+	public static final long DEFAULT_CHUNK_BYTES = 4L * 1024L * 1024L;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final String TREE_FIELDS = "... on Tree { oid entries { name type oid object { ... on Blob { byteSize } } } }";
+
+	private static final String BLOB_FIELDS = "... on Blob { text isBinary isTruncated byteSize }";
+
+	private final ContentCache cache;
+	private final int chunkSize;
+	private final long chunkBytes;
+
+	public GraphQLBatchReader(ContentCache cache) {
+		this(cache, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_BYTES);
+	}
+
+	public GraphQLBatchReader(ContentCache cache, int chunkSize, long chunkBytes) {
+		this.cache = Objects.requireNonNull(cache);
+		if (cache.getBlobClient() == null) {
+			throw new IllegalArgumentException("No client to send GraphQL queries with");
+		}
+		this.chunkSize = chunkSize;
+		this.chunkBytes = chunkBytes;
+	}
+
+	/**
+	 * @return the contents of the given files, in the order of the collection;
+	 *         paths which do not exist or are directories are left out
+	 */
+	public Map<GitHubPath, byte[]> readAll(Collection<GitHubPath> paths) throws IOException {
+		fetchTrees(paths);
+
+		Map<GitHubPath, TreeEntry> files = new LinkedHashMap<>();
+		for (GitHubPath path : paths) {
+			if (path.getNameCount() == 0) {
+				continue;
+			}
+			try {
+				TreeEntry entry = cache.getEntry(path);
+				if (entry.isBlob()) {
+					files.put(path, entry);
+				}
+			} catch (NoSuchFileException ex) {
+				// left out
+			}
+		}
+
+		Map<String, byte[]> blobs = fetchBlobs(files.values());
+
+		Map<GitHubPath, byte[]> result = new LinkedHashMap<>();
+		for (Map.Entry<GitHubPath, TreeEntry> file : files.entrySet()) {
+			byte[] data = blobs.get(file.getValue().getSha());
+			if (data == null) {
+				try (InputStream in = ContentFactory.wrapFile(cache, file.getKey()).getInputStream()) {
+					data = in.readAllBytes();
+				}
+			}
+			result.put(file.getKey(), data);
+		}
+		return result;
+	}
+
+	private void fetchTrees(Collection<GitHubPath> paths) throws IOException {
+		Set<GitHubPath> directories = new LinkedHashSet<>();
+		for (GitHubPath path : paths) {
+			GitHubPath root = path.getRoot();
+			if (root != null) {
+				directories.add(root);
+			}
+			for (int i = 1; i < path.getNameCount(); i++) {
+				directories.add(path.getRoot().resolve(path.subpath(0, i)));
+			}
+		}
+		List<GitHubPath> missing = new ArrayList<>();
+		for (GitHubPath directory : directories) {
+			if (cache.getCachedTree(directory) == null) {
+				missing.add(directory);
+			}
+		}
+
+		String commit = cache.getCommit();
+		for (int start = 0; start < missing.size(); start += chunkSize) {
+			List<GitHubPath> chunk = missing.subList(start, Math.min(missing.size(), start + chunkSize));
+			StringBuilder fields = new StringBuilder();
+			for (int i = 0; i < chunk.size(); i++) {
+				fields.append("t").append(i).append(": object(expression: ")
+						.append(quote(commit + ":" + ContentFactory.toApiPath(chunk.get(i)))).append(") { ")
+						.append(TREE_FIELDS).append(" } ");
+			}
+			JsonNode repository;
+			try {
+				repository = query(fields);
+			} catch (HttpException | GraphQLException ex) {
+				// directories are then listed on demand
+				return;
+			}
+			for (int i = 0; i < chunk.size(); i++) {
+				JsonNode node = repository.path("t" + i);
+				if (!node.hasNonNull("oid") || !node.has("entries")) {
+					continue;
+				}
+				Tree tree = toTree(node);
+				if (chunk.get(i).getNameCount() == 0) {
+					cache.getTreeStore().internCommitTree(commit, tree);
+				} else {
+					cache.getTreeStore().intern(tree);
+				}
+			}
+		}
+	}
+
+	private Map<String, byte[]> fetchBlobs(Collection<TreeEntry> files) throws IOException {
+		BlobStore store = cache.getBlobStore();
+		Map<String, TreeEntry> pending = new LinkedHashMap<>();
+		for (TreeEntry file : files) {
+			if ((file.getSize() <= BlobClient.CONTENTS_LIMIT) && ((store == null) || !store.contains(file.getSha()))) {
+				pending.putIfAbsent(file.getSha(), file);
+			}
+		}
+
+		Map<String, byte[]> result = new HashMap<>();
+		List<TreeEntry> chunk = new ArrayList<>();
+		long bytes = 0;
+		for (TreeEntry file : pending.values()) {
+			if (!chunk.isEmpty() && ((chunk.size() >= chunkSize) || (bytes + file.getSize() > chunkBytes))) {
+				if (!fetchBlobs(chunk, result)) {
+					return result;
+				}
+				chunk.clear();
+				bytes = 0;
+			}
+			chunk.add(file);
+			bytes += file.getSize();
+		}
+		if (!chunk.isEmpty()) {
+			fetchBlobs(chunk, result);
+		}
+		return result;
+	}
+
+	private boolean fetchBlobs(List<TreeEntry> chunk, Map<String, byte[]> result) throws IOException {
+		StringBuilder fields = new StringBuilder();
+		for (int i = 0; i < chunk.size(); i++) {
+			fields.append("b").append(i).append(": object(oid: ").append(quote(chunk.get(i).getSha())).append(") { ")
+					.append(BLOB_FIELDS).append(" } ");
+		}
+		JsonNode repository;
+		try {
+			repository = query(fields);
+		} catch (HttpException | GraphQLException ex) {
+			// blobs are then read through the REST API
+			return false;
+		}
+		BlobStore store = cache.getBlobStore();
+		for (int i = 0; i < chunk.size(); i++) {
+			JsonNode node = repository.path("b" + i);
+			if (!node.hasNonNull("text") || node.path("isBinary").asBoolean() || node.path("isTruncated").asBoolean()) {
+				continue;
+			}
+			TreeEntry entry = chunk.get(i);
+			byte[] data = node.get("text").asText().getBytes(StandardCharsets.UTF_8);
+			// the text is decoded by GitHub, only keep it if it round trips
+			if ((data.length != entry.getSize()) || !entry.getSha().equals(blobSha(data))) {
+				continue;
+			}
+			result.put(entry.getSha(), data);
+			if (store != null) {
+				store.put(entry.getSha(), data.length, new ByteArrayInputStream(data));
+			}
+		}
+		return true;
+	}
+
+	private JsonNode query(CharSequence fields) throws IOException {
+		GHRepository repo = cache.getRepository();
+		String query = "query { repository(owner: " + quote(repo.getOwnerName()) + ", name: " + quote(repo.getName())
+				+ ") { " + fields + "} }";
+		JsonNode response;
+		try (InputStream in = cache.getBlobClient().graphql(MAPPER.writeValueAsString(
+				MAPPER.createObjectNode().put("query", query)))) {
+			response = MAPPER.readTree(in);
+		}
+		JsonNode repository = response.path("data").path("repository");
+		if (!repository.isObject()) {
+			throw new GraphQLException(response.path("errors"));
+		}
+		return repository;
+	}
+
+	private static Tree toTree(JsonNode node) {
+		List<TreeEntry> entries = new ArrayList<>();
+		for (JsonNode entry : node.get("entries")) {
+			entries.add(new TreeEntry(entry.path("name").asText(), entry.path("type").asText(),
+					entry.path("oid").asText(), entry.path("object").path("byteSize").asLong()));
+		}
+		return new Tree(node.get("oid").asText(), entries);
+	}
+
+	private static String quote(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if ((c == '"') || (c == '\\')) {
+				sb.append('\\');
+			}
+			sb.append(c);
+		}
+		return sb.append('"').toString();
+	}
+
+	static String blobSha(byte[] data) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(("blob " + data.length + "\0").getBytes(StandardCharsets.US_ASCII));
+			byte[] hash = digest.digest(data);
+			StringBuilder sb = new StringBuilder();
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Errors of a GraphQL query, such as <code>RATE_LIMITED</code> or
+ * <code>MAX_NODE_LIMIT_EXCEEDED</code>, which GitHub returns with a 200 status
+ * rather than an HTTP error.
+ */
+public class GraphQLException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<String> types;
+
+	public GraphQLException(JsonNode errors) {
+		super("GraphQL query failed: " + errors);
+		List<String> t = new ArrayList<>();
+		for (JsonNode error : errors) {
+			if (error.hasNonNull("type")) {
+				t.add(error.get("type").asText());
+			}
+		}
+		this.types = Collections.unmodifiableList(t);
+	}
+
+	/**
+	 * @return the types of the errors, such as <code>RATE_LIMITED</code>
+	 */
+	public List<String> getTypes() {
+		return types;
+	}
+}
@@ -0,0 +1,95 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Sparse index of where the lines of a blob start: the offset of every
+ * {@link #INTERVAL}th line, so that any line is reached by reading at most
+ * that many lines from the nearest indexed one. Lines end with a line feed.
+ */
+public final class LineIndex {
+
+	/** Number of lines between two indexed offsets. */
+	public static final int INTERVAL = 256;
+
+	private final long[] offsets;
+	private final long lineCount;
+
+	private LineIndex(long[] offsets, long lineCount) {
+		this.offsets = offsets;
+		this.lineCount = lineCount;
+	}
+
+	static LineIndex build(InputStream in) throws IOException {
+		long[] offsets = new long[16];
+		int count = 1;
+		long lines = 0;
+		long position = 0;
+		int last = '\n';
+		byte[] buffer = new byte[8192];
+		for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == '\n') {
+					lines++;
+					if ((lines % INTERVAL) == 0) {
+						if (count == offsets.length) {
+							offsets = Arrays.copyOf(offsets, count * 2);
+						}
+						offsets[count++] = position + i + 1;
+					}
+				}
+			}
+			if (n > 0) {
+				last = buffer[n - 1];
+				position += n;
+			}
+		}
+		// a last line without line feed still counts
+		if (last != '\n') {
+			lines++;
+		}
+		return new LineIndex(Arrays.copyOf(offsets, count), lines);
+	}
+
+	static LineIndex read(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			long lines = in.readLong();
+			long[] offsets = new long[in.readInt()];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = in.readLong();
+			}
+			return new LineIndex(offsets, lines);
+		}
+	}
+
+	void write(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeLong(lineCount);
+		data.writeInt(offsets.length);
+		for (long offset : offsets) {
+			data.writeLong(offset);
+		}
+		data.flush();
+	}
+
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @param line the index of a line, from 0
+	 * @return the offset of the nearest indexed line at or before it, which is
+	 *         the line <code>line - line % INTERVAL</code>
+	 */
+	public long getOffset(long line) {
+		return offsets[(int) Math.min(line / INTERVAL, offsets.length - 1)];
+	}
+}
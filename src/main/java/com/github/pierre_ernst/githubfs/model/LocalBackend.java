@@ -0,0 +1,372 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.zip.InflaterInputStream;
+
+import com.github.pierre_ernst.githubfs.model.PackFile.RawObject;
+
+/**
+ * Reads a local git repository, such as a mirror kept up to date with
+ * <code>git fetch</code>, without any network access: refs from their files
+ * and <code>packed-refs</code>, objects loose or from packs. Packs appearing
+ * after a fetch or a repack are picked up the first time an object is not
+ * found.
+ */
+public class LocalBackend implements ContentBackend {
+
+	/** Number of blob sizes kept, about 10 MB worth. */
+	static final int MAX_SIZES = 100_000;
+
+	private final String name;
+	private final Path directory;
+	private final Path objects;
+	private volatile List<PackFile> packs = Collections.emptyList();
+	private final Map<String, Long> sizes = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_SIZES;
+		}
+	});
+
+	/**
+	 * @param name      the repository, as <code>owner/name</code>
+	 * @param directory a bare repository, or the work tree of a repository
+	 */
+	public LocalBackend(String name, Path directory) throws IOException {
+		this.name = Objects.requireNonNull(name);
+		Path gitDirectory = directory.resolve(".git");
+		this.directory = Files.isDirectory(gitDirectory) ? gitDirectory : directory;
+		this.objects = this.directory.resolve("objects");
+		if (!Files.isRegularFile(this.directory.resolve("HEAD")) || !Files.isDirectory(objects)) {
+			throw new NoSuchFileException(directory.toString(), null, "not a git repository");
+		}
+		scanPacks();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String resolveRevision(String revision) throws IOException {
+		if ((revision == null) || revision.isEmpty()) {
+			String head = readFile("HEAD");
+			return head.startsWith("ref: ") ? head.substring("ref: ".length()) : head;
+		}
+		if (revision.startsWith("refs/") && (readRef(revision) != null)) {
+			return revision;
+		}
+		throw new IllegalArgumentException("Ref '" + revision + "' not found in " + name);
+	}
+
+	@Override
+	public String resolveCommit(String revision) throws IOException {
+		String sha = isSha(revision) ? revision : readRef(revision);
+		if (sha == null) {
+			throw new NoSuchFileException(revision);
+		}
+		RawObject object = read(sha);
+		while (object.type == PackFile.OBJ_TAG) {
+			sha = PackFile.header(object.data, "object");
+			object = read(sha);
+		}
+		return sha;
+	}
+
+	@Override
+	public Tree getTree(String sha) throws IOException {
+		RawObject object = read(sha);
+		while (object.type != PackFile.OBJ_TREE) {
+			if (object.type == PackFile.OBJ_COMMIT) {
+				sha = PackFile.header(object.data, "tree");
+			} else if (object.type == PackFile.OBJ_TAG) {
+				sha = PackFile.header(object.data, "object");
+			} else {
+				throw new IOException(sha + " is not a tree");
+			}
+			object = read(sha);
+		}
+		return new Tree(sha, PackFile.parseTree(object.data, this::size));
+	}
+
+	@Override
+	public List<Tree> getTreeRecursive(String sha) throws IOException {
+		// reading locally, every tree costs a lookup in a mapped index
+		List<Tree> result = new ArrayList<>();
+		addRecursive(getTree(sha), result);
+		return result;
+	}
+
+	private void addRecursive(Tree tree, List<Tree> result) throws IOException {
+		result.add(tree);
+		for (TreeEntry entry : tree.getEntries()) {
+			if (entry.isTree()) {
+				addRecursive(getTree(entry.getSha()), result);
+			}
+		}
+	}
+
+	@Override
+	public InputStream open(String commit, String path, TreeEntry entry) throws IOException {
+		return find(entry.getSha(), new ObjectReader<InputStream>() {
+
+			@Override
+			public InputStream packed(PackFile pack, long offset) throws IOException {
+				return pack.open(offset, LocalBackend.this::read);
+			}
+
+			@Override
+			public InputStream loose(Path file) throws IOException {
+				InputStream in = new InflaterInputStream(Files.newInputStream(file));
+				skipHeader(in, entry.getSha());
+				return in;
+			}
+		});
+	}
+
+	@Override
+	public Map<String, String> compare(String base, String head) throws IOException {
+		Map<String, String> result = new LinkedHashMap<>();
+		diff("", getTree(base).getSha(), getTree(head).getSha(), result);
+		return result;
+	}
+
+	private void diff(String prefix, String before, String after, Map<String, String> result) throws IOException {
+		Map<String, TreeEntry> a = entries(before);
+		Map<String, TreeEntry> b = entries(after);
+		TreeSet<String> names = new TreeSet<>(a.keySet());
+		names.addAll(b.keySet());
+		for (String entryName : names) {
+			TreeEntry x = a.get(entryName);
+			TreeEntry y = b.get(entryName);
+			if ((x != null) && (y != null) && x.getSha().equals(y.getSha()) && x.getType().equals(y.getType())) {
+				continue;
+			}
+			String path = prefix + entryName;
+			boolean wasTree = (x != null) && x.isTree();
+			boolean isTree = (y != null) && y.isTree();
+			if (wasTree || isTree) {
+				diff(path + "/", wasTree ? x.getSha() : null, isTree ? y.getSha() : null, result);
+			}
+			if ((x != null) && !wasTree && ((y == null) || isTree)) {
+				result.put(path, "removed");
+			} else if ((y != null) && !isTree) {
+				result.put(path, ((x == null) || wasTree) ? "added" : "modified");
+			}
+		}
+	}
+
+	private Map<String, TreeEntry> entries(String tree) throws IOException {
+		Map<String, TreeEntry> result = new HashMap<>();
+		if (tree != null) {
+			for (TreeEntry entry : PackFile.parseTree(read(tree).data, sha -> 0)) {
+				result.put(entry.getName(), entry);
+			}
+		}
+		return result;
+	}
+
+	RawObject read(String sha) throws IOException {
+		return find(sha, new ObjectReader<RawObject>() {
+
+			@Override
+			public RawObject packed(PackFile pack, long offset) throws IOException {
+				return pack.read(offset, LocalBackend.this::read);
+			}
+
+			@Override
+			public RawObject loose(Path file) throws IOException {
+				try (InputStream in = new InflaterInputStream(Files.newInputStream(file))) {
+					int type = skipHeader(in, sha);
+					return new RawObject(type, in.readAllBytes());
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the size of a blob, listed with every tree containing it, which
+	 *         is only looked up in the packs the first time
+	 */
+	private long size(String sha) throws IOException {
+		Long size = sizes.get(sha);
+		if (size == null) {
+			size = readSize(sha);
+			sizes.put(sha, size);
+		}
+		return size;
+	}
+
+	private long readSize(String sha) throws IOException {
+		return find(sha, new ObjectReader<Long>() {
+
+			@Override
+			public Long packed(PackFile pack, long offset) throws IOException {
+				return pack.size(offset);
+			}
+
+			@Override
+			public Long loose(Path file) throws IOException {
+				try (InputStream in = new InflaterInputStream(Files.newInputStream(file))) {
+					// the header of a loose object is its type, a space, its size and a NUL
+					StringBuilder header = new StringBuilder();
+					for (int c = in.read(); c > 0; c = in.read()) {
+						header.append((char) c);
+					}
+					return Long.parseLong(header.substring(header.indexOf(" ") + 1));
+				}
+			}
+		});
+	}
+
+	private interface ObjectReader<T> {
+
+		T packed(PackFile pack, long offset) throws IOException;
+
+		T loose(Path file) throws IOException;
+	}
+
+	/**
+	 * Looks an object up in the packs, then as a loose object, then in the
+	 * packs written since the last lookup.
+	 */
+	private <T> T find(String sha, ObjectReader<T> reader) throws IOException {
+		byte[] id = toBytes(sha);
+		for (int attempt = 0; attempt < 2; attempt++) {
+			for (PackFile pack : packs) {
+				long offset = pack.find(id);
+				if (offset >= 0) {
+					return reader.packed(pack, offset);
+				}
+			}
+			Path loose = objects.resolve(sha.substring(0, 2)).resolve(sha.substring(2));
+			if (Files.isRegularFile(loose)) {
+				return reader.loose(loose);
+			}
+			if (!scanPacks()) {
+				break;
+			}
+		}
+		throw new NoSuchFileException(sha);
+	}
+
+	private static int skipHeader(InputStream in, String sha) throws IOException {
+		StringBuilder type = new StringBuilder();
+		int c;
+		while ((c = in.read()) != ' ') {
+			if (c < 0) {
+				throw new EOFException(sha);
+			}
+			type.append((char) c);
+		}
+		while ((c = in.read()) != 0) {
+			if (c < 0) {
+				throw new EOFException(sha);
+			}
+		}
+		for (int i = 1; i < PackFile.TYPES.length; i++) {
+			if (PackFile.TYPES[i].contentEquals(type)) {
+				return i;
+			}
+		}
+		throw new IOException("Invalid object type " + type + " for " + sha);
+	}
+
+	/**
+	 * @return whether new packs were found
+	 */
+	private synchronized boolean scanPacks() throws IOException {
+		Path directory = objects.resolve("pack");
+		if (!Files.isDirectory(directory)) {
+			return false;
+		}
+		Map<Path, PackFile> known = new HashMap<>();
+		for (PackFile pack : packs) {
+			known.put(pack.getPath(), pack);
+		}
+		List<PackFile> result = new ArrayList<>();
+		boolean found = false;
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "pack-*.idx")) {
+			for (Path idx : stream) {
+				String file = idx.getFileName().toString();
+				Path pack = idx.resolveSibling(file.substring(0, file.length() - ".idx".length()) + ".pack");
+				PackFile existing = known.get(pack);
+				if (existing != null) {
+					result.add(existing);
+				} else if (Files.isRegularFile(pack)) {
+					result.add(PackFile.open(idx));
+					found = true;
+				}
+			}
+		}
+		packs = result;
+		return found;
+	}
+
+	private String readRef(String ref) throws IOException {
+		Path file = directory.resolve(ref).normalize();
+		if (!file.startsWith(directory)) {
+			return null;
+		}
+		if (Files.isRegularFile(file)) {
+			String value = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+			return value.startsWith("ref: ") ? readRef(value.substring("ref: ".length())) : value;
+		}
+		Path packed = directory.resolve("packed-refs");
+		if (Files.isRegularFile(packed)) {
+			try (BufferedReader reader = Files.newBufferedReader(packed, StandardCharsets.UTF_8)) {
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					// skips the comments and the peeled targets of tags
+					int index = line.indexOf(' ');
+					if (!line.startsWith("#") && !line.startsWith("^") && (index > 0)
+							&& line.substring(index + 1).equals(ref)) {
+						return line.substring(0, index);
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private String readFile(String file) throws IOException {
+		return new String(Files.readAllBytes(directory.resolve(file)), StandardCharsets.UTF_8).trim();
+	}
+
+	private static boolean isSha(String revision) {
+		return (revision.length() == 40) && revision.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+	}
+
+	private static byte[] toBytes(String sha) throws IOException {
+		if (!isSha(sha)) {
+			throw new NoSuchFileException(sha);
+		}
+		byte[] id = new byte[20];
+		for (int i = 0; i < 20; i++) {
+			id[i] = (byte) Integer.parseInt(sha.substring(2 * i, 2 * i + 2), 16);
+		}
+		return id;
+	}
+}
@@ -0,0 +1,130 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Writes a subtree to a directory of another file system, the files
+ * concurrently. Files already on disk with the git blob SHA of the tree entry
+ * are left as they are, so that an interrupted run can be resumed, or a
+ * directory brought to another revision, writing only what differs.
+ */
+public class Materializer {
+
+	private final ContentCache cache;
+	private final Executor executor;
+
+	public Materializer(ContentCache cache, Executor executor) {
+		this.cache = Objects.requireNonNull(cache);
+		this.executor = Objects.requireNonNull(executor);
+	}
+
+	/**
+	 * Writes <code>root</code>, a directory or a file, to
+	 * <code>directory</code>: the files below a directory to the same relative
+	 * paths, a file to its name.
+	 *
+	 * @return the number of files written, leaving out the files which were
+	 *         already up to date
+	 */
+	public int materialize(GitHubPath root, Path directory) throws IOException {
+		List<Path> paths;
+		GitHubPath base;
+		if ((root.getNameCount() > 0) && !cache.getEntry(root).isTree()) {
+			paths = List.of(root);
+			base = root.getParent();
+		} else {
+			paths = new TreeWalk(cache).walk(root, Integer.MAX_VALUE);
+			base = root;
+		}
+		Files.createDirectories(directory);
+		AtomicInteger written = new AtomicInteger();
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		for (Path path : paths) {
+			GitHubPath p = (GitHubPath) path;
+			if (p.getNameCount() == 0) {
+				continue;
+			}
+			TreeEntry entry = cache.getEntry(p);
+			Path target = directory;
+			for (Path name : base.relativize(p)) {
+				target = target.resolve(name.toString());
+			}
+			if (entry.isTree()) {
+				Files.createDirectories(target);
+			} else if (entry.isBlob()) {
+				Path file = target;
+				futures.add(CompletableFuture.runAsync(() -> {
+					try {
+						if (write(new FileContent(cache, p, entry), entry, file)) {
+							written.incrementAndGet();
+						}
+					} catch (IOException ex) {
+						throw new UncheckedIOException(ex);
+					}
+				}, executor));
+			}
+		}
+		for (CompletableFuture<Void> future : futures) {
+			try {
+				future.join();
+			} catch (CompletionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				throw ex;
+			}
+		}
+		return written.get();
+	}
+
+	private static boolean write(FileContent content, TreeEntry entry, Path file) throws IOException {
+		if (isUpToDate(file, entry)) {
+			return false;
+		}
+		// written aside then moved, so that an interrupted copy is never taken as the file
+		Path tmp = file.resolveSibling(file.getFileName() + ".githubfs.tmp");
+		try {
+			content.copyTo(tmp);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+		return true;
+	}
+
+	/**
+	 * @return whether the file holds the blob of the entry, comparing the
+	 *         sizes first and hashing the file only if they are equal
+	 */
+	static boolean isUpToDate(Path file, TreeEntry entry) throws IOException {
+		if (!Files.isRegularFile(file) || (Files.size(file) != entry.getSize())) {
+			return false;
+		}
+		MessageDigest digest = PackFile.newDigest();
+		digest.update(("blob " + entry.getSize() + "\0").getBytes(StandardCharsets.US_ASCII));
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				digest.update(buffer, 0, n);
+			}
+		}
+		return PackFile.toHex(digest.digest(), 0).equals(entry.getSha());
+	}
+}
@@ -0,0 +1,145 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Index of the paths of a commit by file name and by extension, built from its
+ * trees. Finding every <code>pom.xml</code> or <code>*.java</code> file then
+ * costs a map lookup instead of a walk listing every directory.
+ */
+public class NameIndex {
+
+	private static final String GLOB_CHARS = "*?[]{}\\";
+
+	private final String commit;
+	private final List<String> paths = new ArrayList<>();
+	private final List<Integer> depths = new ArrayList<>();
+	private final Map<String, List<Integer>> names = new HashMap<>();
+	private final Map<String, List<Integer>> extensions = new HashMap<>();
+
+	private NameIndex(String commit) {
+		this.commit = commit;
+	}
+
+	/**
+	 * Indexes the trees of the commit the cache is pinned to. Trees missing from
+	 * the tree store are fetched with a single recursive request, or one by one
+	 * if the repository is too large for it.
+	 */
+	static NameIndex build(ContentCache cache) throws IOException {
+		String commit = cache.getCommit();
+		TreeStore trees = cache.getTreeStore();
+		NameIndex index = new NameIndex(commit);
+		Tree root = trees.getCachedCommitTree(commit);
+		boolean fetched = false;
+		if (root == null) {
+			root = cache.getTreeRecursive(commit, true);
+			fetched = true;
+			if (root == null) {
+				root = cache.getRootTree();
+			}
+		}
+		index.add(cache, root, "", 1, fetched);
+		return index;
+	}
+
+	private boolean add(ContentCache cache, Tree tree, String prefix, int depth, boolean fetched)
+			throws IOException {
+		for (TreeEntry entry : tree.getEntries()) {
+			String path = prefix + entry.getName();
+			int id = paths.size();
+			paths.add(path);
+			depths.add(depth);
+			names.computeIfAbsent(entry.getName(), n -> new ArrayList<>()).add(id);
+			int dot = entry.getName().lastIndexOf('.');
+			if (dot >= 0) {
+				extensions.computeIfAbsent(entry.getName().substring(dot + 1), e -> new ArrayList<>()).add(id);
+			}
+			if (entry.isTree()) {
+				Tree child = cache.getTreeStore().get(entry.getSha());
+				if ((child == null) && !fetched) {
+					// most of the trees are likely missing as well
+					fetched = true;
+					cache.getTreeRecursive(cache.getCommit(), true);
+					child = cache.getTreeStore().get(entry.getSha());
+				}
+				if (child == null) {
+					child = cache.getTree(entry);
+				}
+				fetched = add(cache, child, path + "/", depth + 1, fetched);
+			}
+		}
+		return fetched;
+	}
+
+	public String getCommit() {
+		return commit;
+	}
+
+	public int size() {
+		return paths.size();
+	}
+
+	/**
+	 * @param root     the directory to search
+	 * @param maxDepth the maximum number of levels below <code>root</code>
+	 * @param glob     a glob pattern matched against the file names; plain names
+	 *                 and <code>*.ext</code> patterns are looked up in the index,
+	 *                 other patterns are matched against every indexed name
+	 * @return the matching paths, in the order of a walk
+	 */
+	public List<Path> find(GitHubPath root, int maxDepth, String glob) {
+		String sub = ContentFactory.toApiPath(root.toAbsolutePath());
+		String prefix = sub.isEmpty() ? "" : sub + "/";
+		int rootDepth = root.toAbsolutePath().getNameCount();
+
+		List<Integer> candidates;
+		String suffix = null;
+		if (isLiteral(glob)) {
+			candidates = names.getOrDefault(glob, Collections.emptyList());
+		} else if (glob.startsWith("*") && isLiteral(glob.substring(1)) && (glob.indexOf('.') == 1)) {
+			suffix = glob.substring(1);
+			candidates = extensions.getOrDefault(suffix.substring(suffix.lastIndexOf('.') + 1),
+					Collections.emptyList());
+		} else {
+			PathMatcher matcher = root.getFileSystem().getPathMatcher("glob:" + glob);
+			candidates = new ArrayList<>();
+			for (Map.Entry<String, List<Integer>> name : names.entrySet()) {
+				if (matcher.matches(root.getFileSystem().getPath(name.getKey()))) {
+					candidates.addAll(name.getValue());
+				}
+			}
+			Collections.sort(candidates);
+		}
+
+		List<Path> result = new ArrayList<>();
+		for (int id : candidates) {
+			String path = paths.get(id);
+			if (((suffix != null) && !path.endsWith(suffix)) || (depths.get(id) - rootDepth > maxDepth)) {
+				continue;
+			}
+			if (path.equals(sub) || path.startsWith(prefix)) {
+				result.add(root.getFileSystem().getPath("/" + path));
+			}
+		}
+		return result;
+	}
+
+	private static boolean isLiteral(String glob) {
+		for (int i = 0; i < glob.length(); i++) {
+			if ((GLOB_CHARS.indexOf(glob.charAt(i)) >= 0) || (glob.charAt(i) == '/')) {
+				return false;
+			}
+		}
+		return !glob.isEmpty();
+	}
+}
@@ -0,0 +1,452 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.github.pierre_ernst.githubfs.model.PackFile.RawObject;
+
+/**
+ * Fetches every object of a commit, without its history, as a single pack over
+ * the git smart HTTP protocol. Blobs go to the blob store and trees to the
+ * tree store, so the whole revision is then read without any other request.
+ * The pack is written to a temporary file as it is received and parsed, and
+ * its deltas are resolved from that file once it is complete.
+ */
+public class PackFetch {
+
+	private static final List<String> CAPABILITIES = Arrays.asList("side-band-64k", "side-band", "ofs-delta",
+			"shallow", "no-progress");
+
+	private final BlobClient client;
+	private final String repository;
+
+	/**
+	 * @param repository the repository, as <code>owner/name</code>
+	 */
+	public PackFetch(BlobClient client, String repository) {
+		this.client = client;
+		this.repository = repository;
+	}
+
+	/**
+	 * @param blobs the blob store receiving the files, or <code>null</code> to
+	 *              only keep the trees
+	 * @return the number of objects received
+	 */
+	public int fetch(String commit, TreeStore trees, BlobStore blobs) throws IOException {
+		Set<String> capabilities = advertisedCapabilities();
+		Path file = Files.createTempFile("githubfs-", ".pack");
+		try {
+			List<Received> received;
+			try (InputStream response = client.uploadPack(repository, request(commit, capabilities))) {
+				boolean sideBand = capabilities.contains("side-band-64k") || capabilities.contains("side-band");
+				received = receive(skipNegotiation(response, sideBand), file);
+			}
+			store(PackFile.openUnindexed(file), received, commit, trees, blobs);
+			return received.size();
+		} finally {
+			try {
+				Files.deleteIfExists(file);
+			} catch (IOException ex) {
+				// still mapped on some platforms
+				file.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	private Set<String> advertisedCapabilities() throws IOException {
+		Set<String> capabilities = new HashSet<>();
+		try (InputStream in = client.openUploadPackRefs(repository)) {
+			byte[] packet = readPacket(in);
+			if ((packet != null) && new String(packet, StandardCharsets.UTF_8).startsWith("# service=")) {
+				// the service announcement ends with its own flush
+				readPacket(in);
+				packet = readPacket(in);
+			}
+			if (packet != null) {
+				// the capabilities follow the first ref, after a NUL
+				String line = new String(packet, StandardCharsets.UTF_8).trim();
+				int index = line.indexOf('\0');
+				if (index >= 0) {
+					capabilities.addAll(Arrays.asList(line.substring(index + 1).split(" ")));
+				}
+			}
+		}
+		return capabilities;
+	}
+
+	private static byte[] request(String commit, Set<String> advertised) throws IOException {
+		List<String> wanted = new ArrayList<>();
+		for (String capability : CAPABILITIES) {
+			if (advertised.contains(capability)) {
+				wanted.add(capability);
+			}
+		}
+		if (wanted.contains("side-band-64k")) {
+			wanted.remove("side-band");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writePacket(out, "want " + commit + (wanted.isEmpty() ? "" : " " + String.join(" ", wanted)) + "\n");
+		if (advertised.contains("shallow")) {
+			writePacket(out, "deepen 1\n");
+		}
+		out.write("0000".getBytes(StandardCharsets.US_ASCII));
+		writePacket(out, "done\n");
+		return out.toByteArray();
+	}
+
+	/**
+	 * Skips the shallow commits and the NAK answered before the pack.
+	 */
+	private static InputStream skipNegotiation(InputStream in, boolean sideBand) throws IOException {
+		while (true) {
+			byte[] packet = readPacket(in);
+			if (packet == null) {
+				continue;
+			}
+			String line = new String(packet, StandardCharsets.UTF_8).trim();
+			if (line.startsWith("ERR ")) {
+				throw new IOException(line.substring("ERR ".length()));
+			}
+			if (line.equals("NAK") || line.startsWith("ACK ")) {
+				return sideBand ? new SideBandInputStream(in) : in;
+			}
+		}
+	}
+
+	/**
+	 * An object of the pack, with its SHA unless it is a delta.
+	 */
+	private static final class Received {
+
+		final long offset;
+		final int type;
+		final long size;
+		final String sha;
+
+		Received(long offset, int type, long size, String sha) {
+			this.offset = offset;
+			this.type = type;
+			this.size = size;
+			this.sha = sha;
+		}
+	}
+
+	private static List<Received> receive(InputStream in, Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file)) {
+			PackReader reader = new PackReader(in, out);
+			byte[] signature = new byte[4];
+			for (int i = 0; i < 4; i++) {
+				signature[i] = (byte) reader.read();
+			}
+			if (!"PACK".equals(new String(signature, StandardCharsets.US_ASCII))) {
+				throw new IOException("Not a pack");
+			}
+			reader.readInt();
+			int count = reader.readInt();
+			List<Received> result = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				long offset = reader.offset();
+				int c = reader.read();
+				int type = (c >> 4) & 7;
+				long size = c & 15;
+				int shift = 4;
+				while ((c & 0x80) != 0) {
+					c = reader.read();
+					size |= (long) (c & 0x7f) << shift;
+					shift += 7;
+				}
+				MessageDigest digest = null;
+				if (type == PackFile.OBJ_OFS_DELTA) {
+					do {
+						c = reader.read();
+					} while ((c & 0x80) != 0);
+				} else if (type == PackFile.OBJ_REF_DELTA) {
+					for (int j = 0; j < 20; j++) {
+						reader.read();
+					}
+				} else if ((type >= PackFile.OBJ_COMMIT) && (type <= PackFile.OBJ_TAG)) {
+					// hashed while it is inflated, the SHA of a delta is only known once rebuilt
+					digest = PackFile.newDigest();
+					digest.update((PackFile.TYPES[type] + " " + size).getBytes(StandardCharsets.US_ASCII));
+					digest.update((byte) 0);
+				} else {
+					throw new IOException("Invalid object type " + type + " at " + offset);
+				}
+				reader.inflate(size, digest);
+				String sha = (digest == null) ? null : PackFile.toHex(digest.digest(), 0);
+				result.add(new Received(offset, type, size, sha));
+			}
+			reader.checkTrailer();
+			return result;
+		}
+	}
+
+	private static void store(PackFile pack, List<Received> received, String commit, TreeStore trees,
+			BlobStore blobs) throws IOException {
+		Map<String, Long> offsets = new HashMap<>();
+		PackFile.BaseReader bases = new PackFile.BaseReader() {
+
+			@Override
+			public RawObject read(String sha) throws IOException {
+				Long offset = offsets.get(sha);
+				if (offset == null) {
+					throw new NoSuchFileException(sha);
+				}
+				return pack.read(offset, this);
+			}
+		};
+		Map<String, Long> sizes = new HashMap<>();
+		Map<String, byte[]> treeData = new HashMap<>();
+		String root = null;
+
+		List<Received> pending = new ArrayList<>();
+		for (Received object : received) {
+			if (object.sha == null) {
+				pending.add(object);
+				continue;
+			}
+			offsets.put(object.sha, object.offset);
+			if (object.type == PackFile.OBJ_BLOB) {
+				sizes.put(object.sha, object.size);
+				if ((blobs != null) && !blobs.contains(object.sha)) {
+					try (InputStream in = pack.open(object.offset, bases)) {
+						blobs.put(object.sha, object.size, in);
+					}
+				}
+			} else if (object.type == PackFile.OBJ_TREE) {
+				treeData.put(object.sha, pack.read(object.offset, bases).data);
+			} else if ((object.type == PackFile.OBJ_COMMIT) && object.sha.equals(commit)) {
+				root = PackFile.header(pack.read(object.offset, bases).data, "tree");
+			}
+		}
+		// a delta may refer by SHA to a base which is itself a later delta
+		while (!pending.isEmpty()) {
+			List<Received> next = new ArrayList<>();
+			for (Received delta : pending) {
+				RawObject object;
+				try {
+					object = pack.read(delta.offset, bases);
+				} catch (NoSuchFileException ex) {
+					next.add(delta);
+					continue;
+				}
+				String sha = PackFile.hash(object.type, object.data);
+				offsets.put(sha, delta.offset);
+				if (object.type == PackFile.OBJ_BLOB) {
+					sizes.put(sha, (long) object.data.length);
+					if ((blobs != null) && !blobs.contains(sha)) {
+						blobs.put(sha, object.data.length, new ByteArrayInputStream(object.data));
+					}
+				} else if (object.type == PackFile.OBJ_TREE) {
+					treeData.put(sha, object.data);
+				} else if ((object.type == PackFile.OBJ_COMMIT) && sha.equals(commit)) {
+					root = PackFile.header(object.data, "tree");
+				}
+			}
+			if (next.size() == pending.size()) {
+				throw new IOException("Missing delta base in the pack of " + commit);
+			}
+			pending = next;
+		}
+
+		if ((root == null) || !treeData.containsKey(root)) {
+			throw new IOException("The pack received does not contain " + commit);
+		}
+		Tree rootTree = null;
+		for (Map.Entry<String, byte[]> tree : treeData.entrySet()) {
+			Tree t = new Tree(tree.getKey(), PackFile.parseTree(tree.getValue(), sha -> sizes.getOrDefault(sha, 0L)));
+			if (tree.getKey().equals(root)) {
+				rootTree = t;
+			} else {
+				trees.intern(t);
+			}
+		}
+		trees.internCommitTree(commit, rootTree);
+	}
+
+	private static byte[] readPacket(InputStream in) throws IOException {
+		byte[] length = in.readNBytes(4);
+		if (length.length < 4) {
+			throw new EOFException("Truncated pkt-line");
+		}
+		int size = Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16);
+		if (size < 4) {
+			// a flush, or a delimiter
+			return null;
+		}
+		byte[] data = in.readNBytes(size - 4);
+		if (data.length < size - 4) {
+			throw new EOFException("Truncated pkt-line");
+		}
+		return data;
+	}
+
+	private static void writePacket(OutputStream out, String line) throws IOException {
+		byte[] data = line.getBytes(StandardCharsets.UTF_8);
+		out.write(String.format("%04x", data.length + 4).getBytes(StandardCharsets.US_ASCII));
+		out.write(data);
+	}
+
+	/**
+	 * Reads the pack data out of the side band, where the server multiplexes
+	 * it with its progress and error messages.
+	 */
+	private static final class SideBandInputStream extends InputStream {
+
+		private final InputStream in;
+		private byte[] packet = new byte[0];
+		private int position;
+		private boolean done;
+
+		SideBandInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (position >= packet.length) {
+				if (done) {
+					return -1;
+				}
+				byte[] next = readPacket(in);
+				if (next == null) {
+					done = true;
+				} else if (next[0] == 3) {
+					throw new IOException(new String(next, 1, next.length - 1, StandardCharsets.UTF_8).trim());
+				} else if (next[0] == 1) {
+					packet = next;
+					position = 1;
+				}
+			}
+			int n = Math.min(len, packet.length - position);
+			System.arraycopy(packet, position, b, off, n);
+			position += n;
+			return n;
+		}
+	}
+
+	/**
+	 * Parses a pack as it is received, copying it to a file and checking its
+	 * trailing SHA-1. Objects are inflated only to find where they end.
+	 */
+	private static final class PackReader {
+
+		private final InputStream in;
+		private final OutputStream out;
+		private final MessageDigest digest = PackFile.newDigest();
+		private final Inflater inflater = new Inflater();
+		private final byte[] buffer = new byte[65536];
+		private final byte[] output = new byte[65536];
+		// the offset in the pack of the start of the buffer
+		private long start;
+		private int position;
+		private int limit;
+		// the trailer is not part of the checksum
+		private boolean trailer;
+
+		PackReader(InputStream in, OutputStream out) {
+			this.in = in;
+			this.out = out;
+		}
+
+		long offset() {
+			return start + position;
+		}
+
+		int read() throws IOException {
+			if (position == limit) {
+				fill();
+			}
+			return buffer[position++] & 0xff;
+		}
+
+		int readInt() throws IOException {
+			return (read() << 24) | (read() << 16) | (read() << 8) | read();
+		}
+
+		private void fill() throws IOException {
+			// the whole buffer has been consumed
+			if (!trailer) {
+				digest.update(buffer, 0, limit);
+			}
+			start += limit;
+			int n = in.read(buffer);
+			if (n < 0) {
+				throw new EOFException("Truncated pack");
+			}
+			out.write(buffer, 0, n);
+			position = 0;
+			limit = n;
+		}
+
+		void inflate(long size, MessageDigest objectDigest) throws IOException {
+			inflater.reset();
+			long total = 0;
+			try {
+				while (!inflater.finished()) {
+					if (inflater.needsInput()) {
+						if (position == limit) {
+							fill();
+						}
+						inflater.setInput(buffer, position, limit - position);
+						position = limit;
+					}
+					int n = inflater.inflate(output);
+					if ((n == 0) && inflater.needsDictionary()) {
+						throw new IOException("Invalid compressed object at " + offset());
+					}
+					total += n;
+					if (objectDigest != null) {
+						objectDigest.update(output, 0, n);
+					}
+				}
+			} catch (DataFormatException ex) {
+				throw new IOException(ex);
+			}
+			// gives back what follows the compressed data
+			position = limit - inflater.getRemaining();
+			if (total != size) {
+				throw new IOException("Object of " + total + " bytes instead of " + size + " in the pack");
+			}
+		}
+
+		void checkTrailer() throws IOException {
+			digest.update(buffer, 0, position);
+			trailer = true;
+			byte[] expected = digest.digest();
+			byte[] actual = new byte[20];
+			for (int i = 0; i < 20; i++) {
+				actual[i] = (byte) read();
+			}
+			inflater.end();
+			if (!Arrays.equals(expected, actual)) {
+				throw new IOException("Pack checksum mismatch");
+			}
+		}
+	}
+}
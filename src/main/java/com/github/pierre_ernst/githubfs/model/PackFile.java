@@ -0,0 +1,530 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A git pack and its index, both memory mapped. Objects are looked up by a
+ * binary search of the index, and deltified objects are rebuilt from their
+ * base, with the bases recently used kept in memory.
+ */
+final class PackFile {
+
+	static final int OBJ_COMMIT = 1;
+	static final int OBJ_TREE = 2;
+	static final int OBJ_BLOB = 3;
+	static final int OBJ_TAG = 4;
+	static final int OBJ_OFS_DELTA = 6;
+	static final int OBJ_REF_DELTA = 7;
+
+	static final String[] TYPES = { null, TreeEntry.COMMIT, TreeEntry.TREE, TreeEntry.BLOB, "tag" };
+
+	// a single mapping cannot exceed 2 GB
+	private static final int SEGMENT_SIZE = 1 << 30;
+
+	private static final long BASE_CACHE_SIZE = 16L * 1024L * 1024L;
+
+	/**
+	 * An object read whole, with its type.
+	 */
+	static final class RawObject {
+
+		final int type;
+		final byte[] data;
+
+		RawObject(int type, byte[] data) {
+			this.type = type;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Finds the base of a delta referring to it by SHA, which may be outside of
+	 * this pack.
+	 */
+	interface BaseReader {
+
+		RawObject read(String sha) throws IOException;
+	}
+
+	private final Path path;
+	private final ByteBuffer index;
+	private final ByteBuffer[] segments;
+	private final int count;
+	private final int fanout;
+	private final int names;
+	private final int offsets;
+	private final int largeOffsets;
+	private final Map<Long, RawObject> bases = new LinkedHashMap<>(16, 0.75f, true);
+	private long basesSize;
+
+	private PackFile(Path path, ByteBuffer index, ByteBuffer[] segments) throws IOException {
+		this.path = path;
+		this.index = index;
+		this.segments = segments;
+		if (index == null) {
+			fanout = -1;
+			count = 0;
+			names = -1;
+			offsets = -1;
+			largeOffsets = -1;
+		} else if (index.getInt(0) == 0xff744f63) {
+			if (index.getInt(4) != 2) {
+				throw new IOException("Unsupported index version " + index.getInt(4) + " in " + path);
+			}
+			fanout = 8;
+			count = index.getInt(fanout + 255 * 4);
+			names = fanout + 256 * 4;
+			offsets = names + count * 24;
+			largeOffsets = offsets + count * 4;
+		} else {
+			// version 1: the fan-out table, then an offset and a name per object
+			fanout = 0;
+			count = index.getInt(fanout + 255 * 4);
+			names = fanout + 256 * 4 + 4;
+			offsets = names - 4;
+			largeOffsets = -1;
+		}
+	}
+
+	/**
+	 * @param idx the <code>.idx</code> file, next to its <code>.pack</code>
+	 */
+	static PackFile open(Path idx) throws IOException {
+		String name = idx.getFileName().toString();
+		Path pack = idx.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack");
+		ByteBuffer index;
+		try (FileChannel channel = FileChannel.open(idx, StandardOpenOption.READ)) {
+			index = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		return new PackFile(pack, index, map(pack));
+	}
+
+	/**
+	 * Opens a pack without its index: objects are only read by offset.
+	 */
+	static PackFile openUnindexed(Path pack) throws IOException {
+		return new PackFile(pack, null, map(pack));
+	}
+
+	private static ByteBuffer[] map(Path pack) throws IOException {
+		List<ByteBuffer> segments = new ArrayList<>();
+		try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.READ)) {
+			long size = channel.size();
+			for (long position = 0; position < size; position += SEGMENT_SIZE) {
+				segments.add(channel.map(MapMode.READ_ONLY, position, Math.min(SEGMENT_SIZE, size - position)));
+			}
+		}
+		return segments.toArray(new ByteBuffer[0]);
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the offset of the object in the pack, or <code>-1</code> if it is
+	 *         not in this pack
+	 */
+	long find(byte[] id) {
+		if (index == null) {
+			return -1;
+		}
+		int first = id[0] & 0xff;
+		int low = (first == 0) ? 0 : index.getInt(fanout + (first - 1) * 4);
+		int high = index.getInt(fanout + first * 4);
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int position = (largeOffsets < 0) ? names + middle * 24 : names + middle * 20;
+			int comparison = 0;
+			for (int i = 0; (i < 20) && (comparison == 0); i++) {
+				comparison = (index.get(position + i) & 0xff) - (id[i] & 0xff);
+			}
+			if (comparison == 0) {
+				return offset(middle);
+			}
+			if (comparison < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return -1;
+	}
+
+	private long offset(int i) {
+		if (largeOffsets < 0) {
+			return index.getInt(offsets + i * 24) & 0xffffffffL;
+		}
+		int offset = index.getInt(offsets + i * 4);
+		if (offset >= 0) {
+			return offset;
+		}
+		return index.getLong(largeOffsets + (offset & 0x7fffffff) * 8);
+	}
+
+	/**
+	 * @return the type of the object, after resolving its deltas
+	 */
+	int type(long offset, BaseReader reader) throws IOException {
+		long position = offset;
+		while (true) {
+			Header header = header(position);
+			if (header.type == OBJ_OFS_DELTA) {
+				position = header.base;
+			} else if (header.type == OBJ_REF_DELTA) {
+				return reader.read(header.baseSha).type;
+			} else {
+				return header.type;
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the object, read from its header or from the header
+	 *         of its delta without rebuilding it
+	 */
+	long size(long offset) throws IOException {
+		Header header = header(offset);
+		if ((header.type != OBJ_OFS_DELTA) && (header.type != OBJ_REF_DELTA)) {
+			return header.size;
+		}
+		try (InputStream in = inflate(header.data)) {
+			readVarint(in);
+			return readVarint(in);
+		}
+	}
+
+	/**
+	 * @return a stream over the object, inflated as it is read unless it has
+	 *         to be rebuilt from a delta
+	 */
+	InputStream open(long offset, BaseReader reader) throws IOException {
+		Header header = header(offset);
+		if ((header.type != OBJ_OFS_DELTA) && (header.type != OBJ_REF_DELTA)) {
+			return inflate(header.data);
+		}
+		return new ByteArrayInputStream(read(offset, reader).data);
+	}
+
+	RawObject read(long offset, BaseReader reader) throws IOException {
+		// walks down the chain of deltas to its base, then applies them back up
+		List<Header> deltas = new ArrayList<>();
+		RawObject object = null;
+		long position = offset;
+		while (object == null) {
+			object = cachedBase(position);
+			if (object != null) {
+				break;
+			}
+			Header header = header(position);
+			if (header.type == OBJ_OFS_DELTA) {
+				deltas.add(header);
+				position = header.base;
+			} else if (header.type == OBJ_REF_DELTA) {
+				deltas.add(header);
+				object = reader.read(header.baseSha);
+			} else {
+				object = new RawObject(header.type, inflate(header.data, header.size));
+			}
+		}
+		for (int i = deltas.size() - 1; i >= 0; i--) {
+			Header delta = deltas.get(i);
+			if (delta.type == OBJ_OFS_DELTA) {
+				cacheBase(delta.base, object);
+			}
+			object = new RawObject(object.type, applyDelta(object.data, inflate(delta.data, delta.size)));
+		}
+		return object;
+	}
+
+	private synchronized RawObject cachedBase(long offset) {
+		return bases.get(offset);
+	}
+
+	private synchronized void cacheBase(long offset, RawObject object) {
+		if ((object.data.length > BASE_CACHE_SIZE / 4) || bases.containsKey(offset)) {
+			return;
+		}
+		bases.put(offset, object);
+		basesSize += object.data.length;
+		for (Iterator<RawObject> it = bases.values().iterator(); it.hasNext() && (basesSize > BASE_CACHE_SIZE);) {
+			basesSize -= it.next().data.length;
+			it.remove();
+		}
+	}
+
+	private static final class Header {
+
+		int type;
+		long size;
+		// the start of the compressed data
+		long data;
+		long base;
+		String baseSha;
+	}
+
+	private Header header(long offset) throws IOException {
+		Header header = new Header();
+		long position = offset;
+		int c = byteAt(position++);
+		header.type = (c >> 4) & 7;
+		header.size = c & 15;
+		int shift = 4;
+		while ((c & 0x80) != 0) {
+			c = byteAt(position++);
+			header.size |= (long) (c & 0x7f) << shift;
+			shift += 7;
+		}
+		if (header.type == OBJ_OFS_DELTA) {
+			c = byteAt(position++);
+			long distance = c & 0x7f;
+			while ((c & 0x80) != 0) {
+				c = byteAt(position++);
+				distance = ((distance + 1) << 7) | (c & 0x7f);
+			}
+			header.base = offset - distance;
+		} else if (header.type == OBJ_REF_DELTA) {
+			byte[] sha = new byte[20];
+			for (int i = 0; i < 20; i++) {
+				sha[i] = (byte) byteAt(position++);
+			}
+			header.baseSha = toHex(sha, 0);
+		} else if ((header.type < OBJ_COMMIT) || (header.type > OBJ_TAG)) {
+			throw new IOException("Invalid object type " + header.type + " at " + offset + " in " + path);
+		}
+		header.data = position;
+		return header;
+	}
+
+	private int byteAt(long position) throws IOException {
+		int segment = (int) (position / SEGMENT_SIZE);
+		if (segment >= segments.length) {
+			throw new EOFException(path.toString());
+		}
+		return segments[segment].get((int) (position % SEGMENT_SIZE)) & 0xff;
+	}
+
+	private InputStream inflate(long position) {
+		return new InflaterInputStream(new SegmentInputStream(position), new Inflater(), 8192) {
+
+			@Override
+			public void close() throws IOException {
+				super.close();
+				inf.end();
+			}
+		};
+	}
+
+	private byte[] inflate(long position, long size) throws IOException {
+		if (size > Integer.MAX_VALUE - 8) {
+			throw new IOException("Object of " + size + " bytes at " + position + " in " + path + " is too large");
+		}
+		byte[] data = new byte[(int) size];
+		try (InputStream in = inflate(position)) {
+			int read = in.readNBytes(data, 0, data.length);
+			if (read != data.length) {
+				throw new EOFException("Truncated object at " + position + " in " + path);
+			}
+		}
+		return data;
+	}
+
+	private static long readVarint(InputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		int c;
+		do {
+			c = in.read();
+			if (c < 0) {
+				throw new EOFException();
+			}
+			value |= (long) (c & 0x7f) << shift;
+			shift += 7;
+		} while ((c & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Gives the size of a blob listed in a tree.
+	 */
+	interface SizeReader {
+
+		long size(String sha) throws IOException;
+	}
+
+	/**
+	 * Parses a tree: for each entry, its octal mode, a space, its name, a NUL
+	 * and its binary SHA.
+	 */
+	static List<TreeEntry> parseTree(byte[] data, SizeReader sizes) throws IOException {
+		List<TreeEntry> result = new ArrayList<>();
+		int position = 0;
+		while (position < data.length) {
+			int space = indexOf(data, (byte) ' ', position);
+			int nul = indexOf(data, (byte) 0, space);
+			if ((space < 0) || (nul < 0) || (nul + 21 > data.length)) {
+				throw new IOException("Invalid tree");
+			}
+			String mode = new String(data, position, space - position, StandardCharsets.US_ASCII);
+			String name = new String(data, space + 1, nul - space - 1, StandardCharsets.UTF_8);
+			String sha = toHex(data, nul + 1);
+			String type = "40000".equals(mode) ? TreeEntry.TREE
+					: "160000".equals(mode) ? TreeEntry.COMMIT : TreeEntry.BLOB;
+			long size = TreeEntry.BLOB.equals(type) ? sizes.size(sha) : 0;
+			result.add(new TreeEntry(name, type, sha, size));
+			position = nul + 21;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the value of a header line of a commit or of a tag
+	 */
+	static String header(byte[] data, String key) throws IOException {
+		for (String line : new String(data, StandardCharsets.UTF_8).split("\n")) {
+			if (line.isEmpty()) {
+				break;
+			}
+			if (line.startsWith(key + " ")) {
+				return line.substring(key.length() + 1);
+			}
+		}
+		throw new IOException("No " + key + " in object");
+	}
+
+	/**
+	 * @return the SHA of an object, as git computes it over its type, its size
+	 *         and its content
+	 */
+	static String hash(int type, byte[] data) {
+		MessageDigest digest = newDigest();
+		digest.update((TYPES[type] + " " + data.length).getBytes(StandardCharsets.US_ASCII));
+		digest.update((byte) 0);
+		digest.update(data);
+		return toHex(digest.digest(), 0);
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	static String toHex(byte[] data, int offset) {
+		StringBuilder sha = new StringBuilder(40);
+		for (int i = offset; i < offset + 20; i++) {
+			sha.append(Character.forDigit((data[i] >> 4) & 15, 16)).append(Character.forDigit(data[i] & 15, 16));
+		}
+		return sha.toString();
+	}
+
+	private static int indexOf(byte[] data, byte b, int from) {
+		if (from < 0) {
+			return -1;
+		}
+		for (int i = from; i < data.length; i++) {
+			if (data[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static byte[] applyDelta(byte[] base, byte[] delta) throws IOException {
+		InputStream header = new ByteArrayInputStream(delta);
+		long baseSize = readVarint(header);
+		long resultSize = readVarint(header);
+		if (baseSize != base.length) {
+			throw new IOException("Delta expects a base of " + baseSize + " bytes, not " + base.length);
+		}
+		byte[] result = new byte[(int) resultSize];
+		int position = delta.length - header.available();
+		int length = 0;
+		while (position < delta.length) {
+			int op = delta[position++] & 0xff;
+			if ((op & 0x80) != 0) {
+				// copies a range of the base
+				int offset = 0;
+				int size = 0;
+				for (int i = 0; i < 4; i++) {
+					if ((op & (1 << i)) != 0) {
+						offset |= (delta[position++] & 0xff) << (8 * i);
+					}
+				}
+				for (int i = 0; i < 3; i++) {
+					if ((op & (0x10 << i)) != 0) {
+						size |= (delta[position++] & 0xff) << (8 * i);
+					}
+				}
+				if (size == 0) {
+					size = 0x10000;
+				}
+				System.arraycopy(base, offset, result, length, size);
+				length += size;
+			} else if (op != 0) {
+				// inserts the next bytes of the delta
+				System.arraycopy(delta, position, result, length, op);
+				position += op;
+				length += op;
+			} else {
+				throw new IOException("Invalid delta instruction");
+			}
+		}
+		if (length != result.length) {
+			throw new IOException("Delta produced " + length + " bytes instead of " + result.length);
+		}
+		return result;
+	}
+
+	private class SegmentInputStream extends InputStream {
+
+		private long position;
+
+		SegmentInputStream(long position) {
+			this.position = position;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xff);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			int segment = (int) (position / SEGMENT_SIZE);
+			if (segment >= segments.length) {
+				return -1;
+			}
+			ByteBuffer buffer = segments[segment].duplicate();
+			buffer.position((int) (position % SEGMENT_SIZE));
+			int n = Math.min(len, buffer.remaining());
+			if (n == 0) {
+				return (len == 0) ? 0 : -1;
+			}
+			buffer.get(b, off, n);
+			position += n;
+			return n;
+		}
+	}
+}
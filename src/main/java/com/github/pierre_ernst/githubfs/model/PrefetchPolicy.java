@@ -0,0 +1,86 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which files to fetch into the blob store as soon as their directory is
+ * listed: those whose name matches one of the glob patterns, up to a size.
+ */
+public class PrefetchPolicy {
+
+	public static final long DEFAULT_MAX_SIZE = 64L * 1024L;
+
+	private final List<String> globs;
+	private final List<PathMatcher> matchers = new ArrayList<>();
+	private final long maxSize;
+
+	public PrefetchPolicy(Collection<String> globs, long maxSize) {
+		this.globs = Collections.unmodifiableList(new ArrayList<>(globs));
+		for (String glob : globs) {
+			matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param globs comma separated glob patterns, such as
+	 *              <code>pom.xml,build.gradle{,.kts},package.json</code>; the
+	 *              commas of a group between braces do not separate patterns
+	 */
+	public static PrefetchPolicy parse(String globs, long maxSize) {
+		List<String> list = new ArrayList<>();
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i <= globs.length(); i++) {
+			char c = (i < globs.length()) ? globs.charAt(i) : ',';
+			if (c == '{') {
+				depth++;
+			} else if ((c == '}') && (depth > 0)) {
+				depth--;
+			} else if ((c == ',') && ((depth == 0) || (i == globs.length()))) {
+				String glob = globs.substring(start, i).trim();
+				if (!glob.isEmpty()) {
+					list.add(glob);
+				}
+				start = i + 1;
+			}
+		}
+		return new PrefetchPolicy(list, maxSize);
+	}
+
+	public List<String> getGlobs() {
+		return globs;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public boolean matches(String name, long size) {
+		if (size > maxSize) {
+			return false;
+		}
+		try {
+			for (PathMatcher matcher : matchers) {
+				if (matcher.matches(Paths.get(name))) {
+					return true;
+				}
+			}
+		} catch (InvalidPathException ex) {
+			// NO-OP, not a valid local name
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "PrefetchPolicy [globs=" + globs + ", maxSize=" + maxSize + "]";
+	}
+}
@@ -0,0 +1,164 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHCompare;
+import org.kohsuke.github.GHRef;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GHTree;
+import org.kohsuke.github.GHTreeEntry;
+
+/**
+ * Reads through the GitHub REST API: refs and trees with the API client, and
+ * blobs streamed by a {@link BlobClient} if there is one.
+ */
+public class RestBackend implements ContentBackend {
+
+	// the compare endpoint silently truncates its file list past this count
+	static final int MAX_COMPARE_FILES = 300;
+
+	private final GHRepository repo;
+	private final BlobClient client;
+
+	/**
+	 * @param client the client streaming files and sending requests
+	 *               asynchronously, or <code>null</code> to read through the API
+	 *               client
+	 */
+	public RestBackend(GHRepository repo, BlobClient client) {
+		this.repo = Objects.requireNonNull(repo);
+		this.client = client;
+	}
+
+	public GHRepository getRepository() {
+		return repo;
+	}
+
+	public BlobClient getBlobClient() {
+		return client;
+	}
+
+	@Override
+	public String getName() {
+		return repo.getFullName();
+	}
+
+	@Override
+	public String resolveRevision(String revision) throws IOException {
+		return new GitHubPackageUrl(repo, revision).getRevision();
+	}
+
+	@Override
+	public String resolveCommit(String revision) throws IOException {
+		String ref = revision.startsWith("refs/") ? revision.substring("refs/".length()) : revision;
+		GHRef.GHObject target = repo.getRef(ref).getObject();
+		while ("tag".equals(target.getType())) {
+			target = repo.getTagObject(target.getSha()).getObject();
+		}
+		return target.getSha();
+	}
+
+	@Override
+	public Tree getTree(String sha) throws IOException {
+		// the trees endpoint accepts a commit and answers with its root tree
+		GHTree tree = repo.getTree(sha);
+		List<TreeEntry> entries = new ArrayList<>();
+		for (GHTreeEntry entry : tree.getTree()) {
+			entries.add(TreeEntry.of(entry));
+		}
+		return new Tree(tree.getSha(), entries);
+	}
+
+	@Override
+	public CompletableFuture<Tree> getTreeAsync(String sha) {
+		if (client == null) {
+			return ContentBackend.super.getTreeAsync(sha);
+		}
+		return client.getTreeAsync(repo.getFullName(), sha);
+	}
+
+	@Override
+	public List<Tree> getTreeRecursive(String sha) throws IOException {
+		GHTree tree = repo.getTreeRecursive(sha, 1);
+		if (tree.isTruncated()) {
+			return null;
+		}
+		Map<String, String> shas = new HashMap<>();
+		Map<String, List<TreeEntry>> directories = new LinkedHashMap<>();
+		shas.put("", tree.getSha());
+		directories.put("", new ArrayList<>());
+		for (GHTreeEntry entry : tree.getTree()) {
+			String path = entry.getPath();
+			int index = path.lastIndexOf('/');
+			String parent = (index < 0) ? "" : path.substring(0, index);
+			directories.computeIfAbsent(parent, p -> new ArrayList<>()).add(
+					new TreeEntry(path.substring(index + 1), entry.getType(), entry.getSha(), entry.getSize()));
+			if (TreeEntry.TREE.equals(entry.getType())) {
+				shas.put(path, entry.getSha());
+				directories.computeIfAbsent(path, p -> new ArrayList<>());
+			}
+		}
+		List<Tree> result = new ArrayList<>(directories.size());
+		for (Map.Entry<String, List<TreeEntry>> directory : directories.entrySet()) {
+			result.add(new Tree(shas.get(directory.getKey()), directory.getValue()));
+		}
+		return result;
+	}
+
+	@Override
+	public InputStream open(String commit, String path, TreeEntry entry) throws IOException {
+		if (client != null) {
+			// streamed, the API client would buffer the whole file
+			return client.open(repo.getFullName(), commit, path, entry.getSha(), entry.getSize());
+		}
+		return repo.readBlob(entry.getSha());
+	}
+
+	@Override
+	public InputStream openRange(String commit, String path, TreeEntry entry, long offset, long length)
+			throws IOException {
+		if (client == null) {
+			return ContentBackend.super.openRange(commit, path, entry, offset, length);
+		}
+		return client.openRange(repo.getFullName(), commit, path, offset, length);
+	}
+
+	@Override
+	public CompletableFuture<byte[]> readAsync(String commit, String path, TreeEntry entry) {
+		if (client == null) {
+			return ContentBackend.super.readAsync(commit, path, entry);
+		}
+		return client.readAsync(repo.getFullName(), commit, path, entry.getSha(), entry.getSize());
+	}
+
+	@Override
+	public Map<String, String> compare(String base, String head) throws IOException {
+		GHCompare compare = repo.getCompare(base, head);
+		// the files changed since the merge base say nothing of the commits of the base missing from the head
+		GHCompare.Status status = compare.getStatus();
+		if ((status != GHCompare.Status.ahead) && (status != GHCompare.Status.identical)) {
+			return null;
+		}
+		GHCommit.File[] files = compare.getFiles();
+		if ((files == null) || (files.length >= MAX_COMPARE_FILES)) {
+			return null;
+		}
+		Map<String, String> result = new LinkedHashMap<>();
+		for (GHCommit.File file : files) {
+			result.put(file.getFileName(), file.getStatus());
+			if (file.getPreviousFilename() != null) {
+				result.put(file.getPreviousFilename(), "removed");
+			}
+		}
+		return result;
+	}
+}
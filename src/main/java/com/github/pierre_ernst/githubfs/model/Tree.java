@@ -0,0 +1,51 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable listing of a git tree. Being addressed by its SHA, a single
+ * instance is shared by every revision and file system containing it.
+ */
+public final class Tree {
+
+	private final String sha;
+	private final Map<String, TreeEntry> entries;
+
+	public Tree(String sha, List<TreeEntry> entries) {
+		this.sha = Objects.requireNonNull(sha);
+		List<TreeEntry> sorted = new ArrayList<>(entries);
+		sorted.sort(Comparator.comparing(TreeEntry::getName));
+		Map<String, TreeEntry> map = new LinkedHashMap<>();
+		for (TreeEntry entry : sorted) {
+			map.put(entry.getName(), entry);
+		}
+		this.entries = Collections.unmodifiableMap(map);
+	}
+
+	public String getSha() {
+		return sha;
+	}
+
+	public TreeEntry getEntry(String name) {
+		return entries.get(name);
+	}
+
+	public Iterable<TreeEntry> getEntries() {
+		return entries.values();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "Tree [sha=" + sha + ", entry count=" + entries.size() + "]";
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.util.Objects;
+
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHTreeEntry;
+
+public final class TreeEntry {
+
+	public static final String BLOB = "blob";
+	public static final String TREE = "tree";
+	public static final String COMMIT = "commit";
+
+	private final String name;
+	private final String type;
+	private final String sha;
+	private final long size;
+
+	public TreeEntry(String name, String type, String sha, long size) {
+		this.name = Objects.requireNonNull(name);
+		this.type = Objects.requireNonNull(type);
+		this.sha = Objects.requireNonNull(sha);
+		this.size = size;
+	}
+
+	static TreeEntry of(GHTreeEntry entry) {
+		return new TreeEntry(entry.getPath(), entry.getType(), entry.getSha(), entry.getSize());
+	}
+
+	static TreeEntry of(GHContent content) {
+		return new TreeEntry(content.getName(), content.isDirectory() ? TREE : BLOB, content.getSha(),
+				content.getSize());
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public String getSha() {
+		return sha;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public boolean isTree() {
+		return TREE.equals(type);
+	}
+
+	public boolean isBlob() {
+		return BLOB.equals(type);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(name, sha);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TreeEntry other = (TreeEntry) obj;
+		return Objects.equals(name, other.name) && Objects.equals(type, other.type) && Objects.equals(sha, other.sha);
+	}
+
+	@Override
+	public String toString() {
+		return "TreeEntry [name=" + name + ", type=" + type + ", sha=" + sha + "]";
+	}
+}
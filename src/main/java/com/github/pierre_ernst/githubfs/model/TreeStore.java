@@ -0,0 +1,193 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import fr.gnodet.githubfs.GitHubFileSystemMetrics.IOCallable;
+import fr.gnodet.githubfs.jfr.CoalescedRequestEvent;
+
+/**
+ * Trees interned by SHA. Git objects are immutable, so a tree fetched for one
+ * revision is reused as is by any other revision, branch or repository file
+ * system pointing at the same SHA. Entries are softly referenced and are only
+ * dropped under memory pressure, along with the commits pointing at them.
+ * Concurrent fetches of the same SHA share a single request.
+ */
+public class TreeStore {
+
+	private static final TreeStore SHARED = new TreeStore();
+
+	private final Map<String, TreeReference> trees = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Tree> cleared = new ReferenceQueue<>();
+	private final Map<String, String> commitTrees = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<Tree>> pending = new ConcurrentHashMap<>();
+
+	public static TreeStore getShared() {
+		return SHARED;
+	}
+
+	public Tree get(String sha) {
+		expunge();
+		TreeReference ref = trees.get(sha);
+		return (ref == null) ? null : ref.get();
+	}
+
+	public Tree intern(Tree tree) {
+		expunge();
+		TreeReference ref = trees.compute(tree.getSha(), (sha, existing) -> {
+			if ((existing != null) && (existing.get() != null)) {
+				return existing;
+			}
+			return new TreeReference(tree, cleared);
+		});
+		Tree interned = ref.get();
+		return (interned == null) ? tree : interned;
+	}
+
+	public Tree getTree(ContentBackend backend, String sha) throws IOException {
+		Tree tree = get(sha);
+		if (tree == null) {
+			tree = load("tree", sha, () -> {
+				Tree t = get(sha);
+				return (t != null) ? t : intern(backend.getTree(sha));
+			});
+		}
+		return tree;
+	}
+
+	public Tree getCachedCommitTree(String commit) {
+		String sha = commitTrees.get(commit);
+		return (sha == null) ? null : get(sha);
+	}
+
+	public Tree getCommitTree(ContentBackend backend, String commit) throws IOException {
+		Tree cached = getCachedCommitTree(commit);
+		if (cached != null) {
+			return cached;
+		}
+		return load("commit", commit, () -> {
+			Tree t = getCachedCommitTree(commit);
+			if (t == null) {
+				t = intern(backend.getTree(commit));
+				commitTrees.put(commit, t.getSha());
+			}
+			return t;
+		});
+	}
+
+	/**
+	 * Fetches a tree, or the root tree of a commit, with every tree below it at
+	 * once, and interns each of them.
+	 *
+	 * @return the tree, or <code>null</code> if the backend cannot list them at
+	 *         once, such as when the listing is too large to be returned whole
+	 */
+	public Tree getTreeRecursive(ContentBackend backend, String sha, boolean commit) throws IOException {
+		return load("recursive", "recursive:" + sha, () -> {
+			List<Tree> listed = backend.getTreeRecursive(sha);
+			if (listed == null) {
+				return null;
+			}
+			Tree root = null;
+			for (Tree tree : listed) {
+				Tree t = intern(tree);
+				if (root == null) {
+					root = t;
+				}
+			}
+			if (commit) {
+				commitTrees.put(sha, root.getSha());
+			}
+			return root;
+		});
+	}
+
+	public Tree internCommitTree(String commit, Tree tree) {
+		Tree interned = intern(tree);
+		commitTrees.put(commit, interned.getSha());
+		return interned;
+	}
+
+	/**
+	 * @return the number of trees held, leaving out the ones the garbage
+	 *         collector already dropped
+	 */
+	public int size() {
+		expunge();
+		return trees.size();
+	}
+
+	/**
+	 * Removes the entries of the trees dropped by the garbage collector, and the
+	 * commits pointing at them.
+	 */
+	private void expunge() {
+		boolean removed = false;
+		for (TreeReference ref = (TreeReference) cleared.poll(); ref != null; ref = (TreeReference) cleared.poll()) {
+			removed |= trees.remove(ref.sha, ref);
+		}
+		if (removed) {
+			commitTrees.values().removeIf(sha -> !trees.containsKey(sha));
+		}
+	}
+
+	private Tree load(String endpoint, String sha, IOCallable<Tree> loader) throws IOException {
+		CompletableFuture<Tree> future = new CompletableFuture<>();
+		CompletableFuture<Tree> inflight = pending.putIfAbsent(sha, future);
+		if (inflight != null) {
+			CoalescedRequestEvent event = new CoalescedRequestEvent();
+			event.begin();
+			try {
+				return join(inflight);
+			} finally {
+				event.end();
+				if (event.shouldCommit()) {
+					event.endpoint = endpoint;
+					event.key = sha;
+					event.commit();
+				}
+			}
+		}
+		try {
+			Tree tree = loader.call();
+			future.complete(tree);
+			return tree;
+		} catch (IOException | RuntimeException ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			pending.remove(sha, future);
+		}
+	}
+
+	private static final class TreeReference extends SoftReference<Tree> {
+		final String sha;
+
+		TreeReference(Tree tree, ReferenceQueue<Tree> queue) {
+			super(tree, queue);
+			this.sha = tree.getSha();
+		}
+	}
+
+	private static Tree join(CompletableFuture<Tree> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
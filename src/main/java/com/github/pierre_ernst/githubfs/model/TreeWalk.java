@@ -0,0 +1,132 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import fr.gnodet.githubfs.GitHubPath;
+
+/**
+ * Walks a directory down to a maximum depth, fetching only the trees within
+ * that depth. Trees are fetched level by level, each level concurrently. When a
+ * level holds many trees not fetched yet, the whole subtree is fetched with a
+ * single recursive request instead.
+ */
+public class TreeWalk {
+
+	/** Number of trees missing from a level above which the subtree is fetched at once. */
+	public static final int DEFAULT_RECURSIVE_THRESHOLD = 32;
+
+	private final ContentCache cache;
+	private final int recursiveThreshold;
+
+	public TreeWalk(ContentCache cache) {
+		this(cache, DEFAULT_RECURSIVE_THRESHOLD);
+	}
+
+	public TreeWalk(ContentCache cache, int recursiveThreshold) {
+		this.cache = Objects.requireNonNull(cache);
+		this.recursiveThreshold = recursiveThreshold;
+	}
+
+	/**
+	 * @return <code>root</code> and the paths at most <code>maxDepth</code>
+	 *         levels below it, in the order of {@link java.nio.file.Files#walk}
+	 */
+	public List<Path> walk(GitHubPath root, int maxDepth) throws IOException {
+		List<Path> result = new ArrayList<>();
+		result.add(root);
+		if (maxDepth <= 0) {
+			return result;
+		}
+		Tree tree;
+		String sha;
+		boolean commit;
+		if (root.getNameCount() == 0) {
+			tree = cache.getRootTree();
+			sha = cache.getCommit();
+			commit = true;
+		} else {
+			TreeEntry entry = cache.getEntry(root);
+			if (!entry.isTree()) {
+				return result;
+			}
+			tree = cache.getTree(entry);
+			sha = entry.getSha();
+			commit = false;
+		}
+		fetch(tree, sha, commit, maxDepth);
+		add(root, tree, 1, maxDepth, result);
+		return result;
+	}
+
+	private void fetch(Tree root, String sha, boolean commit, int maxDepth) throws IOException {
+		TreeStore trees = cache.getTreeStore();
+		List<Tree> level = new ArrayList<>();
+		level.add(root);
+		boolean recursive = false;
+		// the trees listed at depth d hold the entries at depth d + 1
+		for (int depth = 1; (depth < maxDepth) && !level.isEmpty(); depth++) {
+			Map<String, TreeEntry> missing = new LinkedHashMap<>();
+			List<Tree> next = new ArrayList<>();
+			for (Tree tree : level) {
+				for (TreeEntry entry : tree.getEntries()) {
+					if (entry.isTree()) {
+						Tree child = trees.get(entry.getSha());
+						if (child != null) {
+							next.add(child);
+						} else {
+							missing.putIfAbsent(entry.getSha(), entry);
+						}
+					}
+				}
+			}
+			if (!recursive && (missing.size() >= recursiveThreshold)) {
+				recursive = true;
+				if (cache.getTreeRecursive(sha, commit) != null) {
+					return;
+				}
+			}
+			List<CompletableFuture<Tree>> futures = new ArrayList<>();
+			for (TreeEntry entry : missing.values()) {
+				futures.add(cache.getTreeAsync(entry));
+			}
+			for (CompletableFuture<Tree> future : futures) {
+				next.add(join(future));
+			}
+			level = next;
+		}
+	}
+
+	private void add(GitHubPath dir, Tree tree, int depth, int maxDepth, List<Path> result) throws IOException {
+		for (TreeEntry entry : tree.getEntries()) {
+			GitHubPath child = dir.resolve(entry.getName());
+			result.add(child);
+			if (entry.isTree() && (depth < maxDepth)) {
+				add(child, cache.getTree(entry), depth + 1, maxDepth, result);
+			}
+		}
+	}
+
+	private static Tree join(CompletableFuture<Tree> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
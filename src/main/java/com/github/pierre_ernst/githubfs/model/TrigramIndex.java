@@ -0,0 +1,359 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory index of the byte trigrams found in blobs, keyed by blob SHA. Blobs
+ * are immutable, so an entry stays valid for as long as the index lives, even
+ * once the blob itself left the store. Blobs containing a NUL byte are recorded
+ * as binary and not indexed any further.
+ */
+public class TrigramIndex {
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final Map<Integer, Postings> postings = new HashMap<>();
+	private final BitSet binaries = new BitSet();
+
+	/**
+	 * Indexes a blob unless it already is, reading the stream to its end.
+	 */
+	public void add(String sha, InputStream in) throws IOException {
+		if (contains(sha)) {
+			return;
+		}
+		Set<Integer> trigrams = new HashSet<>();
+		boolean binary = false;
+		byte[] buffer = new byte[8192];
+		int trigram = 0;
+		long count = 0;
+		int n;
+		read: while ((n = in.read(buffer)) >= 0) {
+			for (int i = 0; i < n; i++) {
+				if (buffer[i] == 0) {
+					binary = true;
+					break read;
+				}
+				trigram = ((trigram << 8) | (buffer[i] & 0xFF)) & 0xFFFFFF;
+				if (++count >= 3) {
+					trigrams.add(trigram);
+				}
+			}
+		}
+		synchronized (this) {
+			if (ids.containsKey(sha)) {
+				return;
+			}
+			// ids are handed out in increasing order, keeping the postings sorted
+			int id = ids.size();
+			ids.put(sha, id);
+			if (binary) {
+				binaries.set(id);
+			} else {
+				for (Integer t : trigrams) {
+					postings.computeIfAbsent(t, k -> new Postings()).add(id);
+				}
+			}
+		}
+	}
+
+	public synchronized boolean contains(String sha) {
+		return ids.containsKey(sha);
+	}
+
+	public synchronized boolean isBinary(String sha) {
+		Integer id = ids.get(sha);
+		return (id != null) && binaries.get(id);
+	}
+
+	/**
+	 * @param query the trigrams a blob must all contain for one of the
+	 *              alternatives of a regular expression to match, as returned by
+	 *              {@link #query(String)}
+	 * @return <code>false</code> if the blob is indexed and cannot match
+	 */
+	public synchronized boolean mayMatch(String sha, int[][] query) {
+		Integer id = ids.get(sha);
+		if ((id == null) || (query == null)) {
+			return true;
+		}
+		if (binaries.get(id)) {
+			return false;
+		}
+		for (int[] alternative : query) {
+			boolean match = true;
+			for (int trigram : alternative) {
+				Postings p = postings.get(trigram);
+				if ((p == null) || !p.contains(id)) {
+					match = false;
+					break;
+				}
+			}
+			if (match) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public synchronized int getBlobCount() {
+		return ids.size();
+	}
+
+	public synchronized int getTrigramCount() {
+		return postings.size();
+	}
+
+	/**
+	 * Extracts the trigrams of the literal runs every match of a regular
+	 * expression contains, one set per top level alternative.
+	 *
+	 * @return the trigrams, or <code>null</code> if the expression does not
+	 *         narrow down the blobs which may match
+	 */
+	public static int[][] query(String regex) {
+		// flags such as case insensitivity change what literals match
+		if (regex.contains("(?")) {
+			return null;
+		}
+		List<String> alternatives = split(regex);
+		int[][] query = new int[alternatives.size()][];
+		for (int i = 0; i < query.length; i++) {
+			Set<Integer> trigrams = new HashSet<>();
+			for (String literal : literals(alternatives.get(i))) {
+				byte[] bytes = literal.getBytes(StandardCharsets.UTF_8);
+				for (int j = 2; j < bytes.length; j++) {
+					trigrams.add(((bytes[j - 2] & 0xFF) << 16) | ((bytes[j - 1] & 0xFF) << 8) | (bytes[j] & 0xFF));
+				}
+			}
+			if (trigrams.isEmpty()) {
+				return null;
+			}
+			query[i] = trigrams.stream().mapToInt(Integer::intValue).toArray();
+		}
+		return query;
+	}
+
+	private static List<String> split(String regex) {
+		List<String> alternatives = new ArrayList<>();
+		int depth = 0;
+		boolean inClass = false;
+		int start = 0;
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				inClass = (c != ']');
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if ((c == '|') && (depth == 0)) {
+				alternatives.add(regex.substring(start, i));
+				start = i + 1;
+			}
+		}
+		alternatives.add(regex.substring(start));
+		return alternatives;
+	}
+
+	/**
+	 * @return the runs of literal characters a match of the alternative must
+	 *         contain; groups, classes and anything optional end a run
+	 */
+	private static List<String> literals(String regex) {
+		List<String> runs = new ArrayList<>();
+		StringBuilder run = new StringBuilder();
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			String literal = null;
+			if (c == '\\') {
+				if (i + 1 >= regex.length()) {
+					break;
+				}
+				char next = regex.charAt(i + 1);
+				if (next == 'Q') {
+					int end = regex.indexOf("\\E", i + 2);
+					String quoted = regex.substring(i + 2, (end < 0) ? regex.length() : end);
+					i = (end < 0) ? regex.length() : end + 2;
+					// the last quoted character may still be made optional
+					if (!quoted.isEmpty() && (i < regex.length()) && isOptional(regex.charAt(i))) {
+						run.append(quoted, 0, quoted.length() - 1);
+						quoted = quoted.substring(quoted.length() - 1);
+					}
+					literal = quoted;
+				} else {
+					i += 2;
+					if (!Character.isLetterOrDigit(next)) {
+						literal = String.valueOf(next);
+					} else {
+						i = skipEscape(regex, i, next);
+					}
+				}
+			} else if (c == '[') {
+				i = skipClass(regex, i);
+			} else if (c == '(') {
+				i = skip(regex, i, '(', ')');
+			} else if ((c == '.') || (c == '^') || (c == '$')) {
+				i++;
+			} else {
+				literal = String.valueOf(c);
+				i++;
+			}
+
+			if (i < regex.length()) {
+				char q = regex.charAt(i);
+				if (isOptional(q)) {
+					flush(run, runs);
+					i = skipQuantifier(regex, i);
+					continue;
+				} else if (q == '+') {
+					if (literal != null) {
+						run.append(literal);
+					}
+					flush(run, runs);
+					i = skipQuantifier(regex, i);
+					continue;
+				}
+			}
+			if (literal != null) {
+				run.append(literal);
+			} else {
+				flush(run, runs);
+			}
+		}
+		flush(run, runs);
+		return runs;
+	}
+
+	private static boolean isOptional(char c) {
+		return (c == '?') || (c == '*') || (c == '{');
+	}
+
+	private static void flush(StringBuilder run, List<String> runs) {
+		if (run.length() > 0) {
+			runs.add(run.toString());
+			run.setLength(0);
+		}
+	}
+
+	private static int skipQuantifier(String regex, int i) {
+		if (regex.charAt(i) == '{') {
+			int end = regex.indexOf('}', i);
+			i = (end < 0) ? regex.length() : end + 1;
+		} else {
+			i++;
+		}
+		// lazy or possessive
+		if ((i < regex.length()) && ((regex.charAt(i) == '?') || (regex.charAt(i) == '+'))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Skips the operands of an escape such as <code>\x41</code> or
+	 * <code>\p{Lu}</code>, starting right after its letter.
+	 */
+	private static int skipEscape(String regex, int i, char escape) {
+		int max;
+		switch (escape) {
+		case 'x':
+		case 'N':
+		case 'p':
+		case 'P':
+			if ((i < regex.length()) && (regex.charAt(i) == '{')) {
+				return skip(regex, i, '{', '}');
+			}
+			max = (escape == 'x') ? 2 : 1;
+			break;
+		case 'u':
+			max = 4;
+			break;
+		case 'c':
+			max = 1;
+			break;
+		case 'k':
+			int end = regex.indexOf('>', i);
+			return (end < 0) ? regex.length() : end + 1;
+		default:
+			if (!Character.isDigit(escape)) {
+				return i;
+			}
+			// octal escapes and back references
+			while ((i < regex.length()) && Character.isDigit(regex.charAt(i))) {
+				i++;
+			}
+			return i;
+		}
+		return Math.min(regex.length(), i + max);
+	}
+
+	private static int skip(String regex, int i, char open, char close) {
+		if ((i >= regex.length()) || (regex.charAt(i) != open)) {
+			return i;
+		}
+		int depth = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				i = skipClass(regex, i - 1);
+			} else if (c == open) {
+				depth++;
+			} else if ((c == close) && (--depth == 0)) {
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static int skipClass(String regex, int i) {
+		int depth = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i++);
+			if (c == '\\') {
+				i++;
+			} else if (c == '[') {
+				depth++;
+				// a leading ] is a literal
+				if ((i < regex.length()) && (regex.charAt(i) == ']')) {
+					i++;
+				}
+			} else if ((c == ']') && (--depth == 0)) {
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static final class Postings {
+		private int[] ids = new int[4];
+		private int size;
+
+		void add(int id) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		boolean contains(int id) {
+			return Arrays.binarySearch(ids, 0, size, id) >= 0;
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.github.pierre_ernst.githubfs.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read only channel over a cached blob, hashing the bytes read in order from
+ * the start of the file and checking them once the end is reached. Reads at
+ * other positions are served but leave the hash as it is, so that a file read
+ * back and forth is still verified if it is eventually read through.
+ */
+class VerifyingByteChannel implements SeekableByteChannel {
+
+	private final SeekableByteChannel channel;
+	private final BlobVerifier verifier;
+	private final long size;
+	private long position;
+	private long hashed;
+
+	VerifyingByteChannel(SeekableByteChannel channel, BlobVerifier verifier) throws IOException {
+		this.channel = channel;
+		this.verifier = verifier;
+		this.size = channel.size();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int start = dst.position();
+		int n = channel.read(dst);
+		if (n > 0) {
+			if (position == hashed) {
+				verifier.update(dst.duplicate().limit(dst.position()).position(start));
+				hashed += n;
+			}
+			position += n;
+		}
+		if (((n < 0) || (position == size)) && (hashed == position)) {
+			verifier.verify();
+		}
+		return n;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public long position() throws IOException {
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		channel.position(newPosition);
+		position = newPosition;
+		return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+		return size;
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,339 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Call;
+import okhttp3.Dispatcher;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Bounds the requests in flight to GitHub with an additive increase,
+ * multiplicative decrease policy. The limit grows by about one for every limit
+ * worth of successful requests while it is in use, and is cut when a request
+ * is throttled, fails with a server error, or takes much longer than the
+ * latency seen when the server is not loaded, which is the sign of a queue
+ * building up. A single cut is made for the requests started before the
+ * previous one, so that a burst of failures halves the limit once.
+ * <p>
+ * Requests sent with {@link Call#enqueue} are held back by the OkHttp
+ * {@link Dispatcher}, whose limits follow this one, so that they wait in its
+ * queue without holding a thread. Requests sent with {@link Call#execute} wait
+ * for a slot in the interceptor, on the thread of their caller. A request
+ * keeps its slot while its response body streams in, so that responses must be
+ * read to the end or closed.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+	public enum Outcome {
+		/** Any response but the ones below, including client errors. */
+		SUCCESS,
+		/** A 429, or a 403 of the primary or secondary rate limits. */
+		THROTTLED,
+		/** A 5xx response, or no response at all. */
+		FAILED
+	}
+
+	private enum Enqueued {
+		INSTANCE
+	}
+
+	static final int DEFAULT_INITIAL_LIMIT = 8;
+
+	static final int DEFAULT_MAX_LIMIT = 64;
+
+	/** Factor applied to the limit when a request is throttled or fails. */
+	static final double BACKOFF = 0.5;
+
+	/** Factor applied to the limit when the latency grows. */
+	static final double LATENCY_BACKOFF = 0.9;
+
+	/** Ratio of the recent latency to the unloaded latency beyond which the limit is cut. */
+	static final double LATENCY_TOLERANCE = 1.5;
+
+	private final GitHubFileSystemMetrics metrics;
+	private final int minLimit;
+	private final int maxLimit;
+	private final Object dispatcherLock = new Object();
+	private double limit;
+	private int inFlight;
+	// the requests sent with Call#execute among them
+	private int executing;
+	private long lastDecrease;
+	private double recentNanos;
+	private double unloadedNanos;
+	private Dispatcher dispatcher;
+	private int dispatcherLimit;
+
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+		this(null, initialLimit, minLimit, maxLimit);
+	}
+
+	/**
+	 * @param metrics where the current limit is reported, or <code>null</code>
+	 */
+	public AdaptiveConcurrencyLimiter(GitHubFileSystemMetrics metrics, int initialLimit, int minLimit,
+			int maxLimit) {
+		if ((minLimit < 1) || (maxLimit < minLimit)) {
+			throw new IllegalArgumentException("Invalid limits " + minLimit + ".." + maxLimit);
+		}
+		this.metrics = metrics;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.lastDecrease = System.nanoTime();
+		report();
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Makes the dispatcher of the HTTP client let through as many enqueued
+	 * requests as the limit leaves to them, once the requests waiting in the
+	 * interceptor are taken out.
+	 */
+	public void bind(Dispatcher dispatcher) {
+		synchronized (this) {
+			this.dispatcher = dispatcher;
+		}
+		updateDispatcher();
+	}
+
+	/**
+	 * Waits until fewer requests than the limit are in flight.
+	 *
+	 * @return the start time of the request, to give back to
+	 *         {@link #release(long, Outcome)}
+	 */
+	public long acquire() throws InterruptedIOException {
+		long start;
+		synchronized (this) {
+			while (inFlight >= (int) limit) {
+				try {
+					wait();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			inFlight++;
+			executing++;
+			start = System.nanoTime();
+			report();
+		}
+		updateDispatcher();
+		return start;
+	}
+
+	public void release(long start, Outcome outcome) {
+		release(start, outcome, true);
+	}
+
+	/**
+	 * Counts a request the dispatcher let through, without waiting.
+	 */
+	private synchronized long admit() {
+		inFlight++;
+		report();
+		return System.nanoTime();
+	}
+
+	private void release(long start, Outcome outcome, boolean acquired) {
+		complete(start, outcome);
+		free(acquired);
+	}
+
+	/**
+	 * Adjusts the limit to the outcome of a request, which still holds its
+	 * slot.
+	 */
+	private synchronized void complete(long start, Outcome outcome) {
+		long nanos = System.nanoTime() - start;
+		boolean used = inFlight >= limit / 2;
+		if (outcome != Outcome.SUCCESS) {
+			decrease(start, BACKOFF);
+		} else {
+			recentNanos = (recentNanos == 0) ? nanos : 0.8 * recentNanos + 0.2 * nanos;
+			// follows the fastest requests down, and the recent latency up slowly should the server get slower for good
+			if (unloadedNanos == 0) {
+				unloadedNanos = nanos;
+			} else if (nanos < unloadedNanos) {
+				unloadedNanos += 0.5 * (nanos - unloadedNanos);
+			} else {
+				unloadedNanos += 0.001 * (recentNanos - unloadedNanos);
+			}
+			if (recentNanos > LATENCY_TOLERANCE * unloadedNanos) {
+				decrease(start, LATENCY_BACKOFF);
+			} else if (used) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+		}
+		report();
+		notifyAll();
+	}
+
+	/**
+	 * Gives back the slot of a request.
+	 */
+	private void free(boolean acquired) {
+		synchronized (this) {
+			inFlight--;
+			if (acquired) {
+				executing--;
+			}
+			report();
+			notifyAll();
+		}
+		updateDispatcher();
+	}
+
+	private void decrease(long start, double factor) {
+		if (start - lastDecrease < 0) {
+			return;
+		}
+		limit = Math.max(minLimit, limit * factor);
+		lastDecrease = System.nanoTime();
+	}
+
+	private void report() {
+		if (metrics != null) {
+			metrics.recordConcurrencyLimit((int) limit, inFlight);
+		}
+	}
+
+	private void updateDispatcher() {
+		// never called with the lock of the limiter, the dispatcher may start calls reaching the interceptor
+		synchronized (dispatcherLock) {
+			Dispatcher d;
+			int target;
+			synchronized (this) {
+				d = dispatcher;
+				target = Math.max(1, (int) limit - executing);
+				if ((d == null) || (target == dispatcherLimit)) {
+					return;
+				}
+				dispatcherLimit = target;
+			}
+			d.setMaxRequestsPerHost(target);
+			d.setMaxRequests(target);
+		}
+	}
+
+	/**
+	 * @return the outcome of a response from GitHub
+	 */
+	public static Outcome outcome(int status, String retryAfter, String rateLimitRemaining) {
+		if ((status == 429) || ((status == 403) && ((retryAfter != null) || "0".equals(rateLimitRemaining)))) {
+			return Outcome.THROTTLED;
+		}
+		return (status >= 500) ? Outcome.FAILED : Outcome.SUCCESS;
+	}
+
+	/**
+	 * Marks a request about to be enqueued, which the interceptor then counts
+	 * without waiting, the dispatcher having held it back already.
+	 */
+	public static Request.Builder enqueued(Request.Builder builder) {
+		return builder.tag(Enqueued.class, Enqueued.INSTANCE);
+	}
+
+	/**
+	 * @return an interceptor holding a slot of the limit from the moment a
+	 *         request reaches the network until its response body is read or
+	 *         closed, the outcome and latency of the request being those of
+	 *         its response headers; cached responses do not count
+	 */
+	public Interceptor interceptor() {
+		return chain -> {
+			Request request = chain.request();
+			boolean acquired = request.tag(Enqueued.class) == null;
+			long start = acquired ? acquire() : admit();
+			Response response;
+			try {
+				response = chain.proceed(request);
+			} catch (IOException | RuntimeException ex) {
+				release(start, Outcome.FAILED, acquired);
+				throw ex;
+			}
+			complete(start, outcome(response.code(), response.header("Retry-After"),
+					response.header("X-RateLimit-Remaining")));
+			ResponseBody body = response.body();
+			if ((body == null) || (body.contentLength() == 0)) {
+				free(acquired);
+				return response;
+			}
+			return response.newBuilder().body(holding(body, acquired)).build();
+		};
+	}
+
+	/**
+	 * @return the body, giving back its slot once read to the end, failed or
+	 *         closed, whichever comes first
+	 */
+	private ResponseBody holding(ResponseBody body, boolean acquired) {
+		AtomicBoolean held = new AtomicBoolean(true);
+		Runnable done = () -> {
+			if (held.getAndSet(false)) {
+				free(acquired);
+			}
+		};
+		BufferedSource source = Okio.buffer(new ForwardingSource(body.source()) {
+			@Override
+			public long read(Buffer sink, long byteCount) throws IOException {
+				long read;
+				try {
+					read = super.read(sink, byteCount);
+				} catch (IOException | RuntimeException ex) {
+					done.run();
+					throw ex;
+				}
+				if (read == -1) {
+					done.run();
+				}
+				return read;
+			}
+
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					done.run();
+				}
+			}
+		});
+		return ResponseBody.create(body.contentType(), body.contentLength(), source);
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Read only asynchronous channel over the content of a file, fetched once
+ * without blocking when the channel is opened. Completion handlers run on the
+ * given executor, or on the thread completing the fetch if there is none.
+ */
+class GitHubAsynchronousFileChannel extends AsynchronousFileChannel {
+
+	private final CompletableFuture<byte[]> data;
+	private final ExecutorService executor;
+	private volatile boolean open = true;
+
+	GitHubAsynchronousFileChannel(CompletableFuture<byte[]> data, ExecutorService executor) {
+		this.data = data;
+		this.executor = executor;
+	}
+
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		try {
+			return data.join().length;
+		} catch (CompletionException ex) {
+			throw (ex.getCause() instanceof IOException) ? (IOException) ex.getCause() : new IOException(ex.getCause());
+		}
+	}
+
+	@Override
+	public AsynchronousFileChannel truncate(long size) throws IOException {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+		ensureOpen();
+	}
+
+	@Override
+	public <A> void lock(long position, long size, boolean shared, A attachment,
+			CompletionHandler<FileLock, ? super A> handler) {
+		FileLock lock = tryLock(position, size, shared);
+		if (executor != null) {
+			executor.execute(() -> handler.completed(lock, attachment));
+		} else {
+			handler.completed(lock, attachment);
+		}
+	}
+
+	@Override
+	public Future<FileLock> lock(long position, long size, boolean shared) {
+		return CompletableFuture.completedFuture(tryLock(position, size, shared));
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) {
+		if (!shared) {
+			throw new NonWritableChannelException();
+		}
+		// contents never change, a shared lock does not need to exclude anyone
+		return new FileLock(this, position, size, true) {
+			private volatile boolean valid = true;
+
+			@Override
+			public boolean isValid() {
+				return valid && open;
+			}
+
+			@Override
+			public void release() throws IOException {
+				valid = false;
+			}
+		};
+	}
+
+	@Override
+	public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+		CompletableFuture<Integer> result = read(dst, position);
+		if (executor != null) {
+			result.whenCompleteAsync((n, ex) -> complete(handler, attachment, n, ex), executor);
+		} else {
+			result.whenComplete((n, ex) -> complete(handler, attachment, n, ex));
+		}
+	}
+
+	@Override
+	public CompletableFuture<Integer> read(ByteBuffer dst, long position) {
+		if (position < 0) {
+			throw new IllegalArgumentException("Negative position");
+		}
+		if (dst.isReadOnly()) {
+			throw new IllegalArgumentException("Read-only buffer");
+		}
+		if (!open) {
+			return CompletableFuture.failedFuture(new ClosedChannelException());
+		}
+		return data.thenApply(bytes -> {
+			if (position >= bytes.length) {
+				return -1;
+			}
+			int length = (int) Math.min(dst.remaining(), bytes.length - position);
+			dst.put(bytes, (int) position, length);
+			return length;
+		});
+	}
+
+	@Override
+	public <A> void write(ByteBuffer src, long position, A attachment,
+			CompletionHandler<Integer, ? super A> handler) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public Future<Integer> write(ByteBuffer src, long position) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		open = false;
+		data.cancel(false);
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if (!open) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	private static <A> void complete(CompletionHandler<Integer, ? super A> handler, A attachment, Integer n,
+			Throwable ex) {
+		if (ex == null) {
+			handler.completed(n, attachment);
+		} else {
+			handler.failed((ex instanceof CompletionException) ? ex.getCause() : ex, attachment);
+		}
+	}
+}
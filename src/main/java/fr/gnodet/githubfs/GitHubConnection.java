@@ -0,0 +1,319 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Proxy.Type;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.GitHubBuilder;
+import org.kohsuke.github.RateLimitHandler;
+import org.kohsuke.github.extras.okhttp3.OkHttpConnector;
+
+import com.github.pierre_ernst.githubfs.model.BlobClient;
+import com.github.pierre_ernst.githubfs.model.BlobStore;
+import com.github.pierre_ernst.githubfs.model.ContentBackend;
+import com.github.pierre_ernst.githubfs.model.LocalBackend;
+
+import okhttp3.Cache;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+
+/**
+ * What the file systems opened from one URI share: its options, the GitHub API
+ * client and the HTTP client under it, with its connection pool and
+ * dispatcher, the blob store, the metrics and an executor for blocking work.
+ * An organization file system shares one connection between all its
+ * repositories.
+ */
+final class GitHubConnection {
+
+	static final long DEFAULT_BLOB_CACHE_SIZE = 512L * 1024L * 1024L;
+
+	static final int DEFAULT_CONCURRENCY = 8;
+
+	private static final List<String> OPTIONS = Arrays.asList("revision", "login", "oauth", "password", "endpoint",
+			"rateLimit", "blobCache", "blobCacheSize", "rawContent", "prefetch", "prefetchMaxSize", "contentIndex",
+			"concurrency", "backend", "mirror", "limiter", "initialConcurrency", "maxConcurrency");
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private final String name;
+	private final Map<String, String> options;
+	private final GitHubFileSystemMetrics metrics;
+	private final GitHub gitHub;
+	private final OkHttpClient okClient;
+	private final BlobStore blobs;
+	private final BlobClient client;
+	private final ContentBackend backend;
+	private volatile ExecutorService executor;
+
+	private GitHubConnection(String name, Map<String, String> options, ContentBackend backend,
+			GitHubFileSystemMetrics metrics, GitHub gitHub, OkHttpClient okClient, BlobStore blobs,
+			BlobClient client) {
+		this.name = name;
+		this.options = options;
+		this.backend = backend;
+		this.metrics = metrics;
+		this.gitHub = gitHub;
+		this.okClient = okClient;
+		this.blobs = blobs;
+		this.client = client;
+	}
+
+	/**
+	 * @param spec the scheme specific part of the URI, without the path:
+	 *             <code>[login[:password]@]owner[/repository][?params]</code>
+	 */
+	static GitHubConnection open(String spec, Map<String, ?> env) throws IOException {
+		String name = spec;
+		String userInfo;
+		String query;
+		int index = name.indexOf('@');
+		if (index >= 0) {
+			userInfo = name.substring(0, index);
+			name = name.substring(index + 1);
+		} else {
+			userInfo = null;
+		}
+		index = name.indexOf('?');
+		if (index >= 0) {
+			query = name.substring(index + 1);
+			name = name.substring(0, index);
+		} else {
+			query = null;
+		}
+		Map<String, String> options = new HashMap<>();
+		ContentBackend backend = null;
+		if (env != null) {
+			for (String option : OPTIONS) {
+				if (env.get(option) instanceof String) {
+					options.put(option, (String) env.get(option));
+				}
+			}
+			if (env.get("backend") instanceof ContentBackend) {
+				backend = (ContentBackend) env.get("backend");
+			}
+		}
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				index = pair.indexOf("=");
+				String key = URLDecoder.decode(pair.substring(0, index), "UTF-8");
+				String val = URLDecoder.decode(pair.substring(index + 1), "UTF-8");
+				if (OPTIONS.contains(key)) {
+					options.put(key, val);
+				}
+			}
+		}
+		if (userInfo != null) {
+			String[] infos = userInfo.split(":");
+			options.put("login", infos[0]);
+			options.put("password", infos[1]);
+		}
+		String login = options.get("login");
+		if (options.get("password") == null && options.get("oauth") == null) {
+			Path p = Paths.get(System.getProperty("user.home"), ".github");
+			if (Files.isRegularFile(p)) {
+				Properties properties = new Properties();
+				try (Reader r = Files.newBufferedReader(p, Charset.defaultCharset())) {
+					properties.load(r);
+				}
+				String pLogin = properties.getProperty("login");
+				if (login == null || login.equals(pLogin)) {
+					putIfNotNull(options, "login", pLogin);
+					putIfNotNull(options, "password", properties.getProperty("password"));
+					putIfNotNull(options, "oauth", properties.getProperty("oauth"));
+				}
+			}
+		}
+		login = options.get("login");
+		String password = options.get("password");
+		String oauth = options.get("oauth");
+		String endpoint = options.get("endpoint");
+
+		GitHubBuilder ghBuilder = new GitHubBuilder();
+		if (endpoint != null) {
+			ghBuilder.withEndpoint(endpoint);
+		}
+		String authorization = null;
+		if (oauth != null) {
+			ghBuilder.withOAuthToken(oauth);
+			authorization = "token " + oauth;
+		} else {
+			if ((login != null) && (password != null)) {
+				ghBuilder.withPassword(login, password);
+				authorization = "Basic " + Base64.getEncoder()
+						.encodeToString((login + ":" + password).getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		GitHubFileSystemMetrics metrics = new GitHubFileSystemMetrics(name, options.get("revision"));
+
+		Path cacheDirectory = Path.of(System.getProperty("user.home"), ".okHttp");
+		if (!Files.exists(cacheDirectory)) {
+			Files.createDirectory(cacheDirectory);
+		}
+		Cache okCache = new Cache(cacheDirectory.toFile(), 10 * 1024 * 1024); // 10MB cache
+		Dispatcher dispatcher = new Dispatcher();
+		OkHttpClient.Builder okBuilder = new OkHttpClient.Builder().cache(okCache).dispatcher(dispatcher);
+		String maxConcurrency = options.get("maxConcurrency");
+		int maxLimit = (maxConcurrency != null) ? Integer.parseInt(maxConcurrency)
+				: AdaptiveConcurrencyLimiter.DEFAULT_MAX_LIMIT;
+		if (!"none".equals(options.get("limiter"))) {
+			String initialConcurrency = options.get("initialConcurrency");
+			AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(metrics,
+					(initialConcurrency != null) ? Integer.parseInt(initialConcurrency)
+							: AdaptiveConcurrencyLimiter.DEFAULT_INITIAL_LIMIT,
+					1, maxLimit);
+			limiter.bind(dispatcher);
+			okBuilder.addNetworkInterceptor(limiter.interceptor());
+		} else {
+			// a fixed bound rather than the default of OkHttp, 5 requests per host
+			dispatcher.setMaxRequestsPerHost(maxLimit);
+			dispatcher.setMaxRequests(maxLimit);
+		}
+		OkHttpClient okClient = okBuilder.addNetworkInterceptor(metrics.interceptor()).build();
+		ghBuilder.withConnector(new OkHttpConnector(okClient));
+
+		ghBuilder.withRateLimitHandler("wait".equals(options.get("rateLimit")) ? new WaitingRateLimitHandler(metrics)
+				: RateLimitHandler.FAIL);
+
+		if ((System.getProperty("http.proxyHost") != null) && (System.getProperty("http.proxyPort") != null)) {
+			ghBuilder.withProxy(new Proxy(Type.HTTP, new InetSocketAddress(System.getProperty("http.proxyHost"),
+					Integer.parseInt(System.getProperty("http.proxyPort")))));
+		}
+		GitHub gitHub = ghBuilder.build();
+
+		BlobStore blobs = null;
+		String blobCache = options.get("blobCache");
+		// nothing is written to disk unless a directory is given
+		if ((blobCache != null) && !"none".equals(blobCache)) {
+			String blobCacheSize = options.get("blobCacheSize");
+			blobs = BlobStore.open(Paths.get(blobCache),
+					(blobCacheSize != null) ? Long.parseLong(blobCacheSize) : DEFAULT_BLOB_CACHE_SIZE);
+		}
+		BlobClient client = new BlobClient(okClient, endpoint, authorization,
+				Boolean.parseBoolean(options.get("rawContent")));
+		if ((backend == null) && "local".equals(options.get("backend"))) {
+			String mirror = options.get("mirror");
+			if (mirror == null) {
+				throw new IllegalArgumentException("The local backend needs the path of a mirror");
+			}
+			backend = new LocalBackend(name, Paths.get(mirror));
+		} else if ((backend == null) && (options.get("backend") != null) && !"rest".equals(options.get("backend"))) {
+			throw new IllegalArgumentException("Unknown backend: " + options.get("backend"));
+		}
+		return new GitHubConnection(name, options, backend, metrics, gitHub, okClient, blobs, client);
+	}
+
+	private static void putIfNotNull(Map<String, String> options, String key, String value) {
+		if (value != null) {
+			options.put(key, value);
+		}
+	}
+
+	/**
+	 * @return the repository, as <code>owner/name</code>, or the organization
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the backend given in the environment, or <code>null</code> to read
+	 *         through the REST API
+	 */
+	ContentBackend getBackend() {
+		return backend;
+	}
+
+	String getOption(String key) {
+		return options.get(key);
+	}
+
+	GitHubFileSystemMetrics getMetrics() {
+		return metrics;
+	}
+
+	GitHub getGitHub() {
+		return gitHub;
+	}
+
+	OkHttpClient getHttpClient() {
+		return okClient;
+	}
+
+	BlobStore getBlobStore() {
+		return blobs;
+	}
+
+	BlobClient getBlobClient() {
+		return client;
+	}
+
+	int getConcurrency() {
+		String concurrency = options.get("concurrency");
+		return (concurrency != null) ? Integer.parseInt(concurrency) : DEFAULT_CONCURRENCY;
+	}
+
+	/**
+	 * @return the executor running the blocking work fanned out over
+	 *         repositories, with at most {@link #getConcurrency()} threads
+	 */
+	ExecutorService getExecutor() {
+		ExecutorService e = executor;
+		if (e == null) {
+			synchronized (this) {
+				e = executor;
+				if (e == null) {
+					e = executor = Executors.newFixedThreadPool(getConcurrency(), r -> {
+						Thread t = new Thread(r, "githubfs-" + THREADS.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+				}
+			}
+		}
+		return e;
+	}
+
+	void close() {
+		ExecutorService e = executor;
+		if (e != null) {
+			e.shutdown();
+		}
+	}
+}
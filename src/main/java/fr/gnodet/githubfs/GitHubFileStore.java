@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.util.function.LongSupplier;
+
+import com.github.pierre_ernst.githubfs.model.BlobStore;
+import com.github.pierre_ernst.githubfs.model.TreeStore;
+import com.github.pierre_ernst.githubfs.model.TrigramIndex;
+
+/**
+ * Read only store of a {@link GitHubFileSystem}. The total space is the size of
+ * its repositories as reported by GitHub, the usable space what is left of the
+ * blob cache budget. Cache statistics are exposed as attributes of the
+ * <code>githubfs</code> view, such as <code>githubfs:cacheBytes</code> or
+ * <code>githubfs:hits.tree</code>. Nothing here sends a request.
+ */
+public class GitHubFileStore extends FileStore {
+
+	public static final String VIEW = "githubfs";
+
+	private final String name;
+	private final LongSupplier repositorySize;
+	private final BlobStore blobs;
+	private final TreeStore trees;
+	private final GitHubFileSystemMetrics metrics;
+
+	/**
+	 * @param repositorySize the size of the repositories in bytes, known
+	 *                       without any request
+	 */
+	GitHubFileStore(String name, LongSupplier repositorySize, BlobStore blobs, TreeStore trees,
+			GitHubFileSystemMetrics metrics) {
+		this.name = name;
+		this.repositorySize = repositorySize;
+		this.blobs = blobs;
+		this.trees = trees;
+		this.metrics = metrics;
+	}
+
+	@Override
+	public String name() {
+		return name;
+	}
+
+	@Override
+	public String type() {
+		return "github";
+	}
+
+	@Override
+	public boolean isReadOnly() {
+		return true;
+	}
+
+	@Override
+	public long getTotalSpace() {
+		return repositorySize.getAsLong();
+	}
+
+	@Override
+	public long getUsableSpace() {
+		return (blobs == null) ? 0 : Math.max(0, blobs.getMaxBytes() - blobs.getBytes());
+	}
+
+	@Override
+	public long getUnallocatedSpace() {
+		return getUsableSpace();
+	}
+
+	@Override
+	public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+		return type == BasicFileAttributeView.class;
+	}
+
+	@Override
+	public boolean supportsFileAttributeView(String name) {
+		return "basic".equals(name);
+	}
+
+	@Override
+	public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+		return null;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws IOException {
+		String key = attribute.startsWith(VIEW + ":") ? attribute.substring(VIEW.length() + 1) : attribute;
+		switch (key) {
+		case "totalSpace":
+		case "repositorySize":
+			return getTotalSpace();
+		case "usableSpace":
+		case "unallocatedSpace":
+			return getUsableSpace();
+		case "cacheBytes":
+			return (blobs == null) ? 0L : blobs.getBytes();
+		case "cacheMaxBytes":
+			return (blobs == null) ? 0L : blobs.getMaxBytes();
+		case "cacheBlobs":
+			return (blobs == null) ? 0 : blobs.getCount();
+		case "indexedBlobs":
+			TrigramIndex index = (blobs == null) ? null : blobs.getIndex();
+			return (index == null) ? 0 : index.getBlobCount();
+		case "trees":
+			return trees.size();
+		case "bytesTransferred":
+			return metrics.getBytesTransferred();
+		case "rateLimitRemaining":
+			return metrics.getRateLimitRemaining();
+		case "concurrencyLimit":
+			return metrics.getConcurrencyLimit();
+		default:
+			if (key.startsWith("hits.")) {
+				return metrics.getCacheHits(key.substring("hits.".length()));
+			}
+			if (key.startsWith("misses.")) {
+				return metrics.getCacheMisses(key.substring("misses.".length()));
+			}
+			throw new UnsupportedOperationException("Unsupported attribute '" + attribute + "'");
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name() + " (" + type() + ")";
+	}
+}
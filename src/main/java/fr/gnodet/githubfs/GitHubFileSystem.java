@@ -20,155 +20,348 @@ package fr.gnodet.githubfs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.Reader;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.net.Proxy.Type;
-import java.net.URLDecoder;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.SeekableByteChannel;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.CopyOption;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
-import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
 import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 import org.kohsuke.github.GHRepository;
-import org.kohsuke.github.GitHub;
-import org.kohsuke.github.GitHubBuilder;
-import org.kohsuke.github.RateLimitHandler;
-import org.kohsuke.github.extras.okhttp3.OkHttpConnector;
 
+import com.github.pierre_ernst.githubfs.model.BlobClient;
+import com.github.pierre_ernst.githubfs.model.ContentBackend;
+import com.github.pierre_ernst.githubfs.model.ContentCache;
 import com.github.pierre_ernst.githubfs.model.ContentFactory;
+import com.github.pierre_ernst.githubfs.model.ContentSearch;
 import com.github.pierre_ernst.githubfs.model.DirectoryContent;
 import com.github.pierre_ernst.githubfs.model.FileContent;
-import com.github.pierre_ernst.githubfs.model.GitHubPackageUrl;
-
-import okhttp3.Cache;
-import okhttp3.OkHttpClient;
+import com.github.pierre_ernst.githubfs.model.GraphQLBatchReader;
+import com.github.pierre_ernst.githubfs.model.Materializer;
+import com.github.pierre_ernst.githubfs.model.PackFetch;
+import com.github.pierre_ernst.githubfs.model.PrefetchPolicy;
+import com.github.pierre_ernst.githubfs.model.RestBackend;
+import com.github.pierre_ernst.githubfs.model.TreeStore;
+import com.github.pierre_ernst.githubfs.model.TreeWalk;
 
 public class GitHubFileSystem extends FileSystem {
 
+	private static final AtomicInteger IDS = new AtomicInteger();
+
 	private final GitHubFileSystemProvider fileSystemProvider;
+	private final GitHubConnection connection;
+	private final boolean shared;
 	private final String revision;
 	private final GHRepository ghRepo;
+	private final ContentCache cache;
+	private final GitHubFileStore fileStore;
+	private final GitHubFileSystemMetrics metrics;
+	private final ObjectName objectName;
 
 	public GitHubFileSystem(GitHubFileSystemProvider fileSystemProvider, String repository, Map<String, ?> env)
 			throws IOException {
-		String userInfo;
-		String query;
-		int index = repository.indexOf('@');
-		if (index >= 0) {
-			userInfo = repository.substring(0, index);
-			repository = repository.substring(index + 1);
-		} else {
-			userInfo = null;
-		}
-		index = repository.indexOf('?');
-		if (index >= 0) {
-			query = repository.substring(index + 1);
-			repository = repository.substring(0, index);
+		this(fileSystemProvider, GitHubConnection.open(repository, env), null);
+	}
+
+	/**
+	 * @param repo the repository of an organization file system sharing the
+	 *             connection, or <code>null</code> to open the repository named
+	 *             by the connection
+	 */
+	GitHubFileSystem(GitHubFileSystemProvider fileSystemProvider, GitHubConnection connection, GHRepository repo)
+			throws IOException {
+		this.fileSystemProvider = fileSystemProvider;
+		this.connection = connection;
+		this.shared = (repo != null);
+		this.metrics = connection.getMetrics();
+
+		ContentBackend backend = shared ? null : connection.getBackend();
+		if (backend == null) {
+			ghRepo = shared ? repo : connection.getGitHub().getRepository(connection.getName());
+			backend = new RestBackend(ghRepo, connection.getBlobClient());
 		} else {
-			query = null;
+			ghRepo = null;
 		}
-		String revision = null;
-		String login = null;
-		String oauth = null;
-		String password = null;
-		if (env != null) {
-			login = (String) env.get("login");
-			oauth = (String) env.get("oauth");
-			password = (String) env.get("password");
-			revision = (String) env.get("revision");
-		}
-		if (query != null) {
-			for (String pair : query.split("&")) {
-				index = pair.indexOf("=");
-				String key = URLDecoder.decode(pair.substring(0, index), "UTF-8");
-				String val = URLDecoder.decode(pair.substring(index + 1), "UTF-8");
-				switch (key) {
-				case "revision":
-					revision = val;
-					break;
-				case "login":
-					login = val;
-					break;
-				case "oauth":
-					oauth = val;
-					break;
-				case "password":
-					password = val;
-					break;
-				}
-			}
-		}
-		if (userInfo != null) {
-			String[] infos = userInfo.split(":");
-			login = infos[0];
-			password = infos[1];
+
+		this.revision = backend.resolveRevision(connection.getOption("revision"));
+
+		cache = new ContentCache(backend, this.revision, TreeStore.getShared(), metrics, connection.getBlobStore());
+		String prefetch = connection.getOption("prefetch");
+		if ("pack".equals(prefetch)) {
+			fetchPack();
+		} else if (prefetch != null) {
+			String prefetchMaxSize = connection.getOption("prefetchMaxSize");
+			cache.setPrefetchPolicy(PrefetchPolicy.parse(prefetch,
+					(prefetchMaxSize != null) ? Long.parseLong(prefetchMaxSize) : PrefetchPolicy.DEFAULT_MAX_SIZE));
 		}
-		if (password == null && oauth == null) {
-			Path p = Paths.get(System.getProperty("user.home"), ".github");
-			if (Files.isRegularFile(p)) {
-				Properties properties = new Properties();
-				try (Reader r = Files.newBufferedReader(p, Charset.defaultCharset())) {
-					properties.load(r);
-				}
-				String pLogin = properties.getProperty("login");
-				String pPassword = properties.getProperty("password");
-				String pOauth = properties.getProperty("oauth");
-				if (login == null || login.equals(pLogin)) {
-					login = pLogin;
-					password = pPassword;
-					oauth = pOauth;
-				}
-			}
+		if (Boolean.parseBoolean(connection.getOption("contentIndex"))) {
+			cache.getContentIndex();
 		}
+		long repositorySize = (ghRepo != null) ? ghRepo.getSize() * 1024L : 0;
+		fileStore = new GitHubFileStore(backend.getName() + "@" + this.revision, () -> repositorySize,
+				connection.getBlobStore(), cache.getTreeStore(), metrics);
 
-		GitHubBuilder ghBuilder = new GitHubBuilder();
-		if (oauth != null) {
-			ghBuilder.withOAuthToken(oauth);
+		if (shared) {
+			// the organization registers the metrics it shares with its repositories
+			objectName = null;
 		} else {
-			if ((login != null) && (password != null)) {
-				ghBuilder.withPassword(login, password);
-			}
+			metrics.setRevision(this.revision);
+			objectName = register(connection.getName(), this.revision);
 		}
+	}
+
+	/**
+	 * An organization file system, holding no repository itself.
+	 */
+	GitHubFileSystem(GitHubFileSystemProvider fileSystemProvider, GitHubConnection connection) throws IOException {
 		this.fileSystemProvider = fileSystemProvider;
+		this.connection = connection;
+		this.shared = false;
+		this.metrics = connection.getMetrics();
+		this.revision = connection.getOption("revision");
+		this.ghRepo = null;
+		this.cache = null;
+		this.fileStore = null;
+		this.objectName = register(connection.getName(), (revision != null) ? revision : "");
+	}
+
+	private ObjectName register(String name, String revision) throws IOException {
+		try {
+			ObjectName objectName = new ObjectName("fr.gnodet.githubfs:type=GitHubFileSystem,repository="
+					+ ObjectName.quote(name) + ",revision=" + ObjectName.quote(revision) + ",id="
+					+ IDS.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+			return objectName;
+		} catch (JMException ex) {
+			throw new IOException(ex);
+		}
+	}
+
+	GitHubConnection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * @return the repository, or <code>null</code> if the file system reads
+	 *         through another backend than the REST API
+	 */
+	public GHRepository getRepository() {
+		return ghRepo;
+	}
+
+	public String getRevision() {
+		return revision;
+	}
 
-		Path cacheDirectory = Path.of(System.getProperty("user.home"), ".okHttp");
-		if (!Files.exists(cacheDirectory)) {
-			Files.createDirectory(cacheDirectory);
+	public ContentCache getContentCache() {
+		return cache;
+	}
+
+	public GitHubFileSystemMetrics getMetrics() {
+		return metrics;
+	}
+
+	public PrefetchPolicy getPrefetchPolicy() {
+		return cache.getPrefetchPolicy();
+	}
+
+	/**
+	 * @param policy the files to fetch into the blob cache as soon as their
+	 *               directory is listed, or <code>null</code> to fetch none
+	 */
+	public void setPrefetchPolicy(PrefetchPolicy policy) {
+		cache.setPrefetchPolicy(policy);
+	}
+
+	/**
+	 * Fetches every tree and file of the revision at once, as a single git pack
+	 * without history, into the tree store and the blob cache.
+	 *
+	 * @return the number of objects received
+	 */
+	public int fetchPack() throws IOException {
+		BlobClient client = cache.getBlobClient();
+		if (client == null) {
+			throw new UnsupportedOperationException("Packs are only fetched from GitHub");
 		}
-		Cache okCache = new Cache(cacheDirectory.toFile(), 10 * 1024 * 1024); // 10MB cache
-		OkHttpClient okClient = new OkHttpClient.Builder().cache(okCache).build();
-		ghBuilder.withConnector(new OkHttpConnector(okClient));
+		return metrics.time("fetchPack", () -> new PackFetch(client, ghRepo.getFullName()).fetch(cache.getCommit(),
+				cache.getTreeStore(), cache.getBlobStore()));
+	}
+
+	/**
+	 * Moves this file system to the commit its revision currently points to,
+	 * re-fetching only the paths changed in between.
+	 *
+	 * @return <code>true</code> if the revision had moved
+	 */
+	public boolean refresh() throws IOException {
+		return metrics.time("refresh", cache::refresh);
+	}
 
-		ghBuilder.withRateLimitHandler(RateLimitHandler.FAIL);
+	/**
+	 * Reads many files at once, through a few GraphQL queries rather than a
+	 * request per file, or through the batch reads of the backend if it is not
+	 * the REST API.
+	 *
+	 * @return the contents of the given files, in the order of the collection;
+	 *         paths which do not exist or are directories are left out
+	 */
+	public Map<Path, byte[]> readAll(Collection<? extends Path> paths) throws IOException {
+		return metrics.time("readAll", () -> {
+			List<GitHubPath> files = new ArrayList<>(paths.size());
+			for (Path path : paths) {
+				files.add(check(path));
+			}
+			if (cache.getBlobClient() == null) {
+				return new LinkedHashMap<Path, byte[]>(ContentFactory.readAll(cache, files));
+			}
+			return new LinkedHashMap<Path, byte[]>(new GraphQLBatchReader(cache).readAll(files));
+		});
+	}
 
-		if ((System.getProperty("http.proxyHost") != null) && (System.getProperty("http.proxyPort") != null)) {
-			ghBuilder.withProxy(new Proxy(Type.HTTP, new InetSocketAddress(System.getProperty("http.proxyHost"),
-					Integer.parseInt(System.getProperty("http.proxyPort")))));
+	/**
+	 * Writes <code>root</code> and everything below it to a directory of
+	 * another file system, the files concurrently. Files already there with
+	 * the content of the revision are not written again, so that an
+	 * interrupted copy resumes where it stopped.
+	 *
+	 * @return the number of files written
+	 */
+	public int materialize(Path root, Path directory) throws IOException {
+		if (directory.getFileSystem() == this) {
+			throw new ReadOnlyFileSystemException();
 		}
-		GitHub gitHub = ghBuilder.build();
+		return metrics.time("materialize",
+				() -> new Materializer(cache, connection.getExecutor()).materialize(check(root), directory));
+	}
 
-		ghRepo = gitHub.getRepository(repository);
+	/**
+	 * Reads <code>length</code> bytes of a file from <code>offset</code>, from
+	 * the blob cache or with an HTTP range request, without reading the rest of
+	 * the file.
+	 *
+	 * @return the bytes read, fewer than <code>length</code> at the end of the
+	 *         file
+	 */
+	public byte[] read(Path file, long offset, int length) throws IOException {
+		return metrics.time("readRange", () -> ContentFactory.wrapFile(cache, check(file)).read(offset, length));
+	}
 
-		this.revision = new GitHubPackageUrl(ghRepo, revision).getRevision();
+	/**
+	 * Reads <code>count</code> lines of a text file from the line
+	 * <code>first</code>, counted from 0, through a sparse index of the line
+	 * offsets kept next to the cached blob.
+	 *
+	 * @return the lines read, without their line terminators, fewer than
+	 *         <code>count</code> at the end of the file
+	 */
+	public List<String> readLines(Path file, long first, int count) throws IOException {
+		return metrics.time("readLines", () -> ContentFactory.wrapFile(cache, check(file)).readLines(first, count));
+	}
+
+	/**
+	 * Searches the files below <code>root</code> for lines matching a regular
+	 * expression, reading only the files the content index does not rule out.
+	 */
+	public List<ContentSearch.Match> search(Path root, String regex) throws IOException {
+		return metrics.time("search", () -> new ContentSearch(cache).search(check(root), regex));
+	}
+
+	/**
+	 * Walks <code>root</code> down to <code>maxDepth</code> levels, as
+	 * {@link Files#walk(Path, int, java.nio.file.FileVisitOption...)} does, but
+	 * fetching the trees of each level concurrently, or the whole subtree at
+	 * once when it is large.
+	 */
+	public List<Path> walk(Path root, int maxDepth) throws IOException {
+		return metrics.time("walk", () -> new TreeWalk(cache).walk(check(root), maxDepth));
+	}
+
+	/**
+	 * Finds the paths below <code>root</code> whose file name matches a glob
+	 * pattern, through the name index of the revision rather than a walk.
+	 */
+	public List<Path> find(Path root, String glob) throws IOException {
+		return find(root, Integer.MAX_VALUE, glob);
+	}
+
+	/**
+	 * Finds the paths at most <code>maxDepth</code> levels below
+	 * <code>root</code> whose file name matches a glob pattern, such as
+	 * <code>pom.xml</code> or <code>*.java</code>.
+	 */
+	public List<Path> find(Path root, int maxDepth, String glob) throws IOException {
+		return metrics.time("find", () -> cache.getNameIndex().find(check(root), maxDepth, glob));
+	}
+
+	/**
+	 * Reads a whole file without blocking: requests are queued by the HTTP
+	 * client and completed from its threads.
+	 */
+	public CompletableFuture<byte[]> readAsync(Path path) {
+		return metrics.timeAsync("readAsync", () -> ContentFactory.readAsync(cache, check(path)));
+	}
+
+	public CompletableFuture<List<Path>> listAsync(Path dir) {
+		return metrics.timeAsync("listAsync", () -> ContentFactory.listAsync(cache, check(dir)));
+	}
+
+	public CompletableFuture<BasicFileAttributes> attributesAsync(Path path) {
+		return metrics.timeAsync("attributesAsync", () -> ContentFactory.getAttributesAsync(cache, check(path)));
+	}
 
+	/**
+	 * @return a publisher of <code>root</code> and every path below it, listing
+	 *         directories as the subscriber requests more paths
+	 */
+	public Flow.Publisher<Path> publish(Path root) {
+		return TreePublisher.paths(cache, check(root), TreePublisher.DEFAULT_CONCURRENCY);
+	}
+
+	/**
+	 * @return a publisher of every file below <code>root</code> with its
+	 *         content, reading files as the subscriber requests more
+	 */
+	public Flow.Publisher<Map.Entry<Path, byte[]>> publishContents(Path root) {
+		return TreePublisher.contents(cache, check(root), TreePublisher.DEFAULT_CONCURRENCY);
+	}
+
+	GitHubPath check(Path path) {
+		if (!(path instanceof GitHubPath) || (path.getFileSystem() != this)) {
+			throw new ProviderMismatchException();
+		}
+		return (GitHubPath) path.toAbsolutePath();
 	}
 
 	@Override
@@ -178,6 +371,17 @@ public class GitHubFileSystem extends FileSystem {
 
 	@Override
 	public void close() throws IOException {
+		if (shared) {
+			return;
+		}
+		connection.close();
+		try {
+			if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+		} catch (JMException ex) {
+			throw new IOException(ex);
+		}
 	}
 
 	@Override
@@ -202,12 +406,16 @@ public class GitHubFileSystem extends FileSystem {
 
 	@Override
 	public Iterable<FileStore> getFileStores() {
-		return null;
+		return Collections.singletonList(fileStore);
+	}
+
+	public GitHubFileStore getFileStore() {
+		return fileStore;
 	}
 
 	@Override
 	public Set<String> supportedFileAttributeViews() {
-		return null;
+		return Collections.singleton("basic");
 	}
 
 	@Override
@@ -361,19 +569,54 @@ public class GitHubFileSystem extends FileSystem {
 	}
 
 	InputStream newInputStream(GitHubPath path) throws IOException {
-		FileContent c = ContentFactory.wrapFile(ghRepo, revision, path);
-		return c.getInputStream();
+		return metrics.time("newInputStream", () -> {
+			FileContent c = ContentFactory.wrapFile(cache, path);
+			return c.getInputStream();
+		});
+	}
+
+	void copy(GitHubPath source, Path target, CopyOption... options) throws IOException {
+		metrics.time("copy", () -> {
+			boolean replace = Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING);
+			if (!replace && Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+				throw new FileAlreadyExistsException(target.toString());
+			}
+			if (ContentFactory.getAttributes(cache, source).isDirectory()) {
+				// as for the default file system, the entries of a directory are not copied
+				if (!Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+					Files.deleteIfExists(target);
+					Files.createDirectory(target);
+				}
+			} else {
+				ContentFactory.wrapFile(cache, source).copyTo(target);
+			}
+			return null;
+		});
 	}
 
 	DirectoryStream<Path> newDirectoryStream(final GitHubPath dir, DirectoryStream.Filter<? super Path> filter)
 			throws IOException {
-		DirectoryContent c = ContentFactory.wrapDirectory(ghRepo, revision, dir);
-		return c.list();
+		return metrics.time("newDirectoryStream", () -> {
+			DirectoryContent c = ContentFactory.wrapDirectory(cache, dir);
+			return c.list();
+		});
 	}
 
 	<A extends BasicFileAttributes> SeekableByteChannel newByteChannel(Path path) throws IOException {
-		final byte[] data = newInputStream((GitHubPath) path).readAllBytes();
+		return metrics.time("newByteChannel", () -> {
+			FileContent content = ContentFactory.wrapFile(cache, (GitHubPath) path);
+			// backed by the blob store when the file fits, in memory otherwise
+			SeekableByteChannel channel = content.newByteChannel();
+			if (channel != null) {
+				return channel;
+			}
+			try (InputStream in = content.getInputStream()) {
+				return newByteChannel(in.readAllBytes());
+			}
+		});
+	}
 
+	private static SeekableByteChannel newByteChannel(final byte[] data) {
 		return new SeekableByteChannel() {
 			long position;
 
@@ -422,11 +665,16 @@ public class GitHubFileSystem extends FileSystem {
 		};
 	}
 
+	AsynchronousFileChannel newAsynchronousFileChannel(Path path, ExecutorService executor) {
+		return new GitHubAsynchronousFileChannel(readAsync(path), executor);
+	}
+
 	<A extends BasicFileAttributes> A readAttributes(Path path, Class<A> clazz) throws IOException {
 		if (clazz != BasicFileAttributes.class) {
 			throw new UnsupportedOperationException();
 		}
 
-		return (A) ContentFactory.getContent(ghRepo, revision, (GitHubPath) path).getAttributes();
+		return (A) metrics.time("readAttributes",
+				() -> ContentFactory.getAttributes(cache, (GitHubPath) path));
 	}
 }
@@ -0,0 +1,584 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.pierre_ernst.githubfs.model.Futures;
+
+import fr.gnodet.githubfs.jfr.ApiRequestEvent;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Counters and latency histograms of a {@link GitHubFileSystem}: one timer per
+ * provider operation and per GitHub API call type, hits and misses per cache
+ * tier, bytes received and the last rate limit budget reported by GitHub.
+ */
+public class GitHubFileSystemMetrics implements GitHubFileSystemMetricsMXBean {
+
+	private static final Pattern API_CALL = Pattern.compile(
+			"/repos/[^/]+/[^/]+(?:/(git/trees|git/blobs|git/refs|git/tags|git/commits|contents|compare|zipball|tarball|commits))?");
+
+	public interface IOCallable<T> {
+		T call() throws IOException;
+	}
+
+	private final String repository;
+	private volatile String revision;
+
+	private final Map<String, Histogram> operations = new ConcurrentHashMap<>();
+	private final Map<String, Histogram> apiCalls = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> cacheHits = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> cacheMisses = new ConcurrentHashMap<>();
+	private final LongAdder bytesTransferred = new LongAdder();
+	private final LongAdder rateLimited = new LongAdder();
+	private volatile int rateLimitRemaining = -1;
+	private volatile int rateLimitLimit = -1;
+	private volatile long rateLimitReset = -1;
+	private volatile int concurrencyLimit = -1;
+	private volatile int concurrencyInFlight;
+
+	public GitHubFileSystemMetrics() {
+		this(null, null);
+	}
+
+	public GitHubFileSystemMetrics(String repository, String revision) {
+		this.repository = repository;
+		this.revision = revision;
+	}
+
+	@Override
+	public String getRepository() {
+		return repository;
+	}
+
+	@Override
+	public String getRevision() {
+		return revision;
+	}
+
+	void setRevision(String revision) {
+		this.revision = revision;
+	}
+
+	public <T> T time(String operation, IOCallable<T> callable) throws IOException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T result = callable.call();
+			failed = false;
+			return result;
+		} finally {
+			recordOperation(operation, System.nanoTime() - start, failed);
+		}
+	}
+
+	public <T> CompletableFuture<T> timeAsync(String operation, Supplier<CompletableFuture<T>> supplier) {
+		long start = System.nanoTime();
+		CompletableFuture<T> future;
+		try {
+			future = supplier.get();
+		} catch (RuntimeException ex) {
+			recordOperation(operation, System.nanoTime() - start, true);
+			throw ex;
+		}
+		return Futures.cancelling(future.whenComplete(
+				(result, failure) -> recordOperation(operation, System.nanoTime() - start, failure != null)), future);
+	}
+
+	public void recordOperation(String operation, long nanos, boolean failed) {
+		operations.computeIfAbsent(operation, k -> new Histogram()).record(nanos, failed);
+	}
+
+	public void recordApiCall(String type, long nanos, boolean failed) {
+		apiCalls.computeIfAbsent(type, k -> new Histogram()).record(nanos, failed);
+	}
+
+	public void recordCacheHit(String tier) {
+		cacheHits.computeIfAbsent(tier, k -> new LongAdder()).increment();
+	}
+
+	public void recordCacheMiss(String tier) {
+		cacheMisses.computeIfAbsent(tier, k -> new LongAdder()).increment();
+	}
+
+	public void recordBytes(long bytes) {
+		if (bytes > 0) {
+			bytesTransferred.add(bytes);
+		}
+	}
+
+	public void recordRateLimit(int remaining, int limit, long reset) {
+		rateLimitRemaining = remaining;
+		rateLimitLimit = limit;
+		rateLimitReset = reset;
+	}
+
+	public void recordConcurrencyLimit(int limit, int inFlight) {
+		concurrencyLimit = limit;
+		concurrencyInFlight = inFlight;
+	}
+
+	/**
+	 * @return an interceptor timing every request that reaches the network, and
+	 *         reading the rate limit headers of their responses
+	 */
+	public Interceptor interceptor() {
+		return chain -> {
+			Request request = chain.request();
+			String type = apiCallType(request.url().encodedPath());
+			ApiRequestEvent event = new ApiRequestEvent();
+			event.begin();
+			long start = System.nanoTime();
+			Response response;
+			try {
+				response = chain.proceed(request);
+			} catch (IOException ex) {
+				recordApiCall(type, System.nanoTime() - start, true);
+				commit(event, type, request, -1, 0);
+				throw ex;
+			}
+			recordApiCall(type, System.nanoTime() - start, response.code() >= 400);
+
+			String remaining = response.header("X-RateLimit-Remaining");
+			if (remaining != null) {
+				try {
+					recordRateLimit(Integer.parseInt(remaining),
+							Integer.parseInt(response.header("X-RateLimit-Limit", "-1")),
+							Long.parseLong(response.header("X-RateLimit-Reset", "-1")));
+				} catch (NumberFormatException ex) {
+					// NO-OP
+				}
+				if ((response.code() == 403) && "0".equals(remaining)) {
+					rateLimited.increment();
+				}
+			}
+			ResponseBody body = response.body();
+			if (body == null) {
+				commit(event, type, request, response.code(), 0);
+				return response;
+			}
+			commit(event, type, request, response.code(), Math.max(0, body.contentLength()));
+			return response.newBuilder().body(counting(body)).build();
+		};
+	}
+
+	/**
+	 * @return the body, counting the bytes as they are read, since chunked
+	 *         responses have no length up front
+	 */
+	private ResponseBody counting(ResponseBody body) {
+		BufferedSource source = Okio.buffer(new ForwardingSource(body.source()) {
+			@Override
+			public long read(Buffer sink, long byteCount) throws IOException {
+				long read = super.read(sink, byteCount);
+				recordBytes(read);
+				return read;
+			}
+		});
+		return ResponseBody.create(body.contentType(), body.contentLength(), source);
+	}
+
+	private static void commit(ApiRequestEvent event, String type, Request request, int status, long bytes) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.endpoint = type;
+			event.method = request.method();
+			event.path = request.url().encodedPath();
+			event.status = status;
+			event.bytes = bytes;
+			event.commit();
+		}
+	}
+
+	static String apiCallType(String path) {
+		if (path.endsWith("/graphql")) {
+			return "graphql";
+		}
+		if (path.endsWith("/rate_limit")) {
+			return "rate_limit";
+		}
+		if (path.endsWith(".git/info/refs") || path.endsWith(".git/git-upload-pack")) {
+			return "pack";
+		}
+		Matcher m = API_CALL.matcher(path);
+		if (!m.find()) {
+			return "other";
+		}
+		if (m.group(1) == null) {
+			return "repository";
+		}
+		switch (m.group(1)) {
+		case "git/trees":
+			return "tree";
+		case "git/blobs":
+			return "blob";
+		case "git/refs":
+			return "ref";
+		case "git/tags":
+			return "tag";
+		case "zipball":
+		case "tarball":
+			return "archive";
+		case "git/commits":
+			return "commit";
+		default:
+			return m.group(1);
+		}
+	}
+
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		return collect(operations, h -> h.count.sum());
+	}
+
+	@Override
+	public Map<String, Long> getOperationErrors() {
+		return collect(operations, h -> h.errors.sum());
+	}
+
+	@Override
+	public Map<String, Double> getOperationP50Millis() {
+		return collect(operations, h -> h.percentileMillis(0.50));
+	}
+
+	@Override
+	public Map<String, Double> getOperationP99Millis() {
+		return collect(operations, h -> h.percentileMillis(0.99));
+	}
+
+	@Override
+	public Map<String, Long> getApiCallCounts() {
+		return collect(apiCalls, h -> h.count.sum());
+	}
+
+	@Override
+	public Map<String, Long> getApiCallErrors() {
+		return collect(apiCalls, h -> h.errors.sum());
+	}
+
+	@Override
+	public Map<String, Double> getApiCallP50Millis() {
+		return collect(apiCalls, h -> h.percentileMillis(0.50));
+	}
+
+	@Override
+	public Map<String, Double> getApiCallP99Millis() {
+		return collect(apiCalls, h -> h.percentileMillis(0.99));
+	}
+
+	@Override
+	public Map<String, Long> getCacheHits() {
+		return collect(cacheHits, LongAdder::sum);
+	}
+
+	@Override
+	public Map<String, Long> getCacheMisses() {
+		return collect(cacheMisses, LongAdder::sum);
+	}
+
+	public long getCacheHits(String tier) {
+		LongAdder hits = cacheHits.get(tier);
+		return (hits == null) ? 0 : hits.sum();
+	}
+
+	public long getCacheMisses(String tier) {
+		LongAdder misses = cacheMisses.get(tier);
+		return (misses == null) ? 0 : misses.sum();
+	}
+
+	@Override
+	public Map<String, Double> getCacheHitRatios() {
+		Map<String, Double> result = new TreeMap<>();
+		Map<String, Long> hits = getCacheHits();
+		Map<String, Long> misses = getCacheMisses();
+		for (String tier : hits.keySet()) {
+			result.put(tier, ratio(hits.get(tier), misses.getOrDefault(tier, 0L)));
+		}
+		for (String tier : misses.keySet()) {
+			result.putIfAbsent(tier, 0.0);
+		}
+		return result;
+	}
+
+	@Override
+	public long getBytesTransferred() {
+		return bytesTransferred.sum();
+	}
+
+	@Override
+	public int getRateLimitRemaining() {
+		return rateLimitRemaining;
+	}
+
+	@Override
+	public int getRateLimitLimit() {
+		return rateLimitLimit;
+	}
+
+	@Override
+	public long getRateLimitReset() {
+		return rateLimitReset;
+	}
+
+	@Override
+	public long getRateLimitedCount() {
+		return rateLimited.sum();
+	}
+
+	@Override
+	public int getConcurrencyLimit() {
+		return concurrencyLimit;
+	}
+
+	@Override
+	public int getConcurrencyInFlight() {
+		return concurrencyInFlight;
+	}
+
+	@Override
+	public void reset() {
+		operations.clear();
+		apiCalls.clear();
+		cacheHits.clear();
+		cacheMisses.clear();
+		bytesTransferred.reset();
+		rateLimited.reset();
+	}
+
+	static double ratio(long hits, long misses) {
+		return (hits + misses == 0) ? 0.0 : (double) hits / (hits + misses);
+	}
+
+	private static <V, R> Map<String, R> collect(Map<String, V> map, Function<V, R> f) {
+		Map<String, R> result = new TreeMap<>();
+		map.forEach((k, v) -> result.put(k, f.apply(v)));
+		return result;
+	}
+
+	/**
+	 * Latency histogram with power of two microsecond buckets, precise enough
+	 * for percentiles while staying lock free.
+	 */
+	static final class Histogram {
+		private static final int BUCKETS = 40;
+
+		final LongAdder count = new LongAdder();
+		final LongAdder errors = new LongAdder();
+		final LongAdder totalNanos = new LongAdder();
+		final AtomicLong maxNanos = new AtomicLong();
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		void record(long nanos, boolean failed) {
+			count.increment();
+			if (failed) {
+				errors.increment();
+			}
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+			buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros)));
+		}
+
+		double percentileMillis(double percentile) {
+			long total = 0;
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0.0;
+			}
+			long rank = (long) Math.ceil(percentile * total);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					// upper bound of the bucket, capped by the largest sample
+					double upper = (i == 0) ? 0.001 : (1L << i) / 1000.0;
+					return Math.min(upper, maxNanos.get() / 1e6);
+				}
+			}
+			return maxNanos.get() / 1e6;
+		}
+
+		Timing toTiming() {
+			long n = count.sum();
+			return new Timing(n, errors.sum(), (n == 0) ? 0.0 : totalNanos.sum() / 1e6 / n, percentileMillis(0.50),
+					percentileMillis(0.99), maxNanos.get() / 1e6);
+		}
+	}
+
+	public static final class Timing {
+		private final long count;
+		private final long errors;
+		private final double meanMillis;
+		private final double p50Millis;
+		private final double p99Millis;
+		private final double maxMillis;
+
+		Timing(long count, long errors, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+			this.count = count;
+			this.errors = errors;
+			this.meanMillis = meanMillis;
+			this.p50Millis = p50Millis;
+			this.p99Millis = p99Millis;
+			this.maxMillis = maxMillis;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getErrors() {
+			return errors;
+		}
+
+		public double getMeanMillis() {
+			return meanMillis;
+		}
+
+		public double getP50Millis() {
+			return p50Millis;
+		}
+
+		public double getP99Millis() {
+			return p99Millis;
+		}
+
+		public double getMaxMillis() {
+			return maxMillis;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Timing [count=%d, errors=%d, mean=%.2fms, p50=%.2fms, p99=%.2fms, max=%.2fms]", count,
+					errors, meanMillis, p50Millis, p99Millis, maxMillis);
+		}
+	}
+
+	/**
+	 * Point in time copy of the metrics of a file system.
+	 */
+	public static final class Snapshot {
+		private final Map<String, Timing> operations;
+		private final Map<String, Timing> apiCalls;
+		private final Map<String, Long> cacheHits;
+		private final Map<String, Long> cacheMisses;
+		private final long bytesTransferred;
+		private final int rateLimitRemaining;
+		private final int rateLimitLimit;
+		private final long rateLimitReset;
+		private final long rateLimitedCount;
+		private final int concurrencyLimit;
+
+		Snapshot(GitHubFileSystemMetrics metrics) {
+			operations = Collections.unmodifiableMap(collect(metrics.operations, Histogram::toTiming));
+			apiCalls = Collections.unmodifiableMap(collect(metrics.apiCalls, Histogram::toTiming));
+			cacheHits = Collections.unmodifiableMap(metrics.getCacheHits());
+			cacheMisses = Collections.unmodifiableMap(metrics.getCacheMisses());
+			bytesTransferred = metrics.getBytesTransferred();
+			rateLimitRemaining = metrics.getRateLimitRemaining();
+			rateLimitLimit = metrics.getRateLimitLimit();
+			rateLimitReset = metrics.getRateLimitReset();
+			rateLimitedCount = metrics.getRateLimitedCount();
+			concurrencyLimit = metrics.getConcurrencyLimit();
+		}
+
+		public Map<String, Timing> getOperations() {
+			return operations;
+		}
+
+		public Map<String, Timing> getApiCalls() {
+			return apiCalls;
+		}
+
+		public Map<String, Long> getCacheHits() {
+			return cacheHits;
+		}
+
+		public Map<String, Long> getCacheMisses() {
+			return cacheMisses;
+		}
+
+		public double getCacheHitRatio(String tier) {
+			return ratio(cacheHits.getOrDefault(tier, 0L), cacheMisses.getOrDefault(tier, 0L));
+		}
+
+		public long getApiCallCount() {
+			return apiCalls.values().stream().mapToLong(Timing::getCount).sum();
+		}
+
+		public long getBytesTransferred() {
+			return bytesTransferred;
+		}
+
+		public int getRateLimitRemaining() {
+			return rateLimitRemaining;
+		}
+
+		public int getRateLimitLimit() {
+			return rateLimitLimit;
+		}
+
+		public long getRateLimitReset() {
+			return rateLimitReset;
+		}
+
+		public long getRateLimitedCount() {
+			return rateLimitedCount;
+		}
+
+		public int getConcurrencyLimit() {
+			return concurrencyLimit;
+		}
+
+		@Override
+		public String toString() {
+			return "Snapshot [operations=" + operations + ", apiCalls=" + apiCalls + ", cacheHits=" + cacheHits
+					+ ", cacheMisses=" + cacheMisses + ", bytesTransferred=" + bytesTransferred
+					+ ", rateLimitRemaining=" + rateLimitRemaining + ", concurrencyLimit=" + concurrencyLimit + "]";
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link GitHubFileSystemMetrics} of one file system. Latencies
+ * are in milliseconds.
+ */
+public interface GitHubFileSystemMetricsMXBean {
+
+	String getRepository();
+
+	String getRevision();
+
+	Map<String, Long> getOperationCounts();
+
+	Map<String, Long> getOperationErrors();
+
+	Map<String, Double> getOperationP50Millis();
+
+	Map<String, Double> getOperationP99Millis();
+
+	Map<String, Long> getApiCallCounts();
+
+	Map<String, Long> getApiCallErrors();
+
+	Map<String, Double> getApiCallP50Millis();
+
+	Map<String, Double> getApiCallP99Millis();
+
+	Map<String, Long> getCacheHits();
+
+	Map<String, Long> getCacheMisses();
+
+	Map<String, Double> getCacheHitRatios();
+
+	long getBytesTransferred();
+
+	int getRateLimitRemaining();
+
+	int getRateLimitLimit();
+
+	long getRateLimitReset();
+
+	long getRateLimitedCount();
+
+	/**
+	 * @return the current limit of requests in flight, or -1 if requests are
+	 *         not limited
+	 */
+	int getConcurrencyLimit();
+
+	int getConcurrencyInFlight();
+
+	void reset();
+}
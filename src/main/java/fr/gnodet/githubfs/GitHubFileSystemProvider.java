@@ -21,6 +21,7 @@ package fr.gnodet.githubfs;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessMode;
 import java.nio.file.CopyOption;
@@ -33,17 +34,22 @@ import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.ProviderMismatchException;
 import java.nio.file.ReadOnlyFileSystemException;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 
 public class GitHubFileSystemProvider extends FileSystemProvider {
 
-	final Map<String, GitHubFileSystem> fileSystems = new HashMap<>();
+	final Map<String, GitHubFileSystem> fileSystems = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<GitHubFileSystem>> opening = new ConcurrentHashMap<>();
 
 	@Override
 	public String getScheme() {
@@ -52,48 +58,86 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 
 	@Override
 	public GitHubFileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
-		synchronized (fileSystems) {
-			String schemeSpecificPart = uri.getSchemeSpecificPart();
-			int i = schemeSpecificPart.indexOf("!/");
-			if (i >= 0) {
-				schemeSpecificPart = schemeSpecificPart.substring(0, i);
-			}
-			GitHubFileSystem fileSystem = fileSystems.get(schemeSpecificPart);
-			if (fileSystem != null) {
+		String schemeSpecificPart = getSpecification(uri);
+		CompletableFuture<GitHubFileSystem> pending = new CompletableFuture<>();
+		// opening a file system sends requests, so it is not done under a lock
+		if (opening.putIfAbsent(schemeSpecificPart, pending) != null) {
+			throw new FileSystemAlreadyExistsException(schemeSpecificPart);
+		}
+		try {
+			if (fileSystems.containsKey(schemeSpecificPart)) {
 				throw new FileSystemAlreadyExistsException(schemeSpecificPart);
 			}
-			fileSystem = new GitHubFileSystem(this, schemeSpecificPart, env);
+			GitHubFileSystem fileSystem = isOrganization(schemeSpecificPart)
+					? new GitHubOrganizationFileSystem(this, GitHubConnection.open(schemeSpecificPart, env))
+					: new GitHubFileSystem(this, schemeSpecificPart, env);
 			fileSystems.put(schemeSpecificPart, fileSystem);
+			pending.complete(fileSystem);
 			return fileSystem;
+		} catch (IOException | RuntimeException ex) {
+			pending.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			opening.remove(schemeSpecificPart);
 		}
 	}
 
+	private static String getSpecification(URI uri) {
+		String schemeSpecificPart = uri.getSchemeSpecificPart();
+		int i = schemeSpecificPart.indexOf("!/");
+		if (i >= 0) {
+			schemeSpecificPart = schemeSpecificPart.substring(0, i);
+		}
+		return schemeSpecificPart;
+	}
+
+	/**
+	 * @return <code>true</code> if the specification names an organization or a
+	 *         user rather than a repository
+	 */
+	private static boolean isOrganization(String schemeSpecificPart) {
+		String name = schemeSpecificPart.substring(schemeSpecificPart.indexOf('@') + 1);
+		int i = name.indexOf('?');
+		if (i >= 0) {
+			name = name.substring(0, i);
+		}
+		return name.indexOf('/') < 0;
+	}
+
 	@Override
 	public GitHubFileSystem getFileSystem(URI uri) {
 		return getFileSystem(uri, false);
 	}
 
+	/**
+	 * @param create <code>true</code> to open the file system if it is not open
+	 *               yet, or to wait for another thread opening it
+	 */
 	public GitHubFileSystem getFileSystem(URI uri, boolean create) {
-		synchronized (fileSystems) {
-			String schemeSpecificPart = uri.getSchemeSpecificPart();
-			int i = schemeSpecificPart.indexOf("!/");
-			if (i >= 0) {
-				schemeSpecificPart = schemeSpecificPart.substring(0, i);
-			}
+		String schemeSpecificPart = getSpecification(uri);
+		while (true) {
 			GitHubFileSystem fileSystem = fileSystems.get(schemeSpecificPart);
-			if (fileSystem == null) {
-				if (create) {
-					try {
-						fileSystem = newFileSystem(uri, null);
-					} catch (IOException e) {
-						throw (FileSystemNotFoundException) new FileSystemNotFoundException(schemeSpecificPart)
-								.initCause(e);
-					}
-				} else {
-					throw new FileSystemNotFoundException(schemeSpecificPart);
+			if (fileSystem != null) {
+				return fileSystem;
+			}
+			if (!create) {
+				throw new FileSystemNotFoundException(schemeSpecificPart);
+			}
+			CompletableFuture<GitHubFileSystem> pending = opening.get(schemeSpecificPart);
+			try {
+				return (pending != null) ? pending.join() : newFileSystem(uri, null);
+			} catch (FileSystemAlreadyExistsException e) {
+				// opened by another thread in the meantime
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof FileSystemAlreadyExistsException) {
+					continue;
 				}
+				throw (FileSystemNotFoundException) new FileSystemNotFoundException(schemeSpecificPart)
+						.initCause(e.getCause());
+			} catch (IOException e) {
+				throw (FileSystemNotFoundException) new FileSystemNotFoundException(schemeSpecificPart)
+						.initCause(e);
 			}
-			return fileSystem;
 		}
 	}
 
@@ -134,6 +178,18 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		return ((GitHubPath) path).getFileSystem().newByteChannel(path);
 	}
 
+	@Override
+	public AsynchronousFileChannel newAsynchronousFileChannel(Path path, Set<? extends OpenOption> options,
+			ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+		if (!(path instanceof GitHubPath)) {
+			throw new ProviderMismatchException();
+		}
+		if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)) {
+			throw new ReadOnlyFileSystemException();
+		}
+		return ((GitHubPath) path).getFileSystem().newAsynchronousFileChannel(path, executor);
+	}
+
 	@Override
 	public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
 		throw new ReadOnlyFileSystemException();
@@ -144,9 +200,21 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 		throw new ReadOnlyFileSystemException();
 	}
 
+	/**
+	 * Copies a file out to another file system, such as the default one, the
+	 * only copies this read only file system can make. Note that
+	 * {@link java.nio.file.Files#copy(Path, Path, CopyOption...)} copies
+	 * between providers through streams, without calling this method.
+	 */
 	@Override
 	public void copy(Path source, Path target, CopyOption... options) throws IOException {
-		throw new ReadOnlyFileSystemException();
+		if (!(source instanceof GitHubPath)) {
+			throw new ProviderMismatchException();
+		}
+		if (target instanceof GitHubPath) {
+			throw new ReadOnlyFileSystemException();
+		}
+		((GitHubPath) source).getFileSystem().copy((GitHubPath) source, target, options);
 	}
 
 	@Override
@@ -166,7 +234,10 @@ public class GitHubFileSystemProvider extends FileSystemProvider {
 
 	@Override
 	public FileStore getFileStore(Path path) throws IOException {
-		return null;
+		if (!(path instanceof GitHubPath)) {
+			throw new ProviderMismatchException();
+		}
+		return ((GitHubPath) path).getFileSystem().getFileStore();
 	}
 
 	@Override
@@ -0,0 +1,817 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import org.kohsuke.github.GHPerson;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+
+import com.github.pierre_ernst.githubfs.model.ContentCache;
+import com.github.pierre_ernst.githubfs.model.ContentSearch;
+import com.github.pierre_ernst.githubfs.model.Futures;
+import com.github.pierre_ernst.githubfs.model.PrefetchPolicy;
+import com.github.pierre_ernst.githubfs.model.TreeStore;
+
+/**
+ * File system of every repository of an organization or user, opened from a
+ * URI without repository such as <code>github:myorg!/repoA/src</code>. Each
+ * repository is a directory of the root, listed on first access to the root,
+ * and is only opened when a path below it is accessed. The repositories share
+ * the HTTP client, with its connection pool and dispatcher, the executor, the
+ * blob store and the metrics of the organization.
+ */
+public class GitHubOrganizationFileSystem extends GitHubFileSystem {
+
+	private final GitHubFileSystemProvider fileSystemProvider;
+	private final Map<String, GitHubFileSystem> fileSystems = new ConcurrentHashMap<>();
+	private final GitHubFileStore fileStore;
+	private volatile Map<String, GHRepository> repositories;
+	private volatile PrefetchPolicy prefetchPolicy;
+
+	GitHubOrganizationFileSystem(GitHubFileSystemProvider fileSystemProvider, GitHubConnection connection)
+			throws IOException {
+		super(fileSystemProvider, connection);
+		this.fileSystemProvider = fileSystemProvider;
+		fileStore = new GitHubFileStore(connection.getName(), this::getRepositoriesSize,
+				connection.getBlobStore(), TreeStore.getShared(), connection.getMetrics());
+	}
+
+	public String getOrganization() {
+		return getConnection().getName();
+	}
+
+	/**
+	 * @return the names of the repositories, listed on first call
+	 */
+	public List<String> getRepositoryNames() throws IOException {
+		return new ArrayList<>(getRepositories().keySet());
+	}
+
+	/**
+	 * @return the file system of a repository of the organization, opened on
+	 *         first call
+	 */
+	public GitHubFileSystem getFileSystem(String repository) throws IOException {
+		GitHubFileSystem fs = fileSystems.get(repository);
+		if (fs != null) {
+			return fs;
+		}
+		try {
+			return fileSystems.computeIfAbsent(repository, name -> {
+				try {
+					Map<String, GHRepository> listed = repositories;
+					GHRepository repo = (listed != null) ? listed.get(name)
+							: getConnection().getGitHub().getRepository(getOrganization() + "/" + name);
+					if (repo == null) {
+						throw new NoSuchFileException("/" + name);
+					}
+					GitHubFileSystem member = new GitHubFileSystem(fileSystemProvider, getConnection(), repo);
+					PrefetchPolicy policy = prefetchPolicy;
+					if (policy != null) {
+						member.setPrefetchPolicy(policy);
+					}
+					return member;
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+
+	private Map<String, GHRepository> getRepositories() throws IOException {
+		Map<String, GHRepository> r = repositories;
+		if (r == null) {
+			synchronized (this) {
+				r = repositories;
+				if (r == null) {
+					r = new LinkedHashMap<>();
+					for (GHRepository repo : getOwner().listRepositories(100)) {
+						r.put(repo.getName(), repo);
+					}
+					repositories = r = Collections.unmodifiableMap(r);
+				}
+			}
+		}
+		return r;
+	}
+
+	private GHPerson getOwner() throws IOException {
+		GitHub gitHub = getConnection().getGitHub();
+		try {
+			return gitHub.getOrganization(getOrganization());
+		} catch (FileNotFoundException ex) {
+			// a user rather than an organization
+			return gitHub.getUser(getOrganization());
+		}
+	}
+
+	private long getRepositoriesSize() {
+		Map<String, GHRepository> listed = repositories;
+		Collection<GHRepository> repos = (listed != null) ? listed.values() : Collections.emptyList();
+		long size = 0;
+		for (GHRepository repo : repos) {
+			size += repo.getSize() * 1024L;
+		}
+		return size;
+	}
+
+	/**
+	 * @return the path in the file system of its repository
+	 */
+	private GitHubPath toRepository(GitHubPath path) throws IOException {
+		GitHubPath absolute = check(path);
+		if (absolute.getNameCount() == 0) {
+			throw new IOException("The root of " + getOrganization() + " is not in a repository");
+		}
+		GitHubFileSystem fs = getFileSystem(absolute.getName(0).toString());
+		return (GitHubPath) fs.getPath("/" + ((absolute.getNameCount() > 1)
+				? absolute.subpath(1, absolute.getNameCount()).toString() : ""));
+	}
+
+	private Path fromRepository(Path path) {
+		GitHubFileSystem fs = (GitHubFileSystem) path.getFileSystem();
+		return getPath("/" + fs.getRepository().getName() + path.toAbsolutePath().toString());
+	}
+
+	private List<Path> fromRepository(List<Path> paths) {
+		List<Path> result = new ArrayList<>(paths.size());
+		for (Path path : paths) {
+			result.add(fromRepository(path));
+		}
+		return result;
+	}
+
+	private List<Path> listRoot() throws IOException {
+		List<Path> result = new ArrayList<>();
+		for (String name : getRepositories().keySet()) {
+			result.add(getPath("/" + name));
+		}
+		return result;
+	}
+
+	@Override
+	public GHRepository getRepository() {
+		return null;
+	}
+
+	@Override
+	public ContentCache getContentCache() {
+		return null;
+	}
+
+	@Override
+	public PrefetchPolicy getPrefetchPolicy() {
+		return prefetchPolicy;
+	}
+
+	@Override
+	public void setPrefetchPolicy(PrefetchPolicy policy) {
+		this.prefetchPolicy = policy;
+		for (GitHubFileSystem fs : fileSystems.values()) {
+			fs.setPrefetchPolicy(policy);
+		}
+	}
+
+	@Override
+	public GitHubFileStore getFileStore() {
+		return fileStore;
+	}
+
+	@Override
+	public Iterable<FileStore> getFileStores() {
+		return Collections.singletonList(fileStore);
+	}
+
+	/**
+	 * Moves every repository opened so far to the commit its revision
+	 * currently points to.
+	 */
+	@Override
+	public boolean refresh() throws IOException {
+		boolean moved = false;
+		for (GitHubFileSystem fs : fileSystems.values()) {
+			moved |= fs.refresh();
+		}
+		return moved;
+	}
+
+	@Override
+	public Map<Path, byte[]> readAll(Collection<? extends Path> paths) throws IOException {
+		Map<GitHubFileSystem, List<Path>> byRepository = new LinkedHashMap<>();
+		Map<Path, Path> inRepository = new LinkedHashMap<>();
+		for (Path path : paths) {
+			GitHubPath p = toRepository((GitHubPath) path);
+			byRepository.computeIfAbsent(p.getFileSystem(), fs -> new ArrayList<>()).add(p);
+			inRepository.put(path, p);
+		}
+		Map<Path, byte[]> read = new HashMap<>();
+		for (Map.Entry<GitHubFileSystem, List<Path>> e : byRepository.entrySet()) {
+			read.putAll(e.getKey().readAll(e.getValue()));
+		}
+		Map<Path, byte[]> result = new LinkedHashMap<>();
+		for (Map.Entry<Path, Path> e : inRepository.entrySet()) {
+			byte[] data = read.get(e.getValue());
+			if (data != null) {
+				result.put(e.getKey(), data);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public CompletableFuture<byte[]> readAsync(Path path) {
+		try {
+			GitHubPath p = toRepository((GitHubPath) path);
+			return p.getFileSystem().readAsync(p);
+		} catch (IOException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+	@Override
+	public CompletableFuture<List<Path>> listAsync(Path dir) {
+		try {
+			if (check(dir).getNameCount() == 0) {
+				return CompletableFuture.completedFuture(listRoot());
+			}
+			GitHubPath p = toRepository((GitHubPath) dir);
+			return Futures.thenApply(p.getFileSystem().listAsync(p), this::fromRepository);
+		} catch (IOException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+	@Override
+	public CompletableFuture<BasicFileAttributes> attributesAsync(Path path) {
+		try {
+			if (check(path).getNameCount() == 0) {
+				return CompletableFuture.completedFuture(ROOT_ATTRIBUTES);
+			}
+			GitHubPath p = toRepository((GitHubPath) path);
+			return p.getFileSystem().attributesAsync(p);
+		} catch (IOException ex) {
+			return CompletableFuture.failedFuture(ex);
+		}
+	}
+
+	/**
+	 * Walks the repositories in parallel when walking from the root, on the
+	 * executor shared by the organization.
+	 */
+	@Override
+	public List<Path> walk(Path root, int maxDepth) throws IOException {
+		if (check(root).getNameCount() > 0) {
+			GitHubPath p = toRepository((GitHubPath) root);
+			return fromRepository(p.getFileSystem().walk(p, maxDepth));
+		}
+		List<Path> result = new ArrayList<>();
+		result.add(check(root));
+		if (maxDepth <= 0) {
+			return result;
+		}
+		return getMetrics().time("walk", () -> {
+			for (List<Path> paths : fanOut(
+					(fs, repositoryRoot) -> fromRepository(fs.walk(repositoryRoot, maxDepth - 1)))) {
+				result.addAll(paths);
+			}
+			return result;
+		});
+	}
+
+	/**
+	 * Searches the name index of every repository in parallel when finding from
+	 * the root.
+	 */
+	@Override
+	public List<Path> find(Path root, int maxDepth, String glob) throws IOException {
+		if (check(root).getNameCount() > 0) {
+			GitHubPath p = toRepository((GitHubPath) root);
+			return fromRepository(p.getFileSystem().find(p, maxDepth, glob));
+		}
+		if (maxDepth <= 0) {
+			return new ArrayList<>();
+		}
+		return getMetrics().time("find", () -> {
+			List<Path> result = new ArrayList<>();
+			PathMatcher matcher = getPathMatcher("glob:" + glob);
+			for (List<Path> paths : fanOut((fs, repositoryRoot) -> {
+				List<Path> found = new ArrayList<>();
+				if (matcher.matches(getPath(fs.getRepository().getName()))) {
+					found.add(repositoryRoot);
+				}
+				found.addAll(fs.find(repositoryRoot, maxDepth - 1, glob));
+				return fromRepository(found);
+			})) {
+				result.addAll(paths);
+			}
+			return result;
+		});
+	}
+
+	private interface RepositoryTask<T> {
+		T call(GitHubFileSystem fs, GitHubPath root) throws IOException;
+	}
+
+	/**
+	 * Runs a task on every repository, opening them and running the task
+	 * concurrently on the shared executor.
+	 *
+	 * @return the results of the task, in the order of the repositories
+	 */
+	private <T> List<T> fanOut(RepositoryTask<T> task) throws IOException {
+		ExecutorService executor = getConnection().getExecutor();
+		List<CompletableFuture<T>> futures = new ArrayList<>();
+		for (String name : getRepositories().keySet()) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					GitHubFileSystem fs = getFileSystem(name);
+					return task.call(fs, (GitHubPath) fs.getPath("/"));
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}, executor));
+		}
+		List<T> result = new ArrayList<>();
+		for (CompletableFuture<T> future : futures) {
+			try {
+				result.add(future.join());
+			} catch (CompletionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				throw ex;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fetches the pack of every repository in parallel, opening them all.
+	 *
+	 * @return the number of objects received for all the repositories
+	 */
+	@Override
+	public int fetchPack() throws IOException {
+		return getMetrics().time("fetchPack", () -> {
+			int objects = 0;
+			for (int received : fanOut((fs, repositoryRoot) -> fs.fetchPack())) {
+				objects += received;
+			}
+			return objects;
+		});
+	}
+
+	/**
+	 * Searches every repository in parallel when searching from the root.
+	 */
+	@Override
+	public List<ContentSearch.Match> search(Path root, String regex) throws IOException {
+		if (check(root).getNameCount() > 0) {
+			return searchRepository(toRepository((GitHubPath) root), regex);
+		}
+		return getMetrics().time("search", () -> {
+			List<ContentSearch.Match> result = new ArrayList<>();
+			for (List<ContentSearch.Match> matches : fanOut(
+					(fs, repositoryRoot) -> searchRepository(repositoryRoot, regex))) {
+				result.addAll(matches);
+			}
+			return result;
+		});
+	}
+
+	private List<ContentSearch.Match> searchRepository(GitHubPath root, String regex) throws IOException {
+		List<ContentSearch.Match> result = new ArrayList<>();
+		for (ContentSearch.Match match : root.getFileSystem().search(root, regex)) {
+			result.add(match.withPath(fromRepository(match.getPath())));
+		}
+		return result;
+	}
+
+	/**
+	 * Publishes the root, then the paths of every repository one after the
+	 * other, when publishing from the root.
+	 */
+	@Override
+	public Flow.Publisher<Path> publish(Path root) {
+		Function<GitHubPath, Flow.Publisher<Path>> publisher = p -> p.getFileSystem().publish(p);
+		if (check(root).getNameCount() == 0) {
+			return concatenated(check(root), publisher, this::fromRepository);
+		}
+		return mapped(root, publisher, this::fromRepository);
+	}
+
+	/**
+	 * Publishes the files of every repository one after the other when
+	 * publishing from the root.
+	 */
+	@Override
+	public Flow.Publisher<Map.Entry<Path, byte[]>> publishContents(Path root) {
+		Function<GitHubPath, Flow.Publisher<Map.Entry<Path, byte[]>>> publisher = p -> p.getFileSystem()
+				.publishContents(p);
+		Function<Map.Entry<Path, byte[]>, Map.Entry<Path, byte[]>> mapper = e -> new AbstractMap.SimpleImmutableEntry<>(
+				fromRepository(e.getKey()), e.getValue());
+		if (check(root).getNameCount() == 0) {
+			return concatenated(null, publisher, mapper);
+		}
+		return mapped(root, publisher, mapper);
+	}
+
+	/**
+	 * @return a publisher of <code>first</code>, unless it is
+	 *         <code>null</code>, followed by the items published in the file
+	 *         system of every repository, mapped to the organization
+	 */
+	private <T, R> Flow.Publisher<R> concatenated(R first, Function<GitHubPath, Flow.Publisher<T>> publisher,
+			Function<? super T, ? extends R> mapper) {
+		return subscriber -> {
+			List<Flow.Publisher<R>> sources = new ArrayList<>();
+			if (first != null) {
+				sources.add(single(first));
+			}
+			try {
+				for (String name : getRepositories().keySet()) {
+					sources.add(mapped(getPath("/" + name), publisher, mapper));
+				}
+			} catch (IOException ex) {
+				failed(subscriber, ex);
+				return;
+			}
+			new Concatenation<>(subscriber, sources.iterator()).subscribeNext();
+		};
+	}
+
+	/**
+	 * @return a publisher of the items published in the file system of the
+	 *         repository of <code>root</code>, mapped to the organization
+	 */
+	private <T, R> Flow.Publisher<R> mapped(Path root, Function<GitHubPath, Flow.Publisher<T>> publisher,
+			Function<? super T, ? extends R> mapper) {
+		return subscriber -> {
+			Flow.Publisher<T> source;
+			try {
+				source = publisher.apply(toRepository((GitHubPath) root));
+			} catch (IOException ex) {
+				failed(subscriber, ex);
+				return;
+			}
+			source.subscribe(new Flow.Subscriber<T>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscriber.onSubscribe(subscription);
+				}
+
+				@Override
+				public void onNext(T item) {
+					subscriber.onNext(mapper.apply(item));
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					subscriber.onError(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					subscriber.onComplete();
+				}
+			});
+		};
+	}
+
+	private static void failed(Flow.Subscriber<?> subscriber, Throwable ex) {
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				// NO-OP
+			}
+
+			@Override
+			public void cancel() {
+				// NO-OP
+			}
+		});
+		subscriber.onError(ex);
+	}
+
+	private static <T> Flow.Publisher<T> single(T item) {
+		return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+			private final AtomicBoolean done = new AtomicBoolean();
+
+			@Override
+			public void request(long n) {
+				if (done.compareAndSet(false, true)) {
+					subscriber.onNext(item);
+					subscriber.onComplete();
+				}
+			}
+
+			@Override
+			public void cancel() {
+				done.set(true);
+			}
+		});
+	}
+
+	/**
+	 * Subscribes to publishers one after the other, passing the demand left by
+	 * one on to the next.
+	 */
+	private static final class Concatenation<T> implements Flow.Subscriber<T>, Flow.Subscription {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final Iterator<Flow.Publisher<T>> sources;
+		private Flow.Subscription current;
+		private long requested;
+		private boolean started;
+		private boolean cancelled;
+
+		Concatenation(Flow.Subscriber<? super T> subscriber, Iterator<Flow.Publisher<T>> sources) {
+			this.subscriber = subscriber;
+			this.sources = sources;
+		}
+
+		void subscribeNext() {
+			boolean first;
+			Flow.Publisher<T> next;
+			synchronized (this) {
+				first = !started;
+				started = true;
+				if (cancelled) {
+					return;
+				}
+				next = sources.hasNext() ? sources.next() : null;
+			}
+			if (first) {
+				subscriber.onSubscribe(this);
+			}
+			if (next != null) {
+				next.subscribe(this);
+			} else {
+				subscriber.onComplete();
+			}
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			long n;
+			boolean cancel;
+			synchronized (this) {
+				current = subscription;
+				n = requested;
+				cancel = cancelled;
+			}
+			if (cancel) {
+				subscription.cancel();
+			} else if (n > 0) {
+				subscription.request(n);
+			}
+		}
+
+		@Override
+		public void onNext(T item) {
+			synchronized (this) {
+				if (requested != Long.MAX_VALUE) {
+					requested--;
+				}
+			}
+			subscriber.onNext(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			subscriber.onError(throwable);
+		}
+
+		@Override
+		public void onComplete() {
+			synchronized (this) {
+				current = null;
+			}
+			subscribeNext();
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("non-positive subscription request"));
+				return;
+			}
+			Flow.Subscription s;
+			synchronized (this) {
+				requested = (requested + n < 0) ? Long.MAX_VALUE : requested + n;
+				s = current;
+			}
+			if (s != null) {
+				s.request(n);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			Flow.Subscription s;
+			synchronized (this) {
+				cancelled = true;
+				s = current;
+				current = null;
+			}
+			if (s != null) {
+				s.cancel();
+			}
+		}
+	}
+
+	@Override
+	public byte[] read(Path file, long offset, int length) throws IOException {
+		GitHubPath p = toRepository((GitHubPath) file);
+		return p.getFileSystem().read(p, offset, length);
+	}
+
+	@Override
+	public List<String> readLines(Path file, long first, int count) throws IOException {
+		GitHubPath p = toRepository((GitHubPath) file);
+		return p.getFileSystem().readLines(p, first, count);
+	}
+
+	@Override
+	public int materialize(Path root, Path directory) throws IOException {
+		GitHubPath p = toRepository((GitHubPath) root);
+		return p.getFileSystem().materialize(p, directory);
+	}
+
+	@Override
+	void copy(GitHubPath source, Path target, CopyOption... options) throws IOException {
+		GitHubPath p = toRepository(source);
+		p.getFileSystem().copy(p, target, options);
+	}
+
+	@Override
+	InputStream newInputStream(GitHubPath path) throws IOException {
+		GitHubPath p = toRepository(path);
+		return p.getFileSystem().newInputStream(p);
+	}
+
+	@Override
+	DirectoryStream<Path> newDirectoryStream(GitHubPath dir, DirectoryStream.Filter<? super Path> filter)
+			throws IOException {
+		List<Path> listed;
+		if (check(dir).getNameCount() == 0) {
+			listed = listRoot();
+		} else {
+			GitHubPath p = toRepository(dir);
+			listed = new ArrayList<>();
+			try (DirectoryStream<Path> stream = p.getFileSystem().newDirectoryStream(p, path -> true)) {
+				for (Path path : stream) {
+					listed.add(fromRepository(path));
+				}
+			}
+		}
+		// filtered once mapped, the filter expects paths of the organization
+		List<Path> paths = new ArrayList<>();
+		for (Path path : listed) {
+			if (filter.accept(path)) {
+				paths.add(path);
+			}
+		}
+		return new DirectoryStream<Path>() {
+			@Override
+			public Iterator<Path> iterator() {
+				return paths.iterator();
+			}
+
+			@Override
+			public void close() throws IOException {
+				// NO-OP
+			}
+		};
+	}
+
+	@Override
+	SeekableByteChannel newByteChannel(Path path) throws IOException {
+		GitHubPath p = toRepository((GitHubPath) path);
+		return p.getFileSystem().newByteChannel(p);
+	}
+
+	@Override
+	AsynchronousFileChannel newAsynchronousFileChannel(Path path, ExecutorService executor) {
+		return new GitHubAsynchronousFileChannel(readAsync(path), executor);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	<A extends BasicFileAttributes> A readAttributes(Path path, Class<A> clazz) throws IOException {
+		if (clazz != BasicFileAttributes.class) {
+			throw new UnsupportedOperationException();
+		}
+		if (check(path).getNameCount() == 0) {
+			return (A) ROOT_ATTRIBUTES;
+		}
+		GitHubPath p = toRepository((GitHubPath) path);
+		return p.getFileSystem().readAttributes(p, clazz);
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (GitHubFileSystem fs : fileSystems.values()) {
+			fs.close();
+		}
+		super.close();
+	}
+
+	private static final BasicFileAttributes ROOT_ATTRIBUTES = new BasicFileAttributes() {
+
+		@Override
+		public boolean isRegularFile() {
+			return false;
+		}
+
+		@Override
+		public boolean isDirectory() {
+			return true;
+		}
+
+		@Override
+		public long size() {
+			return -1;
+		}
+
+		@Override
+		public Object fileKey() {
+			return null;
+		}
+
+		@Override
+		public boolean isSymbolicLink() {
+			return false;
+		}
+
+		@Override
+		public boolean isOther() {
+			return false;
+		}
+
+		@Override
+		public FileTime lastModifiedTime() {
+			return null;
+		}
+
+		@Override
+		public FileTime lastAccessTime() {
+			return null;
+		}
+
+		@Override
+		public FileTime creationTime() {
+			return null;
+		}
+	};
+}
@@ -0,0 +1,387 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.github.pierre_ernst.githubfs.model.ContentCache;
+import com.github.pierre_ernst.githubfs.model.ContentFactory;
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+import fr.gnodet.githubfs.GitHubFileSystemMetrics.IOCallable;
+
+/**
+ * Reads the files matching a glob in many repositories, handing each file with
+ * its content to a consumer. Repositories are opened, directories listed and
+ * files read by a bounded number of threads, optionally paced to a number of
+ * operations per second, while the consumer is called on the thread running
+ * the scan, one file at a time.
+ * <p>
+ * With a checkpoint file, each consumed file and each completed repository is
+ * recorded, so a scan interrupted by a failure or a restart skips them when run
+ * again. A repository failing to open or list is reported once the other
+ * repositories have been scanned, and scanned again on the next run.
+ */
+public class GitHubScan {
+
+	public static final int DEFAULT_CONCURRENCY = 8;
+
+	public interface FileConsumer {
+		void accept(Path file, byte[] content) throws IOException;
+	}
+
+	private static final AtomicInteger THREADS = new AtomicInteger();
+
+	private final Map<String, IOCallable<GitHubFileSystem>> repositories = new LinkedHashMap<>();
+	private int concurrency = DEFAULT_CONCURRENCY;
+	private double operationsPerSecond;
+	private Path checkpoint;
+
+	/**
+	 * Scans every repository of an organization.
+	 */
+	public GitHubScan(GitHubOrganizationFileSystem organization) throws IOException {
+		this(organization, organization.getRepositoryNames());
+	}
+
+	/**
+	 * Scans some repositories of an organization.
+	 */
+	public GitHubScan(GitHubOrganizationFileSystem organization, Collection<String> names) {
+		for (String name : names) {
+			repositories.put(organization.getOrganization() + "/" + name, () -> organization.getFileSystem(name));
+		}
+		this.concurrency = organization.getConnection().getConcurrency();
+	}
+
+	/**
+	 * Scans repositories already opened.
+	 */
+	public GitHubScan(Collection<? extends GitHubFileSystem> fileSystems) {
+		for (GitHubFileSystem fs : fileSystems) {
+			repositories.put(fs.getContentCache().getBackend().getName(), () -> fs);
+		}
+	}
+
+	/**
+	 * @param concurrency the number of repositories opened, directories listed
+	 *                    and files read at once, across all repositories
+	 */
+	public GitHubScan setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be positive");
+		}
+		this.concurrency = concurrency;
+		return this;
+	}
+
+	/**
+	 * @param operationsPerSecond the maximum number of repositories opened,
+	 *                            directories listed and files read per second,
+	 *                            or 0 for no limit; each of them sends at most
+	 *                            one request once the repository is open
+	 */
+	public GitHubScan setRateLimit(double operationsPerSecond) {
+		this.operationsPerSecond = operationsPerSecond;
+		return this;
+	}
+
+	/**
+	 * @param checkpoint the file recording the progress of the scan, created if
+	 *                   missing
+	 */
+	public GitHubScan setCheckpoint(Path checkpoint) {
+		this.checkpoint = checkpoint;
+		return this;
+	}
+
+	/**
+	 * @param glob     a glob pattern matched against the path of the files
+	 *                 relative to the root of their repository, where
+	 *                 <code>*</code> also matches across directories
+	 * @param consumer called for each matching file, with a path of the file
+	 *                 system of its repository
+	 * @return the number of files handed to the consumer
+	 */
+	public long run(String glob, FileConsumer consumer) throws IOException {
+		Set<String> done = new HashSet<>();
+		if ((checkpoint != null) && Files.exists(checkpoint)) {
+			done.addAll(Files.readAllLines(checkpoint, StandardCharsets.UTF_8));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+			Thread t = new Thread(r, "githubfs-scan-" + THREADS.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		try (BufferedWriter log = (checkpoint != null)
+				? Files.newBufferedWriter(checkpoint, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND)
+				: null) {
+			return new Run(glob, consumer, done, log, executor).run();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static final class Repository {
+		final String name;
+		GitHubFileSystem fs;
+		PathMatcher matcher;
+		int outstanding;
+		volatile IOException failure;
+
+		Repository(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * The state of a scan, only touched by the thread running it; the worker
+	 * threads hand their results back through a queue.
+	 */
+	private final class Run {
+		private final String glob;
+		private final FileConsumer consumer;
+		private final Set<String> done;
+		private final BufferedWriter log;
+		private final ExecutorService executor;
+		private final RateBudget budget;
+		private final BlockingQueue<Runnable> results = new LinkedBlockingQueue<>();
+		// reads first, to keep few contents in memory, then listings, then new repositories
+		private final Deque<Runnable> reads = new ArrayDeque<>();
+		private final Deque<Runnable> listings = new ArrayDeque<>();
+		private final Deque<Runnable> opens = new ArrayDeque<>();
+		private final Map<String, IOException> failures = new LinkedHashMap<>();
+		private int inflight;
+		private long consumed;
+
+		Run(String glob, FileConsumer consumer, Set<String> done, BufferedWriter log, ExecutorService executor) {
+			this.glob = glob;
+			this.consumer = consumer;
+			this.done = done;
+			this.log = log;
+			this.executor = executor;
+			this.budget = (operationsPerSecond > 0) ? new RateBudget(operationsPerSecond) : null;
+		}
+
+		long run() throws IOException {
+			for (Map.Entry<String, IOCallable<GitHubFileSystem>> e : repositories.entrySet()) {
+				if (!done.contains(e.getKey())) {
+					open(new Repository(e.getKey()), e.getValue());
+				}
+			}
+			while (true) {
+				while (inflight < concurrency) {
+					Runnable task = !reads.isEmpty() ? reads.poll()
+							: !listings.isEmpty() ? listings.poll() : opens.poll();
+					if (task == null) {
+						break;
+					}
+					inflight++;
+					executor.execute(task);
+				}
+				if (inflight == 0) {
+					break;
+				}
+				try {
+					results.take().run();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				} catch (UncheckedConsumerException ex) {
+					throw ex.getCause();
+				}
+			}
+			if (!failures.isEmpty()) {
+				IOException ex = new IOException("Failed to scan " + failures.keySet());
+				failures.values().forEach(ex::addSuppressed);
+				throw ex;
+			}
+			return consumed;
+		}
+
+		private void open(Repository repo, IOCallable<GitHubFileSystem> opener) {
+			repo.outstanding++;
+			opens.add(task(repo, opener, fs -> {
+				repo.fs = fs;
+				repo.matcher = fs.getPathMatcher("glob:" + glob);
+				list(repo, (GitHubPath) fs.getPath("/"));
+			}));
+		}
+
+		private void list(Repository repo, GitHubPath dir) {
+			repo.outstanding++;
+			ContentCache cache = repo.fs.getContentCache();
+			listings.add(task(repo, () -> join(ContentFactory.getTreeAsync(cache, dir)), tree -> {
+				for (TreeEntry entry : tree.getEntries()) {
+					GitHubPath child = dir.resolve(entry.getName());
+					if (entry.isTree()) {
+						list(repo, child);
+					} else if (entry.isBlob() && repo.matcher.matches(child.subpath(0, child.getNameCount()))
+							&& !done.contains(repo.name + ":" + child)) {
+						read(repo, child);
+					}
+				}
+			}));
+		}
+
+		private void read(Repository repo, GitHubPath file) {
+			repo.outstanding++;
+			ContentCache cache = repo.fs.getContentCache();
+			reads.add(task(repo, () -> join(ContentFactory.readAsync(cache, file)), data -> {
+				try {
+					consumer.accept(file, data);
+					consumed++;
+					record(repo.name + ":" + file);
+				} catch (IOException ex) {
+					throw new UncheckedConsumerException(ex);
+				}
+			}));
+		}
+
+		/**
+		 * @return a task calling <code>work</code> on a worker thread, then
+		 *         <code>onResult</code> on the thread running the scan
+		 */
+		private <R> Runnable task(Repository repo, IOCallable<R> work, Consumer<R> onResult) {
+			return () -> {
+				R result = null;
+				IOException failure = null;
+				try {
+					if (budget != null) {
+						budget.acquire();
+					}
+					if (repo.failure == null) {
+						result = work.call();
+					}
+				} catch (IOException ex) {
+					failure = ex;
+				} catch (InterruptedException ex) {
+					failure = new InterruptedIOException();
+				} catch (RuntimeException ex) {
+					failure = new IOException(ex);
+				}
+				R r = result;
+				IOException f = failure;
+				results.add(() -> {
+					inflight--;
+					if (f != null) {
+						if (repo.failure == null) {
+							repo.failure = f;
+							failures.put(repo.name, f);
+						}
+					} else if (repo.failure == null) {
+						onResult.accept(r);
+					}
+					if ((--repo.outstanding == 0) && (repo.failure == null)) {
+						record(repo.name);
+					}
+				});
+			};
+		}
+
+		private void record(String line) {
+			if (log != null) {
+				try {
+					log.write(line);
+					log.newLine();
+					log.flush();
+				} catch (IOException ex) {
+					throw new UncheckedConsumerException(ex);
+				}
+			}
+		}
+	}
+
+	private static final class UncheckedConsumerException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		UncheckedConsumerException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+
+	/**
+	 * Spaces operations evenly, letting callers through one at a time.
+	 */
+	private static final class RateBudget {
+		private final long intervalNanos;
+		private long next = System.nanoTime();
+
+		RateBudget(double operationsPerSecond) {
+			this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / operationsPerSecond);
+		}
+
+		void acquire() throws InterruptedException {
+			long wait;
+			synchronized (this) {
+				long now = System.nanoTime();
+				long at = Math.max(next, now);
+				next = at + intervalNanos;
+				wait = at - now;
+			}
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+
+	private static <T> T join(CompletableFuture<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+}
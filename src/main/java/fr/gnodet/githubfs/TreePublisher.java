@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.github.pierre_ernst.githubfs.model.ContentCache;
+import com.github.pierre_ernst.githubfs.model.ContentFactory;
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+/**
+ * Publishes the paths below a directory, or the contents of the files below
+ * it, as the listings arrive. Directories are only listed, and files only
+ * read, while the subscriber has outstanding demand, with at most a given
+ * number of requests in flight.
+ */
+public class TreePublisher<T> implements Flow.Publisher<T> {
+
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	private final ContentCache cache;
+	private final GitHubPath root;
+	private final boolean contents;
+	private final int concurrency;
+
+	private TreePublisher(ContentCache cache, GitHubPath root, boolean contents, int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("concurrency must be positive");
+		}
+		this.cache = cache;
+		this.root = root;
+		this.contents = contents;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * @return a publisher of <code>root</code> and every path below it, parents
+	 *         before their children
+	 */
+	public static TreePublisher<Path> paths(ContentCache cache, GitHubPath root, int concurrency) {
+		return new TreePublisher<>(cache, root, false, concurrency);
+	}
+
+	/**
+	 * @return a publisher of every file below <code>root</code> with its
+	 *         content, in the order reads complete
+	 */
+	public static TreePublisher<Map.Entry<Path, byte[]>> contents(ContentCache cache, GitHubPath root,
+			int concurrency) {
+		return new TreePublisher<>(cache, root, true, concurrency);
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		subscriber.onSubscribe(new TreeSubscription(subscriber));
+	}
+
+	private final class TreeSubscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		// results of the requests, applied by the draining thread only
+		private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
+		private final Deque<GitHubPath> directories = new ArrayDeque<>();
+		private final Deque<GitHubPath> files = new ArrayDeque<>();
+		private final Deque<T> ready = new ArrayDeque<>();
+		// cancelled with the subscription, which cancels their HTTP calls
+		private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+		private int inflight;
+		private boolean started;
+		private boolean done;
+		private Throwable error;
+		private volatile boolean cancelled;
+
+		TreeSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				completions.add(() -> fail(new IllegalArgumentException("non-positive request: " + n)));
+			} else {
+				requested.accumulateAndGet(n, (a, b) -> (a + b < 0) ? Long.MAX_VALUE : a + b);
+			}
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			drain();
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0) {
+				return;
+			}
+			int missed = 1;
+			do {
+				if (cancelled) {
+					for (CompletableFuture<?> future : pending) {
+						future.cancel(false);
+					}
+					pending.clear();
+					completions.clear();
+					directories.clear();
+					files.clear();
+					ready.clear();
+					done = true;
+				} else if (!done) {
+					step();
+				}
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void step() {
+			Runnable completion;
+			while ((completion = completions.poll()) != null) {
+				completion.run();
+			}
+			if (error != null) {
+				done = true;
+				subscriber.onError(error);
+				return;
+			}
+			if (!started) {
+				started = true;
+				start();
+			}
+
+			long emitted = 0;
+			long demand = requested.get();
+			while ((emitted < demand) && !ready.isEmpty() && !cancelled) {
+				subscriber.onNext(ready.poll());
+				emitted++;
+			}
+			if ((emitted > 0) && (demand != Long.MAX_VALUE)) {
+				demand = requested.addAndGet(-emitted);
+			}
+
+			// only fetch what is needed to meet the outstanding demand
+			long wanted = demand - ready.size() - inflight;
+			while ((inflight < concurrency) && (wanted > 0) && !cancelled) {
+				if (!files.isEmpty()) {
+					read(files.poll());
+				} else if (!directories.isEmpty()) {
+					list(directories.poll());
+				} else {
+					break;
+				}
+				wanted--;
+			}
+
+			if ((inflight == 0) && ready.isEmpty() && directories.isEmpty() && files.isEmpty() && !cancelled) {
+				done = true;
+				subscriber.onComplete();
+			}
+		}
+
+		private void start() {
+			submit(ContentFactory.getAttributesAsync(cache, root), attributes -> {
+				if (!contents) {
+					ready.add(cast(root));
+				}
+				if (attributes.isDirectory()) {
+					directories.add(root);
+				} else if (contents && attributes.isRegularFile()) {
+					files.add(root);
+				}
+			});
+		}
+
+		private void list(GitHubPath dir) {
+			submit(ContentFactory.getTreeAsync(cache, dir), tree -> {
+				for (TreeEntry entry : tree.getEntries()) {
+					GitHubPath child = dir.resolve(entry.getName());
+					if (!contents) {
+						ready.add(cast(child));
+					}
+					if (entry.isTree()) {
+						directories.add(child);
+					} else if (contents && entry.isBlob()) {
+						files.add(child);
+					}
+				}
+			});
+		}
+
+		private void read(GitHubPath file) {
+			submit(ContentFactory.readAsync(cache, file),
+					data -> ready.add(cast(new AbstractMap.SimpleImmutableEntry<Path, byte[]>(file, data))));
+		}
+
+		private <R> void submit(CompletableFuture<R> future, Consumer<R> onResult) {
+			inflight++;
+			pending.add(future);
+			future.whenComplete((result, ex) -> {
+				pending.remove(future);
+				completions.add(() -> {
+					inflight--;
+					if (ex != null) {
+						fail((ex instanceof CompletionException) ? ex.getCause() : ex);
+					} else {
+						onResult.accept(result);
+					}
+				});
+				drain();
+			});
+		}
+
+		private void fail(Throwable t) {
+			if (error == null) {
+				error = t;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private T cast(Object item) {
+			return (T) item;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+
+import org.kohsuke.github.RateLimitHandler;
+
+import fr.gnodet.githubfs.jfr.RateLimitWaitEvent;
+
+/**
+ * Sleeps until the rate limit window resets, then lets the request be retried,
+ * recording the time spent waiting.
+ */
+class WaitingRateLimitHandler extends RateLimitHandler {
+
+	private static final long DEFAULT_WAIT = TimeUnit.MINUTES.toMillis(1);
+
+	private final GitHubFileSystemMetrics metrics;
+
+	WaitingRateLimitHandler(GitHubFileSystemMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void onError(IOException e, HttpURLConnection uc) throws IOException {
+		long reset = parseReset(uc);
+		RateLimitWaitEvent event = new RateLimitWaitEvent();
+		event.begin();
+		long start = System.nanoTime();
+		try {
+			Thread.sleep(Math.max(0, reset - System.currentTimeMillis()));
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw (InterruptedIOException) new InterruptedIOException().initCause(e);
+		} finally {
+			metrics.recordOperation("rateLimitWait", System.nanoTime() - start, false);
+			event.end();
+			if (event.shouldCommit()) {
+				event.repository = metrics.getRepository();
+				event.limit = uc.getHeaderFieldInt("X-RateLimit-Limit", -1);
+				event.reset = reset;
+				event.commit();
+			}
+		}
+	}
+
+	private static long parseReset(HttpURLConnection uc) {
+		String reset = uc.getHeaderField("X-RateLimit-Reset");
+		if (reset != null) {
+			try {
+				// one more second, the reset time is truncated
+				return TimeUnit.SECONDS.toMillis(Long.parseLong(reset) + 1);
+			} catch (NumberFormatException ex) {
+				// NO-OP
+			}
+		}
+		return System.currentTimeMillis() + DEFAULT_WAIT;
+	}
+}
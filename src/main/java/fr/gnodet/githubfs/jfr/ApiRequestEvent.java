@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A request that reached the GitHub API, as seen on the network: conditional
+ * requests answered from the HTTP cache are not included.
+ */
+@Name("fr.gnodet.githubfs.ApiRequest")
+@Label("GitHub API Request")
+@Category({ "GitHub File System", "Network" })
+@Description("Request sent to the GitHub API")
+@StackTrace(false)
+public class ApiRequestEvent extends Event {
+
+	@Label("Endpoint")
+	@Description("Kind of API call, such as tree, blob, ref or contents")
+	public String endpoint;
+
+	@Label("Method")
+	public String method;
+
+	@Label("Path")
+	public String path;
+
+	@Label("Status")
+	@Description("HTTP status code, or -1 if the request failed without a response")
+	public int status;
+
+	@Label("Bytes")
+	@Description("Length of the response body, 0 if it is sent in chunks")
+	@DataAmount
+	public long bytes;
+}
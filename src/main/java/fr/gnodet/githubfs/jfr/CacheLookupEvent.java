@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A lookup in one of the cache tiers of a file system: content, tree or
+ * negative.
+ */
+@Name("fr.gnodet.githubfs.CacheLookup")
+@Label("Cache Lookup")
+@Category({ "GitHub File System", "Cache" })
+@Description("Lookup in a GitHub file system cache tier")
+@StackTrace(false)
+public class CacheLookupEvent extends Event {
+
+	@Label("Repository")
+	public String repository;
+
+	@Label("Tier")
+	public String tier;
+
+	@Label("Key")
+	@Description("Path or SHA looked up")
+	public String key;
+
+	@Label("Hit")
+	public boolean hit;
+
+	public static void emit(String repository, String tier, String key, boolean hit) {
+		CacheLookupEvent event = new CacheLookupEvent();
+		if (event.shouldCommit()) {
+			event.repository = repository;
+			event.tier = tier;
+			event.key = key;
+			event.hit = hit;
+			event.commit();
+		}
+	}
+}
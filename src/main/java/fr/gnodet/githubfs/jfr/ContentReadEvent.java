@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A file read through a stream or channel, from opening to closing it.
+ */
+@Name("fr.gnodet.githubfs.ContentRead")
+@Label("Content Read")
+@Category({ "GitHub File System", "I/O" })
+@Description("File content read from a GitHub file system")
+public class ContentReadEvent extends Event {
+
+	@Label("Repository")
+	public String repository;
+
+	@Label("Path")
+	public String path;
+
+	@Label("SHA")
+	public String sha;
+
+	@Label("Bytes Read")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package fr.gnodet.githubfs.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timestamp;
+
+/**
+ * Time spent sleeping until the GitHub rate limit window resets.
+ */
+@Name("fr.gnodet.githubfs.RateLimitWait")
+@Label("Rate Limit Wait")
+@Category({ "GitHub File System", "Network" })
+@Description("Wait for the GitHub API rate limit to reset")
+public class RateLimitWaitEvent extends Event {
+
+	@Label("Repository")
+	public String repository;
+
+	@Label("Limit")
+	public int limit;
+
+	@Label("Reset")
+	@Timestamp(Timestamp.MILLISECONDS_SINCE_EPOCH)
+	public long reset;
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.Tree;
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class AsyncReadTest {
+
+	@Test
+	public void testReadAndListAsync() {
+		FakeRepository repository = FakeRepository.synthetic("async/repo", 1, 1);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		try (GitHubFileSystem fs = newFileSystem(new FakeBackend(repository))) {
+			byte[] data = fs.readAsync(fs.getPath("/docs/notes.txt")).get(10, TimeUnit.SECONDS);
+			assertEquals("first", new String(data, StandardCharsets.UTF_8));
+			List<Path> list = fs.listAsync(fs.getPath("/docs")).get(10, TimeUnit.SECONDS);
+			assertEquals(List.of(fs.getPath("/docs/notes.txt")), list);
+			assertTrue(fs.attributesAsync(fs.getPath("/docs")).get(10, TimeUnit.SECONDS).isDirectory());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCancelReachesBackend() {
+		FakeRepository repository = FakeRepository.synthetic("async/repo", 1, 1);
+		// trees are shared by SHA, this one must not have been listed before
+		repository.file("docs/notes.txt", "cancelled " + System.nanoTime());
+		repository.commit("refs/heads/master");
+		PendingBackend backend = new PendingBackend(repository);
+		try (GitHubFileSystem fs = newFileSystem(backend)) {
+			// the listing of docs is pending, below the read future
+			backend.pendTrees = true;
+			CompletableFuture<byte[]> read = fs.readAsync(fs.getPath("/docs/notes.txt"));
+			assertEquals(1, backend.trees.size());
+			read.cancel(false);
+			assertTrue(backend.trees.get(0).isCancelled());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCloseCancelsRequest() {
+		FakeRepository repository = FakeRepository.synthetic("async/repo", 1, 1);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		PendingBackend backend = new PendingBackend(repository);
+		try (GitHubFileSystem fs = newFileSystem(backend)) {
+			AsynchronousFileChannel channel = AsynchronousFileChannel.open(fs.getPath("/docs/notes.txt"),
+					StandardOpenOption.READ);
+			Future<Integer> read = channel.read(ByteBuffer.allocate(16), 0);
+			assertEquals(1, backend.reads.size());
+			assertFalse(read.isDone());
+			channel.close();
+			assertTrue(backend.reads.get(0).isCancelled());
+			assertThrows(ExecutionException.class, () -> read.get(10, TimeUnit.SECONDS));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static GitHubFileSystem newFileSystem(FakeBackend backend) throws Exception {
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("blobCache", "none");
+		return new GitHubFileSystemProvider().newFileSystem(URI.create("github:async/repo!/"), env);
+	}
+
+	/**
+	 * Backend whose asynchronous reads, and listings once asked to, never
+	 * complete, as requests still in flight.
+	 */
+	private static class PendingBackend extends FakeBackend {
+		final List<CompletableFuture<Tree>> trees = new CopyOnWriteArrayList<>();
+		final List<CompletableFuture<byte[]>> reads = new CopyOnWriteArrayList<>();
+		volatile boolean pendTrees;
+
+		PendingBackend(FakeRepository repository) {
+			super(repository);
+		}
+
+		@Override
+		public CompletableFuture<Tree> getTreeAsync(String sha) {
+			if (!pendTrees) {
+				return super.getTreeAsync(sha);
+			}
+			CompletableFuture<Tree> future = new CompletableFuture<>();
+			trees.add(future);
+			return future;
+		}
+
+		@Override
+		public CompletableFuture<byte[]> readAsync(String commit, String path, TreeEntry entry) {
+			CompletableFuture<byte[]> future = new CompletableFuture<>();
+			reads.add(future);
+			return future;
+		}
+	}
+}
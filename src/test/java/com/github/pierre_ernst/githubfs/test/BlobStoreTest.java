@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.BlobClient;
+import com.github.pierre_ernst.githubfs.model.BlobStore;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class BlobStoreTest {
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() {
+		try {
+			Path directory = Files.createTempDirectory("githubfs-blobs");
+			BlobStore store = new BlobStore(directory, 12);
+			String a = put(store, "aaaa");
+			String b = put(store, "bbbb");
+			String c = put(store, "cccc");
+			assertEquals(12, store.getBytes());
+
+			// a is used again, b becomes the least recently used
+			assertNotNull(store.get(a));
+			String d = put(store, "dddd");
+			assertNull(store.get(b));
+			assertNotNull(store.get(a));
+			assertNotNull(store.get(c));
+			assertNotNull(store.get(d));
+			assertEquals(3, store.getCount());
+			assertEquals(12, store.getBytes());
+
+			// larger than the whole budget, streamed without being stored
+			byte[] large = "larger than the store".getBytes(StandardCharsets.UTF_8);
+			String sha = FakeRepository.hash("blob", large);
+			assertNull(store.put(sha, large.length, new ByteArrayInputStream(large)));
+			assertFalse(store.contains(sha));
+			assertEquals(3, store.getCount());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testSharedStoreKeepsItsSize() {
+		try {
+			Path directory = Files.createTempDirectory("githubfs-blobs");
+			BlobStore store = BlobStore.open(directory, 1024);
+			assertSame(store, BlobStore.open(directory, 1024));
+			assertThrows(IllegalArgumentException.class, () -> BlobStore.open(directory, 2048));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testLargeFilesUseBlobEndpoint() {
+		FakeRepository repository = FakeRepository.synthetic("blobs/large", 1, 1);
+		byte[] large = new byte[(int) BlobClient.CONTENTS_LIMIT + 1];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = (byte) ('a' + (i % 26));
+		}
+		repository.file("data/large.bin", large);
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			server.resetRequestCounts();
+			assertArrayEquals(large, Files.readAllBytes(fs.getPath("/data/large.bin")));
+			assertEquals(1, server.getRequestCount("blob"), server.getRequestCounts().toString());
+			assertEquals(0, server.getRequestCount("contents"), server.getRequestCounts().toString());
+
+			server.resetRequestCounts();
+			Files.readAllBytes(fs.getPath("/pom.xml"));
+			assertEquals(1, server.getRequestCount("contents"), server.getRequestCounts().toString());
+			assertEquals(0, server.getRequestCount("blob"), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCopyToDefaultFileSystem() {
+		FakeRepository repository = FakeRepository.synthetic("blobs/copy", 1, 1);
+		byte[] data = new byte[100_000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + (i % 26));
+		}
+		repository.file("data/data.bin", data);
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		try {
+			Path target = Files.createTempDirectory("githubfs-copy").resolve("data.bin");
+			Map<String, Object> env = new HashMap<>();
+			env.put("backend", backend);
+			env.put("blobCache", Files.createTempDirectory("githubfs-blobs").toString());
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:blobs/copy!/"), env)) {
+				Path source = fs.getPath("/data/data.bin");
+				assertArrayEquals(data, Files.readAllBytes(source));
+
+				// across providers, the stream of the cached blob is transferred to the target
+				Files.copy(source, target);
+				assertArrayEquals(data, Files.readAllBytes(target));
+				assertEquals(1, backend.getCallCount("open"));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static String put(BlobStore store, String content) throws Exception {
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		String sha = FakeRepository.hash("blob", data);
+		assertNotNull(store.put(sha, data.length, new ByteArrayInputStream(data)));
+		return sha;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class BlobVerificationTest {
+
+	@Test
+	public void testCorruptedBlobIsEvicted() {
+		FakeRepository repository = FakeRepository.synthetic("verify/repo", 1, 1);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		try {
+			Path blobs = Files.createTempDirectory("githubfs-blobs");
+			env.put("blobCache", blobs.toString());
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:verify/repo!/"), env)) {
+				Path notes = fs.getPath("/docs/notes.txt");
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+				Path cached = find(blobs, "first");
+
+				Files.write(cached, "fir5t".getBytes(StandardCharsets.UTF_8));
+				IOException ex = assertThrows(IOException.class, () -> Files.readAllBytes(notes));
+				assertTrue(ex.getMessage().contains("does not match"), ex.getMessage());
+				assertTrue(Files.notExists(cached));
+				long opened = backend.getCallCount("open");
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+				assertEquals(opened + 1, backend.getCallCount("open"));
+
+				Files.write(find(blobs, "first"), "f1rst".getBytes(StandardCharsets.UTF_8));
+				assertThrows(IOException.class, () -> {
+					try (SeekableByteChannel channel = Files.newByteChannel(notes)) {
+						ByteBuffer buffer = ByteBuffer.allocate(2);
+						while (channel.read(buffer) >= 0) {
+							buffer.clear();
+						}
+					}
+				});
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCorruptedFetchIsNotStored() {
+		FakeRepository repository = FakeRepository.synthetic("verify/repo", 1, 1);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		boolean[] corrupted = { true };
+		FakeBackend backend = new FakeBackend(repository) {
+			@Override
+			public InputStream open(String commit, String path, TreeEntry entry) throws IOException {
+				byte[] data = super.open(commit, path, entry).readAllBytes();
+				if (corrupted[0]) {
+					data[data.length - 1] ^= 1;
+				}
+				return new ByteArrayInputStream(data);
+			}
+		};
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("prefetch", "*.txt");
+		try {
+			Path blobs = Files.createTempDirectory("githubfs-blobs");
+			env.put("blobCache", blobs.toString());
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:verify/repo!/"), env)) {
+				Path notes = fs.getPath("/docs/notes.txt");
+				// prefetched on listing, then fetched again once the prefetch failed
+				try (Stream<Path> list = Files.list(fs.getPath("/docs"))) {
+					assertEquals(1, list.count());
+				}
+				assertThrows(IOException.class, () -> Files.readAllBytes(notes));
+				assertEquals(0, count(blobs));
+
+				// skipped bytes are not checked by the stream, but still by the store
+				assertThrows(IOException.class, () -> {
+					try (InputStream in = Files.newInputStream(notes)) {
+						assertEquals(2, in.skip(2));
+						in.readAllBytes();
+					}
+				});
+				assertEquals(0, count(blobs));
+
+				corrupted[0] = false;
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+				assertEquals(1, count(blobs));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static long count(Path directory) throws IOException {
+		try (Stream<Path> walk = Files.walk(directory)) {
+			return walk.filter(Files::isRegularFile).filter(file -> !file.toString().endsWith(".tmp")).count();
+		}
+	}
+
+	private static Path find(Path directory, String content) throws IOException {
+		byte[] expected = content.getBytes(StandardCharsets.UTF_8);
+		try (Stream<Path> walk = Files.walk(directory)) {
+			List<Path> found = walk.filter(Files::isRegularFile).filter(file -> {
+				try {
+					return Arrays.equals(expected, Files.readAllBytes(file));
+				} catch (IOException ex) {
+					return false;
+				}
+			}).collect(Collectors.toList());
+			assertEquals(1, found.size());
+			return found.get(0);
+		}
+	}
+}
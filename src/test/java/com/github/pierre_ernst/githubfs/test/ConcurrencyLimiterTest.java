@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.AdaptiveConcurrencyLimiter;
+import fr.gnodet.githubfs.AdaptiveConcurrencyLimiter.Outcome;
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemMetrics;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class ConcurrencyLimiterTest {
+
+	private static final long MILLIS = 1_000_000L;
+
+	@Test
+	public void testThrottlingHalvesLimitOnce() {
+		try {
+			GitHubFileSystemMetrics metrics = new GitHubFileSystemMetrics();
+			AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(metrics, 8, 1, 64);
+			long[] starts = new long[8];
+			for (int i = 0; i < starts.length; i++) {
+				starts[i] = limiter.acquire();
+			}
+			assertEquals(8, metrics.getConcurrencyInFlight());
+			// the burst was sent before the first cut, it only counts once
+			for (long start : starts) {
+				limiter.release(start, Outcome.THROTTLED);
+			}
+			assertEquals(4, limiter.getLimit());
+			assertEquals(4, metrics.getConcurrencyLimit());
+			assertEquals(0, metrics.getConcurrencyInFlight());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testLimitGrowsOnlyWhileUsed() {
+		try {
+			AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 64);
+			for (int i = 0; i < 4; i++) {
+				limiter.acquire();
+			}
+			// 4 requests in flight all along, the limit stops growing once they are less than half of it
+			for (int i = 0; i < 200; i++) {
+				limiter.release(System.nanoTime() - 10 * MILLIS, Outcome.SUCCESS);
+				limiter.acquire();
+			}
+			assertEquals(8, limiter.getLimit());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testLatencyCutsLimit() {
+		try {
+			AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 64);
+			// requests are given start times in the past, which must come after the creation of the limiter
+			Thread.sleep(200);
+			for (int i = 0; i < 20; i++) {
+				limiter.acquire();
+				limiter.release(System.nanoTime() - 10 * MILLIS, Outcome.SUCCESS);
+			}
+			assertEquals(16, limiter.getLimit());
+			for (int i = 0; i < 20; i++) {
+				limiter.acquire();
+				limiter.release(System.nanoTime() - 100 * MILLIS, Outcome.SUCCESS);
+			}
+			assertEquals(14, limiter.getLimit());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testAsyncReadsFollowLimit() {
+		FakeRepository repository = FakeRepository.synthetic("limit/async", 4, 8);
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						options(12))) {
+			List<Path> files = files(fs);
+			server.setLatency(100);
+			server.resetRequestCounts();
+
+			List<CompletableFuture<byte[]>> reads = new ArrayList<>();
+			for (Path file : files) {
+				reads.add(fs.readAsync(file));
+			}
+			for (CompletableFuture<byte[]> read : reads) {
+				read.get(30, TimeUnit.SECONDS);
+			}
+			// beyond the 5 requests per host OkHttp lets through by default, never beyond the limit
+			assertTrue(server.getPeakActive() > 5, "peak " + server.getPeakActive());
+			assertTrue(server.getPeakActive() <= 12, "peak " + server.getPeakActive());
+			assertEquals(0, fs.getMetrics().getConcurrencyInFlight());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testBlockingReadsFollowLimit() {
+		FakeRepository repository = FakeRepository.synthetic("limit/blocking", 4, 8);
+		ExecutorService workers = Executors.newFixedThreadPool(16);
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						options(3))) {
+			List<Path> files = files(fs);
+			server.setLatency(20);
+			server.resetRequestCounts();
+
+			List<Future<byte[]>> reads = new ArrayList<>();
+			for (Path file : files) {
+				reads.add(workers.submit(() -> Files.readAllBytes(file)));
+			}
+			for (Future<byte[]> read : reads) {
+				read.get(30, TimeUnit.SECONDS);
+			}
+			assertTrue(server.getPeakActive() <= 3, "peak " + server.getPeakActive());
+			assertEquals(0, fs.getMetrics().getConcurrencyInFlight());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private static Map<String, String> options(int concurrency) {
+		Map<String, String> env = new HashMap<>();
+		env.put("blobCache", "none");
+		env.put("initialConcurrency", Integer.toString(concurrency));
+		env.put("maxConcurrency", Integer.toString(concurrency));
+		return env;
+	}
+
+	private static List<Path> files(GitHubFileSystem fs) throws Exception {
+		// lists every directory up front, leaving only the reads
+		try (Stream<Path> walk = Files.walk(fs.getPath("/src"))) {
+			return walk.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.Tree;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class ContentBackendTest {
+
+	@Test
+	public void testFileSystemOverMemoryBackend() {
+		FakeRepository repository = FakeRepository.synthetic("memory/backend", 3, 2);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("blobCache", "none");
+		try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+				.newFileSystem(URI.create("github:memory/backend!/"), env)) {
+			assertNull(fs.getRepository());
+			assertEquals("refs/heads/master", fs.getRevision());
+
+			Path notes = fs.getPath("/docs/notes.txt");
+			assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+			try (Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+				// the root, README.md, pom.xml, docs, notes.txt, src, 3 modules, 3 packages and 6 files
+				assertEquals(18, walk.count());
+			}
+			Map<Path, byte[]> read = fs.readAll(Arrays.asList(notes, fs.getPath("/pom.xml"), fs.getPath("/none")));
+			assertEquals(Arrays.asList(notes, fs.getPath("/pom.xml")), Arrays.asList(read.keySet().toArray()));
+
+			repository.file("docs/notes.txt", "second");
+			repository.commit("refs/heads/master");
+			assertTrue(fs.refresh());
+			assertFalse(fs.refresh());
+			assertEquals("second", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+			assertEquals(1, backend.getCallCount("compare"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testRefreshDuringRootFetch() {
+		FakeRepository repository = FakeRepository.synthetic("memory/refresh", 2, 2);
+		repository.file("docs/notes.txt", "before refresh");
+		repository.commit("refs/heads/master");
+		BlockingBackend backend = new BlockingBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("blobCache", "none");
+		try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+				.newFileSystem(URI.create("github:memory/refresh!/"), env)) {
+			backend.blocked = repository.getRef("refs/heads/master");
+			CompletableFuture<Boolean> stale = CompletableFuture
+					.supplyAsync(() -> Files.isDirectory(fs.getPath("/docs")));
+			assertTrue(backend.entered.await(10, TimeUnit.SECONDS));
+
+			repository.file("docs/notes.txt", "after refresh");
+			repository.commit("refs/heads/master");
+			assertTrue(fs.refresh());
+			// the root of the previous commit arrives once the cache moved on
+			backend.release.countDown();
+			assertTrue(stale.get(10, TimeUnit.SECONDS));
+
+			assertEquals("after refresh",
+					new String(Files.readAllBytes(fs.getPath("/docs/notes.txt")), StandardCharsets.UTF_8));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testRefreshAfterReset() {
+		FakeRepository repository = FakeRepository.synthetic("rest/reset", 2, 2);
+		repository.file("docs/notes.txt", "first");
+		String first = repository.commit("refs/heads/master");
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			Path notes = fs.getPath("/docs/notes.txt");
+			assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+
+			repository.file("docs/notes.txt", "second");
+			repository.commit("refs/heads/master");
+			assertTrue(fs.refresh());
+			assertEquals("second", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+
+			// the compare of a head moved backwards lists none of the changes
+			repository.reset("refs/heads/master", first);
+			assertTrue(fs.refresh());
+			assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+			assertEquals(2, server.getRequestCount("compare"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Backend holding back the listing of a commit until released.
+	 */
+	private static class BlockingBackend extends FakeBackend {
+		final CountDownLatch entered = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		volatile String blocked;
+
+		BlockingBackend(FakeRepository repository) {
+			super(repository);
+		}
+
+		@Override
+		public Tree getTree(String sha) throws IOException {
+			if (sha.equals(blocked)) {
+				entered.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+			return super.getTree(sha);
+		}
+	}
+}
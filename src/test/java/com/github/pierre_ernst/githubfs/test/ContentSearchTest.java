@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.ContentSearch;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class ContentSearchTest {
+
+	@Test
+	public void testSearchReadsOnlyCandidatesOnceIndexed() {
+		FakeRepository repository = FakeRepository.synthetic("search/repo", 16, 16);
+		repository.file("bin/data.bin", "\0class File3 {".getBytes(StandardCharsets.UTF_8));
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache",
+								Files.createTempDirectory("githubfs-search").toString()))) {
+			Path root = fs.getPath("/");
+
+			List<ContentSearch.Match> matches = fs.search(root, "class File3 \\{");
+			assertEquals(16, matches.size(), matches.toString());
+			for (ContentSearch.Match match : matches) {
+				assertEquals("File3.java", match.getPath().getFileName().toString());
+				assertEquals(1, match.getLine());
+			}
+
+			// served from the trees, the index and the blob store
+			server.resetRequestCounts();
+			List<ContentSearch.Match> again = fs.search(root, "class File3 \\{");
+			assertEquals(matches.stream().map(Object::toString).collect(Collectors.toList()),
+					again.stream().map(Object::toString).collect(Collectors.toList()));
+			assertEquals(0, fs.search(fs.getPath("/src/module1"), "no such text").size());
+			assertEquals(0, server.getRequestCount(), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
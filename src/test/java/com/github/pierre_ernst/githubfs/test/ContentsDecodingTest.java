@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class ContentsDecodingTest {
+
+	private static final int[] SIZES = { 0, 1, 2, 3, 4, 57, 58, 100, 20_000, 100_001 };
+
+	@Test
+	public void testEscapesAndPadding() {
+		FakeRepository repository = FakeRepository.synthetic("decoding/escapes", 1, 1);
+		Random random = new Random(42);
+		byte[][] files = new byte[SIZES.length][];
+		for (int i = 0; i < SIZES.length; i++) {
+			files[i] = new byte[SIZES[i]];
+			random.nextBytes(files[i]);
+			repository.file("data/" + SIZES[i] + ".bin", files[i]);
+		}
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new EscapingServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			for (int i = 0; i < SIZES.length; i++) {
+				assertArrayEquals(files[i], Files.readAllBytes(fs.getPath("/data/" + SIZES[i] + ".bin")),
+						SIZES[i] + " bytes");
+			}
+			assertTrue(server.getRequestCount("contents") >= SIZES.length, server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Server escaping the characters JSON allows to escape, as some encoders do:
+	 * the slashes of the base64 alphabet, and its padding as a unicode escape,
+	 * on top of the escaped line breaks of the MIME encoding.
+	 */
+	private static class EscapingServer extends FakeGitHubServer {
+		EscapingServer() throws IOException {
+			super();
+		}
+
+		@Override
+		protected String content(FakeRepository repo, String commit, String path, FakeRepository.Entry entry,
+				boolean inline) {
+			return super.content(repo, commit, path, entry, inline).replace("/", "\\/").replace("=", "\\u003d");
+		}
+	}
+}
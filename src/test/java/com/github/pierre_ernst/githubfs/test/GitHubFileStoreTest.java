@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class GitHubFileStoreTest {
+
+	@Test
+	public void testFileStoreReportsRepositoryAndCache() {
+		FakeRepository repository = FakeRepository.synthetic("store/repo", 64, 64);
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Map.of("blobCache", Files.createTempDirectory("githubfs-store").toString(), "blobCacheSize",
+								"1000000"))) {
+			Path file = fs.getPath("/src/module0/pkg0/File0.java");
+			FileStore store = Files.getFileStore(file);
+
+			assertTrue(store.isReadOnly());
+			assertTrue(store.getTotalSpace() > 0);
+			assertEquals(1000000L, store.getUsableSpace());
+			assertEquals(0L, store.getAttribute("githubfs:cacheBytes"));
+
+			long size = Files.readAllBytes(file).length;
+			Files.readAllBytes(file);
+
+			assertEquals(size, store.getAttribute("githubfs:cacheBytes"));
+			assertEquals(1, store.getAttribute("githubfs:cacheBlobs"));
+			assertEquals(1000000L - size, store.getUsableSpace());
+			assertEquals(1L, store.getAttribute("githubfs:hits.blob"));
+			assertEquals(1L, store.getAttribute("githubfs:misses.blob"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.management.JMX;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemMetrics;
+import fr.gnodet.githubfs.GitHubFileSystemMetricsMXBean;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class GitHubFileSystemMetricsTest {
+
+	@Test
+	public void testHistograms() {
+		GitHubFileSystemMetrics metrics = new GitHubFileSystemMetrics();
+		for (int i = 0; i < 98; i++) {
+			metrics.recordOperation("read", TimeUnit.MILLISECONDS.toNanos(1), false);
+		}
+		metrics.recordOperation("read", TimeUnit.MILLISECONDS.toNanos(100), true);
+		metrics.recordOperation("read", TimeUnit.MILLISECONDS.toNanos(100), true);
+
+		assertEquals(Long.valueOf(100), metrics.getOperationCounts().get("read"));
+		assertEquals(Long.valueOf(2), metrics.getOperationErrors().get("read"));
+		// upper bound of the 1024 microseconds bucket, and the largest sample
+		assertEquals(1.024, metrics.getOperationP50Millis().get("read").doubleValue(), 1e-9);
+		assertEquals(100.0, metrics.getOperationP99Millis().get("read").doubleValue(), 1e-9);
+
+		metrics.reset();
+		assertTrue(metrics.getOperationCounts().isEmpty());
+	}
+
+	@Test
+	public void testMXBean() {
+		FakeRepository repository = FakeRepository.synthetic("metrics/mxbean", 2, 2);
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", new FakeBackend(repository));
+		env.put("blobCache", "none");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName pattern = new ObjectName(
+					"fr.gnodet.githubfs:type=GitHubFileSystem,repository=" + ObjectName.quote("metrics/mxbean") + ",*");
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:metrics/mxbean!/"), env)) {
+				fs.walk(fs.getPath("/"), Integer.MAX_VALUE);
+
+				Set<ObjectName> names = server.queryNames(pattern, null);
+				assertEquals(1, names.size());
+				GitHubFileSystemMetricsMXBean bean = JMX.newMXBeanProxy(server, names.iterator().next(),
+						GitHubFileSystemMetricsMXBean.class);
+				assertEquals(Long.valueOf(1), bean.getOperationCounts().get("walk"));
+				assertEquals(Long.valueOf(0), bean.getOperationErrors().get("walk"));
+				bean.reset();
+				assertTrue(fs.getMetrics().getOperationCounts().isEmpty());
+			}
+			assertTrue(server.queryNames(pattern, null).isEmpty());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testBytesOfChunkedResponses() {
+		byte[] body = new byte[10_000];
+		Arrays.fill(body, (byte) 'x');
+		byte[] compressed = gzip(body);
+		HttpServer server = null;
+		OkHttpClient client = null;
+		try {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", exchange -> {
+				byte[] sent = body;
+				String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if ((acceptEncoding != null) && acceptEncoding.contains("gzip")) {
+					exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+					sent = compressed;
+				}
+				// chunked, without Content-Length
+				exchange.sendResponseHeaders(200, 0);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(sent);
+				}
+			});
+			server.start();
+			String url = "http://127.0.0.1:" + server.getAddress().getPort();
+
+			GitHubFileSystemMetrics metrics = new GitHubFileSystemMetrics();
+			client = new OkHttpClient.Builder().addNetworkInterceptor(metrics.interceptor()).build();
+			// gzip is asked for transparently, the bytes counted are the ones received
+			try (Response response = client.newCall(new Request.Builder().url(url + "/gzip").build()).execute()) {
+				assertEquals(body.length, response.body().bytes().length);
+			}
+			assertEquals(compressed.length, metrics.getBytesTransferred());
+
+			metrics.reset();
+			try (Response response = client.newCall(new Request.Builder().url(url + "/plain")
+					.header("Accept-Encoding", "identity").build()).execute()) {
+				assertEquals(body.length, response.body().bytes().length);
+			}
+			assertEquals(body.length, metrics.getBytesTransferred());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		} finally {
+			if (client != null) {
+				client.dispatcher().executorService().shutdown();
+				client.connectionPool().evictAll();
+			}
+			if (server != null) {
+				server.stop(0);
+			}
+		}
+	}
+
+	private static byte[] gzip(byte[] data) {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(data);
+		} catch (java.io.IOException ex) {
+			throw new java.io.UncheckedIOException(ex);
+		}
+		return compressed.toByteArray();
+	}
+}
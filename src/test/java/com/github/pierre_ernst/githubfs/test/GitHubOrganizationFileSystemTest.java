@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+import fr.gnodet.githubfs.GitHubOrganizationFileSystem;
+
+public class GitHubOrganizationFileSystemTest {
+
+	@Test
+	public void testRepositoriesShareOneConnection() {
+		FakeRepository a = FakeRepository.synthetic("acme/repoA", 2, 2).file("a.txt", "in repoA");
+		a.commit("refs/heads/master");
+		FakeRepository b = FakeRepository.synthetic("acme/repoB", 3, 2).file("b.txt", "in repoB");
+		b.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(a).add(b);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri("acme", ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			assertTrue(fs instanceof GitHubOrganizationFileSystem);
+			GitHubOrganizationFileSystem org = (GitHubOrganizationFileSystem) fs;
+
+			try (Stream<Path> root = Files.list(fs.getPath("/"))) {
+				assertEquals(Arrays.asList("repoA", "repoB"),
+						root.map(p -> p.getFileName().toString()).collect(Collectors.toList()));
+			}
+			// the organization and its repositories
+			assertEquals(2, server.getRequestCount("orgs"), server.getRequestCounts().toString());
+			assertEquals("in repoA", new String(Files.readAllBytes(fs.getPath("/repoA/a.txt")), StandardCharsets.UTF_8));
+			assertEquals("in repoB", new String(Files.readAllBytes(fs.getPath("/repoB/b.txt")), StandardCharsets.UTF_8));
+			assertTrue(Files.isDirectory(fs.getPath("/repoA/src")));
+
+			List<Path> found = fs.find(fs.getPath("/"), "b.txt");
+			assertEquals(Collections.singletonList(fs.getPath("/repoB/b.txt")), found);
+
+			// the repositories were listed once and share the metrics of the organization
+			assertEquals(0, server.getRequestCount("repository"), server.getRequestCounts().toString());
+			assertSame(fs.getMetrics(), org.getFileSystem("repoA").getMetrics());
+			assertSame(fs.getMetrics(), org.getFileSystem("repoB").getMetrics());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testRepositoryOperationsAreDelegated() {
+		FakeRepository a = FakeRepository.synthetic("delegate/repoA", 2, 2).file("a.txt", "needle in repoA");
+		a.commit("refs/heads/master");
+		FakeRepository b = FakeRepository.synthetic("delegate/repoB", 1, 1).file("b.txt", "in repoB");
+		b.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(a).add(b);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri("delegate", ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			List<String> matches = new ArrayList<>();
+			fs.search(fs.getPath("/repoA"), "needle").forEach(m -> matches.add(m.getPath() + ":" + m.getLine()));
+			assertEquals(Collections.singletonList("/repoA/a.txt:1"), matches);
+			// from the root, every repository is searched
+			matches.clear();
+			fs.search(fs.getPath("/"), "in repo").forEach(m -> matches.add(m.getPath() + ":" + m.getLine()));
+			assertEquals(Arrays.asList("/repoA/a.txt:1", "/repoB/b.txt:1"), matches);
+
+			List<Path> all = collect(fs.publish(fs.getPath("/")));
+			assertEquals(fs.getPath("/"), all.get(0));
+			assertTrue(all.containsAll(Arrays.asList(fs.getPath("/repoA"), fs.getPath("/repoA/a.txt"),
+					fs.getPath("/repoB"), fs.getPath("/repoB/b.txt"))), all.toString());
+			Map<Path, String> contents = new HashMap<>();
+			for (Map.Entry<Path, byte[]> e : collect(fs.publishContents(fs.getPath("/")))) {
+				contents.put(e.getKey(), new String(e.getValue(), StandardCharsets.UTF_8));
+			}
+			assertEquals("needle in repoA", contents.get(fs.getPath("/repoA/a.txt")));
+			assertEquals("in repoB", contents.get(fs.getPath("/repoB/b.txt")));
+
+			server.resetRequestCounts();
+			assertTrue(fs.fetchPack() > 0);
+			// the refs and the pack of each repository
+			assertEquals(4, server.getRequestCount("pack"), server.getRequestCounts().toString());
+
+			List<Path> published = new CopyOnWriteArrayList<>();
+			fs.publish(fs.getPath("/repoB")).subscribe(new Flow.Subscriber<Path>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(Path item) {
+					published.add(item);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					throwable.printStackTrace(System.err);
+				}
+
+				@Override
+				public void onComplete() {
+				}
+			});
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (!published.contains(fs.getPath("/repoB/b.txt")) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertTrue(published.contains(fs.getPath("/repoB/b.txt")), published.toString());
+
+			// filters see the paths of the organization, at its root as below it
+			try (DirectoryStream<Path> root = Files.newDirectoryStream(fs.getPath("/"), "*B")) {
+				assertEquals(Collections.singletonList(fs.getPath("/repoB")), toList(root));
+			}
+			try (DirectoryStream<Path> repo = Files.newDirectoryStream(fs.getPath("/repoA"),
+					p -> p.startsWith("/repoA") && p.toString().endsWith(".txt"))) {
+				assertEquals(Collections.singletonList(fs.getPath("/repoA/a.txt")), toList(repo));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * @return the items of the publisher, requested one at a time
+	 */
+	private static <T> List<T> collect(Flow.Publisher<T> publisher) throws Exception {
+		List<T> items = new CopyOnWriteArrayList<>();
+		CompletableFuture<List<T>> done = new CompletableFuture<>();
+		publisher.subscribe(new Flow.Subscriber<T>() {
+			private Flow.Subscription subscription;
+
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(1);
+			}
+
+			@Override
+			public void onNext(T item) {
+				items.add(item);
+				subscription.request(1);
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+				done.completeExceptionally(throwable);
+			}
+
+			@Override
+			public void onComplete() {
+				done.complete(items);
+			}
+		});
+		return done.get(30, TimeUnit.SECONDS);
+	}
+
+	private static List<Path> toList(DirectoryStream<Path> stream) {
+		List<Path> result = new ArrayList<>();
+		stream.forEach(result::add);
+		return result;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+import fr.gnodet.githubfs.GitHubOrganizationFileSystem;
+import fr.gnodet.githubfs.GitHubScan;
+
+public class GitHubScanTest {
+
+	@Test
+	public void testScanResumesFromCheckpoint() {
+		FakeRepository a = FakeRepository.synthetic("scan/first", 4, 3);
+		FakeRepository b = FakeRepository.synthetic("scan/second", 6, 2);
+		FakeRepository c = FakeRepository.synthetic("scan/third", 2, 5);
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(a).add(b).add(c);
+				GitHubOrganizationFileSystem org = (GitHubOrganizationFileSystem) new GitHubFileSystemProvider()
+						.newFileSystem(server.uri("scan", ""), Collections.singletonMap("blobCache", "none"))) {
+			Path checkpoint = Files.createTempFile("githubfs-scan", ".checkpoint");
+			List<String> first = new ArrayList<>();
+
+			IOException stopped = assertThrows(IOException.class,
+					() -> new GitHubScan(org).setConcurrency(4).setCheckpoint(checkpoint).run("*.java",
+							(file, content) -> {
+								if (first.size() == 15) {
+									throw new IOException("stopped");
+								}
+								assertTrue(new String(content, StandardCharsets.UTF_8).startsWith("class File"));
+								first.add(name(file));
+							}));
+			assertEquals("stopped", stopped.getMessage());
+
+			List<String> second = new ArrayList<>();
+			long count = new GitHubScan(org).setConcurrency(4).setRateLimit(1000).setCheckpoint(checkpoint)
+					.run("*.java", (file, content) -> second.add(name(file)));
+
+			// every file once, across both runs
+			Set<String> all = new HashSet<>(first);
+			all.addAll(second);
+			assertEquals(4 * 3 + 6 * 2 + 2 * 5, all.size());
+			assertEquals(all.size(), first.size() + second.size());
+			assertEquals(second.size(), count);
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static String name(Path file) {
+		return ((GitHubFileSystem) file.getFileSystem()).getRepository().getFullName() + ":" + file;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class GraphQLBatchTest {
+
+	@Test
+	public void testReadAllBatchesTreesAndBlobs() {
+		FakeRepository repository = FakeRepository.synthetic("batch/repo", 16, 16);
+		repository.file("bin/data.bin", new byte[] { 0, 1, 2, 3 });
+		repository.file("src/caf\u00e9.txt", "caf\u00e9".getBytes(StandardCharsets.UTF_8));
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			List<Path> paths = new ArrayList<>();
+			for (int d = 0; d < 16; d++) {
+				for (int f = 0; f < 16; f++) {
+					paths.add(fs.getPath("/src/module" + (d % 8) + "/pkg" + d + "/File" + f + ".java"));
+				}
+			}
+			paths.add(fs.getPath("/bin/data.bin"));
+			paths.add(fs.getPath("/src/caf\u00e9.txt"));
+			paths.add(fs.getPath("/src/absent.txt"));
+			server.resetRequestCounts();
+
+			Map<Path, byte[]> contents = fs.readAll(paths);
+
+			assertEquals(paths.subList(0, paths.size() - 1), new ArrayList<>(contents.keySet()));
+			assertFalse(contents.containsKey(fs.getPath("/src/absent.txt")));
+			assertArrayEquals(new byte[] { 0, 1, 2, 3 }, contents.get(fs.getPath("/bin/data.bin")));
+			assertEquals("caf\u00e9", new String(contents.get(fs.getPath("/src/caf\u00e9.txt")), StandardCharsets.UTF_8));
+			for (Path path : paths.subList(0, 256)) {
+				assertTrue(new String(contents.get(path), StandardCharsets.UTF_8).contains("class File"), path.toString());
+			}
+
+			// 1 query for the 27 directories, 3 for the 258 blobs, then the binary one through REST
+			assertEquals(4, server.getRequestCount("graphql"), server.getRequestCounts().toString());
+			assertEquals(1, server.getRequestCount("contents") + server.getRequestCount("blob"),
+					server.getRequestCounts().toString());
+			assertEquals(0, server.getRequestCount("tree"), server.getRequestCounts().toString());
+
+			// served from the trees fetched by the batch
+			try (Stream<Path> files = Files.list(fs.getPath("/src/module0/pkg0"))) {
+				assertEquals(16, files.collect(Collectors.toList()).size());
+			}
+			assertEquals(0, server.getRequestCount("tree"), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testGraphQLErrorsFallBackToRest() {
+		FakeRepository repository = FakeRepository.synthetic("batch/limited", 2, 4);
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new RateLimitedGraphQLServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			List<Path> paths = new ArrayList<>();
+			for (int f = 0; f < 4; f++) {
+				paths.add(fs.getPath("/src/module0/pkg0/File" + f + ".java"));
+			}
+			server.resetRequestCounts();
+
+			Map<Path, byte[]> contents = fs.readAll(paths);
+
+			assertEquals(paths, new ArrayList<>(contents.keySet()));
+			for (Path path : paths) {
+				assertTrue(new String(contents.get(path), StandardCharsets.UTF_8).contains("class File"), path.toString());
+			}
+			// the trees, then the blobs, were asked for once each
+			assertEquals(2, server.getRequestCount("graphql"), server.getRequestCounts().toString());
+			assertEquals(4, server.getRequestCount("contents") + server.getRequestCount("blob"),
+					server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	/**
+	 * Server answering every GraphQL query as GitHub does once the query rate
+	 * limit is exceeded: a 200 status with errors and no data.
+	 */
+	private static class RateLimitedGraphQLServer extends FakeGitHubServer {
+		RateLimitedGraphQLServer() throws IOException {
+			super();
+		}
+
+		@Override
+		protected void graphql(HttpExchange exchange) throws IOException {
+			exchange.getRequestBody().readAllBytes();
+			json(exchange, 200, "{\"data\":null,\"errors\":[{\"type\":\"RATE_LIMITED\","
+					+ "\"message\":\"API rate limit exceeded\"}]}");
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.Tree;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class JfrEventsTest {
+
+	private static final String CONTENT_READ = "fr.gnodet.githubfs.ContentRead";
+	private static final String CACHE_LOOKUP = "fr.gnodet.githubfs.CacheLookup";
+	private static final String COALESCED_REQUEST = "fr.gnodet.githubfs.CoalescedRequest";
+	private static final String API_REQUEST = "fr.gnodet.githubfs.ApiRequest";
+	private static final String RATE_LIMIT_WAIT = "fr.gnodet.githubfs.RateLimitWait";
+
+	@Test
+	public void testContentReadAndCacheLookupEvents() {
+		FakeRepository repository = FakeRepository.synthetic("jfr/lookups", 2, 2).file("notes.txt", "jfr notes");
+		repository.commit("refs/heads/master");
+		try (GitHubFileSystem fs = newFileSystem(new FakeBackend(repository), "github:jfr/lookups!/")) {
+			List<RecordedEvent> events = record(() -> {
+				assertEquals("jfr notes", read(fs.getPath("/notes.txt")));
+				assertEquals("jfr notes", read(fs.getPath("/notes.txt")));
+			}, CONTENT_READ, CACHE_LOOKUP);
+
+			List<RecordedEvent> reads = named(events, CONTENT_READ);
+			assertEquals(2, reads.size());
+			for (RecordedEvent read : reads) {
+				assertEquals("jfr/lookups", read.getString("repository"));
+				assertEquals("/notes.txt", read.getString("path"));
+				assertEquals(9, read.getLong("bytes"));
+			}
+
+			List<RecordedEvent> contents = named(events, CACHE_LOOKUP);
+			contents.removeIf(event -> !"content".equals(event.getString("tier")));
+			assertEquals(2, contents.size());
+			assertEquals("jfr/lookups", contents.get(0).getString("repository"));
+			assertFalse(contents.get(0).getBoolean("hit"));
+			assertTrue(contents.get(1).getBoolean("hit"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCoalescedRequestEvent() {
+		FakeRepository repository = FakeRepository.synthetic("jfr/coalesced", 2, 2);
+		repository.commit("refs/heads/master");
+		String commit = repository.getRef("refs/heads/master");
+		CountDownLatch entered = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		FakeBackend backend = new FakeBackend(repository) {
+			@Override
+			public Tree getTree(String sha) throws IOException {
+				if (sha.equals(commit)) {
+					entered.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException ex) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				return super.getTree(sha);
+			}
+		};
+		try (GitHubFileSystem fs = newFileSystem(backend, "github:jfr/coalesced!/")) {
+			List<RecordedEvent> events = record(() -> {
+				CompletableFuture<Boolean> first = CompletableFuture
+						.supplyAsync(() -> Files.isDirectory(fs.getPath("/src")));
+				assertTrue(entered.await(10, TimeUnit.SECONDS));
+				CompletableFuture<Boolean> second = CompletableFuture
+						.supplyAsync(() -> Files.isDirectory(fs.getPath("/src")));
+				// lets the second listing join the fetch in flight
+				Thread.sleep(200);
+				release.countDown();
+				assertTrue(first.get(10, TimeUnit.SECONDS));
+				assertTrue(second.get(10, TimeUnit.SECONDS));
+			}, COALESCED_REQUEST);
+
+			events.removeIf(event -> !commit.equals(event.getString("key")));
+			assertEquals(1, events.size());
+			assertEquals("commit", events.get(0).getString("endpoint"));
+			assertEquals(1, backend.getCallCount("getTree"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testApiRequestEvents() {
+		FakeRepository repository = FakeRepository.synthetic("jfr/api", 2, 2).file("notes.txt", "over rest");
+		repository.commit("refs/heads/master");
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						blobCacheNone())) {
+			List<RecordedEvent> events = record(() -> assertEquals("over rest", read(fs.getPath("/notes.txt"))),
+					API_REQUEST);
+
+			assertFalse(events.isEmpty());
+			for (RecordedEvent event : events) {
+				assertEquals(200, event.getInt("status"));
+				assertEquals("GET", event.getString("method"));
+				assertTrue(event.getString("path").startsWith("/repos/jfr/api"), event.getString("path"));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testRateLimitWaitEvent() {
+		FakeRepository repository = FakeRepository.synthetic("jfr/ratelimit", 1, 1);
+		repository.commit("refs/heads/master");
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository)) {
+			Map<String, Object> env = new HashMap<>(blobCacheNone());
+			env.put("rateLimit", "wait");
+			server.setRateLimitRate(1.0);
+			List<RecordedEvent> events = record(() -> {
+				CompletableFuture<GitHubFileSystem> opened = CompletableFuture.supplyAsync(() -> {
+					try {
+						return new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""), env);
+					} catch (IOException ex) {
+						throw new java.io.UncheckedIOException(ex);
+					}
+				});
+				long deadline = System.currentTimeMillis() + 10_000;
+				while ((server.getRequestCount("403") == 0) && (System.currentTimeMillis() < deadline)) {
+					Thread.sleep(10);
+				}
+				// the retry made once the window reset goes through
+				server.setRateLimitRate(0);
+				opened.get(30, TimeUnit.SECONDS).close();
+			}, RATE_LIMIT_WAIT);
+
+			assertTrue(events.size() >= 1);
+			assertEquals(5000, events.get(0).getInt("limit"));
+			assertTrue(events.get(0).getDuration().toMillis() > 0);
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private interface Action {
+		void run() throws Exception;
+	}
+
+	/**
+	 * @return the events of the given types recorded while the action ran
+	 */
+	private static List<RecordedEvent> record(Action action, String... names) throws Exception {
+		Path dump = Files.createTempFile("githubfs", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				for (String name : names) {
+					recording.enable(name).withoutThreshold();
+				}
+				recording.start();
+				action.run();
+				recording.stop();
+				recording.dump(dump);
+			}
+			return named(RecordingFile.readAllEvents(dump), names);
+		} finally {
+			Files.delete(dump);
+		}
+	}
+
+	private static List<RecordedEvent> named(List<RecordedEvent> events, String... names) {
+		List<String> types = Arrays.asList(names);
+		return events.stream().filter(event -> types.contains(event.getEventType().getName()))
+				.collect(Collectors.toList());
+	}
+
+	private static GitHubFileSystem newFileSystem(FakeBackend backend, String uri) throws IOException {
+		Map<String, Object> env = new HashMap<>(blobCacheNone());
+		env.put("backend", backend);
+		return new GitHubFileSystemProvider().newFileSystem(URI.create(uri), env);
+	}
+
+	private static Map<String, Object> blobCacheNone() {
+		Map<String, Object> env = new HashMap<>();
+		env.put("blobCache", "none");
+		return env;
+	}
+
+	private static String read(Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+}
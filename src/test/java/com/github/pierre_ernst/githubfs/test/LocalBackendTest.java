@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class LocalBackendTest {
+
+	@Test
+	public void testFileSystemOverBareRepository() {
+		assumeTrue(BareRepository.isGitAvailable(), "git is not installed");
+		try {
+			StringBuilder large = new StringBuilder();
+			for (int i = 0; i < 4000; i++) {
+				large.append("line ").append(i).append('\n');
+			}
+			String first = large.toString();
+			String second = first.replace("line 2000\n", "changed\n") + "end\n";
+
+			BareRepository repository = BareRepository.create(Files.createTempDirectory("githubfs-local"));
+			repository.file("README.md", "first\n").file("data/large.txt", first).file("src/a/A.java", "class A {}\n");
+			repository.commit("first");
+			repository.tag("v1");
+			repository.file("data/large.txt", second);
+			repository.commit("second");
+			// one version of large.txt is now stored as a delta of the other
+			repository.repack();
+			repository.file("README.md", "third\n");
+			repository.commit("third");
+
+			Map<String, String> env = new HashMap<>();
+			env.put("backend", "local");
+			env.put("mirror", repository.getDirectory().toString());
+			env.put("blobCache", "none");
+			URI uri = URI.create("github:local/mirror!/");
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(uri, env)) {
+				assertEquals("refs/heads/master", fs.getRevision());
+				assertEquals("third\n", read(fs.getPath("/README.md")));
+				assertEquals(second, read(fs.getPath("/data/large.txt")));
+				assertEquals(second.length(), Files.size(fs.getPath("/data/large.txt")));
+
+				repository.file("src/b/B.java", "class B {}\n").delete("src/a/A.java");
+				repository.commit("fourth");
+				assertTrue(fs.refresh());
+				assertThrows(NoSuchFileException.class, () -> Files.readAllBytes(fs.getPath("/src/a/A.java")));
+				assertEquals("class B {}\n", read(fs.getPath("/src/b/B.java")));
+			}
+
+			env.put("revision", "refs/tags/v1");
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(uri, env)) {
+				assertEquals("first\n", read(fs.getPath("/README.md")));
+				assertEquals(first, read(fs.getPath("/data/large.txt")));
+				assertEquals(first.length(), Files.size(fs.getPath("/data/large.txt")));
+				assertEquals("class A {}\n", read(fs.getPath("/src/a/A.java")));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testReadEventsOverLocalBackend() {
+		assumeTrue(BareRepository.isGitAvailable(), "git is not installed");
+		try {
+			BareRepository repository = BareRepository.create(Files.createTempDirectory("githubfs-local"));
+			repository.file("README.md", "first\n");
+			repository.commit("first");
+
+			Map<String, String> env = new HashMap<>();
+			env.put("backend", "local");
+			env.put("mirror", repository.getDirectory().toString());
+			env.put("blobCache", "none");
+			Path dump = Files.createTempFile("githubfs-local", ".jfr");
+			try (Recording recording = new Recording()) {
+				recording.enable("fr.gnodet.githubfs.ContentRead").withoutThreshold();
+				recording.start();
+				try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+						.newFileSystem(URI.create("github:local/mirror!/"), env)) {
+					// the event names the repository although there is no GHRepository behind it
+					assertEquals("first\n", read(fs.getPath("/README.md")));
+				}
+				recording.stop();
+				recording.dump(dump);
+			}
+			List<RecordedEvent> events = RecordingFile.readAllEvents(dump);
+			events.removeIf(event -> !event.getEventType().getName().equals("fr.gnodet.githubfs.ContentRead"));
+			assertEquals(1, events.size());
+			assertEquals("local/mirror", events.get(0).getString("repository"));
+			assertEquals("/README.md", events.get(0).getString("path"));
+			assertEquals(6, events.get(0).getLong("bytes"));
+			Files.delete(dump);
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static String read(Path path) throws Exception {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class MaterializeTest {
+
+	@Test
+	public void testMaterializeResumes() {
+		FakeRepository repository = FakeRepository.synthetic("materialize/repo", 3, 2);
+		repository.file("docs/notes.txt", "first");
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		try {
+			env.put("blobCache", Files.createTempDirectory("githubfs-blobs").toString());
+			Path directory = Files.createTempDirectory("githubfs-materialize");
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:materialize/repo!/"), env)) {
+				// README.md, pom.xml, notes.txt and 6 files in the modules
+				assertEquals(9, fs.materialize(fs.getPath("/"), directory));
+				Path notes = directory.resolve("docs").resolve("notes.txt");
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+				long opened = backend.getCallCount("open");
+
+				assertEquals(0, fs.materialize(fs.getPath("/"), directory));
+				Files.write(notes, "fixed".getBytes(StandardCharsets.UTF_8));
+				Files.delete(directory.resolve("pom.xml"));
+				assertEquals(2, fs.materialize(fs.getPath("/"), directory));
+				assertEquals("first", new String(Files.readAllBytes(notes), StandardCharsets.UTF_8));
+				// both were in the blob cache already
+				assertEquals(opened, backend.getCallCount("open"));
+
+				Path copy = directory.resolve("copy.txt");
+				fs.provider().copy(fs.getPath("/docs/notes.txt"), copy);
+				assertEquals("first", new String(Files.readAllBytes(copy), StandardCharsets.UTF_8));
+				assertThrows(FileAlreadyExistsException.class,
+						() -> fs.provider().copy(fs.getPath("/README.md"), copy));
+				fs.provider().copy(fs.getPath("/README.md"), copy, StandardCopyOption.REPLACE_EXISTING);
+				assertEquals(Files.size(directory.resolve("README.md")), Files.size(copy));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class NameIndexTest {
+
+	@Test
+	public void testFindLooksUpNamesWithOneTreeRequest() {
+		FakeRepository repository = FakeRepository.synthetic("find/repo", 16, 16);
+		repository.file("pom.xml", "<project/>");
+		repository.file("src/module0/pom.xml", "<project/>");
+		repository.file("src/module1/pkg1/pom.xml", "<project/>");
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			Path root = fs.getPath("/");
+			server.resetRequestCounts();
+
+			assertEquals(
+					Arrays.asList(fs.getPath("/pom.xml"), fs.getPath("/src/module0/pom.xml"),
+							fs.getPath("/src/module1/pkg1/pom.xml")),
+					fs.find(root, "pom.xml"));
+			assertEquals(1, server.getRequestCount("tree"), server.getRequestCounts().toString());
+
+			assertEquals(256, fs.find(root, "*.java").size());
+			assertEquals(96, fs.find(root, "File1?.java").size());
+			assertEquals(0, fs.find(fs.getPath("/src"), 1, "pom.xml").size());
+			assertEquals(1, fs.find(fs.getPath("/src"), 2, "pom.xml").size());
+			try (Stream<Path> files = Files.list(fs.getPath("/src/module1/pkg1"))) {
+				assertEquals(17, files.count());
+			}
+			assertEquals(1, server.getRequestCount("tree"), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
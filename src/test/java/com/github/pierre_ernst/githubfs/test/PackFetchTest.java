@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class PackFetchTest {
+
+	@Test
+	public void testRevisionReadFromSinglePack() {
+		FakeRepository repository = FakeRepository.synthetic("pack/repo", 7, 5);
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Map.of("prefetch", "pack", "blobCache",
+								Files.createTempDirectory("githubfs-pack").toString()))) {
+			assertEquals(2, server.getRequestCount("pack"));
+			server.resetRequestCounts();
+
+			List<Path> files;
+			try (Stream<Path> walk = Files.walk(fs.getPath("/"))) {
+				files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+			}
+			assertEquals(2 + 7 * 5, files.size());
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				String expected = name.endsWith(".java")
+						? "class " + name.replace(".java", "") + " { /* " + file.getParent().toString().substring(1)
+								+ "/ */ }\n"
+						: name.equals("pom.xml") ? "<project/>\n" : "# pack/repo\n";
+				assertEquals(expected, new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+			}
+			assertEquals(0, server.getRequestCount());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
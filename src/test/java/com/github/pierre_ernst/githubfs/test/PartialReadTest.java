@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class PartialReadTest {
+
+	@Test
+	public void testByteRangeRequest() {
+		FakeRepository repository = FakeRepository.synthetic("range/repo", 1, 1);
+		repository.file("data/large.txt", "0123456789".repeat(300_000));
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Map.of("blobCache", "none"))) {
+			server.resetRequestCounts();
+			byte[] read = fs.read(fs.getPath("/data/large.txt"), 2_000_005, 8);
+			assertEquals("56789012", new String(read, StandardCharsets.UTF_8));
+			assertEquals(1, server.getRequestCount("raw"));
+			assertEquals(3, fs.read(fs.getPath("/data/large.txt"), 2_999_997, 8).length);
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testLineRangeFromIndex() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10_000; i++) {
+			text.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+		}
+		FakeRepository repository = FakeRepository.synthetic("lines/repo", 1, 1);
+		repository.file("data/generated.txt", text.append("last").toString());
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		try {
+			Path blobs = Files.createTempDirectory("githubfs-blobs");
+			env.put("blobCache", blobs.toString());
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:lines/repo!/"), env)) {
+				Path file = fs.getPath("/data/generated.txt");
+				assertEquals(Arrays.asList("line 4999", "line 5000", "line 5001"), fs.readLines(file, 4999, 3));
+				assertEquals(1, backend.getCallCount("open"));
+				assertEquals(Arrays.asList("line 0"), fs.readLines(file, 0, 1));
+				assertEquals(Arrays.asList("line 9999", "last"), fs.readLines(file, 9999, 5));
+				assertEquals(Collections.emptyList(), fs.readLines(file, 10_001, 5));
+				assertEquals("ne 0", new String(fs.read(file, 2, 4), StandardCharsets.UTF_8));
+				assertEquals(1, backend.getCallCount("open"));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
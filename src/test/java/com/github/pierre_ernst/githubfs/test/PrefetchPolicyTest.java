@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.PrefetchPolicy;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class PrefetchPolicyTest {
+
+	private static final String GLOBS = "build.gradle{,.kts}, {pom.xml,package.json},*.md";
+
+	@Test
+	public void testParseKeepsBraceGroups() {
+		PrefetchPolicy policy = PrefetchPolicy.parse(GLOBS, PrefetchPolicy.DEFAULT_MAX_SIZE);
+		assertEquals(Arrays.asList("build.gradle{,.kts}", "{pom.xml,package.json}", "*.md"), policy.getGlobs());
+		assertTrue(policy.matches("build.gradle", 10));
+		assertTrue(policy.matches("build.gradle.kts", 10));
+		assertTrue(policy.matches("package.json", 10));
+		assertFalse(policy.matches("build.xml", 10));
+		assertFalse(policy.matches("pom.xml", PrefetchPolicy.DEFAULT_MAX_SIZE + 1));
+	}
+
+	@Test
+	public void testReadAfterListingIsServedFromBlobStore() {
+		FakeRepository repository = FakeRepository.synthetic("prefetch/braces", 1, 1)
+				.file("build.gradle.kts", "plugins { java }").file("settings.gradle", "include 'app'");
+		repository.commit("refs/heads/master");
+		FakeBackend backend = new FakeBackend(repository);
+
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("prefetch", GLOBS);
+		try {
+			Path blobs = Files.createTempDirectory("githubfs-blobs");
+			env.put("blobCache", blobs.toString());
+			try (GitHubFileSystem fs = new GitHubFileSystemProvider()
+					.newFileSystem(URI.create("github:prefetch/braces!/"), env)) {
+				try (Stream<Path> list = Files.list(fs.getPath("/"))) {
+					list.count();
+				}
+				// build.gradle.kts, pom.xml and README.md, not settings.gradle
+				assertEquals(3, backend.getCallCount("open"));
+
+				assertEquals("plugins { java }",
+						new String(Files.readAllBytes(fs.getPath("/build.gradle.kts")), StandardCharsets.UTF_8));
+				assertTrue(Files.readAllBytes(fs.getPath("/pom.xml")).length > 0);
+				assertEquals(3, backend.getCallCount("open"));
+			}
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
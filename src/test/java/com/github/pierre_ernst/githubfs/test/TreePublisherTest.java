@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class TreePublisherTest {
+
+	@Test
+	public void testReadsFollowDemand() {
+		FakeRepository repository = FakeRepository.synthetic("publish/repo", 4, 5);
+		FakeBackend backend = new FakeBackend(repository);
+		try (GitHubFileSystem fs = newFileSystem(backend)) {
+			Recorder<Map.Entry<Path, byte[]>> recorder = new Recorder<>();
+			fs.publishContents(fs.getPath("/src")).subscribe(recorder);
+			long opened = backend.getCallCount("open");
+			recorder.subscription.request(3);
+			assertEquals(3, recorder.items.size());
+			// one read per file requested, none ahead of the demand
+			assertEquals(opened + 3, backend.getCallCount("open"));
+
+			recorder.subscription.request(Long.MAX_VALUE);
+			assertTrue(recorder.completed);
+			assertEquals(20, recorder.items.size());
+			assertEquals(opened + 20, backend.getCallCount("open"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testCancelCancelsRequests() {
+		FakeRepository repository = FakeRepository.synthetic("publish/repo", 4, 5);
+		List<CompletableFuture<byte[]>> reads = new CopyOnWriteArrayList<>();
+		FakeBackend backend = new FakeBackend(repository) {
+			@Override
+			public CompletableFuture<byte[]> readAsync(String commit, String path, TreeEntry entry) {
+				// never answered, as requests still in flight
+				CompletableFuture<byte[]> future = new CompletableFuture<>();
+				reads.add(future);
+				return future;
+			}
+		};
+		try (GitHubFileSystem fs = newFileSystem(backend)) {
+			Recorder<Map.Entry<Path, byte[]>> recorder = new Recorder<>();
+			fs.publishContents(fs.getPath("/src")).subscribe(recorder);
+			recorder.subscription.request(Long.MAX_VALUE);
+			// bounded by the concurrency of the publisher
+			assertEquals(4, reads.size());
+			recorder.subscription.cancel();
+			for (CompletableFuture<byte[]> read : reads) {
+				assertTrue(read.isCancelled());
+			}
+			assertEquals(4, reads.size());
+			assertEquals(0, recorder.items.size());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static GitHubFileSystem newFileSystem(FakeBackend backend) throws Exception {
+		Map<String, Object> env = new HashMap<>();
+		env.put("backend", backend);
+		env.put("blobCache", "none");
+		return new GitHubFileSystemProvider().newFileSystem(URI.create("github:publish/repo!/"), env);
+	}
+
+	private static class Recorder<T> implements Flow.Subscriber<T> {
+		final List<T> items = new ArrayList<>();
+		Flow.Subscription subscription;
+		boolean completed;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(T item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			fail(throwable.getMessage());
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+}
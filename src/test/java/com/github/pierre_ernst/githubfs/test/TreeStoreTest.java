@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.pierre_ernst.githubfs.model.Tree;
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+import com.github.pierre_ernst.githubfs.model.TreeStore;
+
+public class TreeStoreTest {
+
+	@Test
+	public void testInternSharesTrees() {
+		TreeStore store = new TreeStore();
+		Tree tree = tree("a");
+		assertSame(tree, store.intern(tree));
+		assertSame(tree, store.intern(tree("a")));
+		assertSame(tree, store.internCommitTree("c0", tree("a")));
+		assertSame(tree, store.getCachedCommitTree("c0"));
+		assertEquals(1, store.size());
+	}
+
+	@Test
+	public void testClearedTreesAreExpunged() {
+		try {
+			TreeStore store = new TreeStore();
+			for (int i = 0; i < 100; i++) {
+				store.internCommitTree("c" + i, tree("t" + i));
+			}
+			assertEquals(100, store.size());
+
+			clearSoftReferences();
+			// cleared references reach the queue on the reference handler thread
+			long deadline = System.currentTimeMillis() + 10_000;
+			while ((store.size() > 0) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, store.size());
+			assertNull(store.getCachedCommitTree("c0"));
+
+			Tree tree = store.internCommitTree("c0", tree("t0"));
+			assertEquals(1, store.size());
+			assertSame(tree, store.getCachedCommitTree("c0"));
+			assertNotNull(store.get("t0"));
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	private static Tree tree(String sha) {
+		return new Tree(sha, Collections.singletonList(new TreeEntry("file", TreeEntry.BLOB, sha + "-blob", 1)));
+	}
+
+	/**
+	 * Soft references are all cleared before the virtual machine runs out of
+	 * memory.
+	 */
+	private static void clearSoftReferences() {
+		List<byte[]> hog = new ArrayList<>();
+		try {
+			while (true) {
+				hog.add(new byte[16 << 20]);
+			}
+		} catch (OutOfMemoryError expected) {
+			hog.clear();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.pierre_ernst.githubfs.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+public class TreeWalkTest {
+
+	@Test
+	public void testShallowWalkListsOnlyTreesWithinDepth() {
+		FakeRepository repository = FakeRepository.synthetic("walk/shallow", 12, 3);
+		repository.file("walk-shallow.txt", "walk/shallow");
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			server.resetRequestCounts();
+
+			try (Stream<Path> walk = Files.walk(fs.getPath("/"), 2)) {
+				// the root, its 4 entries and the 8 modules
+				assertEquals(13, walk.count());
+			}
+			// the root and src, not the modules
+			assertEquals(2, server.getRequestCount("tree"), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+
+	@Test
+	public void testDeepWalkSwitchesToRecursiveFetch() {
+		FakeRepository repository = FakeRepository.synthetic("walk/deep", 40, 2);
+		repository.file("walk-deep.txt", "walk/deep");
+		repository.commit("refs/heads/master");
+
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository);
+				GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+						Collections.singletonMap("blobCache", "none"))) {
+			server.resetRequestCounts();
+
+			List<Path> walk = fs.walk(fs.getPath("/"), Integer.MAX_VALUE);
+
+			// the root, src and the 8 modules one by one, then the 40 packages at once
+			assertEquals(11, server.getRequestCount("tree"), server.getRequestCounts().toString());
+			try (Stream<Path> expected = Files.walk(fs.getPath("/"))) {
+				assertEquals(expected.collect(Collectors.toList()), walk);
+			}
+			assertEquals(1 + 4 + 8 + 40 + 80, walk.size());
+			assertEquals(11, server.getRequestCount("tree"), server.getRequestCounts().toString());
+		} catch (Exception ex) {
+			ex.printStackTrace(System.err);
+			fail(ex.getMessage());
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.github.pierre_ernst.githubfs.test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bare git repository on disk, written with the <code>git</code> command
+ * through a separate work tree, to check what a local mirror is read as.
+ */
+public class BareRepository {
+
+	private final Path directory;
+	private final Path workTree;
+
+	private BareRepository(Path directory, Path workTree) {
+		this.directory = directory;
+		this.workTree = workTree;
+	}
+
+	/**
+	 * @return <code>true</code> if the <code>git</code> command can be run
+	 */
+	public static boolean isGitAvailable() {
+		try {
+			Process process = new ProcessBuilder("git", "--version").redirectErrorStream(true).start();
+			process.getInputStream().readAllBytes();
+			return process.waitFor() == 0;
+		} catch (IOException ex) {
+			return false;
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Creates an empty repository, with <code>master</code> as its current
+	 * branch, in <code>repo.git</code> below the given directory.
+	 */
+	public static BareRepository create(Path parent) throws IOException {
+		BareRepository repository = new BareRepository(parent.resolve("repo.git"), parent.resolve("work"));
+		Files.createDirectories(repository.workTree);
+		run(parent, "git", "init", "--quiet", "--bare", repository.directory.toString());
+		repository.git("symbolic-ref", "HEAD", "refs/heads/master");
+		return repository;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public BareRepository file(String path, String content) throws IOException {
+		Path file = workTree.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+		return this;
+	}
+
+	public BareRepository delete(String path) throws IOException {
+		Files.delete(workTree.resolve(path));
+		return this;
+	}
+
+	/**
+	 * Commits every change of the work tree, as loose objects.
+	 *
+	 * @return the SHA of the commit
+	 */
+	public String commit(String message) throws IOException {
+		git("add", "--all");
+		git("commit", "--quiet", "--allow-empty", "-m", message);
+		return git("rev-parse", "HEAD");
+	}
+
+	public BareRepository tag(String name) throws IOException {
+		git("tag", "-a", "-m", name, name);
+		return this;
+	}
+
+	/**
+	 * Moves every object into a single pack, storing similar objects as deltas,
+	 * and the refs into <code>packed-refs</code>.
+	 */
+	public BareRepository repack() throws IOException {
+		git("repack", "-a", "-d", "-f", "-q", "--window=50", "--depth=50");
+		git("pack-refs", "--all", "--prune");
+		return this;
+	}
+
+	/**
+	 * @return the standard output of the command, trimmed
+	 */
+	public String git(String... args) throws IOException {
+		List<String> command = new ArrayList<>(Arrays.asList("git", "--git-dir=" + directory,
+				"--work-tree=" + workTree, "-c", "user.name=githubfs", "-c", "user.email=githubfs@example.com",
+				"-c", "commit.gpgsign=false", "-c", "tag.gpgsign=false"));
+		command.addAll(Arrays.asList(args));
+		return run(workTree, command.toArray(new String[0]));
+	}
+
+	private static String run(Path directory, String... command) throws IOException {
+		Process process = new ProcessBuilder(command).directory(directory.toFile()).redirectErrorStream(true).start();
+		String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+		try {
+			if (process.waitFor() != 0) {
+				throw new IOException(String.join(" ", command) + " failed: " + output);
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		return output;
+	}
+}
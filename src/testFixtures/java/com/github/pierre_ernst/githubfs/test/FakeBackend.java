@@ -0,0 +1,152 @@
+package com.github.pierre_ernst.githubfs.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.pierre_ernst.githubfs.model.ContentBackend;
+import com.github.pierre_ernst.githubfs.model.Tree;
+import com.github.pierre_ernst.githubfs.model.TreeEntry;
+
+/**
+ * {@link ContentBackend} reading the objects of a {@link FakeRepository} in
+ * memory, without any server. Given to a file system as the
+ * <code>backend</code> entry of its environment.
+ */
+public class FakeBackend implements ContentBackend {
+
+	private final FakeRepository repository;
+	private final Map<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+	public FakeBackend(FakeRepository repository) {
+		this.repository = repository;
+	}
+
+	/**
+	 * @return the number of calls of a backend method, such as
+	 *         <code>getTree</code> or <code>open</code>
+	 */
+	public long getCallCount(String method) {
+		LongAdder count = calls.get(method);
+		return (count == null) ? 0 : count.sum();
+	}
+
+	@Override
+	public String getName() {
+		return repository.getFullName();
+	}
+
+	@Override
+	public String resolveRevision(String revision) throws IOException {
+		count("resolveRevision");
+		if (revision == null) {
+			return repository.getRefs().keySet().iterator().next();
+		}
+		for (String candidate : new String[] { revision, "refs/heads/" + revision, "refs/tags/" + revision }) {
+			if (repository.getRef(candidate) != null) {
+				return candidate;
+			}
+		}
+		throw new IllegalArgumentException("Ref '" + revision + "' not found in " + getName());
+	}
+
+	@Override
+	public String resolveCommit(String revision) throws IOException {
+		count("resolveCommit");
+		String commit = repository.getRef(revision);
+		if (commit == null) {
+			throw new NoSuchFileException(revision);
+		}
+		return commit;
+	}
+
+	@Override
+	public Tree getTree(String sha) throws IOException {
+		count("getTree");
+		return tree(sha);
+	}
+
+	@Override
+	public List<Tree> getTreeRecursive(String sha) throws IOException {
+		count("getTreeRecursive");
+		List<Tree> result = new ArrayList<>();
+		addRecursive(tree(sha), result);
+		return result;
+	}
+
+	private void addRecursive(Tree tree, List<Tree> result) throws IOException {
+		result.add(tree);
+		for (TreeEntry entry : tree.getEntries()) {
+			if (entry.isTree()) {
+				addRecursive(tree(entry.getSha()), result);
+			}
+		}
+	}
+
+	private Tree tree(String sha) throws IOException {
+		String tree = (repository.getTreeOf(sha) != null) ? repository.getTreeOf(sha) : sha;
+		List<FakeRepository.Entry> entries = repository.getTree(tree);
+		if (entries == null) {
+			throw new NoSuchFileException(sha);
+		}
+		List<TreeEntry> result = new ArrayList<>(entries.size());
+		for (FakeRepository.Entry entry : entries) {
+			result.add(new TreeEntry(entry.getName(), entry.getType(), entry.getSha(), entry.getSize()));
+		}
+		return new Tree(tree, result);
+	}
+
+	@Override
+	public InputStream open(String commit, String path, TreeEntry entry) throws IOException {
+		count("open");
+		byte[] blob = repository.getBlob(entry.getSha());
+		if (blob == null) {
+			throw new NoSuchFileException(path);
+		}
+		return new ByteArrayInputStream(blob);
+	}
+
+	@Override
+	public Map<String, String> compare(String base, String head) throws IOException {
+		count("compare");
+		Map<String, String> before = new TreeMap<>();
+		Map<String, String> after = new TreeMap<>();
+		flatten(repository.getTreeOf(base), "", before);
+		flatten(repository.getTreeOf(head), "", after);
+		Map<String, String> result = new LinkedHashMap<>();
+		for (Map.Entry<String, String> file : after.entrySet()) {
+			String previous = before.get(file.getKey());
+			if (!file.getValue().equals(previous)) {
+				result.put(file.getKey(), (previous == null) ? "added" : "modified");
+			}
+		}
+		for (String file : before.keySet()) {
+			if (!after.containsKey(file)) {
+				result.put(file, "removed");
+			}
+		}
+		return result;
+	}
+
+	private void flatten(String tree, String prefix, Map<String, String> files) {
+		for (FakeRepository.Entry entry : repository.getTree(tree)) {
+			if ("tree".equals(entry.getType())) {
+				flatten(entry.getSha(), prefix + entry.getName() + "/", files);
+			} else {
+				files.put(prefix + entry.getName(), entry.getSha());
+			}
+		}
+	}
+
+	private void count(String method) {
+		calls.computeIfAbsent(method, m -> new LongAdder()).increment();
+	}
+}
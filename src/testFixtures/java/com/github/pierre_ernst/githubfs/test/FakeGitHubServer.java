@@ -0,0 +1,993 @@
+package com.github.pierre_ernst.githubfs.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for the GitHub REST API, answering from
+ * {@link FakeRepository} instances. Latency, jitter, rate limit (403) and
+ * server (5xx) failures can be injected to simulate a loaded GitHub, as well as
+ * a capacity beyond which it slows down and throttles.
+ */
+public class FakeGitHubServer implements AutoCloseable {
+
+	private static final String DONE = "githubfs.done";
+	private static final Pattern REPOSITORY = Pattern.compile("/repos/([^/]+)/([^/]+)(/.*)?");
+	private static final Pattern OWNER = Pattern.compile("/(orgs|users)/([^/]+)(/repos)?");
+	private static final Pattern GIT = Pattern.compile("/([^/]+)/([^/]+)\\.git/(info/refs|git-upload-pack)");
+	private static final Pattern RAW = Pattern.compile("/raw/([^/]+)/([^/]+)/([^/]+)/(.*)");
+	private static final Pattern GRAPHQL_REPOSITORY = Pattern
+			.compile("repository\\(owner:\\s*\"([^\"]+)\",\\s*name:\\s*\"([^\"]+)\"\\)");
+	private static final Pattern GRAPHQL_OBJECT = Pattern
+			.compile("(\\w+):\\s*object\\((oid|expression):\\s*\"((?:[^\"\\\\]|\\\\.)*)\"\\)");
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, FakeRepository> repositories = new ConcurrentHashMap<>();
+	private final Map<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+	private volatile long latencyMillis;
+	private volatile long jitterMillis;
+	private volatile double rateLimitRate;
+	private volatile double serverErrorRate;
+	private volatile int capacity;
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger peakActive = new AtomicInteger();
+
+	public FakeGitHubServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "fake-github");
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+		server.start();
+	}
+
+	public FakeGitHubServer add(FakeRepository repository) {
+		repositories.put(repository.getFullName(), repository);
+		return this;
+	}
+
+	public String getEndpoint() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return the URI of <code>path</code> in a repository, with this server
+	 *         as its API endpoint
+	 */
+	public URI uri(FakeRepository repository, String path) {
+		return URI.create("github:" + repository.getFullName() + "?endpoint=" + getEndpoint() + "!/" + path);
+	}
+
+	/**
+	 * @return the URI of <code>path</code> in the file system of every
+	 *         repository of an organization, with this server as its API
+	 *         endpoint
+	 */
+	public URI uri(String organization, String path) {
+		return URI.create("github:" + organization + "?endpoint=" + getEndpoint() + "!/" + path);
+	}
+
+	public void setLatency(long millis) {
+		this.latencyMillis = millis;
+	}
+
+	/**
+	 * @param millis the maximum random delay added on top of the latency
+	 */
+	public void setJitter(long millis) {
+		this.jitterMillis = millis;
+	}
+
+	/**
+	 * @param rate the fraction of requests answered with a 403 rate limit
+	 *             error, between 0 and 1
+	 */
+	public void setRateLimitRate(double rate) {
+		this.rateLimitRate = rate;
+	}
+
+	/**
+	 * @param rate the fraction of requests answered with a 502 or 503 error,
+	 *             between 0 and 1
+	 */
+	public void setServerErrorRate(double rate) {
+		this.serverErrorRate = rate;
+	}
+
+	/**
+	 * Makes the server degrade under load, as GitHub does: every request in
+	 * flight beyond the capacity adds the latency once more, and beyond twice
+	 * the capacity requests are refused at once with a 403 of the secondary
+	 * rate limit.
+	 *
+	 * @param capacity the number of requests served concurrently at full
+	 *                 speed, or 0 for no limit
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the highest number of requests in flight at once since the
+	 *         counts were reset
+	 */
+	public int getPeakActive() {
+		return peakActive.get();
+	}
+
+	public long getRequestCount(String route) {
+		LongAdder count = requestCounts.get(route);
+		return (count == null) ? 0 : count.sum();
+	}
+
+	public long getRequestCount() {
+		return requestCounts.values().stream().mapToLong(LongAdder::sum).sum();
+	}
+
+	public Map<String, Long> getRequestCounts() {
+		Map<String, Long> result = new TreeMap<>();
+		requestCounts.forEach((route, count) -> result.put(route, count.sum()));
+		return result;
+	}
+
+	public void resetRequestCounts() {
+		requestCounts.clear();
+		peakActive.set(active.get());
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	protected void handle(HttpExchange exchange) throws IOException {
+		int concurrent = active.incrementAndGet();
+		peakActive.accumulateAndGet(concurrent, Math::max);
+		AtomicBoolean counted = new AtomicBoolean(true);
+		Runnable done = () -> {
+			if (counted.getAndSet(false)) {
+				active.decrementAndGet();
+			}
+		};
+		exchange.setAttribute(DONE, done);
+		try {
+			String path = exchange.getRequestURI().getPath();
+			String query = exchange.getRequestURI().getQuery();
+			int c = capacity;
+			if ((c > 0) && (concurrent > 2 * c)) {
+				count("secondary");
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				json(exchange, 403, "{\"message\":\"You have exceeded a secondary rate limit\"}");
+				return;
+			}
+			long jitter = jitterMillis;
+			long latency = latencyMillis * (1 + ((c > 0) ? Math.max(0, concurrent - c) : 0));
+			sleep(latency + ((jitter > 0) ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0));
+			if (injectFault(exchange)) {
+				return;
+			}
+
+			Matcher git = GIT.matcher(path);
+			if (git.matches()) {
+				count("pack");
+				FakeRepository repo = repositories.get(git.group(1) + "/" + git.group(2));
+				if (repo == null) {
+					notFound(exchange);
+				} else if ("info/refs".equals(git.group(3))) {
+					advertiseRefs(exchange, repo);
+				} else {
+					uploadPack(exchange, repo);
+				}
+				return;
+			}
+
+			Matcher raw = RAW.matcher(path);
+			if (raw.matches()) {
+				count("raw");
+				raw(exchange, repositories.get(raw.group(1) + "/" + raw.group(2)), raw.group(3), raw.group(4));
+				return;
+			}
+
+			if ("/graphql".equals(path) || "/api/graphql".equals(path)) {
+				count("graphql");
+				graphql(exchange);
+				return;
+			}
+
+			if ("/rate_limit".equals(path)) {
+				count("rate_limit");
+				json(exchange, 200, "{\"resources\":{\"core\":{\"limit\":5000,\"remaining\":5000,\"reset\":"
+						+ (System.currentTimeMillis() / 1000L + 3600) + "}}}");
+				return;
+			}
+
+			Matcher owner = OWNER.matcher(path);
+			if (owner.matches()) {
+				count(owner.group(1));
+				owner(exchange, owner.group(1), owner.group(2), owner.group(3) != null);
+				return;
+			}
+
+			Matcher m = REPOSITORY.matcher(path);
+			FakeRepository repo = m.matches() ? repositories.get(m.group(1) + "/" + m.group(2)) : null;
+			if (repo == null) {
+				count("unknown");
+				notFound(exchange);
+				return;
+			}
+			String rest = (m.group(3) == null) ? "" : m.group(3);
+			route(exchange, repo, rest, query);
+		} finally {
+			done.run();
+			exchange.close();
+		}
+	}
+
+	protected boolean injectFault(HttpExchange exchange) throws IOException {
+		double roll = ThreadLocalRandom.current().nextDouble();
+		if (roll < rateLimitRate) {
+			count("403");
+			exchange.getResponseHeaders().set("X-RateLimit-Limit", "5000");
+			exchange.getResponseHeaders().set("X-RateLimit-Remaining", "0");
+			exchange.getResponseHeaders().set("X-RateLimit-Reset", Long.toString(System.currentTimeMillis() / 1000L + 1));
+			byte[] body = "{\"message\":\"API rate limit exceeded\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.sendResponseHeaders(403, body.length);
+			write(exchange, body);
+			return true;
+		}
+		if (roll < rateLimitRate + serverErrorRate) {
+			count("5xx");
+			json(exchange, (roll < rateLimitRate + serverErrorRate / 2) ? 502 : 503, "{\"message\":\"Server Error\"}");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Answers an organization or a user, or the list of its repositories, in a
+	 * single page.
+	 */
+	protected void owner(HttpExchange exchange, String type, String login, boolean repos) throws IOException {
+		StringBuilder sb = new StringBuilder("[");
+		for (FakeRepository repo : new TreeMap<>(repositories).values()) {
+			if (repo.getOwner().equals(login)) {
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append(repository(repo));
+			}
+		}
+		if (sb.length() == 1) {
+			notFound(exchange);
+		} else if (repos) {
+			json(exchange, 200, sb.append(']').toString());
+		} else {
+			json(exchange, 200, "{\"id\":1,\"login\":" + quote(login) + ",\"type\":"
+					+ ("orgs".equals(type) ? "\"Organization\"" : "\"User\"") + ",\"url\":"
+					+ quote(getEndpoint() + "/" + type + "/" + login) + "}");
+		}
+	}
+
+	protected void route(HttpExchange exchange, FakeRepository repo, String rest, String query) throws IOException {
+		if (rest.isEmpty()) {
+			count("repository");
+			json(exchange, 200, repository(repo));
+		} else if (rest.equals("/git/refs")) {
+			count("refs");
+			StringBuilder sb = new StringBuilder("[");
+			for (Map.Entry<String, String> ref : repo.getRefs().entrySet()) {
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append(ref(repo, ref.getKey(), ref.getValue()));
+			}
+			json(exchange, 200, sb.append(']').toString());
+		} else if (rest.startsWith("/git/refs/")) {
+			count("ref");
+			String ref = "refs/" + rest.substring("/git/refs/".length());
+			String commit = repo.getRef(ref);
+			if (commit == null) {
+				notFound(exchange);
+			} else {
+				json(exchange, 200, ref(repo, ref, commit));
+			}
+		} else if (rest.startsWith("/git/trees/")) {
+			count("tree");
+			String sha = resolveTree(repo, rest.substring("/git/trees/".length()));
+			if (sha == null) {
+				notFound(exchange);
+			} else {
+				boolean recursive = (query != null) && query.contains("recursive=");
+				json(exchange, 200, tree(repo, sha, recursive));
+			}
+		} else if (rest.startsWith("/git/blobs/")) {
+			count("blob");
+			String sha = rest.substring("/git/blobs/".length());
+			byte[] blob = repo.getBlob(sha);
+			if (blob == null) {
+				notFound(exchange);
+			} else if (accepts(exchange, "raw")) {
+				send(exchange, 200, "application/octet-stream", blob);
+			} else {
+				json(exchange, 200, "{\"sha\":\"" + sha + "\",\"size\":" + blob.length
+						+ ",\"encoding\":\"base64\",\"content\":\"" + Base64.getEncoder().encodeToString(blob) + "\"}");
+			}
+		} else if (rest.startsWith("/contents")) {
+			count("contents");
+			contents(exchange, repo, rest.substring("/contents".length()), parameter(query, "ref"));
+		} else if (rest.startsWith("/compare/")) {
+			count("compare");
+			String[] range = rest.substring("/compare/".length()).split("\\.\\.\\.");
+			compare(exchange, repo, resolveCommit(repo, range[0]), resolveCommit(repo, range[1]));
+		} else if (rest.startsWith("/zipball")) {
+			count("archive");
+			String ref = rest.substring("/zipball".length());
+			zipball(exchange, repo, resolveCommit(repo, ref.isEmpty() ? "master" : ref.substring(1)));
+		} else {
+			count("unknown");
+			notFound(exchange);
+		}
+	}
+
+	protected void contents(HttpExchange exchange, FakeRepository repo, String path, String ref) throws IOException {
+		String commit = resolveCommit(repo, (ref == null) ? "master" : ref);
+		String name = path.replaceAll("^/+|/+$", "");
+		FakeRepository.Entry entry = (commit == null) ? null : find(repo, repo.getTreeOf(commit), name);
+		if (entry == null) {
+			notFound(exchange);
+		} else if ("tree".equals(entry.type)) {
+			StringBuilder sb = new StringBuilder("[");
+			for (FakeRepository.Entry child : repo.getTree(entry.sha)) {
+				if (sb.length() > 1) {
+					sb.append(',');
+				}
+				sb.append(content(repo, commit, name.isEmpty() ? child.name : name + "/" + child.name, child, false));
+			}
+			json(exchange, 200, sb.append(']').toString());
+		} else {
+			json(exchange, 200, content(repo, commit, name, entry, true));
+		}
+	}
+
+	protected String content(FakeRepository repo, String commit, String path, FakeRepository.Entry entry,
+			boolean inline) {
+		boolean file = "blob".equals(entry.type);
+		String url = getEndpoint() + "/repos/" + repo.getFullName() + "/contents/" + path + "?ref=" + commit;
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"type\":").append(file ? "\"file\"" : "\"dir\"").append(",\"name\":").append(quote(entry.name))
+				.append(",\"path\":").append(quote(path)).append(",\"sha\":").append(quote(entry.sha))
+				.append(",\"size\":").append(entry.size).append(",\"url\":").append(quote(url))
+				.append(",\"git_url\":")
+				.append(quote(getEndpoint() + "/repos/" + repo.getFullName() + "/git/" + (file ? "blobs/" : "trees/")
+						+ entry.sha));
+		if (file) {
+			sb.append(",\"download_url\":")
+					.append(quote(getEndpoint() + "/raw/" + repo.getFullName() + "/" + commit + "/" + path));
+		}
+		if (file && inline) {
+			sb.append(",\"encoding\":\"base64\",\"content\":")
+					.append(quote(Base64.getMimeEncoder().encodeToString(repo.getBlob(entry.sha))));
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Answers the subset of GraphQL used to batch reads: aliased
+	 * <code>object(oid:)</code> and <code>object(expression:)</code> fields of a
+	 * repository, resolved to blobs or trees with all their fields.
+	 */
+	protected void graphql(HttpExchange exchange) throws IOException {
+		String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		String query = unquote(body.substring(body.indexOf("\"query\"") + "\"query\"".length()));
+		Matcher m = GRAPHQL_REPOSITORY.matcher(query);
+		FakeRepository repo = m.find() ? repositories.get(m.group(1) + "/" + m.group(2)) : null;
+		if (repo == null) {
+			json(exchange, 200, "{\"data\":{\"repository\":null},\"errors\":[{\"type\":\"NOT_FOUND\"}]}");
+			return;
+		}
+		StringBuilder sb = new StringBuilder("{\"data\":{\"repository\":{");
+		Matcher object = GRAPHQL_OBJECT.matcher(query);
+		boolean first = true;
+		while (object.find()) {
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			String value = object.group(3).replace("\\\"", "\"").replace("\\\\", "\\");
+			String sha = value;
+			if ("expression".equals(object.group(2))) {
+				int index = value.indexOf(':');
+				String commit = resolveCommit(repo, value.substring(0, index));
+				FakeRepository.Entry entry = (commit == null) ? null
+						: find(repo, repo.getTreeOf(commit), value.substring(index + 1));
+				sha = (entry == null) ? null : entry.sha;
+			}
+			sb.append(quote(object.group(1))).append(':').append(graphqlObject(repo, sha));
+		}
+		json(exchange, 200, sb.append("}}}").toString());
+	}
+
+	protected String graphqlObject(FakeRepository repo, String sha) {
+		if (sha == null) {
+			return "null";
+		}
+		List<FakeRepository.Entry> tree = repo.getTree(sha);
+		if (tree != null) {
+			StringBuilder sb = new StringBuilder("{\"__typename\":\"Tree\",\"oid\":").append(quote(sha))
+					.append(",\"entries\":[");
+			for (FakeRepository.Entry entry : tree) {
+				if (sb.charAt(sb.length() - 1) != '[') {
+					sb.append(',');
+				}
+				sb.append("{\"name\":").append(quote(entry.name)).append(",\"type\":").append(quote(entry.type))
+						.append(",\"oid\":").append(quote(entry.sha)).append(",\"object\":")
+						.append("blob".equals(entry.type) ? "{\"byteSize\":" + entry.size + "}" : "{}").append('}');
+			}
+			return sb.append("]}").toString();
+		}
+		byte[] blob = repo.getBlob(sha);
+		if (blob == null) {
+			return "null";
+		}
+		boolean binary = false;
+		for (int i = 0; i < Math.min(blob.length, 8000); i++) {
+			binary |= (blob[i] == 0);
+		}
+		return "{\"__typename\":\"Blob\",\"oid\":" + quote(sha) + ",\"byteSize\":" + blob.length
+				+ ",\"isBinary\":" + binary + ",\"isTruncated\":false,\"text\":"
+				+ (binary ? "null" : quote(new String(blob, StandardCharsets.UTF_8))) + "}";
+	}
+
+	private static String unquote(String json) {
+		int start = json.indexOf('"');
+		StringBuilder sb = new StringBuilder();
+		for (int i = start + 1; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '"') {
+				break;
+			}
+			if (c == '\\') {
+				c = json.charAt(++i);
+				switch (c) {
+				case 'n':
+					c = '\n';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 'u':
+					c = (char) Integer.parseInt(json.substring(i + 1, i + 5), 16);
+					i += 4;
+					break;
+				default:
+					break;
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Answers the ref advertisement of the git smart HTTP protocol.
+	 */
+	protected void advertiseRefs(HttpExchange exchange, FakeRepository repo) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writePacket(out, "# service=git-upload-pack\n".getBytes(StandardCharsets.UTF_8));
+		out.writeBytes("0000".getBytes(StandardCharsets.US_ASCII));
+		boolean first = true;
+		for (Map.Entry<String, String> ref : repo.getRefs().entrySet()) {
+			String line = ref.getValue() + " " + ref.getKey()
+					+ (first ? "\0side-band-64k ofs-delta shallow no-progress allow-reachable-sha1-in-want" : "")
+					+ "\n";
+			writePacket(out, line.getBytes(StandardCharsets.UTF_8));
+			first = false;
+		}
+		out.writeBytes("0000".getBytes(StandardCharsets.US_ASCII));
+		send(exchange, 200, "application/x-git-upload-pack-advertisement", out.toByteArray());
+	}
+
+	/**
+	 * Answers a fetch of a single commit with a pack of every object it
+	 * reaches, without its parents. Half the blobs are sent as deltas of the
+	 * blob before them.
+	 */
+	protected void uploadPack(HttpExchange exchange, FakeRepository repo) throws IOException {
+		String want = null;
+		boolean sideBand = false;
+		boolean deepen = false;
+		InputStream in = exchange.getRequestBody();
+		while (true) {
+			byte[] length = in.readNBytes(4);
+			if (length.length < 4) {
+				break;
+			}
+			int size = Integer.parseInt(new String(length, StandardCharsets.US_ASCII), 16);
+			if (size < 4) {
+				continue;
+			}
+			String line = new String(in.readNBytes(size - 4), StandardCharsets.UTF_8).trim();
+			if (line.startsWith("want ")) {
+				String[] words = line.split(" ");
+				want = words[1];
+				sideBand = Arrays.asList(words).contains("side-band-64k");
+			} else if (line.startsWith("deepen ")) {
+				deepen = true;
+			}
+		}
+		if ((want == null) || (repo.getTreeOf(want) == null)) {
+			notFound(exchange);
+			return;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		if (deepen) {
+			writePacket(out, ("shallow " + want + "\n").getBytes(StandardCharsets.UTF_8));
+			out.writeBytes("0000".getBytes(StandardCharsets.US_ASCII));
+		}
+		writePacket(out, "NAK\n".getBytes(StandardCharsets.UTF_8));
+		byte[] pack = pack(repo, want);
+		if (sideBand) {
+			for (int position = 0; position < pack.length; position += 65515) {
+				int n = Math.min(65515, pack.length - position);
+				byte[] packet = new byte[n + 1];
+				packet[0] = 1;
+				System.arraycopy(pack, position, packet, 1, n);
+				writePacket(out, packet);
+			}
+			out.writeBytes("0000".getBytes(StandardCharsets.US_ASCII));
+		} else {
+			out.writeBytes(pack);
+		}
+		send(exchange, 200, "application/x-git-upload-pack-result", out.toByteArray());
+	}
+
+	private static byte[] pack(FakeRepository repo, String commit) throws IOException {
+		Map<String, Integer> objects = new LinkedHashMap<>();
+		objects.put(commit, 1);
+		collect(repo, repo.getTreeOf(commit), objects);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes("PACK".getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(new byte[] { 0, 0, 0, 2 });
+		int count = objects.size();
+		out.writeBytes(new byte[] { (byte) (count >>> 24), (byte) (count >>> 16), (byte) (count >>> 8), (byte) count });
+		byte[] base = null;
+		long baseOffset = 0;
+		for (Map.Entry<String, Integer> object : objects.entrySet()) {
+			byte[] content = repo.getContent(object.getKey());
+			long offset = out.size();
+			if ((object.getValue() == 3) && (base != null)) {
+				byte[] delta = delta(base, content);
+				writeObjectHeader(out, 6, delta.length);
+				// the distance back to the base, in the big-endian varint of ofs-delta
+				long distance = offset - baseOffset;
+				byte[] encoded = new byte[10];
+				int position = encoded.length - 1;
+				encoded[position] = (byte) (distance & 0x7f);
+				while ((distance >>>= 7) != 0) {
+					encoded[--position] = (byte) (0x80 | (--distance & 0x7f));
+				}
+				out.write(encoded, position, encoded.length - position);
+				out.writeBytes(deflate(delta));
+				base = null;
+			} else {
+				writeObjectHeader(out, object.getValue(), content.length);
+				out.writeBytes(deflate(content));
+				if (object.getValue() == 3) {
+					base = content;
+					baseOffset = offset;
+				}
+			}
+		}
+		try {
+			out.writeBytes(MessageDigest.getInstance("SHA-1").digest(out.toByteArray()));
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		return out.toByteArray();
+	}
+
+	private static void collect(FakeRepository repo, String tree, Map<String, Integer> objects) {
+		objects.put(tree, 2);
+		for (FakeRepository.Entry entry : repo.getTree(tree)) {
+			if ("tree".equals(entry.type)) {
+				collect(repo, entry.sha, objects);
+			} else {
+				objects.put(entry.sha, 3);
+			}
+		}
+	}
+
+	/**
+	 * @return a delta copying the prefix shared with the base, then inserting
+	 *         the rest
+	 */
+	private static byte[] delta(byte[] base, byte[] content) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeVarint(out, base.length);
+		writeVarint(out, content.length);
+		int prefix = 0;
+		while ((prefix < Math.min(base.length, content.length)) && (prefix < 0xffffff)
+				&& (base[prefix] == content[prefix])) {
+			prefix++;
+		}
+		if (prefix > 0) {
+			int op = 0x80;
+			ByteArrayOutputStream size = new ByteArrayOutputStream();
+			for (int i = 0; i < 3; i++) {
+				int b = (prefix >>> (8 * i)) & 0xff;
+				if (b != 0) {
+					op |= 0x10 << i;
+					size.write(b);
+				}
+			}
+			out.write(op);
+			out.writeBytes(size.toByteArray());
+		}
+		for (int position = prefix; position < content.length; position += 127) {
+			int n = Math.min(127, content.length - position);
+			out.write(n);
+			out.write(content, position, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeObjectHeader(ByteArrayOutputStream out, int type, long size) {
+		int c = (type << 4) | (int) (size & 15);
+		size >>>= 4;
+		while (size != 0) {
+			out.write(c | 0x80);
+			c = (int) (size & 0x7f);
+			size >>>= 7;
+		}
+		out.write(c);
+	}
+
+	private static void writeVarint(ByteArrayOutputStream out, long value) {
+		while (value >= 0x80) {
+			out.write((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	private static byte[] deflate(byte[] data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+			deflater.write(data);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writePacket(ByteArrayOutputStream out, byte[] data) {
+		out.writeBytes(String.format("%04x", data.length + 4).getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(data);
+	}
+
+	protected void raw(HttpExchange exchange, FakeRepository repo, String ref, String path) throws IOException {
+		String commit = (repo == null) ? null : resolveCommit(repo, ref);
+		FakeRepository.Entry entry = (commit == null) ? null : find(repo, repo.getTreeOf(commit), path);
+		if ((entry == null) || !"blob".equals(entry.type)) {
+			notFound(exchange);
+		} else {
+			byte[] blob = repo.getBlob(entry.sha);
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if ((range != null) && range.startsWith("bytes=")) {
+				// a single range, as sent for partial reads
+				String[] bounds = range.substring("bytes=".length()).split("-");
+				int from = Integer.parseInt(bounds[0]);
+				int to = Math.min(blob.length - 1, Integer.parseInt(bounds[1]));
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + to + "/" + blob.length);
+				send(exchange, 206, "text/plain; charset=utf-8", Arrays.copyOfRange(blob, from, to + 1));
+			} else {
+				send(exchange, 200, "text/plain; charset=utf-8", blob);
+			}
+		}
+	}
+
+	protected void compare(HttpExchange exchange, FakeRepository repo, String base, String head) throws IOException {
+		if ((base == null) || (head == null)) {
+			notFound(exchange);
+			return;
+		}
+		// like GitHub, lists the changes from the merge base to the head
+		List<String> ancestors = repo.getHistory(base);
+		String mergeBase = null;
+		for (String commit : repo.getHistory(head)) {
+			if (ancestors.contains(commit)) {
+				mergeBase = commit;
+				break;
+			}
+		}
+		String status;
+		if (base.equals(head)) {
+			status = "identical";
+		} else if (base.equals(mergeBase)) {
+			status = "ahead";
+		} else if (head.equals(mergeBase)) {
+			status = "behind";
+		} else {
+			status = "diverged";
+		}
+		Map<String, String> before = new TreeMap<>();
+		Map<String, String> after = new TreeMap<>();
+		if (mergeBase != null) {
+			flatten(repo, repo.getTreeOf(mergeBase), "", before);
+		}
+		flatten(repo, repo.getTreeOf(head), "", after);
+		StringBuilder sb = new StringBuilder("{\"status\":").append(quote(status)).append(",\"files\":[");
+		for (Map.Entry<String, String> file : after.entrySet()) {
+			String previous = before.get(file.getKey());
+			if (!file.getValue().equals(previous)) {
+				appendFile(sb, file.getKey(), file.getValue(), (previous == null) ? "added" : "modified");
+			}
+		}
+		for (Map.Entry<String, String> file : before.entrySet()) {
+			if (!after.containsKey(file.getKey())) {
+				appendFile(sb, file.getKey(), file.getValue(), "removed");
+			}
+		}
+		json(exchange, 200, sb.append("]}").toString());
+	}
+
+	private static void appendFile(StringBuilder sb, String name, String sha, String status) {
+		if (sb.charAt(sb.length() - 1) != '[') {
+			sb.append(',');
+		}
+		sb.append("{\"filename\":").append(quote(name)).append(",\"sha\":").append(quote(sha))
+				.append(",\"status\":").append(quote(status)).append('}');
+	}
+
+	protected void zipball(HttpExchange exchange, FakeRepository repo, String commit) throws IOException {
+		if (commit == null) {
+			notFound(exchange);
+			return;
+		}
+		Map<String, String> files = new TreeMap<>();
+		flatten(repo, repo.getTreeOf(commit), "", files);
+		String prefix = repo.getOwner() + "-" + repo.getName() + "-" + commit.substring(0, 7) + "/";
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			for (Map.Entry<String, String> file : files.entrySet()) {
+				zip.putNextEntry(new ZipEntry(prefix + file.getKey()));
+				zip.write(repo.getBlob(file.getValue()));
+				zip.closeEntry();
+			}
+		}
+		send(exchange, 200, "application/zip", bytes.toByteArray());
+	}
+
+	private static void flatten(FakeRepository repo, String tree, String prefix, Map<String, String> files) {
+		for (FakeRepository.Entry entry : repo.getTree(tree)) {
+			if ("tree".equals(entry.type)) {
+				flatten(repo, entry.sha, prefix + entry.name + "/", files);
+			} else {
+				files.put(prefix + entry.name, entry.sha);
+			}
+		}
+	}
+
+	protected static FakeRepository.Entry find(FakeRepository repo, String tree, String path) {
+		FakeRepository.Entry result = new FakeRepository.Entry("", "tree", tree, 0);
+		if (path.isEmpty()) {
+			return result;
+		}
+		for (String name : path.split("/")) {
+			if (!"tree".equals(result.type)) {
+				return null;
+			}
+			FakeRepository.Entry next = null;
+			for (FakeRepository.Entry entry : repo.getTree(result.sha)) {
+				if (entry.name.equals(name)) {
+					next = entry;
+					break;
+				}
+			}
+			if (next == null) {
+				return null;
+			}
+			result = next;
+		}
+		return result;
+	}
+
+	protected String resolveCommit(FakeRepository repo, String ref) {
+		for (String candidate : new String[] { ref, "refs/" + ref, "refs/heads/" + ref, "refs/tags/" + ref }) {
+			String commit = repo.getRef(candidate);
+			if (commit != null) {
+				return commit;
+			}
+		}
+		return (repo.getTreeOf(ref) != null) ? ref : null;
+	}
+
+	protected static String parameter(String query, String name) {
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				if (pair.startsWith(name + "=")) {
+					return pair.substring(name.length() + 1);
+				}
+			}
+		}
+		return null;
+	}
+
+	protected String resolveTree(FakeRepository repo, String treeish) {
+		if (repo.getTree(treeish) != null) {
+			return treeish;
+		}
+		String commit = resolveCommit(repo, treeish);
+		return (commit == null) ? null : repo.getTreeOf(commit);
+	}
+
+	protected String repository(FakeRepository repo) {
+		return "{\"id\":1,\"name\":" + quote(repo.getName()) + ",\"full_name\":" + quote(repo.getFullName())
+				+ ",\"owner\":{\"login\":" + quote(repo.getOwner()) + ",\"type\":\"Organization\"}"
+				+ ",\"private\":false,\"size\":" + (repo.blobs.values().stream().mapToLong(b -> b.length).sum() / 1024L)
+				+ ",\"default_branch\":\"master\",\"url\":" + quote(getEndpoint() + "/repos/" + repo.getFullName())
+				+ "}";
+	}
+
+	protected String ref(FakeRepository repo, String ref, String commit) {
+		return "{\"ref\":" + quote(ref) + ",\"url\":"
+				+ quote(getEndpoint() + "/repos/" + repo.getFullName() + "/git/" + ref)
+				+ ",\"object\":{\"type\":\"commit\",\"sha\":" + quote(commit) + "}}";
+	}
+
+	protected String tree(FakeRepository repo, String sha, boolean recursive) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"sha\":").append(quote(sha)).append(",\"tree\":[");
+		appendEntries(sb, repo, sha, "", recursive);
+		return sb.append("],\"truncated\":false}").toString();
+	}
+
+	private void appendEntries(StringBuilder sb, FakeRepository repo, String sha, String prefix, boolean recursive) {
+		List<FakeRepository.Entry> entries = repo.getTree(sha);
+		for (FakeRepository.Entry entry : entries) {
+			if (sb.charAt(sb.length() - 1) != '[') {
+				sb.append(',');
+			}
+			boolean tree = "tree".equals(entry.type);
+			sb.append("{\"path\":").append(quote(prefix + entry.name)).append(",\"mode\":")
+					.append(tree ? "\"040000\"" : "\"100644\"").append(",\"type\":").append(quote(entry.type))
+					.append(",\"sha\":").append(quote(entry.sha));
+			if (!tree) {
+				sb.append(",\"size\":").append(entry.size);
+			}
+			sb.append('}');
+			if (tree && recursive) {
+				appendEntries(sb, repo, entry.sha, prefix + entry.name + "/", true);
+			}
+		}
+	}
+
+	protected void count(String route) {
+		requestCounts.computeIfAbsent(route, r -> new LongAdder()).increment();
+	}
+
+	protected static boolean accepts(HttpExchange exchange, String mediaType) {
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		return (accept != null) && accept.contains(mediaType);
+	}
+
+	protected static void notFound(HttpExchange exchange) throws IOException {
+		json(exchange, 404, "{\"message\":\"Not Found\"}");
+	}
+
+	protected static void json(HttpExchange exchange, int status, String body) throws IOException {
+		send(exchange, status, "application/json; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	protected static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+			throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.getResponseHeaders().set("X-RateLimit-Limit", "5000");
+		exchange.getResponseHeaders().set("X-RateLimit-Remaining", "4999");
+		exchange.getResponseHeaders().set("X-RateLimit-Reset",
+				Long.toString(System.currentTimeMillis() / 1000L + 3600));
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if ((body.length > 0) && (acceptEncoding != null) && acceptEncoding.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+				gzip.write(body);
+			}
+			body = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(status, (body.length == 0) ? -1 : body.length);
+		write(exchange, body);
+	}
+
+	private static void write(HttpExchange exchange, byte[] body) throws IOException {
+		try (OutputStream out = exchange.getResponseBody()) {
+			if (body.length > 0) {
+				out.write(body, 0, body.length - 1);
+			}
+			// no longer active by the time the client has read the whole body
+			Runnable done = (Runnable) exchange.getAttribute(DONE);
+			if (done != null) {
+				done.run();
+			}
+			if (body.length > 0) {
+				out.write(body, body.length - 1, 1);
+			}
+		}
+	}
+
+	protected static String quote(String value) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			switch (c) {
+			case '"':
+				sb.append("\\\"");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	protected static void sleep(long millis) {
+		if (millis > 0) {
+			try {
+				TimeUnit.MILLISECONDS.sleep(millis);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
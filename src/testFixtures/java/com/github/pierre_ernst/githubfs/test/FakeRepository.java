@@ -0,0 +1,268 @@
+package com.github.pierre_ernst.githubfs.test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory git repository served by {@link FakeGitHubServer}. Objects are
+ * hashed the way git does, so SHAs are stable and trees shared between
+ * commits get the same SHA.
+ */
+public class FakeRepository {
+
+	public static final class Entry {
+		final String name;
+		final String type;
+		final String sha;
+		final long size;
+
+		Entry(String name, String type, String sha, long size) {
+			this.name = name;
+			this.type = type;
+			this.sha = sha;
+			this.size = size;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getType() {
+			return type;
+		}
+
+		public String getSha() {
+			return sha;
+		}
+
+		public long getSize() {
+			return size;
+		}
+	}
+
+	private final String owner;
+	private final String name;
+	private final SortedMap<String, byte[]> files = new TreeMap<>();
+
+	final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+	final Map<String, List<Entry>> trees = new ConcurrentHashMap<>();
+	final Map<String, String> commits = new ConcurrentHashMap<>();
+	final Map<String, String> parents = new ConcurrentHashMap<>();
+	// the content of every tree and commit, as hashed
+	final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+	final Map<String, String> refs = new LinkedHashMap<>();
+
+	public FakeRepository(String fullName) {
+		int index = fullName.indexOf('/');
+		this.owner = fullName.substring(0, index);
+		this.name = fullName.substring(index + 1);
+	}
+
+	/**
+	 * Builds a repository of <code>directories</code> nested directories, each
+	 * holding <code>files</code> files, committed on
+	 * <code>refs/heads/master</code>.
+	 */
+	public static FakeRepository synthetic(String fullName, int directories, int files) {
+		FakeRepository repo = new FakeRepository(fullName);
+		repo.file("README.md", "# " + fullName + "\n");
+		repo.file("pom.xml", "<project/>\n");
+		for (int d = 0; d < directories; d++) {
+			String dir = "src/module" + (d % 8) + "/pkg" + d + "/";
+			for (int f = 0; f < files; f++) {
+				repo.file(dir + "File" + f + ".java", "class File" + f + " { /* " + dir + " */ }\n");
+			}
+		}
+		repo.commit("refs/heads/master");
+		return repo;
+	}
+
+	public String getOwner() {
+		return owner;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getFullName() {
+		return owner + "/" + name;
+	}
+
+	public synchronized FakeRepository file(String path, String content) {
+		return file(path, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public synchronized FakeRepository file(String path, byte[] content) {
+		files.put(Objects.requireNonNull(path), Objects.requireNonNull(content));
+		return this;
+	}
+
+	public synchronized FakeRepository delete(String path) {
+		files.remove(path);
+		return this;
+	}
+
+	/**
+	 * Snapshots the current files into a commit and points <code>ref</code> at
+	 * it.
+	 *
+	 * @return the SHA of the commit
+	 */
+	public synchronized String commit(String ref) {
+		String tree = writeTree("");
+		String parent = refs.get(ref);
+		StringBuilder sb = new StringBuilder();
+		sb.append("tree ").append(tree).append('\n');
+		if (parent != null) {
+			sb.append("parent ").append(parent).append('\n');
+		}
+		sb.append("author fake <fake@localhost> 0 +0000\n\n").append(commits.size()).append('\n');
+		byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+		String commit = hash("commit", content);
+		contents.put(commit, content);
+		commits.put(commit, tree);
+		if (parent != null) {
+			parents.put(commit, parent);
+		}
+		refs.put(ref, commit);
+		return commit;
+	}
+
+	/**
+	 * Points <code>ref</code> back at a commit made earlier, as a reset or a
+	 * forced push does, and checks its files out.
+	 */
+	public synchronized FakeRepository reset(String ref, String commit) {
+		String tree = commits.get(commit);
+		if (tree == null) {
+			throw new IllegalArgumentException("Unknown commit " + commit);
+		}
+		files.clear();
+		checkout(tree, "");
+		refs.put(ref, commit);
+		return this;
+	}
+
+	public synchronized String getRef(String ref) {
+		return refs.get(ref);
+	}
+
+	public synchronized Map<String, String> getRefs() {
+		return new LinkedHashMap<>(refs);
+	}
+
+	public String getTreeOf(String commit) {
+		return commits.get(commit);
+	}
+
+	/**
+	 * @return the commit followed by its ancestors, from the newest
+	 */
+	public List<String> getHistory(String commit) {
+		List<String> history = new ArrayList<>();
+		for (String c = commit; c != null; c = parents.get(c)) {
+			history.add(c);
+		}
+		return history;
+	}
+
+	public List<Entry> getTree(String sha) {
+		return trees.get(sha);
+	}
+
+	public byte[] getBlob(String sha) {
+		return blobs.get(sha);
+	}
+
+	/**
+	 * @return the content of a blob, a tree or a commit, as git hashes it
+	 */
+	public byte[] getContent(String sha) {
+		byte[] blob = blobs.get(sha);
+		return (blob != null) ? blob : contents.get(sha);
+	}
+
+	public int getObjectCount() {
+		return blobs.size() + trees.size() + commits.size();
+	}
+
+	private void checkout(String tree, String prefix) {
+		for (Entry entry : trees.get(tree)) {
+			if ("tree".equals(entry.type)) {
+				checkout(entry.sha, prefix + entry.name + "/");
+			} else {
+				files.put(prefix + entry.name, blobs.get(entry.sha));
+			}
+		}
+	}
+
+	private String writeTree(String prefix) {
+		Map<String, Entry> entries = new TreeMap<>();
+		for (Map.Entry<String, byte[]> file : files.subMap(prefix, prefix + Character.MAX_VALUE).entrySet()) {
+			String rest = file.getKey().substring(prefix.length());
+			int index = rest.indexOf('/');
+			if (index < 0) {
+				String sha = hash("blob", file.getValue());
+				blobs.put(sha, file.getValue());
+				entries.put(rest, new Entry(rest, "blob", sha, file.getValue().length));
+			} else {
+				String dir = rest.substring(0, index);
+				if (!entries.containsKey(dir)) {
+					entries.put(dir, new Entry(dir, "tree", writeTree(prefix + dir + "/"), 0));
+				}
+			}
+		}
+
+		// git orders tree entries as if directory names ended with a slash
+		List<Entry> sorted = new ArrayList<>(entries.values());
+		sorted.sort(Comparator.comparing(e -> "tree".equals(e.type) ? e.name + "/" : e.name));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (Entry entry : sorted) {
+			String mode = "tree".equals(entry.type) ? "40000" : "100644";
+			out.writeBytes((mode + " " + entry.name).getBytes(StandardCharsets.UTF_8));
+			out.write(0);
+			out.writeBytes(toBytes(entry.sha));
+		}
+		String sha = hash("tree", out.toByteArray());
+		contents.put(sha, out.toByteArray());
+		trees.put(sha, sorted);
+		return sha;
+	}
+
+	public static String hash(String type, byte[] content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update((type + " " + content.length).getBytes(StandardCharsets.US_ASCII));
+			digest.update((byte) 0);
+			digest.update(content);
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest.digest()) {
+				sb.append(String.format("%02x", b & 0xFF));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static byte[] toBytes(String sha) {
+		byte[] result = new byte[sha.length() / 2];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = (byte) Integer.parseInt(sha.substring(2 * i, 2 * i + 2), 16);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,283 @@
+package com.github.pierre_ernst.githubfs.test;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import fr.gnodet.githubfs.GitHubFileSystem;
+import fr.gnodet.githubfs.GitHubFileSystemProvider;
+
+/**
+ * Drives concurrent workloads through {@link GitHubFileSystemProvider} against
+ * a {@link FakeGitHubServer}, and reports throughput, latency percentiles and
+ * the requests the server received. Runs offline:
+ *
+ * <pre>
+ * ./gradlew loadTest -PloadTestArgs="--threads=16 --latency=40 --jitter=20 --rateLimitRate=0.01"
+ * </pre>
+ */
+public class LoadTest {
+
+	public enum Workload {
+		WALK, READ, ATTRIBUTES, MIXED
+	}
+
+	private int threads = 8;
+	private long durationMillis = 10_000;
+	private Workload workload = Workload.MIXED;
+	private int directories = 64;
+	private int files = 16;
+	private long latencyMillis = 20;
+	private long jitterMillis = 10;
+	private double rateLimitRate;
+	private double serverErrorRate;
+	private boolean sharedFileSystem;
+
+	private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+	public static void main(String[] args) throws Exception {
+		LoadTest test = new LoadTest();
+		for (String arg : args) {
+			test.configure(arg);
+		}
+		test.run(System.out);
+	}
+
+	public void configure(String arg) {
+		int index = arg.indexOf('=');
+		if (!arg.startsWith("--") || (index < 0)) {
+			throw new IllegalArgumentException("Expected --name=value but was " + arg);
+		}
+		String name = arg.substring(2, index);
+		String value = arg.substring(index + 1);
+		switch (name) {
+		case "threads":
+			threads = Integer.parseInt(value);
+			break;
+		case "duration":
+			durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+			break;
+		case "workload":
+			workload = Workload.valueOf(value.toUpperCase());
+			break;
+		case "directories":
+			directories = Integer.parseInt(value);
+			break;
+		case "files":
+			files = Integer.parseInt(value);
+			break;
+		case "latency":
+			latencyMillis = Long.parseLong(value);
+			break;
+		case "jitter":
+			jitterMillis = Long.parseLong(value);
+			break;
+		case "rateLimitRate":
+			rateLimitRate = Double.parseDouble(value);
+			break;
+		case "serverErrorRate":
+			serverErrorRate = Double.parseDouble(value);
+			break;
+		case "shared":
+			sharedFileSystem = Boolean.parseBoolean(value);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown option --" + name);
+		}
+	}
+
+	public void run(PrintStream out) throws Exception {
+		FakeRepository repository = FakeRepository.synthetic("load/repo", directories, files);
+		try (FakeGitHubServer server = new FakeGitHubServer().add(repository)) {
+			List<String> paths = allPaths(repository);
+
+			// closed at the end, each one holds an MBean registration and threads
+			List<GitHubFileSystem> opened = new CopyOnWriteArrayList<>();
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				GitHubFileSystem shared = sharedFileSystem ? open(server, repository, opened) : null;
+				server.setLatency(latencyMillis);
+				server.setJitter(jitterMillis);
+				server.setRateLimitRate(rateLimitRate);
+				server.setServerErrorRate(serverErrorRate);
+				server.resetRequestCounts();
+
+				long start = System.nanoTime();
+				long deadline = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+				List<Future<?>> workers = new ArrayList<>();
+				for (int i = 0; i < threads; i++) {
+					workers.add(executor.submit(() -> {
+						GitHubFileSystem fs = (shared != null) ? shared : open(server, repository, opened);
+						while (System.nanoTime() < deadline) {
+							step(fs, paths);
+						}
+						return null;
+					}));
+				}
+				for (Future<?> worker : workers) {
+					worker.get();
+				}
+				long elapsed = System.nanoTime() - start;
+
+				report(out, elapsed, server);
+			} finally {
+				executor.shutdownNow();
+				for (GitHubFileSystem fs : opened) {
+					fs.close();
+				}
+			}
+		}
+	}
+
+	private GitHubFileSystem open(FakeGitHubServer server, FakeRepository repository, List<GitHubFileSystem> opened)
+			throws IOException {
+		// a provider per file system, the way separate processes would
+		GitHubFileSystem fs = new GitHubFileSystemProvider().newFileSystem(server.uri(repository, ""),
+				// served by the server on every run, not by a blob cache left by a previous one
+				Collections.singletonMap("blobCache", "none"));
+		opened.add(fs);
+		return fs;
+	}
+
+	private void step(GitHubFileSystem fs, List<String> paths) {
+		Workload w = workload;
+		if (w == Workload.MIXED) {
+			w = Workload.values()[ThreadLocalRandom.current().nextInt(Workload.values().length - 1)];
+		}
+		String path = paths.get(ThreadLocalRandom.current().nextInt(paths.size()));
+		switch (w) {
+		case WALK:
+			Path dir = fs.getPath(path).getParent();
+			measure("walk", () -> {
+				try (Stream<Path> walk = Files.walk(dir)) {
+					walk.count();
+				}
+			});
+			break;
+		case READ:
+			measure("read", () -> Files.readAllBytes(fs.getPath(path)));
+			break;
+		default:
+			// one in four lookups misses, exercising the negative path
+			String target = ThreadLocalRandom.current().nextInt(4) == 0 ? path + ".absent" : path;
+			measure("attributes", () -> {
+				try {
+					Files.readAttributes(fs.getPath(target), BasicFileAttributes.class);
+				} catch (NoSuchFileException expected) {
+					// NO-OP
+				}
+			});
+			break;
+		}
+	}
+
+	private interface Task {
+		void run() throws Exception;
+	}
+
+	private void measure(String name, Task task) {
+		Operation operation = operations.computeIfAbsent(name, Operation::new);
+		long start = System.nanoTime();
+		try {
+			task.run();
+			operation.record(System.nanoTime() - start, null);
+		} catch (Exception ex) {
+			operation.record(System.nanoTime() - start, ex);
+		}
+	}
+
+	private void report(PrintStream out, long elapsedNanos, FakeGitHubServer server) {
+		double seconds = elapsedNanos / 1e9;
+		out.printf("workload=%s threads=%d duration=%.1fs latency=%dms jitter=%dms rateLimitRate=%.3f serverErrorRate=%.3f%n",
+				workload, threads, seconds, latencyMillis, jitterMillis, rateLimitRate, serverErrorRate);
+		out.printf("%-12s %10s %10s %12s %10s %10s %10s%n", "operation", "count", "errors", "ops/s", "p50 ms",
+				"p99 ms", "max ms");
+		for (Operation operation : new TreeMap<>(operations).values()) {
+			long[] latencies = operation.latencies();
+			out.printf("%-12s %10d %10d %12.1f %10.2f %10.2f %10.2f%n", operation.name, latencies.length,
+					operation.errorCount(), latencies.length / seconds, percentile(latencies, 0.50),
+					percentile(latencies, 0.99), percentile(latencies, 1.0));
+		}
+		out.println("server requests " + server.getRequestCounts() + " total=" + server.getRequestCount());
+		for (Operation operation : new TreeMap<>(operations).values()) {
+			Map<String, Long> errors = new TreeMap<>();
+			operation.errors.forEach((type, count) -> errors.put(type, count.sum()));
+			if (!errors.isEmpty()) {
+				out.println(operation.name + " errors " + errors);
+			}
+		}
+	}
+
+	static double percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+	}
+
+	private static List<String> allPaths(FakeRepository repository) {
+		List<String> result = new ArrayList<>();
+		collect(repository, repository.getTreeOf(repository.getRef("refs/heads/master")), "/", result);
+		return result;
+	}
+
+	private static void collect(FakeRepository repository, String tree, String prefix, List<String> result) {
+		for (FakeRepository.Entry entry : repository.getTree(tree)) {
+			if ("tree".equals(entry.getType())) {
+				collect(repository, entry.getSha(), prefix + entry.getName() + "/", result);
+			} else {
+				result.add(prefix + entry.getName());
+			}
+		}
+	}
+
+	private static final class Operation {
+		final String name;
+		final List<Long> samples = Collections.synchronizedList(new ArrayList<>());
+		// counted by class, a long run would otherwise hold on to every exception
+		final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+		Operation(String name) {
+			this.name = name;
+		}
+
+		void record(long nanos, Exception error) {
+			samples.add(nanos);
+			if (error != null) {
+				errors.computeIfAbsent(error.getClass().getSimpleName(), k -> new LongAdder()).increment();
+			}
+		}
+
+		long errorCount() {
+			return errors.values().stream().mapToLong(LongAdder::sum).sum();
+		}
+
+		long[] latencies() {
+			long[] result;
+			synchronized (samples) {
+				result = samples.stream().mapToLong(Long::longValue).toArray();
+			}
+			Arrays.sort(result);
+			return result;
+		}
+	}
+}